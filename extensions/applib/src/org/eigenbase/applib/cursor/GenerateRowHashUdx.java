@@ -0,0 +1,544 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.eigenbase.applib.cursor;
+
+import java.math.*;
+
+import java.sql.*;
+
+import java.util.*;
+
+import org.eigenbase.applib.resource.*;
+
+
+/**
+ * Generates 64-bit hash values per row of a table, for detecting rows which
+ * have changed. Compared with {@link GenerateCrcUdx}:
+ *
+ * <ul>
+ * <li>values are hashed in a binary form which depends on their type, rather
+ * than converted to strings;
+ * <li>the columns to hash are worked out once, not for every row;
+ * <li>a choice of fast non-cryptographic hash functions is offered: {@link
+ * #XXHASH64} (the default) and {@link #MURMUR64};
+ * <li>a row's key columns and its remaining columns can be hashed separately,
+ * in the same pass.
+ * </ul>
+ *
+ * <p>Exact numeric values of type TINYINT through BIGINT hash alike
+ * whatever their type, as do CHAR and VARCHAR strings with the same
+ * characters. Otherwise, equal values of different types do not hash alike.
+ *
+ * <p>DATE, TIME and TIMESTAMP values hash by their year, month, day and time
+ * of day fields, so the hash of a row does not depend on the time zone of the
+ * server which computes it.
+ */
+public abstract class GenerateRowHashUdx
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * The 64-bit xxHash function, XXH64.
+     */
+    public static final String XXHASH64 = "XXHASH64";
+
+    /**
+     * The 64-bit MurmurHash2 function, MurmurHash64A.
+     */
+    public static final String MURMUR64 = "MURMUR64";
+
+    private static final int KIND_LONG = 0;
+    private static final int KIND_DOUBLE = 1;
+    private static final int KIND_DECIMAL = 2;
+    private static final int KIND_BOOLEAN = 3;
+    private static final int KIND_BYTES = 4;
+    private static final int KIND_DATE = 5;
+    private static final int KIND_TIME = 6;
+    private static final int KIND_TIMESTAMP = 7;
+    private static final int KIND_STRING = 8;
+
+    private static final long XX_PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long XX_PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long XX_PRIME3 = 0x165667B19E3779F9L;
+    private static final long XX_PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long XX_PRIME5 = 0x27D4EB2F165667C5L;
+
+    private static final long MURMUR_M = 0xC6A4A7935BD1E995L;
+    private static final int MURMUR_R = 47;
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Adds a hash of all columns to each row.
+     *
+     * @param inputSet rows to hash
+     * @param algorithm name of the hash function, or null for the default
+     * @param resultInserter receives the input columns followed by the hash
+     */
+    public static void execute(
+        ResultSet inputSet,
+        String algorithm,
+        PreparedStatement resultInserter)
+        throws ApplibException
+    {
+        execute(inputSet, null, false, algorithm, resultInserter);
+    }
+
+    /**
+     * Adds a hash of some of the columns to each row.
+     *
+     * @param inputSet rows to hash
+     * @param columnNames names of columns to hash, or of columns not to hash
+     * @param exclude whether columnNames lists the columns not to hash
+     * @param algorithm name of the hash function, or null for the default
+     * @param resultInserter receives the input columns followed by the hash
+     */
+    public static void execute(
+        ResultSet inputSet,
+        List<String> columnNames,
+        boolean exclude,
+        String algorithm,
+        PreparedStatement resultInserter)
+        throws ApplibException
+    {
+        int [] hashOf = getColumnHashes(inputSet, columnNames);
+        for (int i = 0; i < hashOf.length; i++) {
+            if (columnNames != null) {
+                hashOf[i] = ((hashOf[i] == 0) == exclude) ? -1 : 0;
+            } else {
+                hashOf[i] = 0;
+            }
+        }
+        generateHashes(inputSet, hashOf, 1, algorithm, resultInserter);
+    }
+
+    /**
+     * Adds two hashes to each row: one of the key columns, which identifies
+     * the row, and one of all other columns, which tells whether it has
+     * changed.
+     *
+     * @param inputSet rows to hash
+     * @param keyColumnNames names of the key columns
+     * @param algorithm name of the hash function, or null for the default
+     * @param resultInserter receives the input columns followed by the key
+     * hash and the value hash
+     */
+    public static void executeKeyed(
+        ResultSet inputSet,
+        List<String> keyColumnNames,
+        String algorithm,
+        PreparedStatement resultInserter)
+        throws ApplibException
+    {
+        int [] hashOf = getColumnHashes(inputSet, keyColumnNames);
+        for (int i = 0; i < hashOf.length; i++) {
+            hashOf[i] = (hashOf[i] == 0) ? 0 : 1;
+        }
+        generateHashes(inputSet, hashOf, 2, algorithm, resultInserter);
+    }
+
+    /**
+     * Finds which input columns are listed.
+     *
+     * @param inputSet input
+     * @param columnNames column names, or null
+     *
+     * @return for each input column, 0 if it is listed, otherwise -1
+     */
+    private static int [] getColumnHashes(
+        ResultSet inputSet,
+        List<String> columnNames)
+        throws ApplibException
+    {
+        try {
+            ResultSetMetaData rsmd = inputSet.getMetaData();
+            int [] hashOf = new int[rsmd.getColumnCount()];
+            Arrays.fill(hashOf, -1);
+            if (columnNames != null) {
+                for (String columnName : columnNames) {
+                    hashOf[inputSet.findColumn(columnName) - 1] = 0;
+                }
+            }
+            return hashOf;
+        } catch (SQLException e) {
+            // could be database access error or invalid column name
+            throw ApplibResource.instance().DatabaseAccessError.ex(
+                e.toString(),
+                e);
+        }
+    }
+
+    private static void generateHashes(
+        ResultSet inputSet,
+        int [] hashOf,
+        int nHashes,
+        String algorithm,
+        PreparedStatement resultInserter)
+        throws ApplibException
+    {
+        boolean murmur;
+        if ((algorithm == null) || algorithm.equalsIgnoreCase(XXHASH64)) {
+            murmur = false;
+        } else if (algorithm.equalsIgnoreCase(MURMUR64)) {
+            murmur = true;
+        } else {
+            throw ApplibResource.instance().InvalidHashAlgorithm.ex(
+                algorithm);
+        }
+
+        int nInput = hashOf.length;
+        try {
+            int nOutput =
+                resultInserter.getParameterMetaData().getParameterCount();
+            assert (nOutput == (nInput + nHashes));
+        } catch (SQLException e) {
+            throw ApplibResource.instance().InputOutputColumnError.ex(e);
+        }
+
+        HashInput [] inputs = new HashInput[nHashes];
+        for (int h = 0; h < nHashes; h++) {
+            inputs[h] = new HashInput();
+        }
+
+        try {
+            ResultSetMetaData rsmd = inputSet.getMetaData();
+            int [] kinds = new int[nInput];
+            for (int i = 0; i < nInput; i++) {
+                kinds[i] = getKind(rsmd.getColumnType(i + 1));
+            }
+
+            while (inputSet.next()) {
+                for (int h = 0; h < nHashes; h++) {
+                    inputs[h].reset();
+                }
+                for (int i = 0; i < nInput; i++) {
+                    Object obj = inputSet.getObject(i + 1);
+                    resultInserter.setObject(i + 1, obj);
+                    if (hashOf[i] >= 0) {
+                        inputs[hashOf[i]].putValue(kinds[i], obj);
+                    }
+                }
+                for (int h = 0; h < nHashes; h++) {
+                    HashInput input = inputs[h];
+                    long hash =
+                        murmur ? murmurHash64(input.buf, input.len, 0)
+                        : xxHash64(input.buf, input.len, 0);
+                    resultInserter.setLong(nInput + h + 1, hash);
+                }
+                resultInserter.executeUpdate();
+            }
+        } catch (SQLException e) {
+            throw ApplibResource.instance().DatabaseAccessError.ex(
+                e.toString(),
+                e);
+        }
+    }
+
+    private static int getKind(int jdbcType)
+    {
+        switch (jdbcType) {
+        case Types.TINYINT:
+        case Types.SMALLINT:
+        case Types.INTEGER:
+        case Types.BIGINT:
+            return KIND_LONG;
+        case Types.REAL:
+        case Types.FLOAT:
+        case Types.DOUBLE:
+            return KIND_DOUBLE;
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+            return KIND_DECIMAL;
+        case Types.BIT:
+        case Types.BOOLEAN:
+            return KIND_BOOLEAN;
+        case Types.BINARY:
+        case Types.VARBINARY:
+            return KIND_BYTES;
+        case Types.DATE:
+            return KIND_DATE;
+        case Types.TIME:
+            return KIND_TIME;
+        case Types.TIMESTAMP:
+            return KIND_TIMESTAMP;
+        default:
+            return KIND_STRING;
+        }
+    }
+
+    /**
+     * Computes the 64-bit xxHash (XXH64) of a byte array.
+     *
+     * @param buf bytes to hash
+     * @param len number of bytes to hash, starting at 0
+     * @param seed seed
+     *
+     * @return hash value
+     */
+    public static long xxHash64(byte [] buf, int len, long seed)
+    {
+        int p = 0;
+        long h;
+        if (len >= 32) {
+            long v1 = seed + XX_PRIME1 + XX_PRIME2;
+            long v2 = seed + XX_PRIME2;
+            long v3 = seed;
+            long v4 = seed - XX_PRIME1;
+            do {
+                v1 = xxRound(v1, getLong(buf, p));
+                v2 = xxRound(v2, getLong(buf, p + 8));
+                v3 = xxRound(v3, getLong(buf, p + 16));
+                v4 = xxRound(v4, getLong(buf, p + 24));
+                p += 32;
+            } while (p <= (len - 32));
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+                + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = xxMergeRound(h, v1);
+            h = xxMergeRound(h, v2);
+            h = xxMergeRound(h, v3);
+            h = xxMergeRound(h, v4);
+        } else {
+            h = seed + XX_PRIME5;
+        }
+        h += len;
+        for (; (p + 8) <= len; p += 8) {
+            h ^= xxRound(0, getLong(buf, p));
+            h = (Long.rotateLeft(h, 27) * XX_PRIME1) + XX_PRIME4;
+        }
+        if ((p + 4) <= len) {
+            h ^= (getInt(buf, p) & 0xFFFFFFFFL) * XX_PRIME1;
+            h = (Long.rotateLeft(h, 23) * XX_PRIME2) + XX_PRIME3;
+            p += 4;
+        }
+        for (; p < len; p++) {
+            h ^= (buf[p] & 0xFFL) * XX_PRIME5;
+            h = Long.rotateLeft(h, 11) * XX_PRIME1;
+        }
+        h ^= h >>> 33;
+        h *= XX_PRIME2;
+        h ^= h >>> 29;
+        h *= XX_PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long xxRound(long acc, long input)
+    {
+        acc += input * XX_PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * XX_PRIME1;
+    }
+
+    private static long xxMergeRound(long acc, long val)
+    {
+        acc ^= xxRound(0, val);
+        return (acc * XX_PRIME1) + XX_PRIME4;
+    }
+
+    /**
+     * Computes the 64-bit MurmurHash2 (MurmurHash64A) of a byte array.
+     *
+     * @param buf bytes to hash
+     * @param len number of bytes to hash, starting at 0
+     * @param seed seed
+     *
+     * @return hash value
+     */
+    public static long murmurHash64(byte [] buf, int len, long seed)
+    {
+        long h = seed ^ (len * MURMUR_M);
+        int end = len & ~7;
+        for (int p = 0; p < end; p += 8) {
+            long k = getLong(buf, p);
+            k *= MURMUR_M;
+            k ^= k >>> MURMUR_R;
+            k *= MURMUR_M;
+            h ^= k;
+            h *= MURMUR_M;
+        }
+        int rest = len & 7;
+        if (rest != 0) {
+            for (int i = rest - 1; i >= 0; i--) {
+                h ^= (buf[end + i] & 0xFFL) << (8 * i);
+            }
+            h *= MURMUR_M;
+        }
+        h ^= h >>> MURMUR_R;
+        h *= MURMUR_M;
+        h ^= h >>> MURMUR_R;
+        return h;
+    }
+
+    private static long getLong(byte [] buf, int p)
+    {
+        // little-endian, as both functions are defined
+        return (getInt(buf, p) & 0xFFFFFFFFL)
+            | ((long) getInt(buf, p + 4) << 32);
+    }
+
+    private static int getInt(byte [] buf, int p)
+    {
+        return (buf[p] & 0xFF)
+            | ((buf[p + 1] & 0xFF) << 8)
+            | ((buf[p + 2] & 0xFF) << 16)
+            | ((buf[p + 3] & 0xFF) << 24);
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Accumulates the binary form of the values making up one hash of a row.
+     * Each value is preceded by a null indicator, and variable-length values
+     * by their length, so that different rows don't run together into the
+     * same bytes. The buffer is reused from row to row.
+     */
+    private static class HashInput
+    {
+        byte [] buf = new byte[256];
+        int len;
+
+        /**
+         * Calendar in the JVM's time zone, which is the zone in which JDBC
+         * represents date and time values; used to read back their fields.
+         */
+        private final Calendar calendar = Calendar.getInstance();
+
+        void reset()
+        {
+            len = 0;
+        }
+
+        void putValue(int kind, Object obj)
+        {
+            if (obj == null) {
+                putByte(0);
+                return;
+            }
+            putByte(1);
+            switch (kind) {
+            case KIND_LONG:
+                putLong(((Number) obj).longValue());
+                break;
+            case KIND_DOUBLE:
+                putLong(
+                    Double.doubleToLongBits(((Number) obj).doubleValue()));
+                break;
+            case KIND_DECIMAL:
+                BigDecimal bd = (BigDecimal) obj;
+                BigInteger unscaled = bd.unscaledValue();
+                if (unscaled.bitLength() < 64) {
+                    putLong(unscaled.longValue());
+                } else {
+                    putBytes(unscaled.toByteArray());
+                }
+                putInt(bd.scale());
+                break;
+            case KIND_BOOLEAN:
+                putByte(((Boolean) obj).booleanValue() ? 1 : 0);
+                break;
+            case KIND_BYTES:
+                putBytes((byte []) obj);
+                break;
+            case KIND_DATE:
+            case KIND_TIME:
+            case KIND_TIMESTAMP:
+                if (obj instanceof java.util.Date) {
+                    putDatetime(kind, (java.util.Date) obj);
+                    break;
+                }
+
+                // fall through
+            default:
+                putChars(obj.toString());
+            }
+        }
+
+        private void putDatetime(int kind, java.util.Date date)
+        {
+            // getTime() would give the instant at which the value falls in
+            // the JVM's time zone, so hash the fields of the value instead
+            calendar.setTime(date);
+            if (kind != KIND_TIME) {
+                putInt(calendar.get(Calendar.YEAR));
+                putByte(calendar.get(Calendar.MONTH) + 1);
+                putByte(calendar.get(Calendar.DAY_OF_MONTH));
+            }
+            if (kind != KIND_DATE) {
+                putByte(calendar.get(Calendar.HOUR_OF_DAY));
+                putByte(calendar.get(Calendar.MINUTE));
+                putByte(calendar.get(Calendar.SECOND));
+                if (date instanceof Timestamp) {
+                    putInt(((Timestamp) date).getNanos());
+                } else {
+                    putInt(calendar.get(Calendar.MILLISECOND) * 1000000);
+                }
+            }
+        }
+
+        private void ensure(int n)
+        {
+            if ((len + n) > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(len + n, buf.length * 2));
+            }
+        }
+
+        private void putByte(int b)
+        {
+            ensure(1);
+            buf[len++] = (byte) b;
+        }
+
+        private void putInt(int v)
+        {
+            ensure(4);
+            buf[len++] = (byte) v;
+            buf[len++] = (byte) (v >>> 8);
+            buf[len++] = (byte) (v >>> 16);
+            buf[len++] = (byte) (v >>> 24);
+        }
+
+        private void putLong(long v)
+        {
+            putInt((int) v);
+            putInt((int) (v >>> 32));
+        }
+
+        private void putBytes(byte [] bytes)
+        {
+            putInt(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, len, bytes.length);
+            len += bytes.length;
+        }
+
+        private void putChars(String s)
+        {
+            int n = s.length();
+            putInt(n);
+            ensure(2 * n);
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                buf[len++] = (byte) c;
+                buf[len++] = (byte) (c >>> 8);
+            }
+        }
+    }
+}
+
+// End GenerateRowHashUdx.java
@@ -19,6 +19,7 @@
 
 package org.luciddb.pg2luciddb;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -45,6 +46,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Properties;
 import java.util.Random;
+import java.util.TimeZone;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
@@ -54,6 +56,7 @@ import java.util.GregorianCalendar;
 import java.util.Iterator;
 import java.util.Vector;
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.sql.Timestamp;
 import java.text.DateFormat;
 
@@ -76,6 +79,42 @@ import java.security.MessageDigest;
 public class ServerThread implements Runnable 
 {
     private static final int TYPE_STRING = Types.VARCHAR;
+
+    // PostgreSQL types of parameters (from pg_type.h):
+    private static final int PG_TYPE_BOOL = 16;
+    private static final int PG_TYPE_INT8 = 20;
+    private static final int PG_TYPE_INT2 = 21;
+    private static final int PG_TYPE_INT4 = 23;
+    private static final int PG_TYPE_FLOAT4 = 700;
+    private static final int PG_TYPE_FLOAT8 = 701;
+    private static final int PG_TYPE_DATE = 1082;
+    private static final int PG_TYPE_TIME = 1083;
+    private static final int PG_TYPE_TIMESTAMP = 1114;
+    private static final int PG_TYPE_NUMERIC = 1700;
+    private static final int PG_TYPE_VARCHAR = 1043;
+
+    // result column formats:
+    private static final int FORMAT_TEXT = 0;
+    private static final int FORMAT_BINARY = 1;
+
+    // PostgreSQL epoch (2000-01-01) in milliseconds since the Java epoch:
+    private static final long PG_EPOCH_MILLIS = 946684800000L;
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    // sign word of numeric values in binary format:
+    private static final int NUMERIC_POS = 0x0000;
+    private static final int NUMERIC_NEG = 0x4000;
+    private static final int NUMERIC_NAN = 0xC000;
+    private static final BigInteger NUMERIC_BASE = BigInteger.valueOf(10000);
+
+    // SQL states of errors in parameter values:
+    private static final String SQLSTATE_INVALID_BINARY_REPRESENTATION = "22P03";
+    private static final String SQLSTATE_FEATURE_NOT_SUPPORTED = "0A000";
+
+    // size of the buffer in front of the socket; messages are flushed once
+    // the response to a client message is complete, or when it fills up:
+    private static final int OUTPUT_BUFFER_SIZE = 65536;
+
     private Server server;
     private Socket socket;
     private Connection conn;
@@ -84,8 +123,10 @@ public class ServerThread implements Runnable
     private DataInputStream dataIn;
     private OutputStream out;
     private int messageType;
-    private ByteArrayOutputStream outBuffer;
-    private DataOutputStream dataOut;
+    private DataOutputStream socketOut;
+    private ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
+    private DataOutputStream dataOut = new DataOutputStream(outBuffer);
+    private Calendar calendar = GregorianCalendar.getInstance();
     private Thread thread;
     private boolean initDone;
     private String userName;
@@ -156,6 +197,18 @@ public class ServerThread implements Runnable
         this.socket = socket;
     }
 
+    // constructor for a client which has already logged in, talking over
+    // the given streams (used by the tests; call process for each message):
+    ServerThread(Server server, Connection conn, InputStream in, OutputStream out) 
+    {
+        this.server = server;
+        this.conn = conn;
+        this.out = out;
+        socketOut = new DataOutputStream(out);
+        dataInRaw = new DataInputStream(in);
+        initDone = true;
+    }
+
     // run thread:
     public void run() 
     {
@@ -174,7 +227,11 @@ public class ServerThread implements Runnable
             socket.setSoTimeout(server.configuration.getConnectionCloseIdleTimeout());
 
             InputStream ins = socket.getInputStream();
-            out = socket.getOutputStream();
+            out =
+                new BufferedOutputStream(
+                    socket.getOutputStream(),
+                    OUTPUT_BUFFER_SIZE);
+            socketOut = new DataOutputStream(out);
             dataInRaw = new DataInputStream(ins);
             while (!stop) 
             {
@@ -251,8 +308,8 @@ public class ServerThread implements Runnable
         return buffer.toString();
     }
 
-    // process:
-    private void process() throws IOException 
+    // process (one client message):
+    void process() throws IOException 
     {
         int x;
         // if init done:
@@ -440,7 +497,6 @@ public class ServerThread implements Runnable
             // get number of parameters:
             int count = readShort();
             p.paramType = new int[count];
-            p.parameters = new String[count];
 
             // set parameters:
             for (int i = 0; i < count; i++) 
@@ -449,12 +505,14 @@ public class ServerThread implements Runnable
                 checkType(type);
                 p.paramType[i] = type;
             }
-            // try to prepare statement:
+
+            // a new statement with the same name replaces the old one:
+            closePrepared(p.name);
+
+            // prepare statement once; it is reused by every execution:
             try 
             {
-                // right now - execute ALL statements:
-                PreparedStatement pst = conn.prepareStatement(p.sql);
-                pst.close();
+                p.prep = conn.prepareStatement(p.sql);
                 prepared.put(p.name, p);
                 sendParseComplete();
             } 
@@ -479,9 +537,11 @@ public class ServerThread implements Runnable
                 break;
             }
 
+            // a new portal with the same name replaces the old one:
+            closePortal(portal.name);
+
             portal.sql = prep.sql;
             portal.prepared = prep;
-            portals.put(portal.name, portal);
 
             int formatCodeCount = readShort();
             int[] formatCodes = new int[formatCodeCount];
@@ -493,27 +553,30 @@ public class ServerThread implements Runnable
             }
 
             int paramCount = readShort();
-            // if parameters not set earlier:
-            if (portal.prepared.parameters == null || portal.prepared.parameters.length == 0)
-            {
-                portal.prepared.parameters = new String[paramCount];
-            }
+            portal.parameters = new Object[paramCount];
+            portal.parameterTypes = new int[paramCount];
 
-            // set parameters:
-            for (int i = 0; i < paramCount; i++) 
+            // decode parameters according to their types; a value which
+            // can't be decoded fails the bind (no portal is created):
+            try
             {
-                int paramLen = readInt();
-                byte[] d2 = ByteUtils.newBytes(paramLen);
-                readFully(d2);
-                try 
+                for (int i = 0; i < paramCount; i++) 
                 {
-                    setParameter(portal.prepared, i, d2, formatCodes);
-                } 
-                catch (SQLException e) 
-                {
-                    sendErrorResponse(e);
+                    int paramLen = readInt();
+                    byte[] d2 = null;
+                    if (paramLen >= 0)
+                    {
+                        d2 = ByteUtils.newBytes(paramLen);
+                        readFully(d2);
+                    }
+                    setParameter(portal, i, d2, formatCodes);
                 }
             }
+            catch (SQLException e)
+            {
+                sendErrorResponse(e);
+                break;
+            }
 
             int resultCodeCount = readShort();
             portal.resultColumnFormat = new int[resultCodeCount];
@@ -521,6 +584,7 @@ public class ServerThread implements Runnable
             {
                 portal.resultColumnFormat[i] = readShort();
             }
+            portals.put(portal.name, portal);
             sendBindComplete();
             break;
         }
@@ -558,13 +622,18 @@ public class ServerThread implements Runnable
                         {
                             sendRowDescription(null);
                         }
+                        // if the portal is open - describe its cursor:
+                        else if (p.rs != null)
+                        {
+                            sendRowDescription(p.rs.getMetaData(), p.encoders);
+                        }
                         // else:
                         else     
                         {
-                            PreparedStatement prep = conn.prepareStatement(p.sql);
-                            ResultSetMetaData meta = prep.getMetaData();
-                            sendRowDescription(meta);
-                            prep.close();
+                            ResultSetMetaData meta = p.prepared.prep.getMetaData();
+                            sendRowDescription(
+                                meta,
+                                getColumnEncoders(meta, p.resultColumnFormat));
                         }
                     } 
                     catch (SQLException e) 
@@ -591,57 +660,56 @@ public class ServerThread implements Runnable
                 sendErrorResponse("Portal not found: " + name);
                 break;
             }
-            int maxRows = readShort();
-
-            try 
+            int maxRows = readInt();
+            executePortal(p, maxRows);
+            break;
+        }
+        // close prepared statement or portal:
+        case 'C': 
+        {
+            char type = (char) readByte();
+            String name = readString();
+            logger.trace("Close");
+            if (type == 'S') 
             {
-
-                PreparedStatement prep = conn.prepareStatement(p.sql);
-                // set parameters:
-                for (int i = 0; i < p.prepared.parameters.length; i++)
-                {
-                     prep.setString(i + 1, p.prepared.parameters[i]);
-                }                                
-          
-                logger.trace(p.sql);
-                prep.setMaxRows(maxRows);                
-                boolean result = prep.execute();
-                if (result) 
-                {
-                    try 
-                    {
-                        ResultSet rs = prep.getResultSet();
-                        ResultSetMetaData meta = rs.getMetaData();
-                        sendRowDescription(meta);
-                        while (rs.next()) 
-                        {
-                            sendDataRow(rs);
-                        }
-                        rs.close();
-                        sendCommandComplete(p.sql, 0);
-                    } 
-                    catch (SQLException e) 
-                    {
-                        sendErrorResponse(e);
-                    }
-                } 
-                else 
-                {
-                    sendCommandComplete(p.sql, prep.getUpdateCount());
-                }
-
-                prep.close();
+                closePrepared(name);
             } 
-            catch (SQLException e) 
+            else if (type == 'P') 
             {
-                sendErrorResponse(e);
+                closePortal(name);
+            } 
+            else 
+            {
+                logger.trace("expected S or P, got " + type);
+                sendErrorResponse("expected S or P");
+                break;
             }
+            sendCloseComplete();
+            break;
+        }
+        // flush:
+        case 'H': 
+        {
+            logger.trace("Flush");
             break;
         }
         // sync query:
         case 'S': 
         {
             logger.trace("Sync");
+
+            // portals do not outlive the implicit transaction:
+            try
+            {
+                if (conn.getAutoCommit())
+                {
+                    closeAllPortals();
+                }
+            }
+            catch (SQLException e)
+            {
+                logger.error(e.toString());
+            }
             sendReadyForQuery();
             break;
         }
@@ -701,9 +769,10 @@ public class ServerThread implements Runnable
                         ResultSet rs = stat.getResultSet();
                         ResultSetMetaData meta = rs.getMetaData();
                         sendRowDescription(meta);
+                        ColumnEncoder[] encoders = getColumnEncoders(meta, null);
                         while (rs.next()) 
                         {
-                            sendDataRow(rs);
+                            sendDataRow(rs, encoders);
                         }
                         sendCommandComplete(s, 0);
                     } 
@@ -821,10 +890,7 @@ public class ServerThread implements Runnable
                 if (name.startsWith("PREPARE"))
                     name = name.substring(8).trim(); // remove "PREPARE" if any
                 
-                if (prepared.get(name) != null)
-                {
-                    prepared.put(name, null);
-                }
+                closePrepared(name);
 
                 sendCommandComplete(s, 0);
                 s = "";
@@ -849,9 +915,10 @@ public class ServerThread implements Runnable
 
                    ResultSetMetaData meta = rs.getMetaData();
                    sendRowDescription(meta);
+                   ColumnEncoder[] encoders = getColumnEncoders(meta, null);
                    while (rs.next()) 
                    {
-                      sendDataRow(rs);
+                      sendDataRow(rs, encoders);
                    }
                    sendCommandComplete(s, 0);
                    s = "";
@@ -873,9 +940,10 @@ public class ServerThread implements Runnable
 
                    ResultSetMetaData meta = rs.getMetaData();
                    sendRowDescription(meta);
+                   ColumnEncoder[] encoders = getColumnEncoders(meta, null);
                    while (rs.next()) 
                    {
-                      sendDataRow(rs);
+                      sendDataRow(rs, encoders);
                    }
                    sendCommandComplete(s, 0);
                    s = "";
@@ -1014,9 +1082,10 @@ public class ServerThread implements Runnable
 
                     ResultSetMetaData meta = rs.getMetaData();
                     sendRowDescription(meta);
+                    ColumnEncoder[] encoders = getColumnEncoders(meta, null);
                     while (rs.next()) 
                     {
-                       sendDataRow(rs);
+                       sendDataRow(rs, encoders);
                     }
                     sendCommandComplete(s, 0);
                     s = "";
@@ -1216,123 +1285,146 @@ public class ServerThread implements Runnable
         return returnValue;
     }
 
+    // format date or timestamp in text format, reusing the column's format:
+    private String formatDate(Date d, ColumnEncoder e) 
+    {
+        calendar.setTime(d);
+        if (calendar.get(Calendar.ERA) == GregorianCalendar.BC)
+        {
+            return formatDate(d, e.datePattern);
+        }
+        return e.dateFormat.format(d);
+    }
+
+    // resolve the encoders of result columns (once per cursor); formats are
+    // the result format codes requested at bind time (null - all text):
+    private ColumnEncoder[] getColumnEncoders(ResultSetMetaData meta, int[] formats) throws SQLException 
+    {
+        if (meta == null)
+        {
+            return null;
+        }
+        int columns = meta.getColumnCount();
+        ColumnEncoder[] encoders = new ColumnEncoder[columns];
+        for (int i = 1; i <= columns; i++) 
+        {
+            ColumnEncoder e = new ColumnEncoder();
+            e.column = i;
+            e.jdbcType = meta.getColumnType(i);
+            String typeName = meta.getColumnTypeName(i);
+            e.pgType = JDBCToPostgreSQLType.getPostgreSQLType(typeName);
+            e.isBoolean = "bool".equalsIgnoreCase(typeName) || "boolean".equalsIgnoreCase(typeName);
+
+            switch (e.jdbcType)
+            {
+                case Types.DATE:
+                   e.datePattern = "yyyy-MM-dd";
+                   break;
+
+                case Types.TIMESTAMP:
+                   e.datePattern = "yyyy-MM-dd HH:mm:ss";
+                   break;
+            }
+            if (e.datePattern != null)
+            {
+                e.dateFormat = new java.text.SimpleDateFormat(e.datePattern);
+            }
+
+            // a single format code applies to all columns:
+            int format = FORMAT_TEXT;
+            if (formats != null && formats.length == 1)
+            {
+                format = formats[0];
+            }
+            else if (formats != null && i <= formats.length)
+            {
+                format = formats[i - 1];
+            }
+
+            // columns without a binary encoding are sent as text (the row
+            // description tells the client which format each column has):
+            if (format == FORMAT_BINARY && supportsBinary(e))
+            {
+                e.format = FORMAT_BINARY;
+            }
+            else
+            {
+                e.format = FORMAT_TEXT;
+            }
+            encoders[i - 1] = e;
+        }
+        return encoders;
+    }
+
+    // check whether column can be sent in binary format:
+    private static boolean supportsBinary(ColumnEncoder e) 
+    {
+        switch (e.pgType)
+        {
+            case PG_TYPE_BOOL:
+               return e.isBoolean;
+
+            case PG_TYPE_INT2:
+            case PG_TYPE_INT4:
+            case PG_TYPE_INT8:
+               return e.jdbcType == Types.TINYINT || e.jdbcType == Types.SMALLINT || e.jdbcType == Types.INTEGER || e.jdbcType == Types.BIGINT;
+
+            case PG_TYPE_FLOAT4:
+            case PG_TYPE_FLOAT8:
+               return e.jdbcType == Types.REAL || e.jdbcType == Types.FLOAT || e.jdbcType == Types.DOUBLE;
+
+            case PG_TYPE_NUMERIC:
+               return e.jdbcType == Types.DECIMAL || e.jdbcType == Types.NUMERIC;
+
+            case PG_TYPE_DATE:
+               return e.jdbcType == Types.DATE;
+
+            case PG_TYPE_TIME:
+               return e.jdbcType == Types.TIME;
+
+            case PG_TYPE_TIMESTAMP:
+               return e.jdbcType == Types.TIMESTAMP;
+
+            case PG_TYPE_VARCHAR:
+               // binary and text format are the same for strings:
+               return e.jdbcType == Types.CHAR || e.jdbcType == Types.VARCHAR;
+
+            default:
+               return false;
+        }
+    }
+
     // send data row:
-    private void sendDataRow(ResultSet rs) throws IOException 
+    private void sendDataRow(ResultSet rs, ColumnEncoder[] encoders) throws IOException 
     {
         try 
         {
-            int columns = rs.getMetaData().getColumnCount();
             // data row:
             startMessage('D');
             // columns count:
-            writeShort(columns);
+            writeShort(encoders.length);
 
             // process over columns:
-            for (int i = 1; i <= columns; i++) 
+            for (int i = 0; i < encoders.length; i++) 
             {
-                String returnValue = null;                
-                switch (rs.getMetaData().getColumnType(i)) 
+                ColumnEncoder e = encoders[i];
+                if (e.format == FORMAT_BINARY)
                 {
-                    case Types.TINYINT:
-                       returnValue = Byte.toString(rs.getByte(i));
-                       if (rs.wasNull())
-                           returnValue = null;
-                       break;
-
-                    case Types.SMALLINT:
-                       returnValue = Short.toString(rs.getShort(i));
-                       if (rs.wasNull())
-                           returnValue = null;
-                       break;
-
-                    case Types.INTEGER:
-                       returnValue = Integer.toString(rs.getInt(i));
-                       if (rs.wasNull())
-                           returnValue = null;
-                       break;
-
-                    case Types.BIGINT:
-                       returnValue = Long.toString(rs.getLong(i));
-                       if (rs.wasNull())
-                           returnValue = null;
-                       break;
-
-                    case Types.REAL:
-                       returnValue = Float.toString(rs.getFloat(i));
-                       if (rs.wasNull())
-                           returnValue = null;
-                       break;
-
-                    case Types.FLOAT:
-                       returnValue = Double.toString(rs.getDouble(i));
-                       if (rs.wasNull())
-                           returnValue = null;
-                       break;
-
-                    case Types.DOUBLE:
-                       returnValue = Double.toString(rs.getDouble(i));
-                       if (rs.wasNull())
-                           returnValue = null;
-                       break;
-
-                    case Types.DECIMAL:
-                    case Types.NUMERIC:
-                       BigDecimal bigDecimal = rs.getBigDecimal(i);
-                       if (bigDecimal != null)
-                           returnValue = bigDecimal.toPlainString();
-                       break;
-
-                    case Types.BIT:
-                    case Types.BOOLEAN:
-                       if ("bool".equalsIgnoreCase((rs.getMetaData().getColumnTypeName(i))) || "boolean".equalsIgnoreCase((rs.getMetaData().getColumnTypeName(i)))) 
-                       {
-                           Boolean b = rs.getBoolean(i);
-                           returnValue = rs.wasNull() ? null : b ? "t" : "f";
-			   //returnValue = rs.wasNull() ? null : b ? "1" : "0";
-                       } else {
-                           // TODO must return 01, 111, 10111, etc and not only true or false as now
-                           returnValue = rs.getString(i);
-                       }
-                       break;
-
-                    case Types.DATE:
-                       java.sql.Date jdbcDate = rs.getDate(i);
-                       if (jdbcDate != null) {
-                           returnValue = formatDate(new Date(jdbcDate.getTime()), "yyyy-MM-dd");
-                       }
-                       break;
-
-                    case Types.TIMESTAMP:
-                       Timestamp ts = rs.getTimestamp(i);
-                       if (ts != null) 
-                       {
-                          if (ts.getTime() == JDBC_DATE_INFINITY)
-                              returnValue = POSTGRES_DATE_INFINITY;
-                          else if (ts.getTime() == JDBC_DATE_MINUS_INFINITY)
-                               returnValue = POSTGRES_DATE_MINUS_INFINITY;
-                          else 
-                          {
-                               returnValue = formatDate(new Date(ts.getTime()), "yyyy-MM-dd HH:mm:ss");
-                          }
-                       }
-                       break;
-                     default:
-                        returnValue = rs.getString(i);
-                        break;
-                  } 
-                  		  
+                    writeBinaryValue(rs, e);
+                    continue;
+                }
 
-                  // TODO write Binary data
-                  if (returnValue != null)
-                  {
-                     byte[] d2 = returnValue.getBytes(getEncoding());
-                     writeInt(d2.length);
-                     write(d2);
-                  }
-                  else
-                  {
-                     writeInt(-1); 
-                  }
+                String returnValue = getTextValue(rs, e);
+                if (returnValue != null)
+                {
+                    byte[] d2 = returnValue.getBytes(getEncoding());
+                    writeInt(d2.length);
+                    write(d2);
+                }
+                else
+                {
+                    writeInt(-1); 
+                }
             }
 
             sendMessage();
@@ -1343,6 +1435,302 @@ public class ServerThread implements Runnable
         }
     }
 
+    // get value of column in text format (null - NULL value):
+    private String getTextValue(ResultSet rs, ColumnEncoder e) throws SQLException 
+    {
+        int i = e.column;
+        String returnValue = null;                
+        switch (e.jdbcType) 
+        {
+            case Types.TINYINT:
+               returnValue = Byte.toString(rs.getByte(i));
+               if (rs.wasNull())
+                   returnValue = null;
+               break;
+
+            case Types.SMALLINT:
+               returnValue = Short.toString(rs.getShort(i));
+               if (rs.wasNull())
+                   returnValue = null;
+               break;
+
+            case Types.INTEGER:
+               returnValue = Integer.toString(rs.getInt(i));
+               if (rs.wasNull())
+                   returnValue = null;
+               break;
+
+            case Types.BIGINT:
+               returnValue = Long.toString(rs.getLong(i));
+               if (rs.wasNull())
+                   returnValue = null;
+               break;
+
+            case Types.REAL:
+               returnValue = Float.toString(rs.getFloat(i));
+               if (rs.wasNull())
+                   returnValue = null;
+               break;
+
+            case Types.FLOAT:
+               returnValue = Double.toString(rs.getDouble(i));
+               if (rs.wasNull())
+                   returnValue = null;
+               break;
+
+            case Types.DOUBLE:
+               returnValue = Double.toString(rs.getDouble(i));
+               if (rs.wasNull())
+                   returnValue = null;
+               break;
+
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+               BigDecimal bigDecimal = rs.getBigDecimal(i);
+               if (bigDecimal != null)
+                   returnValue = bigDecimal.toPlainString();
+               break;
+
+            case Types.BIT:
+            case Types.BOOLEAN:
+               if (e.isBoolean) 
+               {
+                   Boolean b = rs.getBoolean(i);
+                   returnValue = rs.wasNull() ? null : b ? "t" : "f";
+                   //returnValue = rs.wasNull() ? null : b ? "1" : "0";
+               } else {
+                   // TODO must return 01, 111, 10111, etc and not only true or false as now
+                   returnValue = rs.getString(i);
+               }
+               break;
+
+            case Types.DATE:
+               java.sql.Date jdbcDate = rs.getDate(i);
+               if (jdbcDate != null) {
+                   returnValue = formatDate(jdbcDate, e);
+               }
+               break;
+
+            case Types.TIMESTAMP:
+               Timestamp ts = rs.getTimestamp(i);
+               if (ts != null) 
+               {
+                  if (ts.getTime() == JDBC_DATE_INFINITY)
+                      returnValue = POSTGRES_DATE_INFINITY;
+                  else if (ts.getTime() == JDBC_DATE_MINUS_INFINITY)
+                       returnValue = POSTGRES_DATE_MINUS_INFINITY;
+                  else 
+                  {
+                       returnValue = formatDate(ts, e);
+                  }
+               }
+               break;
+             default:
+                returnValue = rs.getString(i);
+                break;
+        } 
+        return returnValue;
+    }
+
+    // write value of column in binary format (as length + value), according
+    // to the type the row description announced; with integer_datetimes off,
+    // times are seconds since the PostgreSQL epoch (or midnight) as float8:
+    private void writeBinaryValue(ResultSet rs, ColumnEncoder e) throws SQLException, IOException 
+    {
+        int i = e.column;
+        switch (e.pgType)
+        {
+            case PG_TYPE_BOOL:
+            {
+                boolean b = rs.getBoolean(i);
+                if (rs.wasNull())
+                    break;
+                writeInt(1);
+                write(b ? 1 : 0);
+                return;
+            }
+            case PG_TYPE_INT2:
+            {
+                short v = rs.getShort(i);
+                if (rs.wasNull())
+                    break;
+                writeInt(2);
+                writeShort(v);
+                return;
+            }
+            case PG_TYPE_INT4:
+            {
+                int v = rs.getInt(i);
+                if (rs.wasNull())
+                    break;
+                writeInt(4);
+                writeInt(v);
+                return;
+            }
+            case PG_TYPE_INT8:
+            {
+                long v = rs.getLong(i);
+                if (rs.wasNull())
+                    break;
+                writeInt(8);
+                dataOut.writeLong(v);
+                return;
+            }
+            case PG_TYPE_FLOAT4:
+            {
+                float v = rs.getFloat(i);
+                if (rs.wasNull())
+                    break;
+                writeInt(4);
+                dataOut.writeFloat(v);
+                return;
+            }
+            case PG_TYPE_FLOAT8:
+            {
+                double v = rs.getDouble(i);
+                if (rs.wasNull())
+                    break;
+                writeInt(8);
+                dataOut.writeDouble(v);
+                return;
+            }
+            case PG_TYPE_NUMERIC:
+            {
+                BigDecimal v = rs.getBigDecimal(i);
+                if (v == null)
+                    break;
+                writeNumeric(v);
+                return;
+            }
+            case PG_TYPE_DATE:
+            {
+                java.sql.Date v = rs.getDate(i);
+                if (v == null)
+                    break;
+                long millis = toLocalMillis(v.getTime()) - PG_EPOCH_MILLIS;
+                long days = millis / MILLIS_PER_DAY;
+                if (millis % MILLIS_PER_DAY < 0)
+                    days--;
+                writeInt(4);
+                writeInt((int) days);
+                return;
+            }
+            case PG_TYPE_TIME:
+            {
+                java.sql.Time v = rs.getTime(i);
+                if (v == null)
+                    break;
+                long millis = toLocalMillis(v.getTime()) % MILLIS_PER_DAY;
+                if (millis < 0)
+                    millis += MILLIS_PER_DAY;
+                writeInt(8);
+                dataOut.writeDouble(millis / 1000.0);
+                return;
+            }
+            case PG_TYPE_TIMESTAMP:
+            {
+                Timestamp v = rs.getTimestamp(i);
+                if (v == null)
+                    break;
+                double seconds;
+                if (v.getTime() == JDBC_DATE_INFINITY)
+                    seconds = Double.POSITIVE_INFINITY;
+                else if (v.getTime() == JDBC_DATE_MINUS_INFINITY)
+                    seconds = Double.NEGATIVE_INFINITY;
+                else
+                {
+                    // getTime includes the milliseconds of getNanos:
+                    long millis = toLocalMillis(v.getTime()) - PG_EPOCH_MILLIS;
+                    seconds = millis / 1000.0 + (v.getNanos() % 1000000) / 1e9;
+                }
+                writeInt(8);
+                dataOut.writeDouble(seconds);
+                return;
+            }
+            default:
+            {
+                String v = rs.getString(i);
+                if (v == null)
+                    break;
+                byte[] d2 = v.getBytes(getEncoding());
+                writeInt(d2.length);
+                write(d2);
+                return;
+            }
+        }
+        // NULL value:
+        writeInt(-1);
+    }
+
+    // convert instant to wall-clock time of the server's time zone (as
+    // the text format does):
+    private static long toLocalMillis(long millis) 
+    {
+        return millis + TimeZone.getDefault().getOffset(millis);
+    }
+
+    // convert wall-clock time of the server's time zone to instant (the
+    // inverse of toLocalMillis):
+    private static long fromLocalMillis(long localMillis) 
+    {
+        TimeZone tz = TimeZone.getDefault();
+        long millis = localMillis - tz.getOffset(localMillis);
+        return localMillis - tz.getOffset(millis);
+    }
+
+    // write numeric value in binary format: number of base-10000 digits,
+    // weight of the first digit, sign, display scale, then the digits:
+    private void writeNumeric(BigDecimal value) throws IOException 
+    {
+        int dscale = Math.max(value.scale(), 0);
+        String s = value.abs().setScale(dscale).toPlainString();
+        int point = s.indexOf('.');
+        int intLen = (point < 0) ? s.length() : point;
+
+        // pad integer part on the left & fraction on the right to groups
+        // of 4 decimal digits:
+        StringBuilder sb = new StringBuilder();
+        for (int k = intLen; k % 4 != 0; k++)
+        {
+            sb.append('0');
+        }
+        sb.append(s, 0, intLen);
+        if (point >= 0)
+        {
+            sb.append(s, point + 1, s.length());
+        }
+        while (sb.length() % 4 != 0)
+        {
+            sb.append('0');
+        }
+        int intGroups = (intLen + 3) / 4;
+        int[] digits = new int[sb.length() / 4];
+        for (int k = 0; k < digits.length; k++)
+        {
+            digits[k] = Integer.parseInt(sb.substring(4 * k, 4 * k + 4));
+        }
+
+        // strip leading & trailing zero digits:
+        int first = 0;
+        int last = digits.length;
+        while (first < last && digits[first] == 0)
+            first++;
+        while (last > first && digits[last - 1] == 0)
+            last--;
+        int count = last - first;
+        int weight = (count == 0) ? 0 : intGroups - 1 - first;
+
+        writeInt(8 + 2 * count);
+        writeShort(count);
+        writeShort(weight);
+        writeShort(value.signum() < 0 ? NUMERIC_NEG : NUMERIC_POS);
+        writeShort(dscale);
+        for (int k = first; k < last; k++)
+        {
+            writeShort(digits[k]);
+        }
+    }
+
     // get encoding:
     private String getEncoding() 
     {
@@ -1352,33 +1740,436 @@ public class ServerThread implements Runnable
         return clientEncoding;
     }
 
-    // set parameter:
-    private void setParameter(Prepared prep, int i, byte[] d2, int[] formatCodes) throws SQLException 
+    // set parameter (decode it according to its type & format):
+    private void setParameter(Portal portal, int i, byte[] d2, int[] formatCodes) throws SQLException 
     {
-        boolean text = (i >= formatCodes.length) || (formatCodes[i] == 0);
-        String s;
+        int type = 0;
+        if (portal.prepared.paramType != null && i < portal.prepared.paramType.length)
+        {
+            type = portal.prepared.paramType[i];
+        }
+        portal.parameterTypes[i] = getJdbcType(type);
+
+        // NULL value:
+        if (d2 == null)
+        {
+            portal.parameters[i] = null;
+            return;
+        }
+
+        // a single format code applies to all parameters:
+        int formatCode = 0;
+        if (formatCodes.length == 1)
+        {
+            formatCode = formatCodes[0];
+        }
+        else if (i < formatCodes.length)
+        {
+            formatCode = formatCodes[i];
+        }
+
         try 
         {               
-            if (text) 
+            if (formatCode == 0) 
             {
-                s = new String(d2, getEncoding());
+                portal.parameters[i] = decodeTextParameter(type, new String(d2, getEncoding()));
             } 
             else 
             {
-                logger.trace("Binary format not supported");
-                s = new String(d2, getEncoding());
+                portal.parameters[i] = decodeBinaryParameter(type, d2);
             }
         } 
-        catch (Exception e) 
+        catch (IOException e) 
+        {
+            // value too short for its type, or unknown client encoding:
+            throw new SQLException(
+                "Invalid value of parameter $" + (i + 1) + ": " + e.toString(),
+                SQLSTATE_INVALID_BINARY_REPRESENTATION);
+        }
+        catch (SQLException e) 
+        {
+            throw new SQLException(
+                "Invalid value of parameter $" + (i + 1) + ": " + e.getMessage(),
+                e.getSQLState());
+        }
+    }
+
+    // decode parameter sent in text format:
+    private Object decodeTextParameter(int type, String s) 
+    {
+        try
+        {
+            switch (type)
+            {
+                case PG_TYPE_BOOL:
+                   return s.equalsIgnoreCase("t") || s.equalsIgnoreCase("true") || s.equals("1") || s.equalsIgnoreCase("y") || s.equalsIgnoreCase("yes") || s.equalsIgnoreCase("on");
+
+                case PG_TYPE_INT2:
+                   return Short.valueOf(s.trim());
+
+                case PG_TYPE_INT4:
+                   return Integer.valueOf(s.trim());
+
+                case PG_TYPE_INT8:
+                   return Long.valueOf(s.trim());
+
+                case PG_TYPE_FLOAT4:
+                   return Float.valueOf(s.trim());
+
+                case PG_TYPE_FLOAT8:
+                   return Double.valueOf(s.trim());
+
+                case PG_TYPE_NUMERIC:
+                   return new BigDecimal(s.trim());
+
+                case PG_TYPE_DATE:
+                   return java.sql.Date.valueOf(s.trim());
+
+                case PG_TYPE_TIME:
+                   return java.sql.Time.valueOf(s.trim());
+
+                case PG_TYPE_TIMESTAMP:
+                   return Timestamp.valueOf(s.trim());
+
+                default:
+                   return s;
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            // let the server convert the value (and report any error):
+            logger.trace("Passing parameter as string: " + s);
+            return s;
+        }
+    }
+
+    // decode parameter sent in binary format; values of date & time types
+    // are expected as announced by integer_datetimes (off), like the ones
+    // writeBinaryValue sends:
+    private Object decodeBinaryParameter(int type, byte[] d2) throws IOException, SQLException 
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(d2));
+        Object value;
+        switch (type)
+        {
+            case PG_TYPE_BOOL:
+               value = in.readByte() != 0;
+               break;
+
+            case PG_TYPE_INT2:
+               value = in.readShort();
+               break;
+
+            case PG_TYPE_INT4:
+               value = in.readInt();
+               break;
+
+            case PG_TYPE_INT8:
+               value = in.readLong();
+               break;
+
+            case PG_TYPE_FLOAT4:
+               value = in.readFloat();
+               break;
+
+            case PG_TYPE_FLOAT8:
+               value = in.readDouble();
+               break;
+
+            case PG_TYPE_NUMERIC:
+               value = readNumeric(in);
+               break;
+
+            case PG_TYPE_DATE:
+            {
+               // days since 2000-01-01:
+               long days = in.readInt();
+               value = new java.sql.Date(
+                   fromLocalMillis(PG_EPOCH_MILLIS + days * MILLIS_PER_DAY));
+               break;
+            }
+
+            case PG_TYPE_TIME:
+            {
+               // seconds since midnight:
+               double seconds = in.readDouble();
+               if (!(seconds >= 0 && seconds <= MILLIS_PER_DAY / 1000))
+               {
+                   throw new SQLException(
+                       "Time out of range: " + seconds,
+                       SQLSTATE_INVALID_BINARY_REPRESENTATION);
+               }
+               value = new java.sql.Time(
+                   fromLocalMillis(Math.round(seconds * 1000)));
+               break;
+            }
+
+            case PG_TYPE_TIMESTAMP:
+               value = readTimestamp(in);
+               break;
+
+            default:
+               logger.trace("Binary format not supported for type " + type);
+               return new String(d2, getEncoding());
+        }
+        if (in.available() > 0)
+        {
+            throw new SQLException(
+                "Binary value of type " + type + " is " + d2.length + " bytes long",
+                SQLSTATE_INVALID_BINARY_REPRESENTATION);
+        }
+        return value;
+    }
+
+    // read numeric value in binary format (see writeNumeric):
+    private static BigDecimal readNumeric(DataInputStream in) throws IOException, SQLException 
+    {
+        int count = in.readShort();
+        int weight = in.readShort();
+        int sign = in.readUnsignedShort();
+        int dscale = in.readShort();
+        if (sign == NUMERIC_NAN)
+        {
+            throw new SQLException(
+                "NaN is not supported",
+                SQLSTATE_FEATURE_NOT_SUPPORTED);
+        }
+        if (count < 0 || dscale < 0 || (sign != NUMERIC_POS && sign != NUMERIC_NEG))
+        {
+            throw new SQLException(
+                "Invalid numeric header",
+                SQLSTATE_INVALID_BINARY_REPRESENTATION);
+        }
+
+        // base-10000 digits, the first of which has the given weight:
+        BigInteger unscaled = BigInteger.ZERO;
+        for (int k = 0; k < count; k++)
+        {
+            int digit = in.readShort();
+            if (digit < 0 || digit >= 10000)
+            {
+                throw new SQLException(
+                    "Invalid numeric digit: " + digit,
+                    SQLSTATE_INVALID_BINARY_REPRESENTATION);
+            }
+            unscaled = unscaled.multiply(NUMERIC_BASE).add(
+                BigInteger.valueOf(digit));
+        }
+        BigDecimal value =
+            new BigDecimal(unscaled).movePointRight(4 * (weight + 1 - count));
+        try
+        {
+            value = value.setScale(dscale);
+        }
+        catch (ArithmeticException e)
+        {
+            throw new SQLException(
+                "Numeric digits exceed display scale " + dscale,
+                SQLSTATE_INVALID_BINARY_REPRESENTATION);
+        }
+        return (sign == NUMERIC_NEG) ? value.negate() : value;
+    }
+
+    // read timestamp value in binary format: seconds since 2000-01-01:
+    private static Timestamp readTimestamp(DataInputStream in) throws IOException, SQLException 
+    {
+        double seconds = in.readDouble();
+        if (seconds == Double.POSITIVE_INFINITY)
+            return new Timestamp(JDBC_DATE_INFINITY);
+        if (seconds == Double.NEGATIVE_INFINITY)
+            return new Timestamp(JDBC_DATE_MINUS_INFINITY);
+        if (Double.isNaN(seconds))
+        {
+            throw new SQLException(
+                "Timestamp is NaN",
+                SQLSTATE_INVALID_BINARY_REPRESENTATION);
+        }
+
+        // split into whole milliseconds & the remaining nanoseconds:
+        long micros = Math.round(seconds * 1e6);
+        long millis = micros / 1000;
+        if (micros % 1000 < 0)
+            millis--;
+        Timestamp ts = new Timestamp(fromLocalMillis(PG_EPOCH_MILLIS + millis));
+        int microsOfSecond = (int) (micros % 1000000);
+        if (microsOfSecond < 0)
+            microsOfSecond += 1000000;
+        ts.setNanos(microsOfSecond * 1000);
+        return ts;
+    }
+
+    // map PostgreSQL type of parameter to JDBC type:
+    private static int getJdbcType(int type) 
+    {
+        switch (type)
+        {
+            case PG_TYPE_BOOL:
+               return Types.BOOLEAN;
+            case PG_TYPE_INT2:
+               return Types.SMALLINT;
+            case PG_TYPE_INT4:
+               return Types.INTEGER;
+            case PG_TYPE_INT8:
+               return Types.BIGINT;
+            case PG_TYPE_FLOAT4:
+               return Types.REAL;
+            case PG_TYPE_FLOAT8:
+               return Types.DOUBLE;
+            case PG_TYPE_NUMERIC:
+               return Types.DECIMAL;
+            case PG_TYPE_DATE:
+               return Types.DATE;
+            case PG_TYPE_TIME:
+               return Types.TIME;
+            case PG_TYPE_TIMESTAMP:
+               return Types.TIMESTAMP;
+            default:
+               return TYPE_STRING;
+        }
+    }
+
+    // set parameters of portal on the statement:
+    private void bindParameters(PreparedStatement prep, Portal p) throws SQLException 
+    {
+        prep.clearParameters();
+        for (int i = 0; i < p.parameters.length; i++)
+        {
+            if (p.parameters[i] == null)
+            {
+                prep.setNull(i + 1, p.parameterTypes[i]);
+            }
+            else
+            {
+                prep.setObject(i + 1, p.parameters[i]);
+            }
+        }
+    }
+
+    // execute portal, sending at most maxRows rows (0 - all rows); the
+    // portal stays open and is resumed by the next execute if rows remain:
+    private void executePortal(Portal p, int maxRows) throws IOException 
+    {
+        try 
+        {
+            if (p.rs == null)
+            {
+                // portal already ran to completion:
+                if (p.done)
+                {
+                    sendCommandComplete(p.sql, 0);
+                    return;
+                }
+
+                // use statement prepared at parse time, unless another
+                // portal still has a cursor open on it:
+                if (p.prepared.activePortal == null)
+                {
+                    p.prep = p.prepared.prep;
+                    p.prepared.activePortal = p;
+                }
+                else
+                {
+                    p.prep = conn.prepareStatement(p.sql);
+                    p.ownsStatement = true;
+                }
+                bindParameters(p.prep, p);
+
+                logger.trace(p.sql);
+                boolean result = p.prep.execute();
+                if (!result)
+                {
+                    int updateCount = p.prep.getUpdateCount();
+                    closePortalCursor(p);
+                    p.done = true;
+                    sendCommandComplete(p.sql, updateCount);
+                    return;
+                }
+                p.rs = p.prep.getResultSet();
+                ResultSetMetaData meta = p.rs.getMetaData();
+                p.encoders = getColumnEncoders(meta, p.resultColumnFormat);
+                sendRowDescription(meta, p.encoders);
+            }
+
+            // stream (next) rows:
+            for (int count = 0; maxRows <= 0 || count < maxRows; count++)
+            {
+                if (!p.rs.next())
+                {
+                    closePortalCursor(p);
+                    p.done = true;
+                    sendCommandComplete(p.sql, 0);
+                    return;
+                }
+                sendDataRow(p.rs, p.encoders);
+            }
+            sendPortalSuspended();
+        } 
+        catch (SQLException e) 
+        {
+            closePortalCursor(p);
+            p.done = true;
+            sendErrorResponse(e);
+        }
+    }
+
+    // close cursor of portal (if any):
+    private void closePortalCursor(Portal p) 
+    {
+        JdbcUtils.closeSilently(p.rs);
+        p.rs = null;
+        p.encoders = null;
+        if (p.ownsStatement)
+        {
+            JdbcUtils.closeSilently(p.prep);
+            p.ownsStatement = false;
+        }
+        if (p.prepared.activePortal == p)
         {
-            logger.error("Exception during setting parameter: " + e.toString());
-            s = null;
+            p.prepared.activePortal = null;
         }
+        p.prep = null;
+    }
 
-        // set value:
-        prep.parameters[i] = s;
+    // close portal:
+    private void closePortal(String name) 
+    {
+        Portal p = portals.remove(name);
+        if (p != null)
+        {
+            closePortalCursor(p);
+        }
     }
 
+    // close all portals:
+    private void closeAllPortals() 
+    {
+        for (Portal p : portals.values())
+        {
+            closePortalCursor(p);
+        }
+        portals.clear();
+    }
+
+    // close prepared statement & portals created from it:
+    private void closePrepared(String name) 
+    {
+        Prepared prep = prepared.remove(name);
+        if (prep == null)
+        {
+            return;
+        }
+        Iterator<Portal> it = portals.values().iterator();
+        while (it.hasNext())
+        {
+            Portal p = it.next();
+            if (p.prepared == prep)
+            {
+                closePortalCursor(p);
+                it.remove();
+            }
+        }
+        JdbcUtils.closeSilently(prep.prep);
+    }
 
     // send error response:
     private void sendErrorResponse(SQLException e) throws IOException 
@@ -1418,23 +2209,14 @@ public class ServerThread implements Runnable
     {
         try 
         {
-            // prepare statement:
-            PreparedStatement prep = conn.prepareStatement(p.sql);
-
-            // set parameters:
-            for (int i = 0; i < p.parameters.length; i++)
-            {
-                 prep.setString(i + 1, p.parameters[i]);
-            }                                
-
-            ParameterMetaData meta = prep.getParameterMetaData();
+            ParameterMetaData meta = p.prep.getParameterMetaData();
             int count = meta.getParameterCount();
             startMessage('t');
             writeShort(count);
             for (int i = 0; i < count; i++) 
             {
                 int type;
-                if (p.paramType != null && p.paramType[i] != 0) 
+                if (p.paramType != null && i < p.paramType.length && p.paramType[i] != 0) 
                 {
                     type = p.paramType[i];
                 } 
@@ -1446,8 +2228,6 @@ public class ServerThread implements Runnable
                 writeInt(type);
             }
             sendMessage();
-
-            prep.close();
         } 
         catch (SQLException e) 
         {
@@ -1462,8 +2242,14 @@ public class ServerThread implements Runnable
         sendMessage();
     }
 
-    // send row description:
+    // send row description (all columns in text format):
     private void sendRowDescription(ResultSetMetaData meta) throws IOException 
+    {
+        sendRowDescription(meta, null);
+    }
+
+    // send row description, with the formats chosen by the column encoders:
+    private void sendRowDescription(ResultSetMetaData meta, ColumnEncoder[] encoders) throws IOException 
     {
         try 
         {
@@ -1571,8 +2357,8 @@ public class ServerThread implements Runnable
                         writeInt(-1);
                     }
 
-                    // text
-                    writeShort(0);
+                    // format code:
+                    writeShort(encoders == null ? FORMAT_TEXT : encoders[i - 1].format);
                 }
                 sendMessage();
             }
@@ -1640,6 +2426,20 @@ public class ServerThread implements Runnable
         sendMessage();
     }
 
+    // send close complete:
+    private void sendCloseComplete() throws IOException 
+    {
+        startMessage('3');
+        sendMessage();
+    }
+
+    // send portal suspended:
+    private void sendPortalSuspended() throws IOException 
+    {
+        startMessage('s');
+        sendMessage();
+    }
+
     // close:
     void close() 
     {
@@ -1832,25 +2632,23 @@ public class ServerThread implements Runnable
         dataOut.write(b);
     }
 
-    // start message:
+    // start message (the message buffer is reused):
     private void startMessage(int messageType) 
     {
         this.messageType = messageType;
-        outBuffer = new ByteArrayOutputStream();
-        dataOut = new DataOutputStream(outBuffer);
+        outBuffer.reset();
     }
 
-    // send message:
+    // send message; it stays in the output buffer until the response to
+    // the current client message is complete (see run), so that consecutive
+    // messages (e.g. data rows) go out in large socket writes:
     private void sendMessage() throws IOException 
     {
         dataOut.flush();
-        byte[] buff = outBuffer.toByteArray();
-        int len = buff.length;
-        dataOut = new DataOutputStream(out);
-        dataOut.write(messageType);
-        dataOut.writeInt(len + 4);
-        dataOut.write(buff);
-        dataOut.flush();
+        int len = outBuffer.size();
+        socketOut.write(messageType);
+        socketOut.writeInt(len + 4);
+        outBuffer.writeTo(socketOut);
     }
 
     // send parameter status:
@@ -1901,9 +2699,14 @@ public class ServerThread implements Runnable
         int[] paramType;
 
         /**
-         * Parameters
+         * The statement, prepared once at parse time.
          */
-        String[] parameters;
+        PreparedStatement prep;
+
+        /**
+         * The portal with a cursor open on the statement (if any).
+         */
+        Portal activePortal;
     }
 
     /**
@@ -1931,5 +2734,79 @@ public class ServerThread implements Runnable
          * Prepared
          */
         Prepared prepared;
+
+        /**
+         * Parameter values, decoded at bind time.
+         */
+        Object[] parameters;
+
+        /**
+         * JDBC types of the parameters (used to bind NULL values).
+         */
+        int[] parameterTypes;
+
+        /**
+         * The statement executed by the portal (while it is open).
+         */
+        PreparedStatement prep;
+
+        /**
+         * Whether the portal prepared its own statement, because the
+         * prepared one was in use by another portal.
+         */
+        boolean ownsStatement;
+
+        /**
+         * The open cursor, if the portal is suspended.
+         */
+        ResultSet rs;
+
+        /**
+         * Whether the portal has run to completion.
+         */
+        boolean done;
+
+        /**
+         * Encoders of the result columns (while the cursor is open).
+         */
+        ColumnEncoder[] encoders;
+    }
+
+    /**
+     * Encodes values of a result column. The column's type and format are
+     * resolved from the result set metadata once per cursor, not per row.
+     */
+    class ColumnEncoder 
+    {
+        /**
+         * The column index (1-based).
+         */
+        int column;
+
+        /**
+         * The JDBC type of the column.
+         */
+        int jdbcType;
+
+        /**
+         * The PostgreSQL type announced in the row description.
+         */
+        int pgType;
+
+        /**
+         * Whether the column is a boolean (rather than a bit string).
+         */
+        boolean isBoolean;
+
+        /**
+         * The format in which values are sent (text or binary).
+         */
+        int format;
+
+        /**
+         * The pattern & format of date/timestamp values in text format.
+         */
+        String datePattern;
+        DateFormat dateFormat;
     }
 }
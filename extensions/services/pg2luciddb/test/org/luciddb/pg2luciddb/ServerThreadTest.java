@@ -0,0 +1,364 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+
+package org.luciddb.pg2luciddb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+
+/**
+ * Tests the extended query protocol of {@link ServerThread}: parameters
+ * sent to Bind in binary format are decoded to the values executed, and a
+ * parameter which can't be decoded fails the Bind with an ErrorResponse.
+ */
+public class ServerThreadTest extends TestCase
+{
+    // PostgreSQL types of parameters (from pg_type.h):
+    private static final int PG_TYPE_INT4 = 23;
+    private static final int PG_TYPE_DATE = 1082;
+    private static final int PG_TYPE_TIME = 1083;
+    private static final int PG_TYPE_TIMESTAMP = 1114;
+    private static final int PG_TYPE_NUMERIC = 1700;
+
+    // days from 2000-01-01 to 2010-01-01:
+    private static final int DAYS_TO_2010 = 3653;
+
+    // parameter values set on the statement, by parameter index:
+    private final Map<Integer, Object> boundValues = new HashMap<Integer, Object>();
+
+    public ServerThreadTest(String name)
+    {
+        super(name);
+    }
+
+    public void testBinaryNumeric() throws IOException
+    {
+        // -12.50: digits 12 & 5000, the first of weight 0, display scale 2:
+        assertEquals(
+            new BigDecimal("-12.50"),
+            bindAndExecute(PG_TYPE_NUMERIC, numeric(0, 0x4000, 2, 12, 5000)));
+
+        // 10000200.0003: digits 1000 & 200 & 3, the first of weight 1:
+        assertEquals(
+            new BigDecimal("10000200.0003"),
+            bindAndExecute(PG_TYPE_NUMERIC, numeric(1, 0, 4, 1000, 200, 3)));
+
+        // 0.00012: digits 1 & 2000, the first of weight -1:
+        assertEquals(
+            new BigDecimal("0.00012"),
+            bindAndExecute(PG_TYPE_NUMERIC, numeric(-1, 0, 5, 1, 2000)));
+
+        // zero has no digits:
+        assertEquals(
+            new BigDecimal("0.0"),
+            bindAndExecute(PG_TYPE_NUMERIC, numeric(0, 0, 1)));
+    }
+
+    public void testBinaryDate() throws IOException
+    {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        new DataOutputStream(buf).writeInt(DAYS_TO_2010);
+        assertEquals(
+            java.sql.Date.valueOf("2010-01-01"),
+            bindAndExecute(PG_TYPE_DATE, buf.toByteArray()));
+    }
+
+    public void testBinaryTime() throws IOException
+    {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        new DataOutputStream(buf).writeDouble(3723.5);
+        Time time = (Time) bindAndExecute(PG_TYPE_TIME, buf.toByteArray());
+        assertEquals(Time.valueOf("01:02:03").getTime() + 500, time.getTime());
+    }
+
+    public void testBinaryTimestamp() throws IOException
+    {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        new DataOutputStream(buf).writeDouble(
+            DAYS_TO_2010 * 86400.0 + 3723.123456);
+        assertEquals(
+            Timestamp.valueOf("2010-01-01 01:02:03.123456"),
+            bindAndExecute(PG_TYPE_TIMESTAMP, buf.toByteArray()));
+    }
+
+    public void testBinaryNumericNaN() throws IOException
+    {
+        assertBindFails(PG_TYPE_NUMERIC, numeric(0, 0xC000, 0), "0A000");
+    }
+
+    public void testBinaryNumericBadDigit() throws IOException
+    {
+        assertBindFails(PG_TYPE_NUMERIC, numeric(0, 0, 0, 10000), "22P03");
+    }
+
+    public void testBinaryValueTooShort() throws IOException
+    {
+        assertBindFails(PG_TYPE_INT4, new byte[] { 0, 1 }, "22P03");
+    }
+
+    public void testBinaryValueTooLong() throws IOException
+    {
+        assertBindFails(PG_TYPE_DATE, new byte[8], "22P03");
+    }
+
+    // encode numeric value in binary format, given its base-10000 digits:
+    private static byte[] numeric(int weight, int sign, int dscale, int... digits) throws IOException
+    {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buf);
+        out.writeShort(digits.length);
+        out.writeShort(weight);
+        out.writeShort(sign);
+        out.writeShort(dscale);
+        for (int digit : digits)
+        {
+            out.writeShort(digit);
+        }
+        return buf.toByteArray();
+    }
+
+    // send Parse, Bind & Execute for a statement with one parameter, bound
+    // in binary format; return the value the statement was executed with:
+    private Object bindAndExecute(int type, byte[] value) throws IOException
+    {
+        List<Message> replies = process(type, value);
+        assertEquals("1", replies.get(0).type);
+        assertEquals("2", replies.get(1).type);
+        assertEquals("C", replies.get(2).type);
+        assertEquals("INSERT 0 1", replies.get(2).readString());
+        return boundValues.get(1);
+    }
+
+    // send Parse, Bind & Execute for a statement with one parameter which
+    // can't be decoded; the Bind must fail, so there is no portal to execute:
+    private void assertBindFails(int type, byte[] value, String sqlState) throws IOException
+    {
+        List<Message> replies = process(type, value);
+        assertEquals("1", replies.get(0).type);
+        assertEquals("E", replies.get(1).type);
+        assertEquals(sqlState, replies.get(1).getField('C'));
+        assertEquals("E", replies.get(2).type);
+        assertEquals("Portal not found: ", replies.get(2).getField('M'));
+        assertTrue(boundValues.isEmpty());
+    }
+
+    private List<Message> process(int type, byte[] value) throws IOException
+    {
+        ByteArrayOutputStream in = new ByteArrayOutputStream();
+
+        // Parse: statement name, SQL, parameter types:
+        MessageWriter w = new MessageWriter('P');
+        w.writeString("");
+        w.writeString("insert into t values ($1)");
+        w.out.writeShort(1);
+        w.out.writeInt(type);
+        w.writeTo(in);
+
+        // Bind: portal & statement names, parameter formats, parameter
+        // values, result formats:
+        w = new MessageWriter('B');
+        w.writeString("");
+        w.writeString("");
+        w.out.writeShort(1);
+        w.out.writeShort(1);
+        w.out.writeShort(1);
+        w.out.writeInt(value.length);
+        w.out.write(value);
+        w.out.writeShort(0);
+        w.writeTo(in);
+
+        // Execute: portal name, all rows:
+        w = new MessageWriter('E');
+        w.writeString("");
+        w.out.writeInt(0);
+        w.writeTo(in);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ServerThread thread =
+            new ServerThread(
+                new Server(new String[0]),
+                newConnection(),
+                new ByteArrayInputStream(in.toByteArray()),
+                out);
+        for (int i = 0; i < 3; i++)
+        {
+            thread.process();
+        }
+        return Message.readAll(out.toByteArray());
+    }
+
+    // create connection whose statements record the parameters they are
+    // executed with, and report one row inserted:
+    private Connection newConnection()
+    {
+        final InvocationHandler stmtHandler = new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                String name = method.getName();
+                if (name.equals("setObject"))
+                {
+                    boundValues.put((Integer) args[0], args[1]);
+                }
+                else if (name.equals("setNull"))
+                {
+                    boundValues.put((Integer) args[0], null);
+                }
+                else if (name.equals("getUpdateCount"))
+                {
+                    return 1;
+                }
+                else if (name.equals("execute"))
+                {
+                    return false;
+                }
+                return null;
+            }
+        };
+        InvocationHandler connHandler = new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                if (method.getName().equals("prepareStatement"))
+                {
+                    return Proxy.newProxyInstance(
+                        getClass().getClassLoader(),
+                        new Class[] { PreparedStatement.class },
+                        stmtHandler);
+                }
+                if (method.getReturnType() == boolean.class)
+                {
+                    return true;
+                }
+                return null;
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class[] { Connection.class },
+            connHandler);
+    }
+
+    /**
+     * Builds a message sent by the client.
+     */
+    private static class MessageWriter
+    {
+        private final int type;
+        private final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(buf);
+
+        MessageWriter(int type)
+        {
+            this.type = type;
+        }
+
+        void writeString(String s) throws IOException
+        {
+            out.write(s.getBytes("UTF-8"));
+            out.write(0);
+        }
+
+        void writeTo(ByteArrayOutputStream stream) throws IOException
+        {
+            DataOutputStream dataOut = new DataOutputStream(stream);
+            dataOut.write(type);
+            dataOut.writeInt(buf.size() + 4);
+            buf.writeTo(dataOut);
+        }
+    }
+
+    /**
+     * A message sent by the server.
+     */
+    private static class Message
+    {
+        final String type;
+        final DataInputStream in;
+        private final byte[] body;
+
+        Message(char type, byte[] body)
+        {
+            this.type = String.valueOf(type);
+            this.body = body;
+            this.in = new DataInputStream(new ByteArrayInputStream(body));
+        }
+
+        static List<Message> readAll(byte[] data) throws IOException
+        {
+            List<Message> list = new ArrayList<Message>();
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            while (in.available() > 0)
+            {
+                char type = (char) in.readByte();
+                byte[] body = new byte[in.readInt() - 4];
+                in.readFully(body);
+                list.add(new Message(type, body));
+            }
+            return list;
+        }
+
+        String readString() throws IOException
+        {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            for (int b = in.readByte(); b != 0; b = in.readByte())
+            {
+                buf.write(b);
+            }
+            return buf.toString("UTF-8");
+        }
+
+        // get field of an ErrorResponse, or null:
+        String getField(char code) throws IOException
+        {
+            DataInputStream fields = new DataInputStream(new ByteArrayInputStream(body));
+            for (int c = fields.readByte(); c != 0; c = fields.readByte())
+            {
+                ByteArrayOutputStream buf = new ByteArrayOutputStream();
+                for (int b = fields.readByte(); b != 0; b = fields.readByte())
+                {
+                    buf.write(b);
+                }
+                if (c == code)
+                {
+                    return buf.toString("UTF-8");
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -55,6 +55,20 @@ external name 'class net.sf.farrago.syslib.FarragoManagementUDR.objectsInUse';
 create or replace view objects_in_use_view as
   select * from table(objects_in_use());
 
+create or replace function workload_queues()
+returns table(
+    user_name varchar(128), role_name varchar(128), statements_waiting int,
+    longest_wait_millis bigint, statements_admitted bigint,
+    total_wait_millis bigint, statements_timed_out bigint)
+language java
+parameter style system defined java
+no sql
+external name
+'class net.sf.farrago.syslib.FarragoManagementUDR.workloadQueues';
+
+create or replace view workload_queues_view as
+  select * from table(workload_queues());
+
 create or replace function threads()
 returns table(
     thread_id bigint, thread_group_name varchar(128), thread_name varchar(128),
@@ -228,6 +242,31 @@ reads sql data
 called on null input
 external name 'class net.sf.farrago.syslib.FarragoExportSchemaUDR.exportSchemaToFile';
 
+-- exports tables in a schema to delimited files or files of serialized rows,
+-- several tables at a time
+create or replace procedure export_schema_to_file(
+  in cat varchar(128),
+  in schma varchar(128),
+  in exclude boolean,
+  in tlist varchar(65535),
+  in tpattern varchar(65535),
+  in dir varchar(65535),
+  in bcp boolean,
+  in delete_failed_file boolean,
+  in field_delimiter varchar(2),
+  in file_extension varchar(5),
+  in date_format varchar(50),
+  in time_format varchar(50),
+  in timestamp_format varchar(50),
+  in file_format varchar(10),
+  in compress boolean,
+  in parallelism int)
+language java
+reads sql data
+specific export_schema_to_file_parallel
+called on null input
+external name 'class net.sf.farrago.syslib.FarragoExportSchemaUDR.exportSchemaToFile';
+
 -- switches default character set to Unicode
 create or replace procedure change_default_character_set_to_unicode()
 language java
@@ -1531,7 +1570,7 @@ external name 'class net.sf.farrago.syslib.FarragoSqlAdvisorUDR.isValid';
 
 CREATE or replace FUNCTION complete_sql(
   sql_statement varchar(65535),
-  offset integer)
+  offset_pos integer)
 returns table(
   item_type varchar(16),
   item_name varchar(128))
@@ -0,0 +1,231 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.catalog;
+
+import java.util.*;
+
+import javax.jmi.reflect.*;
+
+import net.sf.farrago.fem.sql2003.*;
+
+
+/**
+ * FarragoCatalogSnapshot is an immutable, versioned record of the state of
+ * the catalog objects which cached statement implementations depend on:
+ * whether each object still exists, and its modification timestamp. It lets
+ * a statement found in the code cache be checked for staleness without
+ * reading the repository, and therefore without taking the repository lock.
+ *
+ * <p>The current snapshot is held by {@link FarragoReposImpl}. It is rebuilt,
+ * with a new version, whenever a write transaction ends, and is extended copy
+ * on write when statements which depend on objects it does not yet cover are
+ * cached. A snapshot can only be trusted while it is still current; see
+ * {@link FarragoReposImpl#isCatalogSnapshotCurrent}.
+ */
+public final class FarragoCatalogSnapshot
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Maximum number of objects a snapshot covers; beyond this, it is not
+     * extended.
+     */
+    public static final int MAX_OBJECTS = 10000;
+
+    /**
+     * Timestamp recorded for an annotated object which has none.
+     */
+    private static final String NO_TIMESTAMP = "";
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final long version;
+
+    /**
+     * Maps the MOFID of each object covered to its modification timestamp,
+     * or to null if it is not a {@link FemAnnotatedElement}.
+     */
+    private final Map<String, String> modTimes;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a snapshot which covers no objects.
+     *
+     * @param version version number
+     */
+    public FarragoCatalogSnapshot(long version)
+    {
+        this(version, Collections.<String, String>emptyMap());
+    }
+
+    private FarragoCatalogSnapshot(long version, Map<String, String> modTimes)
+    {
+        this.version = version;
+        this.modTimes = modTimes;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    private static Map<String, String> readModTimes(
+        FarragoRepos repos,
+        Collection<String> mofIds)
+    {
+        Map<String, String> map = new HashMap<String, String>();
+        for (String mofId : mofIds) {
+            RefBaseObject obj = repos.getMdrRepos().getByMofId(mofId);
+            if (obj == null) {
+                continue;
+            }
+            String modTime = null;
+            if (obj instanceof FemAnnotatedElement) {
+                modTime =
+                    ((FemAnnotatedElement) obj).getModificationTimestamp();
+                if (modTime == null) {
+                    modTime = NO_TIMESTAMP;
+                }
+            }
+            map.put(mofId, modTime);
+        }
+        return map;
+    }
+
+    /**
+     * @return version number; a new version is created for every write
+     * transaction
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * @return MOFIDs of the objects covered by this snapshot
+     */
+    public Set<String> getObjectIds()
+    {
+        return modTimes.keySet();
+    }
+
+    /**
+     * @param mofIds MOFIDs of some objects
+     *
+     * @return whether this snapshot covers all of the given objects
+     */
+    public boolean coversAll(Collection<String> mofIds)
+    {
+        return modTimes.keySet().containsAll(mofIds);
+    }
+
+    /**
+     * Checks whether an object covered by this snapshot is as it was when a
+     * statement depending on it was prepared. This matches the check made
+     * against the repository itself.
+     *
+     * @param mofId MOFID of an object covered by this snapshot
+     * @param cachedModTime modification timestamp of the object when the
+     * statement was prepared, or null if the statement does not depend on it
+     *
+     * @return whether the object is unchanged
+     */
+    public boolean isUnchanged(String mofId, String cachedModTime)
+    {
+        assert (modTimes.containsKey(mofId));
+        String modTime = modTimes.get(mofId);
+        return (modTime == null)
+            || (cachedModTime == null)
+            || cachedModTime.equals(modTime);
+    }
+
+    /**
+     * Creates a snapshot with the same version which also covers some more
+     * objects. Must be called within a repository transaction.
+     *
+     * @param repos repository
+     * @param mofIds MOFIDs of the objects to add
+     *
+     * @return extended snapshot, or this snapshot if it would grow beyond
+     * {@link #MAX_OBJECTS}
+     */
+    public FarragoCatalogSnapshot extend(
+        FarragoRepos repos,
+        Collection<String> mofIds)
+    {
+        if ((modTimes.size() + mofIds.size()) > MAX_OBJECTS) {
+            return this;
+        }
+        Map<String, String> map = new HashMap<String, String>(modTimes);
+        map.putAll(readModTimes(repos, mofIds));
+        return new FarragoCatalogSnapshot(
+            version,
+            Collections.unmodifiableMap(map));
+    }
+
+    /**
+     * Creates a snapshot with a new version, covering the same objects as
+     * this one, after a write transaction has changed some objects. Only the
+     * changed objects which this snapshot covers are read again; the state of
+     * the others is copied. Must be called within the write transaction,
+     * while its changes are visible.
+     *
+     * @param repos repository
+     * @param newVersion version number for the new snapshot
+     * @param changedMofIds MOFIDs of the objects the transaction changed;
+     * those which no longer exist are left out of the new snapshot
+     *
+     * @return new snapshot
+     */
+    public FarragoCatalogSnapshot withChanges(
+        FarragoRepos repos,
+        long newVersion,
+        Collection<String> changedMofIds)
+    {
+        List<String> covered = new ArrayList<String>();
+        for (String mofId : changedMofIds) {
+            if (modTimes.containsKey(mofId)) {
+                covered.add(mofId);
+            }
+        }
+        if (covered.isEmpty()) {
+            return withVersion(newVersion);
+        }
+        Map<String, String> map = new HashMap<String, String>(modTimes);
+        map.keySet().removeAll(covered);
+        map.putAll(readModTimes(repos, covered));
+        return new FarragoCatalogSnapshot(
+            newVersion,
+            Collections.unmodifiableMap(map));
+    }
+
+    /**
+     * Creates a snapshot covering the same objects as this one, with a new
+     * version. Used when a write transaction was rolled back, so the objects
+     * are as they were.
+     *
+     * @param newVersion version number for the new snapshot
+     *
+     * @return new snapshot
+     */
+    public FarragoCatalogSnapshot withVersion(long newVersion)
+    {
+        return new FarragoCatalogSnapshot(newVersion, modTimes);
+    }
+}
+
+// End FarragoCatalogSnapshot.java
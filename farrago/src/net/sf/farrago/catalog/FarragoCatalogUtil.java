@@ -51,8 +51,68 @@ import org.eigenbase.util.*;
  */
 public abstract class FarragoCatalogUtil
 {
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Tag which marks a local table as a materialized view; its value is the
+     * validated text of the view's defining query.
+     */
+    public static final String MATERIALIZED_VIEW_QUERY_TAG =
+        "MATERIALIZED_VIEW_QUERY";
+
+    /**
+     * Tag holding the {@link MaterializedViewState} of a materialized view.
+     */
+    public static final String MATERIALIZED_VIEW_STATE_TAG =
+        "MATERIALIZED_VIEW_STATE";
+
+    /**
+     * Tag holding a counter which is incremented every time the tables a
+     * materialized view is defined on are modified, so that a refresh can
+     * tell whether it raced with a modification.
+     */
+    public static final String MATERIALIZED_VIEW_GENERATION_TAG =
+        "MATERIALIZED_VIEW_GENERATION";
+
+    /**
+     * Tag holding the highest row id of the base table which has been
+     * reflected in an incrementally maintained materialized view.
+     */
+    public static final String MATERIALIZED_VIEW_HIGH_WATER_MARK_TAG =
+        "MATERIALIZED_VIEW_HIGH_WATER_MARK";
+
+    /**
+     * Tag set to "true" if rows appended to the base table of a materialized
+     * view can be added to the view without recomputing it.
+     */
+    public static final String MATERIALIZED_VIEW_INCREMENTAL_TAG =
+        "MATERIALIZED_VIEW_INCREMENTAL";
+
     //~ Enums ------------------------------------------------------------------
 
+    /**
+     * Freshness of the contents of a materialized view.
+     */
+    public enum MaterializedViewState
+    {
+        /**
+         * Contents match the defining query.
+         */
+        FRESH,
+
+        /**
+         * Rows have been appended to the base table since the view was last
+         * refreshed, and nothing else has changed; the view can be brought up
+         * to date by processing the new rows only.
+         */
+        APPENDED,
+
+        /**
+         * Contents have to be recomputed.
+         */
+        STALE
+    }
+
     /**
      * Enumeration of the different type of row count statistics
      */
@@ -1680,6 +1740,128 @@ public abstract class FarragoCatalogUtil
         return ref;
     }
 
+    /**
+     * Determines whether an object is a local table which materializes a
+     * query.
+     *
+     * @param repos repository
+     * @param element object to test
+     *
+     * @return true if element is a materialized view
+     */
+    public static boolean isMaterializedView(
+        FarragoRepos repos,
+        CwmModelElement element)
+    {
+        return (element instanceof FemLocalTable)
+            && (repos.getTagAnnotationValue(
+                    (FemLocalTable) element,
+                    MATERIALIZED_VIEW_QUERY_TAG) != null);
+    }
+
+    /**
+     * Gets the freshness of a materialized view.
+     *
+     * @param repos repository
+     * @param table materialized view
+     *
+     * @return state of the view
+     */
+    public static MaterializedViewState getMaterializedViewState(
+        FarragoRepos repos,
+        FemLocalTable table)
+    {
+        String state =
+            repos.getTagAnnotationValue(table, MATERIALIZED_VIEW_STATE_TAG);
+        if (state == null) {
+            return MaterializedViewState.STALE;
+        }
+        return MaterializedViewState.valueOf(state);
+    }
+
+    /**
+     * Finds the materialized views defined directly on an object.
+     *
+     * @param repos repository
+     * @param element object the views depend on, typically a table
+     *
+     * @return materialized views, in no particular order
+     */
+    public static List<FemLocalTable> getDependentMaterializedViews(
+        FarragoRepos repos,
+        CwmModelElement element)
+    {
+        List<FemLocalTable> list = new ArrayList<FemLocalTable>();
+        DependencySupplier supplier =
+            repos.getCorePackage().getDependencySupplier();
+        for (CwmDependency dep : supplier.getSupplierDependency(element)) {
+            for (CwmModelElement client : dep.getClient()) {
+                if (isMaterializedView(repos, client)) {
+                    list.add((FemLocalTable) client);
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Records that the contents of a table have changed, so that the
+     * materialized views defined on it no longer match their queries. The
+     * views' modification timestamps are updated so that cached plans which
+     * read from the views are discarded. Must be called from within a
+     * repository write transaction.
+     *
+     * @param repos repository
+     * @param table modified table
+     * @param append whether rows were only appended to the table; an
+     * incrementally maintained view which was fresh can then be brought up to
+     * date without recomputing it
+     */
+    public static void markMaterializedViewsStale(
+        FarragoRepos repos,
+        CwmModelElement table,
+        boolean append)
+    {
+        List<FemLocalTable> views =
+            getDependentMaterializedViews(repos, table);
+        if (views.isEmpty()) {
+            return;
+        }
+        String timestamp = createTimestamp();
+        for (FemLocalTable view : views) {
+            MaterializedViewState state =
+                getMaterializedViewState(repos, view);
+            boolean incremental =
+                Boolean.valueOf(
+                    repos.getTagAnnotationValue(
+                        view,
+                        MATERIALIZED_VIEW_INCREMENTAL_TAG));
+            if (append
+                && incremental
+                && (state != MaterializedViewState.STALE))
+            {
+                state = MaterializedViewState.APPENDED;
+            } else {
+                state = MaterializedViewState.STALE;
+            }
+            repos.setTagAnnotationValue(
+                view,
+                MATERIALIZED_VIEW_STATE_TAG,
+                state.name());
+            String generation =
+                repos.getTagAnnotationValue(
+                    view,
+                    MATERIALIZED_VIEW_GENERATION_TAG);
+            long nextGeneration =
+                (generation == null) ? 1 : (Long.parseLong(generation) + 1);
+            repos.setTagAnnotationValue(
+                view,
+                MATERIALIZED_VIEW_GENERATION_TAG,
+                Long.toString(nextGeneration));
+            updateAnnotatedElement(view, timestamp, false);
+        }
+    }
+
     /**
      * Resets the row counts for a table
      *
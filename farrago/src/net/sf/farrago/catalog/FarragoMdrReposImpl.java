@@ -277,6 +277,7 @@ public class FarragoMdrReposImpl
             tracer.fine("Begin read-only repository transaction");
         }
         mdrRepository.beginTrans(writable);
+        reposTxnBegun(writable);
     }
 
     // implement FarragoRepos
@@ -287,7 +288,14 @@ public class FarragoMdrReposImpl
         } else {
             tracer.fine("Commit repository transaction");
         }
-        mdrRepository.endTrans(rollback);
+        FarragoCatalogSnapshot snapshot = reposTxnEnding(rollback);
+        boolean ended = false;
+        try {
+            mdrRepository.endTrans(rollback);
+            ended = true;
+        } finally {
+            reposTxnEnded(snapshot, ended);
+        }
     }
 
     // implement FarragoRepos
@@ -19,6 +19,8 @@
 package net.sf.farrago.catalog;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.concurrent.locks.*;
 import java.util.logging.*;
 
@@ -38,6 +40,8 @@ import org.eigenbase.enki.mdr.*;
 import org.eigenbase.jmi.*;
 import org.eigenbase.util.*;
 
+import org.netbeans.api.mdr.events.*;
+
 
 /**
  * Implementation of {@link FarragoRepos} using a MDR repository.
@@ -83,6 +87,37 @@ public abstract class FarragoReposImpl
 
     private Boolean exclusiveAccess;
 
+    /**
+     * Current catalog snapshot; replaced, never modified.
+     */
+    private volatile FarragoCatalogSnapshot catalogSnapshot =
+        new FarragoCatalogSnapshot(0);
+
+    /**
+     * Number of write transactions in progress. The catalog snapshot cannot be
+     * trusted while this is non-zero.
+     */
+    private final AtomicInteger activeWriteTxns = new AtomicInteger();
+
+    /**
+     * MOFIDs of the objects being changed by write transactions in progress.
+     * The catalog snapshot cannot be trusted for these.
+     */
+    private final Map<String, Boolean> changingObjects =
+        new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * Catalog change sequence number; see {@link #getCatalogChangeSeq}.
+     */
+    private final AtomicLong catalogChangeSeq = new AtomicLong();
+
+    /**
+     * Maps the MOFID of each object changed since startup to the catalog
+     * change sequence number of its last change.
+     */
+    private final Map<String, Long> objectChangeSeqs =
+        new ConcurrentHashMap<String, Long>();
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -119,6 +154,13 @@ public abstract class FarragoReposImpl
     {
         isFennelEnabled = !getDefaultConfig().isFennelDisabled();
         initGraphOnly();
+
+        // Watch for changes which would invalidate the catalog snapshot.
+        getMdrRepos().addListener(
+            new CatalogSnapshotListener(),
+            InstanceEvent.EVENT_INSTANCE_DELETE
+            | AttributeEvent.EVENTMASK_ATTRIBUTE
+            | AssociationEvent.EVENTMASK_ASSOCIATION);
     }
 
     protected void initGraphOnly()
@@ -627,6 +669,203 @@ public abstract class FarragoReposImpl
         }
     }
 
+    /**
+     * Returns the current catalog snapshot. The caller must check that the
+     * snapshot is still {@link #isCatalogSnapshotCurrent current} for the
+     * objects it is interested in after using it.
+     *
+     * @return current snapshot
+     */
+    public FarragoCatalogSnapshot getCatalogSnapshot()
+    {
+        return catalogSnapshot;
+    }
+
+    /**
+     * Checks whether a catalog snapshot still describes some objects: it has
+     * not been replaced, and no write transaction in progress is changing any
+     * of the objects.
+     *
+     * @param snapshot snapshot obtained from {@link #getCatalogSnapshot}
+     * @param mofIds MOFIDs of the objects
+     *
+     * @return whether snapshot is current
+     */
+    public boolean isCatalogSnapshotCurrent(
+        FarragoCatalogSnapshot snapshot,
+        Collection<String> mofIds)
+    {
+        // NOTE: check for changes first.  A write transaction publishes its
+        // new snapshot before forgetting the objects it changed, so if it has
+        // forgotten them, we are sure to see that the snapshot was replaced.
+        for (String mofId : mofIds) {
+            if (changingObjects.containsKey(mofId)) {
+                return false;
+            }
+        }
+        return catalogSnapshot == snapshot;
+    }
+
+    /**
+     * Extends the current catalog snapshot to cover some more objects. Must be
+     * called within a repository transaction, with at least a shared lock on
+     * the repository. Does nothing if the snapshot has been replaced or a
+     * write transaction is in progress.
+     *
+     * @param snapshot snapshot obtained from {@link #getCatalogSnapshot}
+     * within the same repository transaction
+     * @param mofIds MOFIDs of the objects to cover
+     */
+    public void extendCatalogSnapshot(
+        FarragoCatalogSnapshot snapshot,
+        Collection<String> mofIds)
+    {
+        synchronized (activeWriteTxns) {
+            if ((activeWriteTxns.get() == 0) && (catalogSnapshot == snapshot)) {
+                catalogSnapshot = snapshot.extend(this, mofIds);
+            }
+        }
+    }
+
+    /**
+     * Notes that the current thread's write transaction is about to change an
+     * object, so that readers stop trusting the catalog snapshot for it until
+     * the transaction ends. Changes made through JMI are noted automatically;
+     * this is for callers which must make sure readers see a change coming
+     * before it is made.
+     *
+     * @param mofId MOFID of the object
+     */
+    public void noteObjectChanging(String mofId)
+    {
+        if (cache.get().changingObjects.add(mofId)) {
+            changingObjects.put(mofId, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Returns the catalog change sequence number. It is advanced whenever a
+     * write transaction which changes objects ends, both before and after the
+     * change becomes visible, so a value read before checking some objects
+     * against the repository tells whether anything could have changed since.
+     *
+     * @return current catalog change sequence number
+     */
+    public long getCatalogChangeSeq()
+    {
+        return catalogChangeSeq.get();
+    }
+
+    /**
+     * Returns the catalog change sequence number as of the last change to an
+     * object. Objects are marked with the new sequence number before it is
+     * published by {@link #getCatalogChangeSeq}.
+     *
+     * @param mofId MOFID of the object
+     *
+     * @return catalog change sequence number of the last change, or 0 if the
+     * object has not changed since startup
+     */
+    public long getObjectChangeSeq(String mofId)
+    {
+        Long seq = objectChangeSeqs.get(mofId);
+        return (seq == null) ? 0 : seq;
+    }
+
+    private void advanceCatalogChangeSeq(Set<String> changed)
+    {
+        if (changed.isEmpty()) {
+            return;
+        }
+        synchronized (objectChangeSeqs) {
+            Long seq = catalogChangeSeq.get() + 1;
+            for (String mofId : changed) {
+                objectChangeSeqs.put(mofId, seq);
+            }
+            catalogChangeSeq.set(seq);
+        }
+    }
+
+    /**
+     * Records the start of a repository transaction on the current thread.
+     * Subclasses call this from {@link #beginReposTxn} once the transaction
+     * has begun.
+     *
+     * @param writable whether the transaction is read/write
+     */
+    protected void reposTxnBegun(boolean writable)
+    {
+        cache.get().txnWritable.add(writable);
+        if (writable) {
+            activeWriteTxns.incrementAndGet();
+        }
+    }
+
+    /**
+     * Prepares to end the current thread's repository transaction. If it is a
+     * write transaction, advances the catalog change sequence number and
+     * builds the catalog snapshot which will replace the current one, reading
+     * the objects the transaction changed while its changes are still
+     * visible.
+     * Subclasses call this from {@link #endReposTxn} before ending the
+     * transaction, and pass the result to {@link #reposTxnEnded}.
+     *
+     * @param rollback whether the transaction is being rolled back
+     *
+     * @return new catalog snapshot, or null for a read-only transaction
+     */
+    protected FarragoCatalogSnapshot reposTxnEnding(boolean rollback)
+    {
+        List<Boolean> txnWritable = cache.get().txnWritable;
+        if (txnWritable.isEmpty()
+            || !txnWritable.remove(txnWritable.size() - 1))
+        {
+            // read-only, or begun without going through beginReposTxn
+            return null;
+        }
+        Set<String> changed = cache.get().changingObjects;
+        advanceCatalogChangeSeq(changed);
+        FarragoCatalogSnapshot snapshot = catalogSnapshot;
+        long version = snapshot.getVersion() + 1;
+        if (rollback) {
+            return snapshot.withVersion(version);
+        }
+
+        // REVIEW: this relies on MDR serializing write transactions, so that
+        // no other transaction can commit between the snapshot we copy and
+        // ours.
+        return snapshot.withChanges(this, version, changed);
+    }
+
+    /**
+     * Records the end of a repository transaction on the current thread. For
+     * a write transaction, publishes the new catalog snapshot and advances the
+     * catalog change sequence number again.
+     *
+     * @param snapshot result of {@link #reposTxnEnding}
+     * @param ended whether the transaction ended normally; if not, the
+     * snapshot is discarded, since it may not describe the repository
+     */
+    protected void reposTxnEnded(
+        FarragoCatalogSnapshot snapshot,
+        boolean ended)
+    {
+        if (snapshot == null) {
+            return;
+        }
+        if (!ended) {
+            snapshot = new FarragoCatalogSnapshot(snapshot.getVersion());
+        }
+        synchronized (activeWriteTxns) {
+            catalogSnapshot = snapshot;
+        }
+        Set<String> changed = cache.get().changingObjects;
+        advanceCatalogChangeSeq(changed);
+        changingObjects.keySet().removeAll(changed);
+        changed.clear();
+        activeWriteTxns.decrementAndGet();
+    }
+
     // TODO: SWZ: 2008-03-27: implement on platform side and remove
     // implement FarragoRepos (for red-zone components ignorant of Enki)
     public EnkiMDRepository getEnkiMdrRepos()
@@ -674,11 +913,62 @@ public abstract class FarragoReposImpl
 
     //~ Inner Classes ----------------------------------------------------------
 
+    /**
+     * Notes the objects which write transactions are about to change; see
+     * {@link FarragoReposImpl#noteObjectChanging}.
+     */
+    private class CatalogSnapshotListener
+        implements MDRPreChangeListener
+    {
+        // implement MDRPreChangeListener
+        public void plannedChange(MDRChangeEvent event)
+        {
+            if (event instanceof AssociationEvent) {
+                AssociationEvent associationEvent = (AssociationEvent) event;
+                noteObjectChanging(associationEvent.getFixedElement());
+                noteObjectChanging(associationEvent.getOldElement());
+                noteObjectChanging(associationEvent.getNewElement());
+            } else if (event.getSource() instanceof RefObject) {
+                noteObjectChanging((RefObject) event.getSource());
+            }
+        }
+
+        private void noteObjectChanging(RefObject obj)
+        {
+            if (obj != null) {
+                FarragoReposImpl.this.noteObjectChanging(obj.refMofId());
+            }
+        }
+
+        // implement MDRPreChangeListener
+        public void changeCancelled(MDRChangeEvent event)
+        {
+            // don't care; the object is forgotten when the txn ends anyway
+        }
+
+        // implement MDRChangeListener
+        public void change(MDRChangeEvent event)
+        {
+            // don't care
+        }
+    }
+
     private static class ReposCache
     {
         protected int sessionDepth;
         protected Map<String, Pair<RefClass, String>> catalogCache;
 
+        /**
+         * Whether each of this thread's nested repository transactions is
+         * writable, innermost last.
+         */
+        protected final List<Boolean> txnWritable = new ArrayList<Boolean>();
+
+        /**
+         * MOFIDs of the objects changed by this thread's write transaction.
+         */
+        protected final Set<String> changingObjects = new HashSet<String>();
+
         private ReposCache()
         {
             this.sessionDepth = 0;
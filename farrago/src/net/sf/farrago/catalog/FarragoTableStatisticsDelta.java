@@ -0,0 +1,614 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.catalog;
+
+import java.util.*;
+import java.util.logging.*;
+
+import net.sf.farrago.fem.med.*;
+import net.sf.farrago.fem.sql2003.*;
+import net.sf.farrago.trace.*;
+import net.sf.farrago.util.*;
+
+import org.eigenbase.reltype.*;
+import org.eigenbase.rex.*;
+import org.eigenbase.sql.type.*;
+import org.eigenbase.util14.*;
+
+
+/**
+ * FarragoTableStatisticsDelta summarizes rows added to a table by a single DML
+ * statement, so that the table's column histograms can be brought up to date
+ * when the statement commits without reanalyzing the table.
+ *
+ * <p>For each column it keeps the row count, null count, minimum and maximum,
+ * a {@link FarragoHyperLogLog} distinct value estimate and a {@link
+ * FarragoQuantileSketch} of the value distribution. Deltas for the same table
+ * can be {@link #merge merged}. {@link #updateHistograms} folds a delta into
+ * the {@link FemColumnHistogram} records read by {@link
+ * FarragoColumnHistogram}. The stored histogram describes the rows that were
+ * there before; the delta describes the new rows. Rows removed by the
+ * statement are assumed to have been spread evenly over the old histogram.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class FarragoTableStatisticsDelta
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer = FarragoTrace.getReposTracer();
+
+    private static final int DEFAULT_HISTOGRAM_BAR_COUNT = 100;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private long rowCount;
+
+    private ColumnDelta [] columnDeltas;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates an empty delta. The number of columns is taken from the first
+     * row added.
+     */
+    public FarragoTableStatisticsDelta()
+    {
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @return number of rows added to this delta
+     */
+    public long getRowCount()
+    {
+        return rowCount;
+    }
+
+    /**
+     * @return number of columns tracked, or 0 if no rows have been added
+     */
+    public int getColumnCount()
+    {
+        return (columnDeltas == null) ? 0 : columnDeltas.length;
+    }
+
+    /**
+     * Adds a row.
+     *
+     * @param values column values in the form returned by JDBC ({@link
+     * String}, {@link Number}, byte array, and so on), null for SQL null
+     * @param offset index of the value of the table's first column
+     */
+    public void addRow(Object [] values, int offset)
+    {
+        if (columnDeltas == null) {
+            allocate(values.length - offset);
+        }
+        assert (values.length - offset) == columnDeltas.length;
+        for (int i = 0; i < columnDeltas.length; i++) {
+            columnDeltas[i].add(values[offset + i]);
+        }
+        rowCount++;
+    }
+
+    /**
+     * Discards all rows added so far, e.g. because the producer is being
+     * restarted.
+     */
+    public void clear()
+    {
+        rowCount = 0;
+        columnDeltas = null;
+    }
+
+    /**
+     * Merges another delta for the same table into this one.
+     *
+     * @param other delta to merge; it is not modified
+     */
+    public void merge(FarragoTableStatisticsDelta other)
+    {
+        if (other.columnDeltas == null) {
+            return;
+        }
+        if (columnDeltas == null) {
+            allocate(other.columnDeltas.length);
+        }
+        assert other.columnDeltas.length == columnDeltas.length;
+        for (int i = 0; i < columnDeltas.length; i++) {
+            columnDeltas[i].merge(other.columnDeltas[i]);
+        }
+        rowCount += other.rowCount;
+    }
+
+    private void allocate(int columnCount)
+    {
+        columnDeltas = new ColumnDelta[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columnDeltas[i] = new ColumnDelta();
+        }
+    }
+
+    /**
+     * Folds this delta into the histograms of a table's columns. Must be called
+     * within a repository write transaction. Columns which have never been
+     * analyzed are left alone unless the table was empty before the
+     * statement, in which case the delta alone describes the table.
+     *
+     * @param repos repository
+     * @param columns the table's columns, in the same order as the values
+     * passed to {@link #addRow}
+     * @param columnTypes types of the columns
+     * @param oldRowCount the table's row count before the statement
+     * @param removedRowCount number of rows the statement deleted or replaced
+     */
+    public void updateHistograms(
+        FarragoRepos repos,
+        List<FemAbstractColumn> columns,
+        List<RelDataType> columnTypes,
+        long oldRowCount,
+        long removedRowCount)
+    {
+        if (columnDeltas == null) {
+            return;
+        }
+        assert columns.size() == columnDeltas.length;
+        long remainingRowCount = Math.max(0, oldRowCount - removedRowCount);
+        for (int i = 0; i < columnDeltas.length; i++) {
+            try {
+                updateHistogram(
+                    repos,
+                    columns.get(i),
+                    columnTypes.get(i),
+                    columnDeltas[i],
+                    remainingRowCount);
+            } catch (RuntimeException ex) {
+                // Statistics are advisory; a value we cannot interpret must
+                // not fail the statement.  The histogram is left as it was,
+                // since nothing is written until all values are parsed.
+                tracer.log(
+                    Level.WARNING,
+                    "could not update histogram for column "
+                    + columns.get(i).getName(),
+                    ex);
+            }
+        }
+    }
+
+    private void updateHistogram(
+        FarragoRepos repos,
+        FemAbstractColumn column,
+        RelDataType columnType,
+        ColumnDelta delta,
+        long remainingRowCount)
+    {
+        FemColumnHistogram histogram =
+            FarragoCatalogUtil.getHistogram(column, null);
+        if ((histogram == null) && (remainingRowCount > 0)) {
+            return;
+        }
+        SqlTypeName literalTypeName =
+            getLiteralTypeName(columnType.getSqlTypeName());
+        if (literalTypeName == null) {
+            return;
+        }
+
+        List<HistogramPoint> points = new ArrayList<HistogramPoint>();
+
+        // Old bars, scaled to the rows that remain.  Each bar's rows are
+        // attributed to its starting value.
+        long oldDistinctValues = 0;
+        Comparable oldLow = null;
+        Comparable oldHigh = null;
+        if ((histogram != null)
+            && (remainingRowCount > 0)
+            && (histogram.getBarCount() > 0)
+            && (histogram.getDistinctValueCount() != null))
+        {
+            List<FemColumnHistogramBar> bars = histogram.getBar();
+            int barCount = bars.size();
+            long sampledRows =
+                ((barCount - 1) * histogram.getRowsPerBar())
+                + histogram.getRowsLastBar();
+            long sampledValues = 0;
+            for (FemColumnHistogramBar bar : bars) {
+                sampledValues += bar.getValueCount();
+            }
+            oldDistinctValues = histogram.getDistinctValueCount();
+            double rowScale = (double) remainingRowCount / sampledRows;
+            double valueScale =
+                (sampledValues == 0) ? 0
+                : ((double) oldDistinctValues / sampledValues);
+            for (int i = 0; i < barCount; i++) {
+                FemColumnHistogramBar bar = bars.get(i);
+                long barRows =
+                    (i == (barCount - 1)) ? histogram.getRowsLastBar()
+                    : histogram.getRowsPerBar();
+                Comparable key =
+                    parse(columnType, literalTypeName, bar.getStartingValue());
+                points.add(
+                    new HistogramPoint(
+                        key,
+                        bar.getStartingValue(),
+                        barRows * rowScale,
+                        bar.getValueCount() * valueScale));
+                if (key != null) {
+                    if (oldLow == null) {
+                        oldLow = key;
+                    }
+                    oldHigh = key;
+                }
+            }
+        }
+
+        // New rows.
+        double deltaInRangeRows = 0;
+        if (delta.nullCount > 0) {
+            points.add(new HistogramPoint(null, null, delta.nullCount, 1));
+        }
+        if (delta.min != null) {
+            // The sketch may have dropped the minimum; make sure the first
+            // bar starts with it.
+            points.add(
+                new HistogramPoint(
+                    parse(columnType, literalTypeName, delta.min.text),
+                    delta.min.text,
+                    0,
+                    0));
+        }
+        List<FarragoQuantileSketch.WeightedItem<Value>> items =
+            delta.quantiles.getSortedItems();
+        long deltaDistinctValues =
+            Math.max(delta.distinctCounter.estimate(), 1);
+        double valuesPerItem =
+            items.isEmpty() ? 0 : ((double) deltaDistinctValues / items.size());
+        for (FarragoQuantileSketch.WeightedItem<Value> item : items) {
+            Comparable key =
+                parse(columnType, literalTypeName, item.item.text);
+            points.add(
+                new HistogramPoint(
+                    key,
+                    item.item.text,
+                    item.weight,
+                    valuesPerItem));
+            if ((oldLow != null)
+                && (compare(key, oldLow) >= 0)
+                && (compare(key, oldHigh) <= 0))
+            {
+                deltaInRangeRows += item.weight;
+            }
+        }
+        if (delta.nullCount > 0) {
+            deltaDistinctValues++;
+        }
+
+        // Estimate the combined distinct value count.  Values outside the
+        // old range are all new; for values inside it, assume the smaller
+        // set is contained in the larger one.
+        long deltaNonNullRows = delta.quantiles.getCount();
+        double inRangeFraction =
+            (deltaNonNullRows == 0) ? 0
+            : (deltaInRangeRows / deltaNonNullRows);
+        double overlap =
+            Math.min(oldDistinctValues, deltaDistinctValues) * inRangeFraction;
+        long totalRowCount =
+            Math.round(remainingRowCount + delta.nullCount + deltaNonNullRows);
+        long distinctValues =
+            Math.round(oldDistinctValues + deltaDistinctValues - overlap);
+        distinctValues = Math.max(distinctValues, 1);
+        distinctValues = Math.min(distinctValues, Math.max(totalRowCount, 1));
+
+        Collections.sort(
+            points,
+            new Comparator<HistogramPoint>() {
+                public int compare(HistogramPoint p1, HistogramPoint p2)
+                {
+                    return FarragoTableStatisticsDelta.compare(
+                        p1.key,
+                        p2.key);
+                }
+            });
+
+        writeHistogram(
+            repos,
+            column,
+            points,
+            totalRowCount,
+            distinctValues);
+    }
+
+    /**
+     * Divides points into equi-depth bars and stores them as the column's
+     * histogram.
+     */
+    private void writeHistogram(
+        FarragoRepos repos,
+        FemAbstractColumn column,
+        List<HistogramPoint> points,
+        long totalRowCount,
+        long distinctValues)
+    {
+        long rowsPerBar = 1;
+        if (totalRowCount > DEFAULT_HISTOGRAM_BAR_COUNT) {
+            rowsPerBar =
+                (totalRowCount + DEFAULT_HISTOGRAM_BAR_COUNT - 1)
+                / DEFAULT_HISTOGRAM_BAR_COUNT;
+        }
+
+        List<String> barStarts = new ArrayList<String>();
+        List<Double> barValues = new ArrayList<Double>();
+        boolean newBar = true;
+        String barStart = null;
+        double barValueCount = 0;
+        double barRowCount = 0;
+        for (HistogramPoint point : points) {
+            if (newBar) {
+                barStart = point.text;
+                barValueCount = 0;
+                barRowCount = 0;
+                newBar = false;
+            }
+            barValueCount += point.values;
+            barRowCount += point.rows;
+            while (barRowCount >= rowsPerBar) {
+                barStarts.add(barStart);
+                barValues.add(barValueCount);
+                barRowCount -= rowsPerBar;
+                if (barRowCount > 0) {
+                    // the next bar starts with the current value
+                    barStart = point.text;
+                    barValueCount = 0;
+                } else {
+                    newBar = true;
+                }
+            }
+        }
+        if (!newBar && (barRowCount > 0)) {
+            barStarts.add(barStart);
+            barValues.add(barValueCount);
+        }
+
+        int barCount = barStarts.size();
+        long rowsLastBar =
+            (barCount == 0) ? 1
+            : Math.max(totalRowCount - ((barCount - 1) * rowsPerBar), 1);
+
+        // Round the bar value counts so that they add up to the distinct
+        // value count, as FarragoColumnHistogram expects.
+        double totalValues = 0;
+        for (Double values : barValues) {
+            totalValues += values;
+        }
+        double valueScale =
+            (totalValues == 0) ? 0 : (distinctValues / totalValues);
+        if (barCount == 0) {
+            distinctValues = 0;
+        }
+
+        FemColumnHistogram origHistogram =
+            FarragoCatalogUtil.getHistogramForUpdate(repos, column, false);
+        List<FemColumnHistogramBar> origBars =
+            (origHistogram == null) ? null : origHistogram.getBar();
+        int origBarCount = (origBars == null) ? 0 : origBars.size();
+
+        List<FemColumnHistogramBar> femBars =
+            new ArrayList<FemColumnHistogramBar>(barCount);
+        double cumulativeValues = 0;
+        long assignedValues = 0;
+        for (int i = 0; i < barCount; i++) {
+            cumulativeValues += barValues.get(i);
+            long valueCount =
+                (i == (barCount - 1)) ? (distinctValues - assignedValues)
+                : (Math.round(cumulativeValues * valueScale) - assignedValues);
+            assignedValues += valueCount;
+
+            FemColumnHistogramBar femBar;
+            if (i < origBarCount) {
+                femBar = origBars.get(i);
+            } else {
+                femBar = repos.newFemColumnHistogramBar();
+            }
+            femBar.setStartingValue(barStarts.get(i));
+            femBar.setValueCount(valueCount);
+            femBars.add(femBar);
+        }
+
+        FarragoCatalogUtil.updateHistogram(
+            repos,
+            column,
+            distinctValues,
+            true,
+            100.0f,
+            totalRowCount,
+            barCount,
+            rowsPerBar,
+            rowsLastBar,
+            femBars);
+    }
+
+    /**
+     * Returns the type name {@link RexLiteral#fromJdbcString} expects for
+     * values of a column type, or null if histograms of the type cannot be
+     * maintained.
+     */
+    private static SqlTypeName getLiteralTypeName(SqlTypeName typeName)
+    {
+        switch (typeName) {
+        case CHAR:
+        case VARCHAR:
+            return SqlTypeName.CHAR;
+        case BINARY:
+        case VARBINARY:
+            return SqlTypeName.BINARY;
+        case TINYINT:
+        case SMALLINT:
+        case INTEGER:
+        case BIGINT:
+        case DECIMAL:
+            return SqlTypeName.DECIMAL;
+        case REAL:
+        case FLOAT:
+        case DOUBLE:
+            return SqlTypeName.DOUBLE;
+        case BOOLEAN:
+        case DATE:
+        case TIME:
+        case TIMESTAMP:
+            return typeName;
+        default:
+            return null;
+        }
+    }
+
+    private static Comparable parse(
+        RelDataType type,
+        SqlTypeName literalTypeName,
+        String text)
+    {
+        RexLiteral literal;
+        try {
+            literal = RexLiteral.fromJdbcString(type, literalTypeName, text);
+        } catch (AssertionError ex) {
+            // fromJdbcString reports unparseable values as internal errors
+            throw new IllegalArgumentException(text, ex);
+        }
+        return (literal == null) ? null : literal.getValue();
+    }
+
+    /**
+     * Compares two values the way {@link FarragoColumnHistogram} does: null
+     * is less than all other values.
+     */
+    private static int compare(Comparable c1, Comparable c2)
+    {
+        if (c1 == null) {
+            return (c2 == null) ? 0 : -1;
+        } else if (c2 == null) {
+            return 1;
+        }
+        return c1.compareTo(c2);
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * A non-null column value, with the Java value that gives its sort order
+     * and the string form that histogram bars record.
+     */
+    private static class Value
+    {
+        static final Comparator<Value> ORDER =
+            new Comparator<Value>() {
+                public int compare(Value v1, Value v2)
+                {
+                    return v1.key.compareTo(v2.key);
+                }
+            };
+
+        final Comparable key;
+        final String text;
+
+        Value(Object o)
+        {
+            if (o instanceof byte []) {
+                // Hex strings of equal-width digits sort in the same order
+                // as the unsigned bytes they represent.
+                text = ConversionUtil.toStringFromByteArray((byte []) o, 16);
+                key = text;
+            } else {
+                text = o.toString();
+                key = (o instanceof Comparable) ? (Comparable) o : text;
+            }
+        }
+    }
+
+    /**
+     * Summary of the values added to one column.
+     */
+    private static class ColumnDelta
+    {
+        long nullCount;
+        Value min;
+        Value max;
+        final FarragoHyperLogLog distinctCounter;
+        final FarragoQuantileSketch<Value> quantiles;
+
+        ColumnDelta()
+        {
+            distinctCounter = new FarragoHyperLogLog();
+            quantiles = new FarragoQuantileSketch<Value>(Value.ORDER);
+        }
+
+        void add(Object o)
+        {
+            if (o == null) {
+                nullCount++;
+                return;
+            }
+            Value value = new Value(o);
+            distinctCounter.add(value.text);
+            quantiles.add(value);
+            updateRange(value, value);
+        }
+
+        void merge(ColumnDelta other)
+        {
+            nullCount += other.nullCount;
+            distinctCounter.merge(other.distinctCounter);
+            quantiles.merge(other.quantiles);
+            if (other.min != null) {
+                updateRange(other.min, other.max);
+            }
+        }
+
+        private void updateRange(Value low, Value high)
+        {
+            if ((min == null) || (Value.ORDER.compare(low, min) < 0)) {
+                min = low;
+            }
+            if ((max == null) || (Value.ORDER.compare(high, max) > 0)) {
+                max = high;
+            }
+        }
+    }
+
+    /**
+     * A value with the number of rows and distinct values attributed to it
+     * when building the merged histogram.
+     */
+    private static class HistogramPoint
+    {
+        final Comparable key;
+        final String text;
+        final double rows;
+        final double values;
+
+        HistogramPoint(Comparable key, String text, double rows, double values)
+        {
+            this.key = key;
+            this.text = text;
+            this.rows = rows;
+            this.values = values;
+        }
+    }
+}
+
+// End FarragoTableStatisticsDelta.java
@@ -25,6 +25,7 @@ import java.io.*;
 import java.net.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
 import java.util.logging.*;
 
@@ -52,8 +53,10 @@ import org.eigenbase.enki.mdr.*;
 import org.eigenbase.jmi.*;
 import org.eigenbase.oj.rex.*;
 import org.eigenbase.rel.*;
+import org.eigenbase.rel.metadata.*;
 import org.eigenbase.reltype.*;
 import org.eigenbase.resource.*;
+import org.eigenbase.runtime.*;
 import org.eigenbase.sql.*;
 import org.eigenbase.sql.fun.*;
 import org.eigenbase.sql.util.SqlString;
@@ -77,6 +80,14 @@ import org.eigenbase.util.property.*;
 public class FarragoDatabase
     extends FarragoDbSingleton
 {
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Maximum number of raw SQL texts remembered by the front-side statement
+     * cache; see {@link #lookupStmt}.
+     */
+    private static final int SQL_TEXT_CACHE_MAX_ENTRIES = 1000;
+
     //~ Instance fields --------------------------------------------------------
 
     private FarragoRepos systemRepos;
@@ -87,6 +98,13 @@ public class FarragoDatabase
     private FarragoPluginClassLoader pluginClassLoader;
     private List<FarragoSessionModelExtension> modelExtensions;
     private FarragoDdlLockManager ddlLockManager;
+    private FarragoDbWorkloadManager workloadManager;
+
+    /**
+     * Threads which read the inputs of parallel Java UNION ALLs; see {@link
+     * CompoundParallelTupleIter}.
+     */
+    private ThreadPoolExecutor parallelExecutor;
     private FarragoSessionTxnMgr txnMgr;
     private Configuration jaasConfig;
     private boolean authenticateLocalConnections = false;
@@ -103,6 +121,34 @@ public class FarragoDatabase
      */
     private FarragoObjectCache codeCache;
 
+    /**
+     * Maps a key built from the raw text of a statement and the session state
+     * which affects its meaning to the key of its prepared implementation in
+     * {@link #codeCache}, so that repeated statements need not be parsed and
+     * validated just to find the cache entry. Least recently used keys are
+     * forgotten first. Access must be synchronized on the map.
+     */
+    private final Map<String, SqlTextEntry> sqlTextKeyMap =
+        new LinkedHashMap<String, SqlTextEntry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(
+                Map.Entry<String, SqlTextEntry> eldest)
+            {
+                return size() > SQL_TEXT_CACHE_MAX_ENTRIES;
+            }
+        };
+
+    /**
+     * Incremented whenever DDL commits which may take privileges away from an
+     * authorization ID; see {@link #onAuthorizationChange}.
+     */
+    private final AtomicLong authorizationGeneration = new AtomicLong();
+
+    private final AtomicLong sqlTextCacheHits = new AtomicLong();
+
+    private final AtomicLong sqlTextCacheUnlockedHits = new AtomicLong();
+
+    private final AtomicLong sqlTextCacheMisses = new AtomicLong();
+
     /**
      * File containing trace configuration.
      */
@@ -266,6 +312,14 @@ public class FarragoDatabase
                 }
 
                 ddlLockManager = new FarragoDdlLockManager();
+                workloadManager = new FarragoDbWorkloadManager();
+                configureWorkloadManager();
+                parallelExecutor =
+                    (ThreadPoolExecutor) CompoundParallelTupleIter
+                    .newExecutor(1);
+                configureParallelExecutor();
+                CompoundParallelTupleIter.setDefaultExecutor(parallelExecutor);
+                addAllocation(new ParallelExecutorShutdown());
                 txnMgr = sessionFactory.newTxnMgr();
                 sessionFactory.specializedInitialization(this);
 
@@ -311,6 +365,48 @@ public class FarragoDatabase
         long maxBytes = codeCache.getBytesMax();
         codeCache.setMaxBytes(0);
         codeCache.setMaxBytes(maxBytes);
+        synchronized (sqlTextKeyMap) {
+            sqlTextKeyMap.clear();
+        }
+        SharedRelMetadataCache.instance().clear();
+    }
+
+    /**
+     * Notifies the database that DDL affecting privileges (GRANT, or dropping
+     * a user or role) has committed. Statements found by their raw text have
+     * to have their privileges checked again before {@link
+     * #lookupStmtUnlocked} can return them.
+     */
+    public void onAuthorizationChange()
+    {
+        authorizationGeneration.incrementAndGet();
+    }
+
+    /**
+     * @return number of statements found by {@link #lookupStmt}
+     */
+    public long getSqlTextCacheHits()
+    {
+        return sqlTextCacheHits.get();
+    }
+
+    /**
+     * @return number of statements found by {@link #lookupStmtUnlocked},
+     * without locking the repository; these are included in {@link
+     * #getSqlTextCacheHits}
+     */
+    public long getSqlTextCacheUnlockedHits()
+    {
+        return sqlTextCacheUnlockedHits.get();
+    }
+
+    /**
+     * @return number of statements not found by {@link #lookupStmt}, and so
+     * parsed and validated
+     */
+    public long getSqlTextCacheMisses()
+    {
+        return sqlTextCacheMisses.get();
     }
 
     /**
@@ -753,6 +849,14 @@ public class FarragoDatabase
         return ddlLockManager;
     }
 
+    /**
+     * @return the workload manager which admits statements for execution
+     */
+    public FarragoDbWorkloadManager getWorkloadManager()
+    {
+        return workloadManager;
+    }
+
     /**
      * Gets a unique identifier: never 0.
      *
@@ -944,12 +1048,376 @@ public class FarragoDatabase
         SqlNode sqlNode,
         FarragoAllocationOwner owner,
         FarragoSessionAnalyzedSql analyzedSql)
+    {
+        return prepareStmt(
+            stmtContext,
+            stmtValidator,
+            sqlNode,
+            owner,
+            analyzedSql,
+            null);
+    }
+
+    /**
+     * Prepares an SQL expression like {@link #prepareStmt(
+     * FarragoSessionStmtContext, FarragoSessionStmtValidator, SqlNode,
+     * FarragoAllocationOwner, FarragoSessionAnalyzedSql)}. If the
+     * implementation is cached, it is also remembered under a key built from
+     * the statement's raw text, so that {@link #lookupStmt} can find it next
+     * time.
+     *
+     * @param stmtContext embracing stmt context
+     * @param stmtValidator generic stmt validator
+     * @param sqlNode the parsed form of the statement
+     * @param owner the FarragoAllocationOwner which will be responsible for the
+     * returned stmt
+     * @param analyzedSql receives information about a prepared expression
+     * @param sqlTextKey key returned by {@link #getSqlTextKey} for the text
+     * the statement was parsed from, or null
+     *
+     * @return statement implementation, or null when analyzedSql is non-null
+     */
+    public FarragoSessionExecutableStmt prepareStmt(
+        FarragoSessionStmtContext stmtContext,
+        FarragoSessionStmtValidator stmtValidator,
+        SqlNode sqlNode,
+        FarragoAllocationOwner owner,
+        FarragoSessionAnalyzedSql analyzedSql,
+        String sqlTextKey)
     {
         final FarragoSessionPreparingStmt stmt =
             stmtValidator.getSession().getPersonality().newPreparingStmt(
                 stmtContext,
                 stmtValidator);
-        return prepareStmtImpl(stmt, sqlNode, owner, analyzedSql);
+        return prepareStmtImpl(stmt, sqlNode, owner, analyzedSql, sqlTextKey);
+    }
+
+    /**
+     * Builds the key under which the front-side statement cache remembers a
+     * statement. Besides the raw text, the key includes everything about the
+     * session which can change the meaning of the text: default catalog,
+     * schema and path (for name resolution), user and role (for privilege
+     * checks, which happen during validation), personality, and label.
+     *
+     * @param stmtValidator validator for the session preparing the statement
+     * @param sql raw text of the statement
+     *
+     * @return key, or null if statement caching is turned off for the session
+     */
+    public String getSqlTextKey(
+        FarragoSessionStmtValidator stmtValidator,
+        String sql)
+    {
+        FarragoDbSession session =
+            (FarragoDbSession) stmtValidator.getSession();
+        FarragoSessionVariables sessionVariables =
+            session.getSessionVariables();
+        if (!sessionVariables.getBoolean(
+                FarragoDefaultSessionPersonality.CACHE_STATEMENTS))
+        {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(sql);
+        sb.append(";catalog=").append(sessionVariables.catalogName);
+        sb.append(";schema=").append(sessionVariables.schemaName);
+        sb.append(";path=").append(sessionVariables.schemaSearchPath);
+        sb.append(";user=").append(sessionVariables.currentUserName);
+        sb.append(";role=").append(sessionVariables.currentRoleName);
+        sb.append(";personality=").append(
+            session.getPersonality().getClass().getName());
+        sb.append(";label=");
+        Long labelCsn = session.getSessionLabelCsn();
+        if (labelCsn != null) {
+            sb.append(labelCsn);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Looks up a statement previously prepared from the same text in the same
+     * session state, like {@link #lookupStmt}, but without taking the
+     * repository lock or starting a repository transaction, so that it is not
+     * held up by DDL in progress. Staleness is checked against the
+     * repository's {@link FarragoCatalogSnapshot}; if the snapshot does not
+     * cover every object the statement depends on, or a write transaction is
+     * changing one of them, this gives up, and the caller should fall back to
+     * {@link #lookupStmt}.
+     *
+     * <p>The statement's objects are marked in-use on behalf of lockContext
+     * before the snapshot is confirmed to be current, so that DDL which starts
+     * afterwards sees them in use, just as if they had been marked while the
+     * repository lock was held.
+     *
+     * @param stmtValidator validator for the session preparing the statement
+     * @param sqlTextKey key returned by {@link #getSqlTextKey}
+     * @param lockContext context to mark the statement's objects in-use for,
+     * or null if the caller does not lock objects
+     * @param owner the FarragoAllocationOwner which will be responsible for the
+     * returned stmt
+     *
+     * @return statement implementation, or null if the statement has to be
+     * looked up with the repository locked
+     */
+    public FarragoSessionExecutableStmt lookupStmtUnlocked(
+        FarragoSessionStmtValidator stmtValidator,
+        String sqlTextKey,
+        Object lockContext,
+        FarragoAllocationOwner owner)
+    {
+        SqlTextEntry sqlTextEntry;
+        synchronized (sqlTextKeyMap) {
+            sqlTextEntry = sqlTextKeyMap.get(sqlTextKey);
+        }
+        if ((sqlTextEntry == null)
+            || !(stmtValidator.getRepos() instanceof FarragoReposImpl))
+        {
+            return null;
+        }
+
+        // Checking privileges reads the catalog, so leave that to lookupStmt
+        // if they may have changed since they were last checked.
+        if (sqlTextEntry.checkedGeneration != authorizationGeneration.get()) {
+            return null;
+        }
+        final FarragoReposImpl reposImpl =
+            (FarragoReposImpl) stmtValidator.getRepos();
+        final FarragoCatalogSnapshot snapshot = reposImpl.getCatalogSnapshot();
+
+        final boolean [] pCovered = { true };
+        FarragoObjectCache.CachedObjectFactory stmtFactory =
+            new FarragoObjectCache.CachedObjectFactory() {
+                public void initializeEntry(
+                    Object key,
+                    FarragoObjectCache.UninitializedEntry entry)
+                {
+                    throw new AssertionError();
+                }
+
+                public boolean isStale(Object value)
+                {
+                    FarragoSessionExecutableStmt executableStmt =
+                        (FarragoSessionExecutableStmt) value;
+                    Set<String> mofIds =
+                        executableStmt.getReferencedObjectIds();
+                    if (!snapshot.coversAll(mofIds)) {
+                        // can't tell; leave it to lookupStmt
+                        pCovered[0] = false;
+                        return false;
+                    }
+                    for (String mofId : mofIds) {
+                        if (!snapshot.isUnchanged(
+                                mofId,
+                                executableStmt.getReferencedObjectModTime(
+                                    mofId)))
+                        {
+                            // Don't discard the statement on the word of an
+                            // old snapshot; it may have been prepared since.
+                            if (reposImpl.isCatalogSnapshotCurrent(
+                                    snapshot,
+                                    mofIds))
+                            {
+                                return true;
+                            }
+                            pCovered[0] = false;
+                            return false;
+                        }
+                    }
+                    return false;
+                }
+            };
+        FarragoObjectCache.Entry cacheEntry =
+            codeCache.pinIfPresent(
+                sqlTextEntry.stmtKey,
+                stmtFactory,
+                !isSharable(stmtValidator.getSession()));
+        if (cacheEntry == null) {
+            return null;
+        }
+        FarragoSessionExecutableStmt executableStmt =
+            (FarragoSessionExecutableStmt) cacheEntry.getValue();
+        FarragoDdlLockManager ddlLockManager =
+            stmtValidator.getDdlLockManager();
+        if (pCovered[0] && (lockContext != null)) {
+            ddlLockManager.addObjectsInUse(
+                lockContext,
+                executableStmt.getReferencedObjectIds());
+        }
+        if (!pCovered[0]
+            || !reposImpl.isCatalogSnapshotCurrent(
+                snapshot,
+                executableStmt.getReferencedObjectIds()))
+        {
+            if (pCovered[0] && (lockContext != null)) {
+                ddlLockManager.removeObjectsInUse(lockContext);
+            }
+            cacheEntry.closeAllocation();
+            return null;
+        }
+        sqlTextCacheHits.incrementAndGet();
+        sqlTextCacheUnlockedHits.incrementAndGet();
+        stmtValidator.getTimingTracer().traceTime(
+            "sql text cache hit without lock");
+        owner.addAllocation(cacheEntry);
+        return executableStmt;
+    }
+
+    /**
+     * Looks up a statement previously prepared from the same text in the same
+     * session state, bypassing parsing and validation. The cached
+     * implementation is subject to the same staleness checks as a lookup by
+     * validated SQL in {@link #prepareStmt}, and the privileges requested when
+     * it was validated are checked again for the current user and role. If the
+     * text is known, starts a read-only repository transaction unless one is
+     * already in progress.
+     *
+     * @param stmtValidator validator for the session preparing the statement
+     * @param reposTxnContext repository transaction context for the
+     * preparation
+     * @param sqlTextKey key returned by {@link #getSqlTextKey}
+     * @param owner the FarragoAllocationOwner which will be responsible for the
+     * returned stmt
+     *
+     * @return statement implementation, or null if the statement has to be
+     * prepared
+     */
+    public FarragoSessionExecutableStmt lookupStmt(
+        FarragoSessionStmtValidator stmtValidator,
+        FarragoReposTxnContext reposTxnContext,
+        String sqlTextKey,
+        FarragoAllocationOwner owner)
+    {
+        SqlTextEntry sqlTextEntry;
+        synchronized (sqlTextKeyMap) {
+            sqlTextEntry = sqlTextKeyMap.get(sqlTextKey);
+        }
+        if (sqlTextEntry == null) {
+            sqlTextCacheMisses.incrementAndGet();
+            return null;
+        }
+        long generation = authorizationGeneration.get();
+
+        // Staleness checks read the catalog, as the parser would have.
+        if (!reposTxnContext.isReadTxnInProgress()) {
+            reposTxnContext.beginLockedTxn(true);
+        }
+
+        final FarragoRepos stmtRepos = stmtValidator.getRepos();
+        FarragoObjectCache.CachedObjectFactory stmtFactory =
+            new FarragoObjectCache.CachedObjectFactory() {
+                public void initializeEntry(
+                    Object key,
+                    FarragoObjectCache.UninitializedEntry entry)
+                {
+                    throw new AssertionError();
+                }
+
+                public boolean isStale(Object value)
+                {
+                    FarragoSessionExecutableStmt executableStmt =
+                        (FarragoSessionExecutableStmt) value;
+                    return isExecutableStmtStale(
+                        stmtRepos,
+                        executableStmt);
+                }
+            };
+        FarragoObjectCache.Entry cacheEntry =
+            codeCache.pinIfPresent(
+                sqlTextEntry.stmtKey,
+                stmtFactory,
+                !isSharable(stmtValidator.getSession()));
+        if ((cacheEntry != null)
+            && !requestPrivileges(stmtValidator, sqlTextEntry))
+        {
+            cacheEntry.closeAllocation();
+            cacheEntry = null;
+        }
+        if (cacheEntry == null) {
+            // the implementation was discarded or has gone stale
+            synchronized (sqlTextKeyMap) {
+                sqlTextKeyMap.remove(sqlTextKey);
+            }
+            sqlTextCacheMisses.incrementAndGet();
+            return null;
+        }
+        try {
+            stmtValidator.getPrivilegeChecker().checkAccess();
+        } catch (RuntimeException ex) {
+            cacheEntry.closeAllocation();
+            throw ex;
+        }
+        sqlTextEntry.checkedGeneration = generation;
+        sqlTextCacheHits.incrementAndGet();
+        stmtValidator.getTimingTracer().traceTime("sql text cache hit");
+        owner.addAllocation(cacheEntry);
+        FarragoSessionExecutableStmt executableStmt =
+            (FarragoSessionExecutableStmt) cacheEntry.getValue();
+        extendCatalogSnapshot(stmtRepos, executableStmt);
+        return executableStmt;
+    }
+
+    /**
+     * Requests the privileges a statement found by its raw text needed when
+     * it was validated, on behalf of the current user and role. The caller
+     * checks them.
+     *
+     * @param stmtValidator validator for the session preparing the statement
+     * @param sqlTextEntry entry for the statement's text
+     *
+     * @return false if one of the objects no longer exists, in which case the
+     * statement has to be prepared again
+     */
+    private boolean requestPrivileges(
+        FarragoSessionStmtValidator stmtValidator,
+        SqlTextEntry sqlTextEntry)
+    {
+        FarragoRepos repos = stmtValidator.getRepos();
+        List<CwmModelElement> objs = new ArrayList<CwmModelElement>();
+        for (String mofId : sqlTextEntry.privileges.keySet()) {
+            RefBaseObject obj = repos.getMdrRepos().getByMofId(mofId);
+            if (!(obj instanceof CwmModelElement)) {
+                return false;
+            }
+            objs.add((CwmModelElement) obj);
+        }
+        for (CwmModelElement obj : objs) {
+            for (String action : sqlTextEntry.privileges.get(obj.refMofId())) {
+                stmtValidator.requestPrivilege(obj, action);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Extends the repository's catalog snapshot to cover the objects a cached
+     * statement depends on, so that later lookups by {@link
+     * #lookupStmtUnlocked} can succeed. Must be called within a repository
+     * transaction, with at least a shared lock on the repository.
+     *
+     * @param repos repository
+     * @param executableStmt cached statement
+     */
+    private void extendCatalogSnapshot(
+        FarragoRepos repos,
+        FarragoSessionExecutableStmt executableStmt)
+    {
+        if (!(repos instanceof FarragoReposImpl)) {
+            return;
+        }
+        FarragoReposImpl reposImpl = (FarragoReposImpl) repos;
+        FarragoCatalogSnapshot snapshot = reposImpl.getCatalogSnapshot();
+        Set<String> mofIds = executableStmt.getReferencedObjectIds();
+        if (!snapshot.coversAll(mofIds)) {
+            reposImpl.extendCatalogSnapshot(snapshot, mofIds);
+        }
+    }
+
+    private boolean isSharable(FarragoSession session)
+    {
+        // sharing of executable statements depends on session personality;
+        // default for vanilla Farrago personality is that statements
+        // are sharable
+        return session.getPersonality().supportsFeature(
+            EigenbaseResource.instance().SharedStatementPlans);
     }
 
     /**
@@ -987,12 +1455,17 @@ public class FarragoDatabase
         final FarragoSessionPreparingStmt stmt,
         final SqlNode sqlNode,
         FarragoAllocationOwner owner,
-        FarragoSessionAnalyzedSql analyzedSql)
+        FarragoSessionAnalyzedSql analyzedSql,
+        String sqlTextKey)
     {
         final EigenbaseTimingTracer timingTracer =
             stmt.getStmtValidator().getTimingTracer();
         final FarragoRepos stmtRepos = stmt.getRepos();
 
+        // Read before validation checks privileges, so that a change which
+        // commits meanwhile is not missed.
+        long generation = authorizationGeneration.get();
+
         // REVIEW jvs 27-Aug-2005:  what are the security implications of
         // EXPLAIN PLAN?
 
@@ -1047,6 +1520,11 @@ public class FarragoDatabase
                 if (select.getOrderList() != null) {
                     analyzedSql.hasTopLevelOrderBy = true;
                 }
+                if ((select.getOffset() != null)
+                    || (select.getFetch() != null))
+                {
+                    analyzedSql.hasTopLevelFetch = true;
+                }
             }
 
             // Need to force preparation so we can dig out required info, so
@@ -1103,24 +1581,63 @@ public class FarragoDatabase
                 }
             };
 
-        // sharing of executable statements depends on session personality;
-        // default for vanilla Farrago personality is that statements
-        // are sharable
-        final boolean sharable =
-            stmt.getSession().getPersonality().supportsFeature(
-                EigenbaseResource.instance().SharedStatementPlans);
+        final boolean sharable = isSharable(stmt.getSession());
 
         // prepare the statement, caching the results in codeCache
         cacheEntry = codeCache.pin(stmtKey, stmtFactory, !sharable);
         FarragoSessionExecutableStmt executableStmt =
             (FarragoSessionExecutableStmt) cacheEntry.getValue();
         owner.addAllocation(cacheEntry);
+
+        if ((sqlTextKey != null) && stmt.mayCacheImplementation()) {
+            SqlTextEntry sqlTextEntry =
+                new SqlTextEntry(
+                    stmtKey,
+                    stmt.getRequestedPrivileges(),
+                    generation);
+            synchronized (sqlTextKeyMap) {
+                sqlTextKeyMap.put(sqlTextKey, sqlTextEntry);
+            }
+            extendCatalogSnapshot(stmtRepos, executableStmt);
+        }
         return executableStmt;
     }
 
     private boolean isExecutableStmtStale(
         FarragoRepos repos,
         FarragoSessionExecutableStmt stmt)
+    {
+        if (!(repos instanceof FarragoReposImpl)) {
+            return isExecutableStmtStaleInRepos(repos, stmt);
+        }
+        FarragoReposImpl reposImpl = (FarragoReposImpl) repos;
+
+        // Read the sequence number first; a change which commits while we
+        // check is then sure to be caught next time.
+        long seq = reposImpl.getCatalogChangeSeq();
+        long verifiedSeq = stmt.getVerifiedChangeSeq();
+        if (verifiedSeq == seq) {
+            return false;
+        }
+        boolean changed = (verifiedSeq < 0);
+        if (!changed) {
+            for (String mofid : stmt.getReferencedObjectIds()) {
+                if (reposImpl.getObjectChangeSeq(mofid) > verifiedSeq) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        if (changed && isExecutableStmtStaleInRepos(repos, stmt)) {
+            return true;
+        }
+        stmt.setVerifiedChangeSeq(seq);
+        return false;
+    }
+
+    private boolean isExecutableStmtStaleInRepos(
+        FarragoRepos repos,
+        FarragoSessionExecutableStmt stmt)
     {
         for (String mofid : stmt.getReferencedObjectIds()) {
             RefBaseObject obj = repos.getMdrRepos().getByMofId(mofid);
@@ -1227,9 +1744,49 @@ public class FarragoDatabase
             || paramName.equals("cacheReservePercentage"))
         {
             executeFennelSetParam(paramName, ddlStmt.getParamValue());
+            configureWorkloadManager();
+            configureParallelExecutor();
         }
     }
 
+    /**
+     * Sets the admission budget of the workload manager to the part of the
+     * cache which Fennel's resource governor divides between statements.
+     */
+    private void configureWorkloadManager()
+    {
+        if (!systemRepos.isFennelEnabled()) {
+            return;
+        }
+        FemFennelConfig fennelConfig =
+            systemRepos.getCurrentConfig().getFennelConfig();
+        long cacheBytes =
+            (long) fennelConfig.getCachePagesInit()
+            * fennelConfig.getCachePageSize();
+        workloadManager.setBudget(
+            cacheBytes * (100 - fennelConfig.getCacheReservePercentage())
+            / 100,
+            fennelConfig.getExpectedConcurrentStatements());
+    }
+
+    /**
+     * Bounds the threads reading parallel UNION ALL inputs at one per
+     * processor for each of the statements which Fennel expects to run
+     * concurrently. Beyond that, readers read the inputs themselves.
+     */
+    private void configureParallelExecutor()
+    {
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        if (systemRepos.isFennelEnabled()) {
+            maxThreads *=
+                Math.max(
+                    1,
+                    systemRepos.getCurrentConfig().getFennelConfig()
+                    .getExpectedConcurrentStatements());
+        }
+        parallelExecutor.setMaximumPoolSize(maxThreads);
+    }
+
     private long getCodeCacheMaxBytes(FemFarragoConfig config)
     {
         long codeCacheMaxBytes = config.getCodeCacheMaxBytes();
@@ -1420,6 +1977,52 @@ public class FarragoDatabase
             userRepos = systemRepos;
         }
     }
+
+    /**
+     * What {@link #sqlTextKeyMap} remembers about a statement's text.
+     */
+    private static class SqlTextEntry
+    {
+        /**
+         * Key of the statement's implementation in the code cache.
+         */
+        final String stmtKey;
+
+        /**
+         * Privileges requested when the statement was validated, by MOFID of
+         * the object accessed.
+         */
+        final Map<String, Set<String>> privileges;
+
+        /**
+         * Authorization generation when the privileges were last checked.
+         */
+        volatile long checkedGeneration;
+
+        SqlTextEntry(
+            String stmtKey,
+            Map<String, Set<String>> privileges,
+            long checkedGeneration)
+        {
+            this.stmtKey = stmtKey;
+            this.privileges = privileges;
+            this.checkedGeneration = checkedGeneration;
+        }
+    }
+
+    /**
+     * Stops the threads of {@link #parallelExecutor} when the database shuts
+     * down.
+     */
+    private class ParallelExecutorShutdown
+        implements FarragoAllocation
+    {
+        public void closeAllocation()
+        {
+            CompoundParallelTupleIter.setDefaultExecutor(null);
+            parallelExecutor.shutdown();
+        }
+    }
 }
 
 // End FarragoDatabase.java
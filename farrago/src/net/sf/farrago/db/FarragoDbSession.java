@@ -180,6 +180,8 @@ public class FarragoDbSession
 
     private boolean isLoopback;
 
+    private boolean isMaterializedViewRefresh;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -1241,6 +1243,36 @@ public class FarragoDbSession
         FarragoReposTxnContext reposTxnContext,
         boolean [] pRollback)
     {
+        // Statements which have been seen before in the same session state
+        // can skip parsing and validation.
+        String sqlTextKey = null;
+        if (analyzedSql == null) {
+            sqlTextKey = database.getSqlTextKey(stmtValidator, sql);
+        }
+        if (sqlTextKey != null) {
+            // Try the catalog snapshot first, so that DDL in progress doesn't
+            // block us; fall back to locking the repository.
+            FarragoSessionExecutableStmt stmt =
+                database.lookupStmtUnlocked(
+                    stmtValidator,
+                    sqlTextKey,
+                    stmtContext,
+                    owner);
+            if (stmt == null) {
+                stmt =
+                    database.lookupStmt(
+                        stmtValidator,
+                        reposTxnContext,
+                        sqlTextKey,
+                        owner);
+            }
+            if (stmt != null) {
+                pRollback[0] = false;
+                checkExecDirect(stmt, sql, owner, isExecDirect);
+                return stmt;
+            }
+        }
+
         // REVIEW: May need to disallow some types of prepared DDL.
         FarragoSessionDdlValidator ddlValidator =
             personality.newDdlValidator(stmtValidator);
@@ -1271,24 +1303,10 @@ public class FarragoDbSession
                     stmtValidator,
                     sqlNode,
                     owner,
-                    analyzedSql);
-            if (isExecDirect) {
-                if (stmt.getDynamicParamRowType().getFieldList().size() > 0) {
-                    owner.closeAllocation();
-                    throw FarragoResource.instance()
-                    .SessionNoExecuteImmediateParameters.ex(sql);
-                }
-
-                // DML statements are disallowed if a session label is set.
-                // For CALL statements, the contents of the UDP determines
-                // whether the call can be executed.
-                if (stmt.isDml()
-                    && (stmt.getTableModOp() != null)
-                    && isSessionLabelEnabled())
-                {
-                    owner.closeAllocation();
-                    throw FarragoResource.instance().ReadOnlySession.ex();
-                }
+                    analyzedSql,
+                    sqlTextKey);
+            if (stmt != null) {
+                checkExecDirect(stmt, sql, owner, isExecDirect);
             }
             return stmt;
         }
@@ -1344,6 +1362,33 @@ public class FarragoDbSession
         return null;
     }
 
+    private void checkExecDirect(
+        FarragoSessionExecutableStmt stmt,
+        String sql,
+        FarragoAllocationOwner owner,
+        boolean isExecDirect)
+    {
+        if (!isExecDirect) {
+            return;
+        }
+        if (stmt.getDynamicParamRowType().getFieldList().size() > 0) {
+            owner.closeAllocation();
+            throw FarragoResource.instance()
+            .SessionNoExecuteImmediateParameters.ex(sql);
+        }
+
+        // DML statements are disallowed if a session label is set.
+        // For CALL statements, the contents of the UDP determines
+        // whether the call can be executed.
+        if (stmt.isDml()
+            && (stmt.getTableModOp() != null)
+            && isSessionLabelEnabled())
+        {
+            owner.closeAllocation();
+            throw FarragoResource.instance().ReadOnlySession.ex();
+        }
+    }
+
     private void validateDdl(
         FarragoSessionDdlValidator ddlValidator,
         FarragoDbStmtContextBase stmtContext,
@@ -1432,6 +1477,20 @@ public class FarragoDbSession
         }
     }
 
+    /**
+     * Tests whether a DDL statement can change the privileges held by a user
+     * or role. Dropping an object also drops the privileges on it, but
+     * statements which use the object then have to be prepared again anyway.
+     */
+    private boolean affectsPrivileges(FarragoSessionDdlStmt ddlStmt)
+    {
+        if (ddlStmt instanceof DdlGrantStmt) {
+            return true;
+        }
+        return (ddlStmt instanceof DdlDropStmt)
+            && (ddlStmt.getModelElement() instanceof FemAuthId);
+    }
+
     private void executeDdl(
         FarragoSessionDdlValidator ddlValidator,
         FarragoReposTxnContext reposTxnContext,
@@ -1454,6 +1513,9 @@ public class FarragoDbSession
             commitImpl();
             rollbackFennel = false;
             ddlStmt.postCommit(ddlValidator);
+            if (affectsPrivileges(ddlStmt)) {
+                database.onAuthorizationChange();
+            }
 
             if (shutDownRequested) {
                 repos.endReposSession();
@@ -1522,6 +1584,18 @@ public class FarragoDbSession
         return (getSessionIndexMap().getOldTableStructure() != null);
     }
 
+    // implement FarragoSession
+    public void setMaterializedViewRefresh()
+    {
+        isMaterializedViewRefresh = true;
+    }
+
+    // implement FarragoSession
+    public boolean isMaterializedViewRefresh()
+    {
+        return isMaterializedViewRefresh;
+    }
+
     //~ Inner Classes ----------------------------------------------------------
 
     private class DdlExecutionVisitor
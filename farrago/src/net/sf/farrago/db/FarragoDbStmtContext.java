@@ -23,6 +23,7 @@ import java.sql.*;
 import java.util.*;
 import java.util.logging.*;
 
+import net.sf.farrago.defimpl.*;
 import net.sf.farrago.resource.*;
 import net.sf.farrago.session.*;
 import net.sf.farrago.util.*;
@@ -244,19 +245,33 @@ public class FarragoDbStmtContext
         boolean isDml = executableStmt.isDml();
         boolean success = false;
 
-        if (session.isAutoCommit()) {
-            // REVIEW jvs 26-Nov-2006:  What about CALL?  Maybe
-            // we can start it as read-only (regardless of
-            // whether the statements inside are DML, since they
-            // will do their own autocommits).
-            startAutocommitTxn(!isDml);
-            if ((rootStmtContext != null)
-                && rootStmtContext.needToSaveFirstTxnCsn())
-            {
-                rootStmtContext.saveFirstTxnCsn(
-                    session.getFennelTxnContext().getTxnCsn());
+        // Wait until there is enough cache memory to run the statement;
+        // it is released when the runtime context is closed. This comes
+        // before the autocommit transaction starts, so that a statement
+        // waiting in the queue does not hold a transaction open.
+        FarragoAllocation admission = admitStmt();
+
+        try {
+            if (session.isAutoCommit()) {
+                // REVIEW jvs 26-Nov-2006:  What about CALL?  Maybe
+                // we can start it as read-only (regardless of
+                // whether the statements inside are DML, since they
+                // will do their own autocommits).
+                startAutocommitTxn(!isDml);
+                if ((rootStmtContext != null)
+                    && rootStmtContext.needToSaveFirstTxnCsn())
+                {
+                    rootStmtContext.saveFirstTxnCsn(
+                        session.getFennelTxnContext().getTxnCsn());
+                }
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                admission.closeAllocation();
             }
         }
+        success = false;
 
         session.getRepos().beginReposSession();
 
@@ -291,6 +306,8 @@ public class FarragoDbStmtContext
             params.stmtId = getExecutingStmtInfo().getId();
 
             newContext = session.getPersonality().newRuntimeContext(params);
+            newContext.addAllocation(admission);
+            admission = null;
             if (allocations != null) {
                 newContext.addAllocation(allocations);
                 allocations = null;
@@ -319,6 +336,9 @@ public class FarragoDbStmtContext
             }
             success = true;
         } finally {
+            if (admission != null) {
+                admission.closeAllocation();
+            }
             if (newContext != null) {
                 newContext.closeAllocation();
                 newContext = null;
@@ -330,6 +350,7 @@ public class FarragoDbStmtContext
                 }
             }
         }
+        boolean dmlCommitted = false;
         if (isDml) {
             success = false;
             List<Long> rowCounts = new ArrayList<Long>();
@@ -368,6 +389,11 @@ public class FarragoDbStmtContext
             if (!isDml) {
                 session.getRepos().endReposSession();
             }
+            dmlCommitted = isDml && session.isAutoCommit();
+        }
+
+        if (dmlCommitted) {
+            completeDml();
         }
 
         if (session.shutdownRequested()) {
@@ -494,6 +520,36 @@ public class FarragoDbStmtContext
         return warningQueue;
     }
 
+    /**
+     * Waits until the workload manager admits the prepared statement for
+     * execution. Statements executed on behalf of another statement are
+     * admitted immediately, since the other statement may be holding the
+     * memory they would wait for.
+     *
+     * @return admission, to be closed when the statement completes
+     */
+    private FarragoAllocation admitStmt()
+    {
+        long memoryCost = executableStmt.getMemoryCost();
+        if ((rootStmtContext != null)
+            || session.isClone()
+            || session.isLoopback())
+        {
+            memoryCost = 0;
+        }
+        FarragoSessionVariables variables = session.getSessionVariables();
+        return session.getDatabase().getWorkloadManager().admit(
+            session.getSessionInfo().getId(),
+            variables.currentUserName,
+            variables.currentRoleName,
+            memoryCost,
+            variables.getInteger(
+                FarragoDefaultSessionPersonality.WORKLOAD_PRIORITY),
+            variables.getLong(
+                FarragoDefaultSessionPersonality.WORKLOAD_QUEUE_TIMEOUT),
+            cancelFlag);
+    }
+
     /**
      * Update catalog row counts
      *
@@ -529,6 +585,23 @@ public class FarragoDbStmtContext
             runningContext);
     }
 
+    private void completeDml()
+    {
+        TableModificationRel.Operation tableModOp =
+            executableStmt.getTableModOp();
+        if (tableModOp == null) {
+            return;
+        }
+        List<String> targetTable = getDmlTarget();
+        if (targetTable == null) {
+            return;
+        }
+        session.getPersonality().completeDml(
+            session,
+            targetTable,
+            tableModOp);
+    }
+
     private List<String> getDmlTarget()
     {
         TableAccessMap tableAccessMap = executableStmt.getTableAccessMap();
@@ -0,0 +1,444 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.db;
+
+import java.util.*;
+import java.util.logging.*;
+
+import net.sf.farrago.resource.*;
+import net.sf.farrago.trace.*;
+import net.sf.farrago.util.*;
+
+import org.eigenbase.util.*;
+
+
+/**
+ * FarragoDbWorkloadManager admits statements for execution according to how
+ * much cache memory their plans are estimated to need, so that no more
+ * memory-intensive statements run at once than Fennel's resource governor
+ * divides the cache between (see the <code>expectedConcurrentStatements</code>
+ * and <code>cacheReservePercentage</code> system parameters). Otherwise they
+ * all get starved of cache pages, spill and thrash.
+ *
+ * <p>The part of the cache governed by Fennel is the admission budget. Fennel
+ * gives each statement at most an equal share of it, so a statement is charged
+ * its estimated cost, but no more than a share; a statement whose cost could
+ * not be estimated is charged a full share, and one with no memory-intensive
+ * streams is admitted without being charged. A statement is admitted when its
+ * charge fits into what remains of the budget, or when nothing else is
+ * charged against it.
+ *
+ * <p>Statements which do not fit wait in a queue per user and role. Whenever
+ * memory is released, the next statement is chosen among the heads of the
+ * queues, by priority, then by how long ago its queue was last served, so
+ * that one user cannot monopolize the budget. The chosen statement runs as
+ * soon as it fits, and nothing overtakes it meanwhile. A waiting statement
+ * gives up when its timeout expires or it is canceled.
+ *
+ * <p>A statement of a session which already has an admitted statement open
+ * (such as an unclosed cursor) is admitted immediately, since otherwise the
+ * session could end up waiting for itself.
+ */
+public class FarragoDbWorkloadManager
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer =
+        FarragoTrace.getClassTracer(FarragoDbWorkloadManager.class);
+
+    /**
+     * Interval at which waiting statements check whether they have been
+     * canceled.
+     */
+    private static final long CANCEL_POLL_MILLIS = 1000;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private long budget;
+    private long statementShare;
+    private long bytesAdmitted;
+    private int statementsAdmitted;
+    private long lastSeq;
+
+    /**
+     * Map from session id to the number of statements of the session which
+     * have been charged memory and not yet released it.
+     */
+    private final Map<Long, Integer> sessionAdmissions =
+        new HashMap<Long, Integer>();
+
+    /**
+     * Map from user and role to the queue of their waiting statements.
+     */
+    private final Map<List<String>, Queue> queues =
+        new HashMap<List<String>, Queue>();
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Sets the admission budget. Statements which were admitted before keep
+     * their charges.
+     *
+     * @param budget number of bytes of cache memory governed by Fennel, or 0
+     * to admit every statement immediately
+     * @param expectedConcurrentStatements number of statements between which
+     * Fennel divides the governed memory
+     */
+    public synchronized void setBudget(
+        long budget,
+        int expectedConcurrentStatements)
+    {
+        this.budget = budget;
+        statementShare = budget / Math.max(1, expectedConcurrentStatements);
+        tracer.config(
+            "admission budget = " + budget + " bytes, statement share = "
+            + statementShare + " bytes");
+        notifyAll();
+    }
+
+    /**
+     * Waits until a statement may execute.
+     *
+     * @param sessionId id of the session executing the statement
+     * @param userName name of the user executing the statement
+     * @param roleName name of the role executing the statement, or null
+     * @param memoryCost estimated memory cost of the statement, as returned
+     * by {@link
+     * net.sf.farrago.session.FarragoSessionExecutableStmt#getMemoryCost}
+     * @param priority priority of the statement; higher values are admitted
+     * first
+     * @param timeoutMillis number of milliseconds to wait before giving up,
+     * or 0 to wait indefinitely
+     * @param cancelFlag flag which is set if the statement is canceled
+     *
+     * @return admission, which must be closed when the statement completes, to
+     * release its charge
+     */
+    public synchronized FarragoAllocation admit(
+        long sessionId,
+        String userName,
+        String roleName,
+        long memoryCost,
+        int priority,
+        long timeoutMillis,
+        CancelFlag cancelFlag)
+    {
+        long charge = getCharge(memoryCost);
+        if (charge == 0) {
+            return new Admission(sessionId, 0);
+        }
+
+        Queue queue = getQueue(userName, roleName);
+        Waiter waiter = new Waiter(priority, ++lastSeq);
+        queue.waiters.add(waiter);
+        boolean admitted = false;
+        try {
+            while (!sessionAdmissions.containsKey(sessionId)
+                && ((chooseNext() != waiter)
+                    || ((statementsAdmitted > 0)
+                        && ((bytesAdmitted + charge) > budget))))
+            {
+                if (cancelFlag.isCancelRequested()) {
+                    throw FarragoResource.instance().ExecutionAborted.ex();
+                }
+                long waitMillis = CANCEL_POLL_MILLIS;
+                if (timeoutMillis > 0) {
+                    long remainingMillis =
+                        waiter.startTime + timeoutMillis
+                        - System.currentTimeMillis();
+                    if (remainingMillis <= 0) {
+                        ++queue.statementsTimedOut;
+                        throw FarragoResource.instance()
+                        .StatementAdmissionTimedOut.ex(timeoutMillis);
+                    }
+                    waitMillis = Math.min(waitMillis, remainingMillis);
+                }
+                try {
+                    wait(waitMillis);
+                } catch (InterruptedException ex) {
+                    throw Util.newInternal(ex);
+                }
+            }
+            admitted = true;
+        } finally {
+            queue.waiters.remove(waiter);
+            if (admitted) {
+                long waitMillis =
+                    System.currentTimeMillis() - waiter.startTime;
+                ++queue.statementsAdmitted;
+                queue.totalWaitMillis += waitMillis;
+                queue.lastServedSeq = ++lastSeq;
+                bytesAdmitted += charge;
+                ++statementsAdmitted;
+                Integer n = sessionAdmissions.get(sessionId);
+                sessionAdmissions.put(
+                    sessionId,
+                    (n == null) ? 1 : (n + 1));
+                if (tracer.isLoggable(Level.FINE)) {
+                    tracer.fine(
+                        "admitted " + charge + " bytes for " + userName
+                        + " after " + waitMillis + " ms");
+                }
+            }
+
+            // whoever is next may have changed
+            notifyAll();
+        }
+        return new Admission(sessionId, charge);
+    }
+
+    private long getCharge(long memoryCost)
+    {
+        if ((budget == 0) || (memoryCost == 0)) {
+            return 0;
+        }
+        if ((memoryCost < 0) || (memoryCost > statementShare)) {
+            return Math.max(1, statementShare);
+        }
+        return memoryCost;
+    }
+
+    private Queue getQueue(String userName, String roleName)
+    {
+        List<String> key = Arrays.asList(userName, roleName);
+        Queue queue = queues.get(key);
+        if (queue == null) {
+            queue = new Queue(userName, roleName);
+            queues.put(key, queue);
+        }
+        return queue;
+    }
+
+    private Waiter chooseNext()
+    {
+        Queue bestQueue = null;
+        Waiter best = null;
+        for (Queue queue : queues.values()) {
+            Waiter head = queue.getHead();
+            if (head == null) {
+                continue;
+            }
+            if ((best == null)
+                || (head.priority > best.priority)
+                || ((head.priority == best.priority)
+                    && (queue.lastServedSeq < bestQueue.lastServedSeq)))
+            {
+                bestQueue = queue;
+                best = head;
+            }
+        }
+        return best;
+    }
+
+    private synchronized void release(Admission admission)
+    {
+        if (admission.charge == 0) {
+            return;
+        }
+        bytesAdmitted -= admission.charge;
+        --statementsAdmitted;
+        admission.charge = 0;
+        int n = sessionAdmissions.get(admission.sessionId);
+        if (n == 1) {
+            sessionAdmissions.remove(admission.sessionId);
+        } else {
+            sessionAdmissions.put(admission.sessionId, n - 1);
+        }
+        notifyAll();
+    }
+
+    /**
+     * @return number of bytes of cache memory statements are admitted
+     * against, or 0 if admission control is disabled
+     */
+    public synchronized long getBudget()
+    {
+        return budget;
+    }
+
+    /**
+     * @return number of bytes charged to statements which are executing
+     */
+    public synchronized long getBytesAdmitted()
+    {
+        return bytesAdmitted;
+    }
+
+    /**
+     * @return number of executing statements which have been charged memory
+     */
+    public synchronized int getStatementsAdmitted()
+    {
+        return statementsAdmitted;
+    }
+
+    /**
+     * @return number of statements waiting for admission
+     */
+    public synchronized int getStatementsWaiting()
+    {
+        int n = 0;
+        for (Queue queue : queues.values()) {
+            n += queue.waiters.size();
+        }
+        return n;
+    }
+
+    /**
+     * @return statistics on the queue of each user and role which has had a
+     * statement wait for admission
+     */
+    public synchronized List<QueueStatistics> getQueueStatistics()
+    {
+        long now = System.currentTimeMillis();
+        List<QueueStatistics> list = new ArrayList<QueueStatistics>();
+        for (Queue queue : queues.values()) {
+            long longestWaitMillis = 0;
+            for (Waiter waiter : queue.waiters) {
+                longestWaitMillis =
+                    Math.max(longestWaitMillis, now - waiter.startTime);
+            }
+            list.add(
+                new QueueStatistics(
+                    queue.userName,
+                    queue.roleName,
+                    queue.waiters.size(),
+                    longestWaitMillis,
+                    queue.statementsAdmitted,
+                    queue.totalWaitMillis,
+                    queue.statementsTimedOut));
+        }
+        return list;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Statistics on the admission queue of one user and role.
+     */
+    public static class QueueStatistics
+    {
+        public final String userName;
+        public final String roleName;
+        public final int statementsWaiting;
+        public final long longestWaitMillis;
+        public final long statementsAdmitted;
+        public final long totalWaitMillis;
+        public final long statementsTimedOut;
+
+        QueueStatistics(
+            String userName,
+            String roleName,
+            int statementsWaiting,
+            long longestWaitMillis,
+            long statementsAdmitted,
+            long totalWaitMillis,
+            long statementsTimedOut)
+        {
+            this.userName = userName;
+            this.roleName = roleName;
+            this.statementsWaiting = statementsWaiting;
+            this.longestWaitMillis = longestWaitMillis;
+            this.statementsAdmitted = statementsAdmitted;
+            this.totalWaitMillis = totalWaitMillis;
+            this.statementsTimedOut = statementsTimedOut;
+        }
+    }
+
+    /**
+     * Statements of one user and role waiting for admission, and what
+     * happened to those which waited before.
+     */
+    private static class Queue
+    {
+        final String userName;
+        final String roleName;
+        final List<Waiter> waiters = new ArrayList<Waiter>();
+        long lastServedSeq;
+        long statementsAdmitted;
+        long totalWaitMillis;
+        long statementsTimedOut;
+
+        Queue(String userName, String roleName)
+        {
+            this.userName = userName;
+            this.roleName = roleName;
+        }
+
+        /**
+         * @return the waiter with the highest priority which arrived first,
+         * or null if the queue is empty
+         */
+        Waiter getHead()
+        {
+            Waiter head = null;
+            for (Waiter waiter : waiters) {
+                if ((head == null)
+                    || (waiter.priority > head.priority)
+                    || ((waiter.priority == head.priority)
+                        && (waiter.seq < head.seq)))
+                {
+                    head = waiter;
+                }
+            }
+            return head;
+        }
+    }
+
+    /**
+     * Statement waiting for admission.
+     */
+    private static class Waiter
+    {
+        final int priority;
+        final long seq;
+        final long startTime;
+
+        Waiter(int priority, long seq)
+        {
+            this.priority = priority;
+            this.seq = seq;
+            this.startTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Releases the charge of an admitted statement when closed.
+     */
+    private class Admission
+        implements FarragoAllocation
+    {
+        private final long sessionId;
+        private long charge;
+
+        Admission(long sessionId, long charge)
+        {
+            this.sessionId = sessionId;
+            this.charge = charge;
+        }
+
+        // implement FarragoAllocation
+        public void closeAllocation()
+        {
+            release(this);
+        }
+    }
+}
+
+// End FarragoDbWorkloadManager.java
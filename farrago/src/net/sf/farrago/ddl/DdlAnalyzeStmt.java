@@ -21,6 +21,7 @@ package net.sf.farrago.ddl;
 import java.sql.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import javax.jmi.reflect.*;
 
@@ -28,6 +29,7 @@ import net.sf.farrago.catalog.*;
 import net.sf.farrago.cwm.keysindexes.*;
 import net.sf.farrago.cwm.relational.*;
 import net.sf.farrago.cwm.relational.enumerations.*;
+import net.sf.farrago.defimpl.*;
 import net.sf.farrago.fem.med.*;
 import net.sf.farrago.fem.sql2003.*;
 import net.sf.farrago.namespace.*;
@@ -60,7 +62,13 @@ import org.eigenbase.util14.*;
  * <li>The number of distinct values for the column.
  * </ul>
  *
- * This implementation issues recursive SQL.
+ * This implementation issues recursive SQL. By default, computed statistics
+ * are gathered with one exact distribution query per column. When the {@link
+ * FarragoDefaultSessionPersonality#ANALYZE_SINGLE_PASS} session variable is
+ * set, the table is instead scanned once and each column's histogram is built
+ * from a {@link FarragoQuantileSketch} and its cardinality from a {@link
+ * FarragoHyperLogLog}. Columns with few distinct values are still counted
+ * exactly.
  *
  * @author John Pham, Stephan Zuercher
  * @version $Id$
@@ -78,6 +86,18 @@ public class DdlAnalyzeStmt
 
     private final static long MIN_SAMPLE_SIZE = 5000L;
 
+    /**
+     * Number of distinct values per column that a single-pass analyze counts
+     * exactly before switching to sketches.
+     */
+    private final static int MAX_EXACT_VALUE_COUNT = 10000;
+
+    /**
+     * Number of rows a single-pass analyze reads before handing them to the
+     * per-column sketches.
+     */
+    private final static int SINGLE_PASS_BATCH_SIZE = 4096;
+
     public static final String REPEATABLE_SEED = "test.estimateStatsSeed";
 
     //~ Instance fields --------------------------------------------------------
@@ -253,45 +273,25 @@ public class DdlAnalyzeStmt
         FarragoSession session)
     {
         try {
-            // Obtain or compute row counts
-            long rowCount = getRowCount();
-
-            timingTracer.traceTime("analyze: end rowcount");
-
-            if (estimate) {
-                setSampleRepeatableSeed(ddlValidator);
-
-                if (samplePercent == null) {
-                    // Choose a reasonable sampling rate.
-                    chooseSamplePercentage(rowCount);
-                }
-
-                // 100% sampling means switch to calculated stats (but keep
-                // using the catalog's row count if available).  The single
-                // exception is rowCount == 0: assume the table stays empty.
-                if ((samplePercent.bigDecimalValue().doubleValue() >= 100.0)
-                    && (rowCount > 0L))
-                {
-                    estimate = false;
-                    samplePercent = null;
-                }
-            }
-
             histograms = new LinkedHashMap<ColumnDetail, Histogram>();
-            if (estimate) {
-                if (rowCount == 0) {
-                    estimateEmptyTableStats(columnDetails, histograms);
-                } else {
-                    estimateStats(columnDetails, rowCount, histograms);
-                }
-            } else {
-                // Compute column histograms
-                for (ColumnDetail column : columnDetails) {
-                    computeColumnStats(histograms, column, rowCount);
 
-                    timingTracer.traceTime(
-                        "analyze: end column " + column.toString());
-                }
+            long rowCount;
+            if (!estimate
+                && !columnDetails.isEmpty()
+                && session.getSessionVariables().getBoolean(
+                    FarragoDefaultSessionPersonality.ANALYZE_SINGLE_PASS))
+            {
+                // The scan also counts rows, so there is no separate
+                // row count query.
+                rowCount =
+                    computeStatsSinglePass(
+                        columnDetails,
+                        session.getSessionVariables().getInteger(
+                            FarragoDefaultSessionPersonality
+                            .DEGREE_OF_PARALLELISM),
+                        histograms);
+            } else {
+                rowCount = computeStats(ddlValidator, histograms);
             }
 
             // Compute index page counts and optionally compute distinct value
@@ -312,6 +312,66 @@ public class DdlAnalyzeStmt
         }
     }
 
+    /**
+     * Obtains the table's row count and then computes or estimates column
+     * histograms, one column at a time.
+     *
+     * @param ddlValidator validator for the invoking session
+     * @param histograms a map of columns to histograms with predictable
+     * iteration order
+     *
+     * @return table's row count
+     *
+     * @throws SQLException if a query fails
+     */
+    private long computeStats(
+        FarragoSessionDdlValidator ddlValidator,
+        LinkedHashMap<ColumnDetail, Histogram> histograms)
+        throws SQLException
+    {
+        // Obtain or compute row counts
+        long rowCount = getRowCount();
+
+        timingTracer.traceTime("analyze: end rowcount");
+
+        if (estimate) {
+            setSampleRepeatableSeed(ddlValidator);
+
+            if (samplePercent == null) {
+                // Choose a reasonable sampling rate.
+                chooseSamplePercentage(rowCount);
+            }
+
+            // 100% sampling means switch to calculated stats (but keep
+            // using the catalog's row count if available).  The single
+            // exception is rowCount == 0: assume the table stays empty.
+            if ((samplePercent.bigDecimalValue().doubleValue() >= 100.0)
+                && (rowCount > 0L))
+            {
+                estimate = false;
+                samplePercent = null;
+            }
+        }
+
+        if (estimate) {
+            if (rowCount == 0) {
+                estimateEmptyTableStats(columnDetails, histograms);
+            } else {
+                estimateStats(columnDetails, rowCount, histograms);
+            }
+        } else {
+            // Compute column histograms
+            for (ColumnDetail column : columnDetails) {
+                computeColumnStats(histograms, column, rowCount);
+
+                timingTracer.traceTime(
+                    "analyze: end column " + column.toString());
+            }
+        }
+
+        return rowCount;
+    }
+
     // implement DdlMultipleTransactionStmt
     public boolean completeRequiresWriteTxn()
     {
@@ -848,6 +908,316 @@ public class DdlAnalyzeStmt
         assert (SqlTypeUtil.isExactNumeric(type)) : "column query invalid type";
     }
 
+    /**
+     * Computes the table's row count and the histograms of all the given
+     * columns with a single scan of the table. Each column's values are
+     * counted exactly until more than {@link #MAX_EXACT_VALUE_COUNT} distinct
+     * values have been seen; after that, the column's bars come from a {@link
+     * FarragoQuantileSketch} and its cardinality from a {@link
+     * FarragoHyperLogLog}. Rows are read on the calling thread and folded into
+     * the column sketches by up to <code>degreeOfParallelism</code> threads.
+     *
+     * @param columnDetails columns to analyze
+     * @param degreeOfParallelism maximum number of threads updating sketches
+     * @param histograms a map of columns to histograms with predictable
+     * iteration order
+     *
+     * @return table's row count
+     *
+     * @throws SQLException if there's an error executing the scan
+     */
+    private long computeStatsSinglePass(
+        List<ColumnDetail> columnDetails,
+        int degreeOfParallelism,
+        LinkedHashMap<ColumnDetail, Histogram> histograms)
+        throws SQLException
+    {
+        assert (!estimate);
+
+        final int columnCount = columnDetails.size();
+        ColumnSketch [] sketches = new ColumnSketch[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            sketches[i] = new ColumnSketch();
+        }
+
+        String sql = getTableScanQuery(columnDetails);
+        stmtContext.prepare(sql, true);
+
+        timingTracer.traceTime("analyze: -- end prepare");
+
+        // The sketch updaters get threads of their own for the duration of
+        // the scan, bounded by the degree of parallelism.
+        int taskCount = Math.max(1, Math.min(degreeOfParallelism, columnCount));
+        ExecutorService executor =
+            (taskCount > 1) ? Executors.newFixedThreadPool(taskCount) : null;
+
+        ColumnValue [][] batch =
+            new ColumnValue[columnCount][SINGLE_PASS_BATCH_SIZE];
+        long scannedRowCount = 0;
+
+        stmtContext.execute();
+        ResultSet resultSet = stmtContext.getResultSet();
+        try {
+            boolean more = true;
+            while (more) {
+                int batchRowCount = 0;
+                while ((batchRowCount < SINGLE_PASS_BATCH_SIZE)
+                    && (more = resultSet.next()))
+                {
+                    for (int i = 0; i < columnCount; i++) {
+                        batch[i][batchRowCount] =
+                            readColumnValue(resultSet, i + 1);
+                    }
+                    batchRowCount++;
+                }
+                if (batchRowCount == 0) {
+                    break;
+                }
+                scannedRowCount += batchRowCount;
+                updateSketches(
+                    executor,
+                    taskCount,
+                    sketches,
+                    batch,
+                    batchRowCount);
+            }
+        } finally {
+            resultSet.close();
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+
+        timingTracer.traceTime("analyze: end scan");
+
+        long rowsPerBar = computeRowsPerHistogramBar(scannedRowCount);
+        long rowsLastBar =
+            computeRowsLastHistogramBar(scannedRowCount, rowsPerBar);
+
+        for (int i = 0; i < columnCount; i++) {
+            ColumnDetail column = columnDetails.get(i);
+            Histogram columnHistogram =
+                buildSketchHistogram(
+                    column,
+                    sketches[i],
+                    scannedRowCount,
+                    rowsPerBar,
+                    rowsLastBar);
+            histograms.put(column, columnHistogram);
+
+            timingTracer.traceTime(
+                "analyze: end column " + column.toString());
+        }
+
+        if (computeRowCount) {
+            return scannedRowCount;
+        }
+        return femTableRowCount;
+    }
+
+    /**
+     * Folds a batch of rows into the column sketches. With more than one task,
+     * each task owns a disjoint subset of the columns, so the sketches need
+     * no locking.
+     *
+     * @param executor executor for the tasks, or null to update the sketches
+     * on the calling thread
+     * @param taskCount number of tasks to split the columns between
+     * @param sketches per-column sketches
+     * @param batch values of the batch, indexed by column, then row
+     * @param batchRowCount number of rows in the batch
+     */
+    private void updateSketches(
+        ExecutorService executor,
+        int taskCount,
+        final ColumnSketch [] sketches,
+        final ColumnValue [][] batch,
+        final int batchRowCount)
+    {
+        if (executor == null) {
+            for (int i = 0; i < sketches.length; i++) {
+                sketches[i].add(batch[i], batchRowCount);
+            }
+            return;
+        }
+
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int t = 0; t < taskCount; t++) {
+            final int firstColumn = t;
+            final int columnStep = taskCount;
+            tasks.add(
+                new Callable<Object>() {
+                    public Object call()
+                    {
+                        for (int i = firstColumn;
+                            i < sketches.length;
+                            i += columnStep)
+                        {
+                            sketches[i].add(batch[i], batchRowCount);
+                        }
+                        return null;
+                    }
+                });
+        }
+
+        try {
+            for (Future<Object> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            throw Util.newInternal(ex, "analyze interrupted");
+        } catch (ExecutionException ex) {
+            throw Util.newInternal(ex.getCause(), "analyze failed");
+        }
+    }
+
+    /**
+     * Reads a column of the current row of a single-pass scan.
+     *
+     * @return the column's value, or null if the value is null
+     */
+    private static ColumnValue readColumnValue(
+        ResultSet resultSet,
+        int columnIndex)
+        throws SQLException
+    {
+        Object o = resultSet.getObject(columnIndex);
+        if (o == null) {
+            return null;
+        } else if (o instanceof byte []) {
+            // Hex strings of equal-width digits sort in the same order as
+            // the unsigned bytes they represent.
+            String text =
+                ConversionUtil.toStringFromByteArray((byte []) o, 16);
+            return new ColumnValue(text, text);
+        }
+        String text = resultSet.getString(columnIndex);
+        if (o instanceof Comparable) {
+            return new ColumnValue((Comparable) o, text);
+        }
+        return new ColumnValue(text, text);
+    }
+
+    /**
+     * Builds a column's histogram from the data gathered by a single-pass
+     * scan. Nulls are counted as one distinct value, which sorts first, to
+     * match the distribution query used by {@link #computeColumnStats}.
+     *
+     * @param column the column the histogram is for
+     * @param sketch data gathered for the column
+     * @param tableRowCount number of rows scanned
+     * @param rowsPerBar the number of rows per bar
+     * @param rowsLastBar the number of rows in the last bar
+     *
+     * @return the column's Histogram
+     */
+    private Histogram buildSketchHistogram(
+        ColumnDetail column,
+        ColumnSketch sketch,
+        long tableRowCount,
+        long rowsPerBar,
+        long rowsLastBar)
+    {
+        BarBuilder barBuilder = new BarBuilder(rowsPerBar);
+        long distinctValues = 0;
+        boolean distinctValuesEstimated;
+
+        if (sketch.nullCount > 0) {
+            barBuilder.add(null, sketch.nullCount, 1);
+            distinctValues++;
+        }
+
+        if (sketch.exactValues != null) {
+            List<ColumnValue> values =
+                new ArrayList<ColumnValue>(sketch.exactValues.values());
+            Collections.sort(values, ColumnValue.ORDER);
+            for (ColumnValue value : values) {
+                barBuilder.add(value.text, value.rowCount, 1);
+            }
+            distinctValues += values.size();
+            distinctValuesEstimated = false;
+        } else {
+            // The sketch may retain several copies of a value; combine
+            // them so that each value appears once.
+            List<ColumnValue> values = new ArrayList<ColumnValue>();
+            List<Long> rowCounts = new ArrayList<Long>();
+            for (FarragoQuantileSketch.WeightedItem<ColumnValue> item
+                : sketch.quantiles.getSortedItems())
+            {
+                int last = values.size() - 1;
+                if ((last >= 0)
+                    && (ColumnValue.ORDER.compare(values.get(last), item.item)
+                        == 0))
+                {
+                    rowCounts.set(last, rowCounts.get(last) + item.weight);
+                } else {
+                    values.add(item.item);
+                    rowCounts.add(item.weight);
+                }
+            }
+
+            // Retained values are a lower bound on the cardinality.  Spread
+            // the estimated cardinality evenly over them so that each bar's
+            // value count reflects the values it covers.
+            long sketchDistinctValues =
+                Math.max(
+                    sketch.distinctCounter.estimate(),
+                    values.size());
+            double scale = (double) sketchDistinctValues / values.size();
+            for (int i = 0; i < values.size(); i++) {
+                long valueCount =
+                    Math.round(scale * (i + 1)) - Math.round(scale * i);
+                barBuilder.add(
+                    values.get(i).text,
+                    rowCounts.get(i),
+                    valueCount);
+            }
+            distinctValues += sketchDistinctValues;
+            distinctValuesEstimated = true;
+        }
+
+        List<ColumnHistogramBar> bars = barBuilder.getBars();
+
+        return new Histogram(
+            column,
+            distinctValues,
+            distinctValuesEstimated,
+            bars.size(),
+            rowsPerBar,
+            rowsLastBar,
+            tableRowCount,
+            bars);
+    }
+
+    /**
+     * Generates a query which returns the given columns of every row in the
+     * table.
+     */
+    private String getTableScanQuery(List<ColumnDetail> columnDetails)
+    {
+        writer.reset();
+
+        final Frame selectFrame = writer.startList(FrameTypeEnum.Select);
+        writer.sep("select");
+
+        final Frame selectListFrame =
+            writer.startList(FrameTypeEnum.SelectList);
+        for (ColumnDetail column : columnDetails) {
+            writer.sep(",");
+            column.identifier.unparse(writer, 0, 0);
+        }
+        writer.endList(selectListFrame);
+
+        writer.sep("from");
+        final Frame fromFrame = writer.startList(FrameTypeEnum.FromList);
+        tableName.unparse(writer, 0, 0);
+        writer.endList(fromFrame);
+        writer.endList(selectFrame);
+
+        String sql = writer.toString();
+        return sql;
+    }
+
     /**
      * Compute the number of rows per histogram bar based on the {@link
      * #DEFAULT_HISTOGRAM_BAR_COUNT}.
@@ -916,11 +1286,7 @@ public class DdlAnalyzeStmt
         FarragoCardinalityEstimator estimator)
         throws SQLException
     {
-        List<ColumnHistogramBar> bars = new LinkedList<ColumnHistogramBar>();
-        boolean newBar = true;
-        String barStartValue = null;
-        long barValueCount = 0;
-        long barRowCount = 0;
+        BarBuilder barBuilder = new BarBuilder(rowsPerBar);
 
         while (resultSet.next()) {
             Object o = resultSet.getObject(1);
@@ -939,42 +1305,10 @@ public class DdlAnalyzeStmt
                 estimator.addSampleClass(nextRows, nextValue == null);
             }
 
-            if (newBar) {
-                barStartValue = nextValue;
-                barValueCount = 0;
-                barRowCount = 0;
-                newBar = false;
-            }
-            barValueCount++;
-            barRowCount += nextRows;
-
-            while (barRowCount >= rowsPerBar) {
-                ColumnHistogramBar bar =
-                    new ColumnHistogramBar(barStartValue, barValueCount);
-                bars.add(bar);
-
-                barRowCount -= rowsPerBar;
-                if (barRowCount > 0) {
-                    // the next bar starts with the current value
-                    barStartValue = nextValue;
-                    barValueCount = 0;
-                } else {
-                    newBar = true;
-                }
-            }
-        }
-
-        // build partial last bars
-        if (barRowCount > 0) {
-            bars.add(new ColumnHistogramBar(barStartValue, barValueCount));
-        }
-
-        if (bars.size() > MAX_HISTOGRAM_BAR_COUNT) {
-            throw FarragoResource.instance().ValidatorAnalyzeInvalidRowCount.ex(
-                tableName.toString());
+            barBuilder.add(nextValue, nextRows, 1);
         }
 
-        return bars;
+        return barBuilder.getBars();
     }
 
     /**
@@ -1267,6 +1601,169 @@ public class DdlAnalyzeStmt
         }
     }
 
+    /**
+     * BarBuilder divides values, presented in ascending order with their row
+     * counts, into equi-depth histogram bars.
+     */
+    private class BarBuilder
+    {
+        private final long rowsPerBar;
+        private final List<ColumnHistogramBar> bars;
+        private boolean newBar;
+        private String barStartValue;
+        private long barValueCount;
+        private long barRowCount;
+
+        BarBuilder(long rowsPerBar)
+        {
+            this.rowsPerBar = rowsPerBar;
+            this.bars = new LinkedList<ColumnHistogramBar>();
+            this.newBar = true;
+        }
+
+        /**
+         * Adds the next value.
+         *
+         * @param value string form of the value; null for the null value
+         * @param rows number of rows having the value
+         * @param valueCount number of distinct values this entry stands for
+         */
+        void add(String value, long rows, long valueCount)
+        {
+            if (newBar) {
+                barStartValue = value;
+                barValueCount = 0;
+                barRowCount = 0;
+                newBar = false;
+            }
+            barValueCount += valueCount;
+            barRowCount += rows;
+
+            while (barRowCount >= rowsPerBar) {
+                ColumnHistogramBar bar =
+                    new ColumnHistogramBar(barStartValue, barValueCount);
+                bars.add(bar);
+
+                barRowCount -= rowsPerBar;
+                if (barRowCount > 0) {
+                    // the next bar starts with the current value
+                    barStartValue = value;
+                    barValueCount = 0;
+                } else {
+                    newBar = true;
+                }
+            }
+        }
+
+        /**
+         * @return the completed bars
+         */
+        List<ColumnHistogramBar> getBars()
+        {
+            // build partial last bars
+            if (barRowCount > 0) {
+                bars.add(new ColumnHistogramBar(barStartValue, barValueCount));
+                barRowCount = 0;
+            }
+
+            if (bars.size() > MAX_HISTOGRAM_BAR_COUNT) {
+                throw FarragoResource.instance().ValidatorAnalyzeInvalidRowCount
+                .ex(tableName.toString());
+            }
+
+            return bars;
+        }
+    }
+
+    /**
+     * ColumnValue is a non-null value read by a single-pass analyze. It keeps
+     * both the value as returned by the JDBC driver, which gives the
+     * column's sort order, and its string form, which is what histogram bars
+     * record.
+     */
+    private static class ColumnValue
+    {
+        static final Comparator<ColumnValue> ORDER =
+            new Comparator<ColumnValue>() {
+                public int compare(ColumnValue v1, ColumnValue v2)
+                {
+                    return v1.key.compareTo(v2.key);
+                }
+            };
+
+        private final Comparable key;
+        private final String text;
+
+        // Number of rows with this value; only used while counting exactly.
+        private long rowCount;
+
+        ColumnValue(Comparable key, String text)
+        {
+            this.key = key;
+            this.text = text;
+        }
+    }
+
+    /**
+     * ColumnSketch accumulates the values of one column during a single-pass
+     * analyze.
+     */
+    private static class ColumnSketch
+    {
+        private long nullCount;
+
+        /**
+         * Exact row counts keyed by value, until the column has more than
+         * {@link #MAX_EXACT_VALUE_COUNT} distinct values; null afterwards.
+         */
+        private Map<String, ColumnValue> exactValues;
+
+        private FarragoHyperLogLog distinctCounter;
+
+        private FarragoQuantileSketch<ColumnValue> quantiles;
+
+        ColumnSketch()
+        {
+            exactValues = new HashMap<String, ColumnValue>();
+        }
+
+        void add(ColumnValue [] values, int count)
+        {
+            for (int i = 0; i < count; i++) {
+                ColumnValue value = values[i];
+                if (value == null) {
+                    nullCount++;
+                } else if (exactValues != null) {
+                    ColumnValue existing = exactValues.get(value.text);
+                    if (existing != null) {
+                        existing.rowCount++;
+                    } else {
+                        value.rowCount = 1;
+                        exactValues.put(value.text, value);
+                        if (exactValues.size() > MAX_EXACT_VALUE_COUNT) {
+                            switchToSketches();
+                        }
+                    }
+                } else {
+                    distinctCounter.add(value.text);
+                    quantiles.add(value);
+                }
+            }
+        }
+
+        private void switchToSketches()
+        {
+            distinctCounter = new FarragoHyperLogLog();
+            quantiles =
+                new FarragoQuantileSketch<ColumnValue>(ColumnValue.ORDER);
+            for (ColumnValue value : exactValues.values()) {
+                distinctCounter.add(value.text);
+                quantiles.add(value, value.rowCount);
+            }
+            exactValues = null;
+        }
+    }
+
     /**
      * ColumnDetail stores details about a column being analyzed.
      */
@@ -0,0 +1,102 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.ddl;
+
+import net.sf.farrago.defimpl.*;
+import net.sf.farrago.fem.med.*;
+import net.sf.farrago.session.*;
+
+
+/**
+ * DdlCreateMaterializedViewStmt represents CREATE MATERIALIZED VIEW. The view
+ * is created as a local table in the first repository transaction, like any
+ * other table, and populated from its query outside of it, like ALTER TABLE
+ * REBUILD.
+ */
+public class DdlCreateMaterializedViewStmt
+    extends DdlCreateStmt
+    implements DdlMultipleTransactionStmt
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private String tableMofId;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Constructs a DdlCreateMaterializedViewStmt.
+     *
+     * @param table table which will hold the contents of the view
+     * @param replaceOptions attributes of CREATE OR REPLACE
+     */
+    public DdlCreateMaterializedViewStmt(
+        FemLocalTable table,
+        DdlReplaceOptions replaceOptions)
+    {
+        super(table, replaceOptions);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // override DdlCreateStmt
+    public void visit(DdlVisitor visitor)
+    {
+        visitor.visit((DdlMultipleTransactionStmt) this);
+    }
+
+    // implement DdlMultipleTransactionStmt
+    public void prepForExecuteUnlocked(
+        FarragoSessionDdlValidator ddlValidator,
+        FarragoSession session)
+    {
+        tableMofId = getModelElement().refMofId();
+    }
+
+    // implement DdlMultipleTransactionStmt
+    public void executeUnlocked(
+        FarragoSessionDdlValidator ddlValidator,
+        FarragoSession session)
+    {
+        session.getSessionVariables().set(
+            FarragoDefaultSessionPersonality.CACHE_STATEMENTS,
+            Boolean.toString(false));
+        session.getPersonality().refreshMaterializedView(
+            session,
+            rootStmtContext,
+            tableMofId);
+    }
+
+    // implement DdlMultipleTransactionStmt
+    public boolean completeRequiresWriteTxn()
+    {
+        return false;
+    }
+
+    // implement DdlMultipleTransactionStmt
+    public void completeAfterExecuteUnlocked(
+        FarragoSessionDdlValidator ddlValidator,
+        FarragoSession session,
+        boolean success)
+    {
+        // If the initial refresh failed, the view was still created, and
+        // remains stale until the next modification of its base table.
+    }
+}
+
+// End DdlCreateMaterializedViewStmt.java
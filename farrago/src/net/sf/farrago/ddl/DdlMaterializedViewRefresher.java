@@ -0,0 +1,371 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.ddl;
+
+import java.sql.*;
+
+import java.util.*;
+import java.util.logging.*;
+
+import net.sf.farrago.catalog.*;
+import net.sf.farrago.cwm.core.*;
+import net.sf.farrago.fem.med.*;
+import net.sf.farrago.query.*;
+import net.sf.farrago.session.*;
+import net.sf.farrago.trace.*;
+
+import org.eigenbase.sql.*;
+import org.eigenbase.sql.parser.*;
+import org.eigenbase.sql.util.*;
+import org.eigenbase.util.*;
+
+
+/**
+ * DdlMaterializedViewRefresher brings materialized views up to date with the
+ * tables they are defined on, by executing DML through a session.
+ *
+ * <p>A view whose base table has only been appended to since it was last
+ * refreshed, and whose query allows it, is refreshed incrementally: the
+ * query is evaluated over the appended rows only (identified by row id
+ * range) and the result is inserted or, for an aggregate view, merged into
+ * the view. Any other view which is not fresh is emptied and recomputed.
+ *
+ * <p>Refreshes of the same view are serialized. A view is only marked fresh
+ * if its base table was not modified while it was being refreshed.
+ */
+public class DdlMaterializedViewRefresher
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer =
+        FarragoTrace.getClassTracer(DdlMaterializedViewRefresher.class);
+
+    /**
+     * Map from MOFID of a materialized view to the lock which serializes its
+     * refreshes. An entry exists only while the view is being refreshed or
+     * waited for, so dropped views leave nothing behind.
+     */
+    private static final Map<String, RefreshLock> refreshLocks =
+        new HashMap<String, RefreshLock>();
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final FarragoSession session;
+    private final FarragoSessionStmtContext rootStmtContext;
+    private final String ridFunction;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a DdlMaterializedViewRefresher.
+     *
+     * @param session session to execute refresh statements in; it should
+     * commit each statement, unless it belongs to an enclosing DDL statement.
+     * It is flagged as refreshing materialized views, so that it may modify
+     * them; see {@link FarragoSession#setMaterializedViewRefresh}
+     * @param rootStmtContext statement context to make refresh statements
+     * children of, or null
+     * @param ridFunction name of a function which returns the row id of a
+     * table row given one of its columns, where row ids increase as rows are
+     * appended; or null if the personality has no such function, in which
+     * case every refresh recomputes the view
+     */
+    public DdlMaterializedViewRefresher(
+        FarragoSession session,
+        FarragoSessionStmtContext rootStmtContext,
+        String ridFunction)
+    {
+        this.session = session;
+        session.setMaterializedViewRefresh();
+        this.rootStmtContext = rootStmtContext;
+        this.ridFunction = ridFunction;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Refreshes the materialized views defined on a table which are not
+     * fresh.
+     *
+     * @param tableName qualified name of the table
+     */
+    public void refreshDependents(List<String> tableName)
+    {
+        FarragoRepos repos = session.getRepos();
+        FarragoSessionStmtValidator stmtValidator = session.newStmtValidator();
+        List<String> mofIds = new ArrayList<String>();
+        FarragoReposTxnContext txn = repos.newTxnContext(true);
+        try {
+            txn.beginReadTxn();
+            SqlIdentifier qualifiedName =
+                new SqlIdentifier(
+                    tableName.toArray(new String[tableName.size()]),
+                    SqlParserPos.ZERO);
+            CwmModelElement table =
+                stmtValidator.findSchemaObject(
+                    qualifiedName,
+                    CwmModelElement.class);
+            for (
+                FemLocalTable view
+                : FarragoCatalogUtil.getDependentMaterializedViews(
+                    repos,
+                    table))
+            {
+                if (FarragoCatalogUtil.getMaterializedViewState(repos, view)
+                    != FarragoCatalogUtil.MaterializedViewState.FRESH)
+                {
+                    mofIds.add(view.refMofId());
+                }
+            }
+            txn.commit();
+        } finally {
+            txn.rollback();
+            stmtValidator.closeAllocation();
+        }
+
+        for (String mofId : mofIds) {
+            refresh(mofId);
+        }
+    }
+
+    /**
+     * Refreshes a materialized view, unless it is already fresh.
+     *
+     * @param mofId MOFID of the view's table
+     */
+    public void refresh(String mofId)
+    {
+        RefreshLock lock;
+        synchronized (refreshLocks) {
+            lock = refreshLocks.get(mofId);
+            if (lock == null) {
+                lock = new RefreshLock();
+                refreshLocks.put(mofId, lock);
+            }
+            ++lock.users;
+        }
+        try {
+            synchronized (lock) {
+                refreshImpl(mofId);
+            }
+        } finally {
+            synchronized (refreshLocks) {
+                if (--lock.users == 0) {
+                    refreshLocks.remove(mofId);
+                }
+            }
+        }
+    }
+
+    private void refreshImpl(String mofId)
+    {
+        FarragoRepos repos = session.getRepos();
+        FarragoMaterializedView mv;
+        List<String> viewName;
+        List<String> viewColumns = new ArrayList<String>();
+        FarragoCatalogUtil.MaterializedViewState state;
+        boolean incremental;
+        String generation;
+        String highWaterMark;
+
+        FarragoReposTxnContext txn = repos.newTxnContext(true);
+        try {
+            txn.beginReadTxn();
+            FemLocalTable table = lookupView(repos, mofId);
+            if (table == null) {
+                // dropped in the meantime
+                return;
+            }
+            state = FarragoCatalogUtil.getMaterializedViewState(repos, table);
+            if (state == FarragoCatalogUtil.MaterializedViewState.FRESH) {
+                return;
+            }
+            mv =
+                FarragoMaterializedView.analyze(
+                    repos.getTagAnnotationValue(
+                        table,
+                        FarragoCatalogUtil.MATERIALIZED_VIEW_QUERY_TAG));
+            incremental =
+                Boolean.valueOf(
+                    repos.getTagAnnotationValue(
+                        table,
+                        FarragoCatalogUtil.MATERIALIZED_VIEW_INCREMENTAL_TAG));
+            generation =
+                repos.getTagAnnotationValue(
+                    table,
+                    FarragoCatalogUtil.MATERIALIZED_VIEW_GENERATION_TAG);
+            highWaterMark =
+                repos.getTagAnnotationValue(
+                    table,
+                    FarragoCatalogUtil.MATERIALIZED_VIEW_HIGH_WATER_MARK_TAG);
+            viewName =
+                Arrays.asList(
+                    FarragoCatalogUtil.getQualifiedName(table).names);
+            for (CwmFeature column : table.getFeature()) {
+                viewColumns.add(column.getName());
+            }
+            txn.commit();
+        } finally {
+            txn.rollback();
+        }
+
+        SqlBuilder buf = new SqlBuilder(SqlDialect.EIGENBASE);
+        boolean useRids = incremental && (ridFunction != null);
+        boolean append =
+            (state == FarragoCatalogUtil.MaterializedViewState.APPENDED)
+            && useRids
+            && (highWaterMark != null);
+        long oldHighWaterMark = append ? Long.parseLong(highWaterMark) : -1;
+        long newHighWaterMark = -1;
+        if (useRids) {
+            // Only look above the old mark, so that the row scan can skip the
+            // rows already in the view.
+            newHighWaterMark =
+                executeQueryForLong(
+                    mv.getHighWaterMarkSql(ridFunction, oldHighWaterMark),
+                    oldHighWaterMark);
+        }
+        if (append) {
+            if (newHighWaterMark > oldHighWaterMark) {
+                tracer.fine(
+                    "appending rows " + oldHighWaterMark + " to "
+                    + newHighWaterMark + " to " + viewName);
+                executeDml(
+                    mv.getAppendSql(
+                        viewName,
+                        viewColumns,
+                        mv.getRangeSql(
+                            ridFunction,
+                            oldHighWaterMark,
+                            newHighWaterMark)));
+            }
+        } else {
+            tracer.fine("recomputing " + viewName);
+            buf.append("DELETE FROM ");
+            buf.identifier(viewName);
+            executeDml(buf.getSqlAndClear());
+            buf.append("INSERT INTO ");
+            buf.identifier(viewName);
+            buf.append(" ");
+            if (useRids) {
+                buf.append(mv.getRangeSql(ridFunction, -1, newHighWaterMark));
+            } else {
+                buf.append(mv.getSql());
+            }
+            executeDml(buf.getSqlAndClear());
+        }
+
+        txn = repos.newTxnContext(true);
+        try {
+            txn.beginWriteTxn();
+            FemLocalTable table = lookupView(repos, mofId);
+            if (table == null) {
+                return;
+            }
+            if (useRids) {
+                repos.setTagAnnotationValue(
+                    table,
+                    FarragoCatalogUtil.MATERIALIZED_VIEW_HIGH_WATER_MARK_TAG,
+                    Long.toString(newHighWaterMark));
+            }
+
+            // If the base table was modified while we were busy, leave the
+            // state which the modification recorded.
+            String currentGeneration =
+                repos.getTagAnnotationValue(
+                    table,
+                    FarragoCatalogUtil.MATERIALIZED_VIEW_GENERATION_TAG);
+            if (Util.equal(generation, currentGeneration)) {
+                repos.setTagAnnotationValue(
+                    table,
+                    FarragoCatalogUtil.MATERIALIZED_VIEW_STATE_TAG,
+                    FarragoCatalogUtil.MaterializedViewState.FRESH.name());
+            }
+            txn.commit();
+        } finally {
+            txn.rollback();
+        }
+    }
+
+    private FemLocalTable lookupView(FarragoRepos repos, String mofId)
+    {
+        return (FemLocalTable) repos.getEnkiMdrRepos().getByMofId(
+            mofId,
+            repos.getMedPackage().getFemLocalTable());
+    }
+
+    private FarragoSessionStmtContext newStmtContext()
+    {
+        if (rootStmtContext == null) {
+            return session.newStmtContext(null);
+        }
+        return session.newStmtContext(null, rootStmtContext);
+    }
+
+    private void executeDml(String sql)
+    {
+        tracer.finer(sql);
+        FarragoSessionStmtContext stmtContext = newStmtContext();
+        try {
+            stmtContext.prepare(sql, true);
+            stmtContext.execute();
+        } finally {
+            stmtContext.closeAllocation();
+        }
+    }
+
+    private long executeQueryForLong(String sql, long nullValue)
+    {
+        tracer.finer(sql);
+        FarragoSessionStmtContext stmtContext = newStmtContext();
+        try {
+            stmtContext.prepare(sql, false);
+            stmtContext.execute();
+            ResultSet resultSet = stmtContext.getResultSet();
+            boolean gotRow = resultSet.next();
+            assert gotRow;
+            long value = resultSet.getLong(1);
+            if (resultSet.wasNull()) {
+                value = nullValue;
+            }
+            resultSet.close();
+            return value;
+        } catch (SQLException ex) {
+            throw Util.newInternal(ex);
+        } finally {
+            stmtContext.closeAllocation();
+        }
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Serializes the refreshes of one materialized view.
+     */
+    private static class RefreshLock
+    {
+        /**
+         * Number of threads refreshing the view or waiting to; guarded by
+         * {@link DdlMaterializedViewRefresher#refreshLocks}.
+         */
+        int users;
+    }
+}
+
+// End DdlMaterializedViewRefresher.java
@@ -204,9 +204,132 @@ public class DdlRelationalHandler
             creation = false;
         }
 
+        if (creation && FarragoCatalogUtil.isMaterializedView(repos, table)) {
+            validateMaterializedView(table);
+        }
+
         validateLocalTable(table, creation);
     }
 
+    private void validateMaterializedView(FemLocalTable table)
+    {
+        if (!validator.getInvokingSession().getPersonality().supportsFeature(
+                EigenbaseResource.instance()
+                .PersonalitySupportsMaterializedViews))
+        {
+            throw EigenbaseResource.instance()
+            .PersonalitySupportsMaterializedViews.ex();
+        }
+
+        FarragoSession session = validator.newReentrantSession();
+        session.disableSubqueryReduction();
+        try {
+            validateMaterializedViewImpl(session, table);
+        } catch (FarragoUnvalidatedDependencyException ex) {
+            // pass this one through
+            throw ex;
+        } catch (Throwable ex) {
+            throw res.ValidatorInvalidObjectDefinition.ex(
+                repos.getLocalizedObjectName(table),
+                ex);
+        } finally {
+            validator.releaseReentrantSession(session);
+        }
+    }
+
+    private void validateMaterializedViewImpl(
+        FarragoSession session,
+        FemLocalTable table)
+        throws Throwable
+    {
+        final FarragoSessionAnalyzedSql analyzedSql;
+        final String sql =
+            repos.getTagAnnotationValue(
+                table,
+                FarragoCatalogUtil.MATERIALIZED_VIEW_QUERY_TAG);
+        tracer.fine(sql);
+        try {
+            analyzedSql =
+                session.analyzeSql(
+                    sql,
+                    validator.getTypeFactory(),
+                    null,
+                    false);
+            assert analyzedSql != null;
+        } catch (Throwable ex) {
+            throw adjustExceptionParserPosition(table, ex);
+        }
+
+        final RelDataType rowType = analyzedSql.resultType;
+        List<CwmFeature> columnList = table.getFeature();
+        boolean implicitColumnNames = true;
+
+        if (columnList.size() != 0) {
+            implicitColumnNames = false;
+            if (rowType.getFieldList().size() != columnList.size()) {
+                throw res.ValidatorViewColumnCountMismatch.ex();
+            }
+        }
+
+        if (analyzedSql.hasDynamicParams) {
+            throw res.ValidatorInvalidViewDynamicParam.ex();
+        }
+        if (analyzedSql.hasTopLevelOrderBy) {
+            throw res.ValidatorInvalidViewOrderBy.ex();
+        }
+        if (analyzedSql.hasTopLevelFetch) {
+            throw res.ValidatorInvalidViewFetch.ex();
+        }
+
+        // The table's columns take their types from the query, just as a
+        // view's columns do.
+        RelDataTypeField [] fields = rowType.getFields();
+        for (int i = 0; i < fields.length; ++i) {
+            FemStoredColumn column;
+            if (implicitColumnNames) {
+                column = repos.newFemStoredColumn();
+                columnList.add(column);
+            } else {
+                column = (FemStoredColumn) columnList.get(i);
+            }
+            convertFieldToCwmColumn(fields[i], column, table);
+        }
+
+        String canonicalSql = analyzedSql.canonicalString.getSql();
+        FarragoMaterializedView mv =
+            FarragoMaterializedView.analyze(canonicalSql);
+
+        // Groups are matched by equality when new rows are merged in, so a
+        // group whose key contains a null would be duplicated rather than
+        // updated.
+        boolean incremental = mv.isIncremental();
+        if (incremental && mv.isAggregate()) {
+            for (int i = 0; i < fields.length; ++i) {
+                if ((mv.getItems().get(i).kind
+                        == FarragoMaterializedView.ItemKind.COLUMN)
+                    && fields[i].getType().isNullable())
+                {
+                    incremental = false;
+                }
+            }
+        }
+
+        repos.setTagAnnotationValue(
+            table,
+            FarragoCatalogUtil.MATERIALIZED_VIEW_QUERY_TAG,
+            canonicalSql);
+        repos.setTagAnnotationValue(
+            table,
+            FarragoCatalogUtil.MATERIALIZED_VIEW_STATE_TAG,
+            FarragoCatalogUtil.MaterializedViewState.STALE.name());
+        repos.setTagAnnotationValue(
+            table,
+            FarragoCatalogUtil.MATERIALIZED_VIEW_INCREMENTAL_TAG,
+            Boolean.toString(incremental));
+
+        validator.createDependency(table, analyzedSql.dependencies);
+    }
+
     // implement FarragoSessionDdlHandler
     public void validateModification(FemLocalTable table)
     {
@@ -407,6 +530,9 @@ public class DdlRelationalHandler
             // ORDER BY is not allowed for relational views.
             throw res.ValidatorInvalidViewOrderBy.ex();
         }
+        if (analyzedSql.hasTopLevelFetch) {
+            throw res.ValidatorInvalidViewFetch.ex();
+        }
 
         validator.createDependency(view, analyzedSql.dependencies);
     }
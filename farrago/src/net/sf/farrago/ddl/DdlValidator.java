@@ -971,6 +971,13 @@ public class DdlValidator
             replacementTarget = findDuplicate(ddlStmt.getModelElement());
 
             if (replacementTarget != null) {
+                // Make sure statements being looked up without the
+                // repository lock see the replacement coming before we check
+                // whether any of them are using the target.
+                if (getRepos() instanceof FarragoReposImpl) {
+                    ((FarragoReposImpl) getRepos()).noteObjectChanging(
+                        replacementTarget.refMofId());
+                }
                 if (stmtValidator.getDdlLockManager().isObjectInUse(
                         replacementTarget.refMofId()))
                 {
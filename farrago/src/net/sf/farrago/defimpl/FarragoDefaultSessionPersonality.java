@@ -106,7 +106,9 @@ public class FarragoDefaultSessionPersonality
 
     /**
      * Degree of parallelism to use for parallel executor; a value of 1 (the
-     * default) causes the default non-parallel executor to be used.
+     * default) causes the default non-parallel executor to be used. Also
+     * bounds the number of threads used to read the inputs of a Java UNION
+     * ALL in parallel.
      */
     public static final String DEGREE_OF_PARALLELISM = "degreeOfParallelism";
     public static final String DEGREE_OF_PARALLELISM_DEFAULT = "1";
@@ -123,6 +125,39 @@ public class FarragoDefaultSessionPersonality
 
     public static final String USE_ENKI_MASS_DELETION = "useEnkiMassDeletion";
     public static final String USE_ENKI_MASS_DELETION_DEFAULT = "true";
+
+    /**
+     * Whether ANALYZE TABLE ... COMPUTE STATISTICS should scan the table once
+     * and build approximate column histograms from per-column sketches,
+     * rather than issuing one exact distribution query per column.
+     */
+    public static final String ANALYZE_SINGLE_PASS = "analyzeSinglePass";
+    public static final String ANALYZE_SINGLE_PASS_DEFAULT = "false";
+
+    /**
+     * Maximum number of rows a Java UDX hands to its consumer at a time.
+     * Larger batches synchronize the UDX thread with the consumer less often,
+     * at the cost of memory for the rows queued between them. Must be between
+     * 1 and 10000.
+     */
+    public static final String UDX_BATCH_SIZE = "udxBatchSize";
+    public static final String UDX_BATCH_SIZE_DEFAULT = "1";
+
+    /**
+     * Priority of the session's statements when they wait for admission by
+     * the workload manager; statements with higher values are admitted first.
+     * Must be between 1 and 10.
+     */
+    public static final String WORKLOAD_PRIORITY = "workloadPriority";
+    public static final String WORKLOAD_PRIORITY_DEFAULT = "5";
+
+    /**
+     * Number of milliseconds a statement waits for admission by the workload
+     * manager before failing; 0 (the default) waits indefinitely.
+     */
+    public static final String WORKLOAD_QUEUE_TIMEOUT = "workloadQueueTimeout";
+    public static final String WORKLOAD_QUEUE_TIMEOUT_DEFAULT = "0";
+
     /**
      * "thisjar" replacement in the spec(section 4.11.1).
      */
@@ -162,6 +197,24 @@ public class FarragoDefaultSessionPersonality
             USE_ENKI_MASS_DELETION,
             false);
         paramValidator.registerStringParam(SQLJ_THISJAR, false);
+        paramValidator.registerBoolParam(
+            ANALYZE_SINGLE_PASS,
+            false);
+        paramValidator.registerIntParam(
+            UDX_BATCH_SIZE,
+            false,
+            1,
+            10000);
+        paramValidator.registerIntParam(
+            WORKLOAD_PRIORITY,
+            false,
+            1,
+            10);
+        paramValidator.registerLongParam(
+            WORKLOAD_QUEUE_TIMEOUT,
+            false,
+            0,
+            Long.MAX_VALUE);
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -500,6 +553,18 @@ public class FarragoDefaultSessionPersonality
             USE_ENKI_MASS_DELETION,
             USE_ENKI_MASS_DELETION_DEFAULT);
         variables.setDefault(SQLJ_THISJAR, SQLJ_THISJAR_DEFAULT);
+        variables.setDefault(
+            ANALYZE_SINGLE_PASS,
+            ANALYZE_SINGLE_PASS_DEFAULT);
+        variables.setDefault(
+            UDX_BATCH_SIZE,
+            UDX_BATCH_SIZE_DEFAULT);
+        variables.setDefault(
+            WORKLOAD_PRIORITY,
+            WORKLOAD_PRIORITY_DEFAULT);
+        variables.setDefault(
+            WORKLOAD_QUEUE_TIMEOUT,
+            WORKLOAD_QUEUE_TIMEOUT_DEFAULT);
     }
 
     // implement FarragoSessionPersonality
@@ -602,6 +667,13 @@ public class FarragoDefaultSessionPersonality
             return false;
         }
 
+        // Farrago doesn't maintain materialized views
+        ResourceDefinition mvFeature =
+            EigenbaseResource.instance().PersonalitySupportsMaterializedViews;
+        if (feature == mvFeature) {
+            return false;
+        }
+
         // By default, support everything except the above.
         return true;
     }
@@ -669,6 +741,27 @@ public class FarragoDefaultSessionPersonality
     {
     }
 
+    // implement FarragoSessionPersonality
+    public void completeDml(
+        FarragoSession session,
+        List<String> tableName,
+        TableModificationRel.Operation tableModOp)
+    {
+    }
+
+    // implement FarragoSessionPersonality
+    public void refreshMaterializedView(
+        FarragoSession session,
+        FarragoSessionStmtContext rootStmtContext,
+        String mofId)
+    {
+        // without a row id function, every refresh recomputes the view
+        new DdlMaterializedViewRefresher(
+            session,
+            rootStmtContext,
+            null).refresh(mofId);
+    }
+
     // implement FarragoSessionPersonality
     public void updateIndexRoot(
         FemLocalIndex index,
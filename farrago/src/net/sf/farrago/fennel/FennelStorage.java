@@ -18,6 +18,8 @@
 */
 package net.sf.farrago.fennel;
 
+import java.nio.*;
+
 import java.sql.*;
 
 import java.util.*;
@@ -171,6 +173,59 @@ public class FennelStorage
         byte [] byteArray)
         throws SQLException;
 
+    /**
+     * Fetches a buffer of rows from a stream without copying them. If
+     * unpositioned, this fetches the first rows. The rows are not consumed;
+     * they stay where they are, and the stream cannot produce more, until
+     * they are released by {@link #tupleStreamRelease}.
+     *
+     * @param hStream handle to stream
+     * @param bufferHolder array whose first element receives a direct
+     * ByteBuffer over the rows
+     *
+     * @return number of bytes fetched (at least one tuple should always be
+     * fetched, so 0 indicates end of stream)
+     */
+    static native int tupleStreamFetchDirect(
+        long hStream,
+        ByteBuffer [] bufferHolder)
+        throws SQLException;
+
+    /**
+     * Fetches a buffer of rows from an input of a JavaTransformExecStream
+     * without copying them, like {@link #tupleStreamFetchDirect}. Does not
+     * block if no data is available.
+     *
+     * @param hStream handle to stream
+     * @param execStreamInputOrdinal ordinal of the input to fetch from
+     * @param bufferHolder array whose first element receives a direct
+     * ByteBuffer over the rows
+     *
+     * @return number of bytes fetched (0 indicates end of stream, less than 0
+     * indicates no data currently available)
+     */
+    static native int tupleStreamTransformFetchDirect(
+        long hStream,
+        int execStreamInputOrdinal,
+        ByteBuffer [] bufferHolder)
+        throws SQLException;
+
+    /**
+     * Releases rows fetched by {@link #tupleStreamFetchDirect} or {@link
+     * #tupleStreamTransformFetchDirect}. Afterwards, the ByteBuffer over them
+     * must not be accessed.
+     *
+     * @param hStream handle to stream
+     * @param execStreamInputOrdinal ordinal of the input the rows were fetched
+     * from, or -1 if they were fetched from the stream's output
+     * @param cbConsumed number of bytes fetched
+     */
+    static native void tupleStreamRelease(
+        long hStream,
+        int execStreamInputOrdinal,
+        int cbConsumed)
+        throws SQLException;
+
     /**
      * Restarts a stream.
      *
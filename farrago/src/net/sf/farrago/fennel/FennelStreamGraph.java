@@ -18,6 +18,8 @@
 */
 package net.sf.farrago.fennel;
 
+import java.nio.*;
+
 import java.sql.*;
 
 import java.util.*;
@@ -48,6 +50,15 @@ public class FennelStreamGraph
     private final FennelDbHandle fennelDbHandle;
     private long streamGraphHandle;
 
+    /**
+     * Serializes {@link #fetch} calls, which may come from several threads
+     * when generated code reads independent inputs in parallel (see {@link
+     * org.eigenbase.runtime.CompoundParallelTupleIter}). This is a separate
+     * lock from the one on <code>this</code> so that {@link #abort} is not
+     * held up by a fetch in progress.
+     */
+    private final Object fetchLock = new Object();
+
     //~ Constructors -----------------------------------------------------------
 
     FennelStreamGraph(
@@ -207,9 +218,11 @@ public class FennelStreamGraph
     {
         traceStreamHandle("fetch", streamHandle);
         try {
-            return FennelStorage.tupleStreamFetch(
-                streamHandle.getLongHandle(),
-                byteArray);
+            synchronized (fetchLock) {
+                return FennelStorage.tupleStreamFetch(
+                    streamHandle.getLongHandle(),
+                    byteArray);
+            }
         } catch (SQLException ex) {
             throw fennelDbHandle.handleNativeException(ex);
         }
@@ -245,6 +258,94 @@ public class FennelStreamGraph
         }
     }
 
+    /**
+     * Fetches a buffer of rows from a stream without copying them; see {@link
+     * #fetch}. The rows must be released by {@link #release} before the next
+     * fetch from the stream.
+     *
+     * @param streamHandle handle to stream from which to fetch
+     * @param bufferHolder array whose first element receives a direct
+     * ByteBuffer over the rows
+     *
+     * @return number of bytes fetched (at least one tuple should always be
+     * fetched if any are available, so 0 indicates end of stream)
+     */
+    public int fetchDirect(
+        FennelStreamHandle streamHandle,
+        ByteBuffer [] bufferHolder)
+    {
+        traceStreamHandle("fetchDirect", streamHandle);
+        try {
+            synchronized (fetchLock) {
+                return FennelStorage.tupleStreamFetchDirect(
+                    streamHandle.getLongHandle(),
+                    bufferHolder);
+            }
+        } catch (SQLException ex) {
+            throw fennelDbHandle.handleNativeException(ex);
+        }
+    }
+
+    /**
+     * Fetches a buffer of rows from an input of a JavaTransformExecStream
+     * without copying them; see {@link #transformFetch}. The rows must be
+     * released by {@link #release} before the next fetch from the input.
+     *
+     * @param streamHandle handle to JavaTransformExecStream from which to fetch
+     * @param execStreamInputOrdinal ordinal of the stream's input
+     * @param bufferHolder array whose first element receives a direct
+     * ByteBuffer over the rows
+     *
+     * @return number of bytes fetched (0 indicates end of stream, less than 0
+     * indicates no data currently available)
+     */
+    public int transformFetchDirect(
+        FennelStreamHandle streamHandle,
+        int execStreamInputOrdinal,
+        ByteBuffer [] bufferHolder)
+    {
+        traceStreamHandle(
+            "transformFetchDirect",
+            streamHandle,
+            execStreamInputOrdinal);
+        try {
+            return FennelStorage.tupleStreamTransformFetchDirect(
+                streamHandle.getLongHandle(),
+                execStreamInputOrdinal,
+                bufferHolder);
+        } catch (SQLException ex) {
+            throw fennelDbHandle.handleNativeException(ex);
+        }
+    }
+
+    /**
+     * Releases rows fetched by {@link #fetchDirect} or {@link
+     * #transformFetchDirect}, letting the stream produce more. Afterwards, the
+     * ByteBuffer over them must not be accessed.
+     *
+     * @param streamHandle handle to stream the rows were fetched from
+     * @param execStreamInputOrdinal ordinal of the input the rows were fetched
+     * from, or -1 if they were fetched by {@link #fetchDirect}
+     * @param cbConsumed number of bytes fetched
+     */
+    public void release(
+        FennelStreamHandle streamHandle,
+        int execStreamInputOrdinal,
+        int cbConsumed)
+    {
+        traceStreamHandle("release", streamHandle, execStreamInputOrdinal);
+        try {
+            synchronized (fetchLock) {
+                FennelStorage.tupleStreamRelease(
+                    streamHandle.getLongHandle(),
+                    execStreamInputOrdinal,
+                    cbConsumed);
+            }
+        } catch (SQLException ex) {
+            throw fennelDbHandle.handleNativeException(ex);
+        }
+    }
+
     // NOTE:  close/abort/closeAllocation are synchronized since
     // abort can be asynchronous
 
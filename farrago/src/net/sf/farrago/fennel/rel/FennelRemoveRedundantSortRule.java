@@ -90,6 +90,12 @@ public class FennelRemoveRedundantSortRule
             return false;
         }
 
+        if (sortRel.isLimited()) {
+            // the sort also discards rows, so it can't go away just because
+            // its input is already in order
+            return false;
+        }
+
         RelFieldCollation [] inputCollationArray = inputRel.getCollations();
         RelFieldCollation [] outputCollationArray = sortRel.getCollations();
         if (outputCollationArray.length > inputCollationArray.length) {
@@ -58,6 +58,16 @@ public class FennelSortRel
      */
     protected int partitionKeyCount = 0;  // for now, always set to 0.
 
+    /**
+     * Number of leading rows of sorted output to skip.
+     */
+    protected final long offset;
+
+    /**
+     * Maximum number of rows to return, or {@link SortRel#FETCH_ALL}.
+     */
+    protected final long fetch;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -96,12 +106,47 @@ public class FennelSortRel
         RelNode child,
         RelFieldCollation [] collations,
         boolean discardDuplicates)
+    {
+        this(
+            cluster,
+            child,
+            collations,
+            discardDuplicates,
+            0,
+            SortRel.FETCH_ALL);
+    }
+
+    /**
+     * Creates a new FennelSortRel object which limits its output. Only the
+     * first offset + fetch rows of the sort are ever kept, so the sort needs
+     * memory and temp space in proportion to the limit rather than to its
+     * input.
+     *
+     * @param cluster RelOptCluster for this rel
+     * @param child rel producing rows to be sorted
+     * @param collations array of sort specifications
+     * @param discardDuplicates whether to discard duplicates based on key;
+     * must be false if the output is limited
+     * @param offset number of leading rows of sorted output to skip
+     * @param fetch maximum number of rows to return, or {@link
+     * SortRel#FETCH_ALL}
+     */
+    public FennelSortRel(
+        RelOptCluster cluster,
+        RelNode child,
+        RelFieldCollation [] collations,
+        boolean discardDuplicates,
+        long offset,
+        long fetch)
     {
         super(cluster, child);
 
         // TODO:  validate that collations are distinct
         this.collations = collations;
         this.discardDuplicates = discardDuplicates;
+        this.offset = offset;
+        this.fetch = fetch;
+        assert !(discardDuplicates && isLimited());
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -134,6 +179,30 @@ public class FennelSortRel
         return discardDuplicates;
     }
 
+    /**
+     * @return number of leading rows of sorted output to skip
+     */
+    public long getOffset()
+    {
+        return offset;
+    }
+
+    /**
+     * @return maximum number of rows to return, or {@link SortRel#FETCH_ALL}
+     */
+    public long getFetch()
+    {
+        return fetch;
+    }
+
+    /**
+     * @return whether this sort skips or limits rows
+     */
+    public boolean isLimited()
+    {
+        return (offset > 0) || (fetch != SortRel.FETCH_ALL);
+    }
+
     // implement Cloneable
     public FennelSortRel clone()
     {
@@ -142,7 +211,9 @@ public class FennelSortRel
                 getCluster(),
                 getChild().clone(),
                 collations,
-                discardDuplicates);
+                discardDuplicates,
+                offset,
+                fetch);
         clone.inheritTraitsFrom(this);
         return clone;
     }
@@ -161,6 +232,9 @@ public class FennelSortRel
                 rowCount *= (1.0 - Math.pow(.5, collations.length));
             }
         }
+        if (isLimited()) {
+            rowCount = SortRel.limitRowCount(rowCount, offset, fetch);
+        }
         return rowCount;
     }
 
@@ -170,6 +244,17 @@ public class FennelSortRel
         // TODO:  the real thing
         double rowCount = RelMetadataQuery.getRowCount(this);
         double bytesPerRow = 1;
+        if (isLimited()) {
+            // every input row is still compared, but only against the rows
+            // kept
+            double inputRowCount =
+                RelMetadataQuery.getRowCount(getChild());
+            double keptRowCount = rowCount + offset;
+            return planner.makeCost(
+                rowCount,
+                inputRowCount * Math.max(1, Math.log(keptRowCount)),
+                keptRowCount * bytesPerRow);
+        }
         return planner.makeCost(
             rowCount,
             Util.nLogN(rowCount),
@@ -191,6 +276,20 @@ public class FennelSortRel
             }
         }
 
+        if (isLimited()) {
+            pw.explain(
+                this,
+                new String[] {
+                    "child", "key", "discardDuplicates", "offset", "fetch"
+                },
+                new Object[] {
+                    Arrays.asList(keys),
+                    Boolean.valueOf(discardDuplicates),
+                    offset,
+                    fetch
+                });
+            return;
+        }
         pw.explain(
             this,
             new String[] { "child", "key", "discardDuplicates" },
@@ -239,6 +338,14 @@ public class FennelSortRel
         }
         sortingStream.setEarlyClose(false);
         sortingStream.setPartitionKeyCount(partitionKeyCount);
+
+        // Fennel reads a rowLimit of 0 as "no limit"; FennelSortRule never
+        // creates a sort which returns no rows.
+        assert fetch != 0;
+        if (fetch != SortRel.FETCH_ALL) {
+            sortingStream.setRowLimit(fetch);
+        }
+        sortingStream.setRowOffset(offset);
         implementor.addDataFlowFromProducerToConsumer(
             implementor.visitFennelChild((FennelRel) getChild(), 0),
             sortingStream);
@@ -60,6 +60,14 @@ public class FennelSortRule
     public void onMatch(RelOptRuleCall call)
     {
         SortRel sortRel = (SortRel) call.rels[0];
+        if (sortRel.getFetch() == 0) {
+            // FETCH FIRST 0 ROWS ONLY
+            call.transformTo(
+                new EmptyRel(
+                    sortRel.getCluster(),
+                    sortRel.getRowType()));
+            return;
+        }
         RelNode relInput = sortRel.getChild();
         RelNode fennelInput =
             mergeTraitsAndConvert(
@@ -76,7 +84,9 @@ public class FennelSortRule
                 sortRel.getCluster(),
                 fennelInput,
                 sortRel.getCollations(),
-                discardDuplicates);
+                discardDuplicates,
+                sortRel.getOffset(),
+                sortRel.getFetch());
         call.transformTo(fennelSortRel);
     }
 }
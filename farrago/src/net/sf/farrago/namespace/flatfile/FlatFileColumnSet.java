@@ -23,6 +23,7 @@ import java.io.*;
 import java.text.*;
 
 import java.util.*;
+import java.util.regex.*;
 
 import net.sf.farrago.fem.config.*;
 import net.sf.farrago.namespace.*;
@@ -55,14 +56,32 @@ class FlatFileColumnSet
     private static final String TIMESTAMP_PREFIX = "_";
     private static final String TIMESTAMP_FORMAT = "yyyy-MM-dd_HH_mm_ss";
 
+    private static final String WILDCARD_ANY = "*";
+    private static final String WILDCARD_ONE = "?";
+
     //~ Instance fields --------------------------------------------------------
 
     FlatFileParams params;
     String filePath;
     String logFilePath;
+    List<String> filePaths;
+    List<String> logFilePaths;
+    boolean isFileSet;
     FlatFileParams.SchemaType schemaType;
     long numRows;
 
+    /**
+     * Ranges of the data files read by the scans of the table, in the order
+     * of {@link #filePaths}
+     */
+    private final List<Split> splits;
+
+    /**
+     * Total size of the data files, as it was when the table was loaded for a
+     * statement
+     */
+    private final long totalFileLength;
+
     //~ Constructors -----------------------------------------------------------
 
     FlatFileColumnSet(
@@ -77,13 +96,46 @@ class FlatFileColumnSet
 
         this.params = params;
         this.numRows = numRows;
-        filePath =
-            makeFilePath(
-                localName,
-                tableProps.getProperty(PROP_FILENAME, null));
-        logFilePath =
-            makeLogFilePath(
-                tableProps.getProperty(PROP_LOG_FILENAME, null));
+        String filename = tableProps.getProperty(PROP_FILENAME, null);
+        filePaths = new ArrayList<String>();
+        isFileSet = makeFilePaths(params, localName, filename, filePaths);
+        filePath = filePaths.get(0);
+
+        // A file whose rows must be mapped by name is not split, since only
+        // the scan of its first range would see its header.
+        long splitSize = params.getSplitSize();
+        if ((schemaType != FlatFileParams.SchemaType.QUERY)
+            || params.getMapped())
+        {
+            splitSize = 0;
+        }
+        splits = new ArrayList<Split>();
+        long totalLength = 0;
+        for (int i = 0; i < filePaths.size(); i++) {
+            long length = 0;
+            if ((filePaths.size() > 1) || (splitSize > 0)) {
+                length = new File(filePaths.get(i)).length();
+            }
+            totalLength += length;
+            long start = 0;
+            if (splitSize > 0) {
+                for (; start + splitSize < length; start += splitSize) {
+                    splits.add(
+                        new Split(i, start, start + splitSize, splitSize));
+                }
+            }
+            splits.add(new Split(i, start, 0, length - start));
+        }
+        totalFileLength = totalLength;
+        logFilePaths = new ArrayList<String>();
+        for (String path : filePaths) {
+            logFilePaths.add(
+                makeLogFilePath(
+                    path,
+                    tableProps.getProperty(PROP_LOG_FILENAME, null),
+                    filePaths.size() > 1));
+        }
+        logFilePath = logFilePaths.get(0);
         this.schemaType = schemaType;
     }
 
@@ -104,6 +156,33 @@ class FlatFileColumnSet
         return logFilePath;
     }
 
+    /**
+     * @return paths of the data files of the table; a table whose filename
+     * option is a directory or a pattern may have several
+     */
+    public List<String> getFilePaths()
+    {
+        return filePaths;
+    }
+
+    /**
+     * @return paths of the log files of the table, one per data file
+     */
+    public List<String> getLogFilePaths()
+    {
+        return logFilePaths;
+    }
+
+    /**
+     * @return ranges of the data files read by the scans of the table; a
+     * table has a single range, covering its only file, unless it has several
+     * files or its files are split
+     */
+    public List<Split> getSplits()
+    {
+        return splits;
+    }
+
     // implement RelOptTable
     public double getRowCount()
     {
@@ -113,6 +192,25 @@ class FlatFileColumnSet
         return numRows;
     }
 
+    /**
+     * Estimates the number of rows in a range of one of the data files of the
+     * table, by dividing the rows of the table between its ranges in
+     * proportion to their sizes.
+     *
+     * @param split range, one of {@link #getSplits}
+     */
+    public double getRowCount(Split split)
+    {
+        double rowCount = getRowCount();
+        if (splits.size() == 1) {
+            return rowCount;
+        }
+        if (totalFileLength == 0) {
+            return rowCount / splits.size();
+        }
+        return rowCount * split.length / totalFileLength;
+    }
+
     // implement RelOptTable
     public RelNode toRel(
         RelOptCluster cluster,
@@ -127,6 +225,27 @@ class FlatFileColumnSet
         // In addition, if custom datetime formats are specified, they are
         // always implemented in a separate CalcRel (because the Fennel
         // calc only understands ISO formats).
+        //
+        // A table with several data files, or whose files are split, is
+        // scanned one range at a time, and the scans combined by UNION ALL,
+        // which Fennel can execute in parallel. Describe and sample queries,
+        // which only derive metadata, read the first file.
+
+        if (schemaType != FlatFileParams.SchemaType.QUERY) {
+            return newFennelRel(
+                cluster,
+                connection,
+                schemaType,
+                rowType,
+                splits.get(0));
+        }
+
+        // Don't allow caching of this plan if the files it reads are found
+        // by listing a directory, since files may be added or removed at
+        // any moment.
+        if (isFileSet) {
+            getPreparingStmt().disableStatementCaching();
+        }
 
         FlatFileProgramWriter pw =
             new FlatFileProgramWriter(
@@ -134,20 +253,24 @@ class FlatFileColumnSet
                 getPreparingStmt(),
                 params,
                 rowType);
-
-        if (schemaType == FlatFileParams.SchemaType.QUERY) {
-            RexProgram program = pw.getProgram();
-            return newCalcRel(
-                cluster,
-                newFennelRel(
+        RexProgram program = pw.getProgram();
+        RelNode [] scans = new RelNode[splits.size()];
+        for (int i = 0; i < scans.length; i++) {
+            scans[i] =
+                newCalcRel(
                     cluster,
-                    connection,
-                    FlatFileParams.SchemaType.QUERY_TEXT,
-                    program.getInputRowType()),
-                program);
-        } else {
-            return newFennelRel(cluster, connection, schemaType, rowType);
+                    newFennelRel(
+                        cluster,
+                        connection,
+                        FlatFileParams.SchemaType.QUERY_TEXT,
+                        program.getInputRowType(),
+                        splits.get(i)),
+                    program);
         }
+        if (scans.length == 1) {
+            return scans[0];
+        }
+        return new UnionRel(cluster, scans, true);
     }
 
     /**
@@ -157,7 +280,8 @@ class FlatFileColumnSet
         RelOptCluster cluster,
         RelOptConnection connection,
         FlatFileParams.SchemaType schemaType,
-        RelDataType rowType)
+        RelDataType rowType,
+        Split split)
     {
         return new FlatFileFennelRel(
             this,
@@ -165,7 +289,8 @@ class FlatFileColumnSet
             connection,
             schemaType,
             params,
-            rowType);
+            rowType,
+            split);
     }
 
     /**
@@ -186,24 +311,100 @@ class FlatFileColumnSet
     }
 
     /**
-     * Constructs the full path to the file for a table, based upon the server
-     * directory, filename option (if specified), and the server data file
-     * extension. If the filename is not specified, the local table name is used
-     * instead.
+     * Constructs the full paths to the data files for a table. Usually a
+     * table has a single file, whose path is based upon the server directory,
+     * filename option (if specified), and the server data file extension. If
+     * the filename is not specified, the local table name is used instead.
+     *
+     * <p>If the filename names a directory, the table consists of the files
+     * in the directory which have the server data file extension. If the last
+     * component of the filename contains the wildcards '*' or '?', the table
+     * consists of the files which match it (with the extension appended). The
+     * paths are sorted, so that files are read in a predictable order. If no
+     * file matches, the path of the pattern itself is returned, so that
+     * reading it fails like reading any missing file.
      *
+     * @param params server parameters
      * @param localName name of the table within the catalog
      * @param filename name of the file, specified in parameters
+     * @param paths list to which the full paths to the data files for the
+     * table are added
      *
-     * @return full path to the data file for the table
+     * @return whether the paths were found by listing a directory, in which
+     * case they may change at any moment
      */
-    private String makeFilePath(String [] localName, String filename)
+    static boolean makeFilePaths(
+        FlatFileParams params,
+        String [] localName,
+        String filename,
+        List<String> paths)
     {
         String name = filename;
         if (name == null) {
             name = localName[localName.length - 1];
         }
         String extension = params.getFileExtenstion();
-        return (params.getDirectory() + name + extension);
+        String path = params.getDirectory() + name + extension;
+        File dir = new File(params.getDirectory() + name);
+        String pattern;
+        if (dir.isDirectory()) {
+            pattern = WILDCARD_ANY + extension;
+        } else {
+            File file = new File(path);
+            pattern = file.getName();
+            if (!pattern.contains(WILDCARD_ANY)
+                && !pattern.contains(WILDCARD_ONE))
+            {
+                paths.add(path);
+                return false;
+            }
+            dir = file.getParentFile();
+        }
+
+        List<String> matches = new ArrayList<String>();
+        File [] files = ((dir == null) ? new File(".") : dir).listFiles();
+        if (files != null) {
+            Pattern regex = Pattern.compile(globToRegex(pattern));
+            for (File file : files) {
+                if (file.isFile() && regex.matcher(file.getName()).matches()) {
+                    matches.add(
+                        (dir == null) ? file.getName()
+                        : new File(dir, file.getName()).getPath());
+                }
+            }
+        }
+        if (matches.isEmpty()) {
+            matches.add(path);
+        }
+        Collections.sort(matches);
+        paths.addAll(matches);
+        return true;
+    }
+
+    /**
+     * Translates a filename pattern, in which '*' matches any characters and
+     * '?' matches one character, into a regular expression.
+     */
+    private static String globToRegex(String pattern)
+    {
+        StringBuilder buf = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            String c = pattern.substring(i, i + 1);
+            if (c.equals(WILDCARD_ANY) || c.equals(WILDCARD_ONE)) {
+                if (literal.length() > 0) {
+                    buf.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                buf.append(c.equals(WILDCARD_ANY) ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            buf.append(Pattern.quote(literal.toString()));
+        }
+        return buf.toString();
     }
 
     /**
@@ -214,20 +415,32 @@ class FlatFileColumnSet
      * filename will be based upon the table's filename.
      *
      * <p>Log files names are appended with a timestamp and have a .ERR
-     * extension rather than the data file extension.
+     * extension rather than the data file extension. If the table has several
+     * data files, each gets its own log file; a log filename option then has
+     * the name of the data file inserted before its extension.
+     *
+     * @param dataFilePath path of the data file being logged
+     * @param logFilename log filename option, or null
+     * @param multipleFiles whether the table has more than one data file
      */
-    private String makeLogFilePath(String logFilename)
+    private String makeLogFilePath(
+        String dataFilePath,
+        String logFilename,
+        boolean multipleFiles)
     {
+        Util.pre(dataFilePath != null, "dataFilePath != null");
+        String root = getFileRoot(dataFilePath); // FILE
         String name = logFilename;
-        if (name == null) {
-            // NOTE: file path must be set before calling this function
-            Util.pre(filePath != null, "filePath != null");
-            File file = new File(filePath); // DIR/FILE.EXT
-            String root = file.getName(); // FILE.EXT
-            int dot = root.lastIndexOf(FlatFileParams.FILE_EXTENSION_PREFIX);
-            if (dot > 0) {
-                root = root.substring(0, dot); // FILE
+        if ((name != null) && multipleFiles) {
+            int dot = name.lastIndexOf(FlatFileParams.FILE_EXTENSION_PREFIX);
+            if (dot <= name.lastIndexOf(File.separatorChar)) {
+                dot = name.length();
             }
+            name =
+                name.substring(0, dot) + TIMESTAMP_PREFIX + root
+                + name.substring(dot);
+        }
+        if (name == null) {
             SimpleDateFormat formatter = new SimpleDateFormat(TIMESTAMP_FORMAT);
             String timeStamp = formatter.format(new java.util.Date());
             name =
@@ -237,6 +450,66 @@ class FlatFileColumnSet
         }
         return params.getLogDirectory() + name;
     }
+
+    /**
+     * Returns the name of a file without its directory and extension.
+     */
+    static String getFileRoot(String path)
+    {
+        String root = new File(path).getName(); // FILE.EXT
+        int dot = root.lastIndexOf(FlatFileParams.FILE_EXTENSION_PREFIX);
+        if (dot > 0) {
+            root = root.substring(0, dot); // FILE
+        }
+        return root;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Range of one of the data files of a table, which is read by a single
+     * scan. A row belongs to the range in which it starts.
+     */
+    static class Split
+    {
+        /**
+         * Position of the data file among {@link #getFilePaths}
+         */
+        final int fileOrdinal;
+
+        /**
+         * Offset in the file of the start of the range
+         */
+        final long startOffset;
+
+        /**
+         * Offset in the file just past the end of the range, or 0 if the
+         * range extends to the end of the file
+         */
+        final long endOffset;
+
+        /**
+         * Size of the range when the table was loaded for a statement, used
+         * to estimate the number of rows in it
+         */
+        final long length;
+
+        Split(int fileOrdinal, long startOffset, long endOffset, long length)
+        {
+            this.fileOrdinal = fileOrdinal;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.length = length;
+        }
+
+        /**
+         * @return whether the range covers the whole of its file
+         */
+        boolean isWholeFile()
+        {
+            return (startOffset == 0) && (endOffset == 0);
+        }
+    }
 }
 
 // End FlatFileColumnSet.java
@@ -141,10 +141,20 @@ class FlatFileDataServer
             filename = getTableName(localName);
         }
 
-        String dataFilePath =
-            params.getDirectory() + filename
-            + params.getFileExtenstion();
-        File dataFile = new File(dataFilePath);
+        // a directory or pattern may stand for several data files
+        List<String> dataFilePaths = new ArrayList<String>();
+        FlatFileColumnSet.makeFilePaths(
+            params,
+            localName,
+            filename,
+            dataFilePaths);
+        long dataLength = 0;
+        boolean dataExists = false;
+        for (String dataFilePath : dataFilePaths) {
+            File dataFile = new File(dataFilePath);
+            dataLength += dataFile.length();
+            dataExists |= dataFile.exists();
+        }
 
         // Estimate number of rows in a file
         long numRows = -1;
@@ -161,7 +171,7 @@ class FlatFileDataServer
 
                     // Estimated number of rows == file length / avg row length
                     if (avgRowSize > 0) {
-                        numRows = dataFile.length() / avgRowSize;
+                        numRows = dataLength / avgRowSize;
                     }
                 }
             }
@@ -173,7 +183,7 @@ class FlatFileDataServer
         if (rowType == null) {
             // scan control file/data file for metadata (Phase II)
             // check data file exists
-            if (!dataFile.exists()) {
+            if (!dataExists) {
                 return null;
             }
             String ctrlFilePath =
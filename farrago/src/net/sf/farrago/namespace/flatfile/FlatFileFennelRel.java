@@ -18,6 +18,10 @@
 */
 package net.sf.farrago.namespace.flatfile;
 
+import java.io.*;
+
+import java.util.*;
+
 import net.sf.farrago.catalog.*;
 import net.sf.farrago.fem.fennel.*;
 import net.sf.farrago.fennel.rel.*;
@@ -59,6 +63,11 @@ public class FlatFileFennelRel
     private FlatFileParams.SchemaType schemaType;
     FlatFileParams params;
 
+    /**
+     * Range of a data file read by this scan.
+     */
+    private FlatFileColumnSet.Split split;
+
     //~ Constructors -----------------------------------------------------------
 
     protected FlatFileFennelRel(
@@ -66,7 +75,8 @@ public class FlatFileFennelRel
         RelOptCluster cluster,
         RelOptConnection connection,
         FlatFileParams.SchemaType schemaType,
-        FlatFileParams params)
+        FlatFileParams params,
+        FlatFileColumnSet.Split split)
     {
         super(
             cluster,
@@ -76,6 +86,7 @@ public class FlatFileFennelRel
         this.columnSet = columnSet;
         this.schemaType = schemaType;
         this.params = params;
+        this.split = split;
     }
 
     protected FlatFileFennelRel(
@@ -84,14 +95,77 @@ public class FlatFileFennelRel
         RelOptConnection connection,
         FlatFileParams.SchemaType schemaType,
         FlatFileParams params,
-        RelDataType rowType)
+        RelDataType rowType,
+        FlatFileColumnSet.Split split)
     {
-        this(columnSet, cluster, connection, schemaType, params);
+        this(columnSet, cluster, connection, schemaType, params, split);
         this.rowType = rowType;
     }
 
     //~ Methods ----------------------------------------------------------------
 
+    /**
+     * @return whether this is one of several scans of a table with multiple
+     * data files, or whose data files are split
+     */
+    private boolean isPartialScan()
+    {
+        return columnSet.getSplits().size() > 1;
+    }
+
+    /**
+     * @return path of the data file read by this scan
+     */
+    private String getFilePath()
+    {
+        return columnSet.getFilePaths().get(split.fileOrdinal);
+    }
+
+    // override TableAccessRelBase
+    public double getRows()
+    {
+        return columnSet.getRowCount(split);
+    }
+
+    // override TableAccessRelBase
+    public RelOptCost computeSelfCost(RelOptPlanner planner)
+    {
+        double dRows = getRows();
+        double dCpu = dRows + 1; // ensure non-zero cost
+        double dIo = 0;
+        return planner.makeCost(dRows, dCpu, dIo);
+    }
+
+    // override TableAccessRelBase
+    public void explain(RelOptPlanWriter pw)
+    {
+        if (!isPartialScan()) {
+            super.explain(pw);
+            return;
+        }
+
+        // the scans of different ranges must not look alike to the planner
+        String fileName = new File(getFilePath()).getName();
+        if (split.isWholeFile()) {
+            pw.explain(
+                this,
+                new String[] { "table", "file" },
+                new Object[] {
+                    Arrays.asList(table.getQualifiedName()),
+                    fileName
+                });
+        } else {
+            pw.explain(
+                this,
+                new String[] { "table", "file", "start" },
+                new Object[] {
+                    Arrays.asList(table.getQualifiedName()),
+                    fileName,
+                    split.startOffset
+                });
+        }
+    }
+
     // implement FennelRel
     public Object implementFennelChild(FennelRelImplementor implementor)
     {
@@ -106,9 +180,16 @@ public class FlatFileFennelRel
 
         FemFlatFileTupleStreamDef streamDef =
             repos.newFemFlatFileTupleStreamDef();
-        streamDef.setDataFilePath(columnSet.getFilePath());
-        if (params.getWithLogging()) {
-            streamDef.setErrorFilePath(columnSet.getLogFilePath());
+        streamDef.setDataFilePath(getFilePath());
+        streamDef.setStartOffset(split.startOffset);
+        streamDef.setEndOffset(split.endOffset);
+
+        // Each scan of part of a table records in the log of its data file
+        // how many rows it read and rejected. (Rejected rows themselves are
+        // logged through the runtime context, by error source.)
+        if (params.getWithLogging() && isPartialScan()) {
+            streamDef.setErrorFilePath(
+                columnSet.getLogFilePaths().get(split.fileOrdinal));
         }
         streamDef.setFieldDelimiter(encodeChar(params.getFieldDelimiter()));
         streamDef.setRowDelimiter(encodeChar(params.getLineDelimiter()));
@@ -134,7 +215,8 @@ public class FlatFileFennelRel
             Util.needToImplement("unsupported schema type");
             break;
         }
-        boolean header = params.getWithHeader();
+        // only the scan of the start of a file reads its header
+        boolean header = params.getWithHeader() && (split.startOffset == 0);
         if ((numRowsScan > 0) && header) {
             // during a sample or describe query, treat header as any
             // other data, but do not count it against the user specified
@@ -179,6 +261,19 @@ public class FlatFileFennelRel
                 new RelDataType[] { errorText },
                 new String[] { "ROW_TEXT" });
         implementor.setErrorRecordType(this, streamDef, errorType);
+        if (isPartialScan()) {
+            // Rejected rows are logged by error source, so name the source
+            // after the data file (and range), to keep the rejects of each
+            // scan apart.
+            String streamName =
+                streamDef.getName() + "_"
+                + FlatFileColumnSet.getFileRoot(getFilePath());
+            if (!split.isWholeFile()) {
+                streamName += "_" + split.startOffset;
+            }
+            streamDef.setName(streamName);
+            stmt.mapResultSetType(streamName, errorType);
+        }
 
         return streamDef;
     }
@@ -204,7 +299,8 @@ public class FlatFileFennelRel
                 connection,
                 schemaType,
                 params,
-                getRowType());
+                getRowType(),
+                split);
         clone.inheritTraitsFrom(this);
         return clone;
     }
@@ -70,6 +70,7 @@ class FlatFileParams
     public static final String PROP_LENIENT = "LENIENT";
     public static final String PROP_TRIM = "TRIM";
     public static final String PROP_MAPPED = "MAPPED";
+    public static final String PROP_SPLIT_SIZE = "SPLIT_SIZE";
 
     public static final String FILE_EXTENSION_PREFIX = ".";
     public static final String LOG_FILE_EXTENSION = "err";
@@ -86,6 +87,7 @@ class FlatFileParams
     protected static final boolean DEFAULT_LENIENT = true;
     protected static final boolean DEFAULT_TRIM = true;
     protected static final boolean DEFAULT_MAPPED = false;
+    protected static final long DEFAULT_SPLIT_SIZE = 0;
 
     //~ Enums ------------------------------------------------------------------
 
@@ -167,6 +169,7 @@ class FlatFileParams
     private boolean withHeader, withLogging;
     private int numRowsScan;
     private boolean lenient, trim, mapped;
+    private long splitSize;
     private String dateFormat, timeFormat, timestampFormat;
 
     //~ Constructors -----------------------------------------------------------
@@ -257,6 +260,11 @@ class FlatFileParams
                 props,
                 PROP_MAPPED,
                 DEFAULT_MAPPED);
+        splitSize =
+            getLongProperty(
+                props,
+                PROP_SPLIT_SIZE,
+                DEFAULT_SPLIT_SIZE);
         dateFormat =
             decodeDatetimeFormat(
                 props.getProperty(PROP_DATE_FORMAT));
@@ -483,6 +491,16 @@ class FlatFileParams
         return mapped;
     }
 
+    /**
+     * @return size in bytes above which a data file is read by several scans,
+     * each reading a range of about this size; zero means that each file is
+     * read by a single scan
+     */
+    public long getSplitSize()
+    {
+        return splitSize;
+    }
+
     /**
      * Lookup the type of a schema based upon it's schema name. The queryDefault
      * parameter allows the type to default to QUERY when the schema name is
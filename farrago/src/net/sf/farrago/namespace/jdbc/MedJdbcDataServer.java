@@ -1037,6 +1037,7 @@ public class MedJdbcDataServer
         pushdownRuleList.add(r4);
         pushdownRuleList.add(MedJdbcAggPushDownRule.instance);
         pushdownRuleList.add(MedJdbcJoinPushDownRule.instance);
+        pushdownRuleList.add(MedJdbcSortPushDownRule.instance);
 
         // add the non-disabled pushdown rules
         for (RelOptRule rule : pushdownRuleList) {
@@ -108,7 +108,10 @@ class MedJdbcPushDownRule
         if (origSelect.getWindowList().size() != 0) {
             return;
         }
-        if (origSelect.getOrderList() != null) {
+        if ((origSelect.getOrderList() != null)
+            || (origSelect.getOffset() != null)
+            || (origSelect.getFetch() != null))
+        {
             return;
         }
         if (origSelect.isDistinct()) {
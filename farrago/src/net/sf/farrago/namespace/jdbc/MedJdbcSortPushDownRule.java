@@ -0,0 +1,148 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.namespace.jdbc;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.sql.*;
+import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.parser.*;
+import org.eigenbase.sql.type.*;
+
+
+/**
+ * MedJdbcSortPushDownRule pushes the row limit of a sort with FETCH into a
+ * JDBC source, so that the remote server returns only the rows which can
+ * make the result rather than the whole table.
+ *
+ * <p>The original {@link SortRel} remains on top of the new query to apply
+ * the offset and to guarantee the final order. For the remote top-N to be
+ * the same as the local one, the sort keys must order identically on both
+ * sides; so the rule only fires if every key is NOT NULL (remote servers
+ * disagree about where nulls sort) and not a character type (remote
+ * collations may differ).
+ */
+public class MedJdbcSortPushDownRule
+    extends RelOptRule
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    public static final MedJdbcSortPushDownRule instance =
+        new MedJdbcSortPushDownRule();
+
+    //~ Constructors -----------------------------------------------------------
+
+    public MedJdbcSortPushDownRule()
+    {
+        super(
+            new RelOptRuleOperand(
+                SortRel.class,
+                new RelOptRuleOperand(MedJdbcQueryRel.class, ANY)));
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement RelOptRule
+    public void onMatch(RelOptRuleCall call)
+    {
+        SortRel sortRel = (SortRel) call.rels[0];
+        MedJdbcQueryRel queryRel = (MedJdbcQueryRel) call.rels[1];
+        if (sortRel.getFetch() == SortRel.FETCH_ALL) {
+            return;
+        }
+        if ((queryRel.getSql() instanceof SqlSelect)
+            && (((SqlSelect) queryRel.getSql()).getFetch() != null))
+        {
+            // already pushed down
+            return;
+        }
+        long remoteFetch = sortRel.getOffset() + sortRel.getFetch();
+        if (remoteFetch < 0) {
+            // overflow
+            return;
+        }
+
+        RelDataTypeField [] fields = queryRel.getRowType().getFields();
+        SqlNodeList orderBy = new SqlNodeList(SqlParserPos.ZERO);
+        for (RelFieldCollation collation : sortRel.getCollations()) {
+            RelDataType type = fields[collation.getFieldIndex()].getType();
+            if (type.isNullable() || SqlTypeUtil.inCharFamily(type)) {
+                return;
+            }
+            SqlNode id =
+                new SqlIdentifier(
+                    fields[collation.getFieldIndex()].getName(),
+                    SqlParserPos.ZERO);
+            switch (collation.getDirection()) {
+            case Ascending:
+                break;
+            case Descending:
+                id = SqlStdOperatorTable.descendingOperator.createCall(
+                    SqlParserPos.ZERO,
+                    id);
+                break;
+            default:
+                return;
+            }
+            orderBy.add(id);
+        }
+
+        SqlNodeList selectList = new SqlNodeList(SqlParserPos.ZERO);
+        selectList.add(new SqlIdentifier("*", SqlParserPos.ZERO));
+        SqlSelect selectWithFetch =
+            SqlStdOperatorTable.selectOperator.createCall(
+                null,
+                selectList,
+                queryRel.getSql(),
+                null,
+                null,
+                null,
+                null,
+                (orderBy.size() == 0) ? null : orderBy,
+                null,
+                SqlLiteral.createExactNumeric(
+                    Long.toString(remoteFetch),
+                    SqlParserPos.ZERO),
+                SqlParserPos.ZERO);
+        if (!queryRel.getServer().isRemoteSqlValid(selectWithFetch)) {
+            return;
+        }
+
+        RelNode rel =
+            new MedJdbcQueryRel(
+                queryRel.getServer(),
+                queryRel.getColumnSet(),
+                queryRel.getCluster(),
+                queryRel.getRowType(),
+                queryRel.getConnection(),
+                queryRel.getDialect(),
+                selectWithFetch,
+                queryRel.uniqueKeys);
+        call.transformTo(
+            new SortRel(
+                sortRel.getCluster(),
+                rel,
+                sortRel.getCollations(),
+                sortRel.getOffset(),
+                sortRel.getFetch()));
+    }
+}
+
+// End MedJdbcSortPushDownRule.java
@@ -221,6 +221,14 @@ public abstract class FarragoAbstractParserImpl
         CwmModelElement createdElement,
         DdlReplaceOptions replaceOptions)
     {
+        if (FarragoCatalogUtil.isMaterializedView(
+                getRepos(),
+                createdElement))
+        {
+            return new DdlCreateMaterializedViewStmt(
+                (FemLocalTable) createdElement,
+                replaceOptions);
+        }
         return new DdlCreateStmt(createdElement, replaceOptions);
     }
 
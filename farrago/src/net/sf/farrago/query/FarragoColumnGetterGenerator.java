@@ -0,0 +1,315 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.query;
+
+import java.lang.reflect.*;
+
+import java.util.*;
+
+import net.sf.farrago.runtime.*;
+import net.sf.farrago.type.runtime.*;
+
+import org.eigenbase.runtime.*;
+
+
+/**
+ * FarragoColumnGetterGenerator generates the Java source for a {@link
+ * FarragoCompiledColumnGetter} specialized to the row class of a Java plan. The
+ * generated class is compiled along with the rest of the statement's code, and
+ * used by {@link FarragoTupleIterResultSet} in place of {@link
+ * AbstractIterResultSet.SyntheticColumnGetter}, which reads every column via
+ * reflection.
+ *
+ * <p>Columns whose field is a Java primitive or one of the {@link
+ * NullablePrimitive} holders (other than decimals, which have their own holder
+ * class) can also be read without boxing.
+ *
+ * @version $Id$
+ */
+class FarragoColumnGetterGenerator
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Map<Class, Integer> primitiveKindMap =
+        new HashMap<Class, Integer>();
+
+    static {
+        final Integer integral =
+            AbstractIterResultSet.PrimitiveColumnGetter.KIND_INTEGRAL;
+        final Integer floating =
+            AbstractIterResultSet.PrimitiveColumnGetter.KIND_FLOATING;
+        for (Class clazz
+            : new Class[] {
+                boolean.class, byte.class, short.class, int.class, long.class,
+                NullablePrimitive.NullableBoolean.class,
+                NullablePrimitive.NullableByte.class,
+                NullablePrimitive.NullableShort.class,
+                NullablePrimitive.NullableInteger.class,
+                NullablePrimitive.NullableLong.class
+            })
+        {
+            primitiveKindMap.put(clazz, integral);
+        }
+        for (Class clazz
+            : new Class[] {
+                float.class, double.class,
+                NullablePrimitive.NullableFloat.class,
+                NullablePrimitive.NullableDouble.class
+            })
+        {
+            primitiveKindMap.put(clazz, floating);
+        }
+    }
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final Class rowClass;
+    private final Field [] fields;
+    private final int [] primitiveKinds;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a generator.
+     *
+     * @param rowClass class of rows returned by the statement's iterator
+     */
+    FarragoColumnGetterGenerator(Class rowClass)
+    {
+        this.rowClass = rowClass;
+
+        // Same fields, in the same order, as SyntheticColumnGetter.
+        this.fields = rowClass.getFields();
+        this.primitiveKinds = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            Integer kind = primitiveKindMap.get(fields[i].getType());
+            primitiveKinds[i] =
+                (kind == null)
+                ? AbstractIterResultSet.PrimitiveColumnGetter.KIND_OBJECT
+                : kind;
+        }
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns whether generated code can access the row class and all of its
+     * fields by name. If not, the caller should fall back to reflection.
+     */
+    boolean isApplicable()
+    {
+        if (!SyntheticObject.class.isAssignableFrom(rowClass)
+            || !isAccessible(rowClass))
+        {
+            return false;
+        }
+        for (Field field : fields) {
+            if (Modifier.isStatic(field.getModifiers())
+                || !isAccessible(field.getType()))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAccessible(Class clazz)
+    {
+        if (clazz.isPrimitive()) {
+            return true;
+        }
+        if (clazz.isArray()) {
+            return isAccessible(clazz.getComponentType());
+        }
+        for (Class c = clazz; c != null; c = c.getDeclaringClass()) {
+            if (!Modifier.isPublic(c.getModifiers())) {
+                return false;
+            }
+        }
+        return clazz.getCanonicalName() != null;
+    }
+
+    /**
+     * Generates the source of the column getter class.
+     *
+     * @param packageName package of the generated class
+     * @param className simple name of the generated class
+     *
+     * @return source of a compilation unit
+     */
+    String generateSource(String packageName, String className)
+    {
+        final String rowClassName = rowClass.getCanonicalName();
+        StringBuilder buf = new StringBuilder();
+        buf.append("package ").append(packageName).append(";\n\n");
+        buf.append("public class ").append(className).append("\n");
+        buf.append("    extends ")
+        .append(FarragoCompiledColumnGetter.class.getName())
+        .append("\n{\n");
+
+        // constructor
+        buf.append("    public ").append(className).append("()\n    {\n");
+        buf.append("        super(\n            new String[] {");
+        for (int i = 0; i < fields.length; i++) {
+            buf.append((i == 0) ? " " : ", ");
+            buf.append('"').append(fields[i].getName()).append('"');
+        }
+        buf.append(" },\n            new int[] {");
+        for (int i = 0; i < fields.length; i++) {
+            buf.append((i == 0) ? " " : ", ");
+            buf.append(primitiveKinds[i]);
+        }
+        buf.append(" });\n    }\n\n");
+
+        // get: every column, as an object
+        startMethod(buf, "Object", "get", rowClassName);
+        for (int i = 0; i < fields.length; i++) {
+            appendCase(buf, i, boxedExpr(fields[i]));
+        }
+        endMethod(buf);
+
+        // isNull: primitive columns only
+        startMethod(buf, "boolean", "isNull", rowClassName);
+        for (int i = 0; i < fields.length; i++) {
+            if (primitiveKinds[i]
+                == AbstractIterResultSet.PrimitiveColumnGetter.KIND_OBJECT)
+            {
+                continue;
+            }
+            String ref = "row." + fields[i].getName();
+            appendCase(
+                buf,
+                i,
+                fields[i].getType().isPrimitive() ? "false"
+                : ("(" + ref + " == null) || " + ref + ".isNull"));
+        }
+        endMethod(buf);
+
+        // getLong: integral columns only
+        startMethod(buf, "long", "getLong", rowClassName);
+        for (int i = 0; i < fields.length; i++) {
+            if (primitiveKinds[i]
+                == AbstractIterResultSet.PrimitiveColumnGetter.KIND_INTEGRAL)
+            {
+                appendCase(buf, i, integralExpr(fields[i]));
+            }
+        }
+        endMethod(buf);
+
+        // getDouble: floating-point columns only
+        startMethod(buf, "double", "getDouble", rowClassName);
+        for (int i = 0; i < fields.length; i++) {
+            if (primitiveKinds[i]
+                == AbstractIterResultSet.PrimitiveColumnGetter.KIND_FLOATING)
+            {
+                appendCase(buf, i, "(double) " + valueRef(fields[i]));
+            }
+        }
+        endMethod(buf);
+
+        buf.append("}\n");
+        return buf.toString();
+    }
+
+    private static void startMethod(
+        StringBuilder buf,
+        String returnType,
+        String methodName,
+        String rowClassName)
+    {
+        buf.append("    public ").append(returnType).append(" ")
+        .append(methodName).append("(Object o, int columnIndex)\n    {\n");
+        buf.append("        ").append(rowClassName).append(" row = (")
+        .append(rowClassName).append(") o;\n");
+        buf.append("        switch (columnIndex) {\n");
+    }
+
+    private static void appendCase(StringBuilder buf, int i, String expr)
+    {
+        buf.append("        case ").append(i + 1).append(":\n");
+        buf.append("            return ").append(expr).append(";\n");
+    }
+
+    private static void endMethod(StringBuilder buf)
+    {
+        buf.append("        default:\n");
+        buf.append("            throw newBadColumn(columnIndex);\n");
+        buf.append("        }\n    }\n\n");
+    }
+
+    /**
+     * Returns an expression for a field's primitive value: the field itself
+     * if it is primitive, otherwise the holder's <code>value</code> field.
+     */
+    private static String valueRef(Field field)
+    {
+        String ref = "row." + field.getName();
+        if (field.getType().isPrimitive()) {
+            return ref;
+        }
+        return ref + "." + NullablePrimitive.VALUE_FIELD_NAME;
+    }
+
+    private static String integralExpr(Field field)
+    {
+        Class type = field.getType();
+        if ((type == boolean.class)
+            || (type == NullablePrimitive.NullableBoolean.class))
+        {
+            return "(" + valueRef(field) + " ? 1L : 0L)";
+        }
+        return "(long) " + valueRef(field);
+    }
+
+    /**
+     * Returns an expression for a field as an object, matching what {@link
+     * Field#get} would return.
+     */
+    private static String boxedExpr(Field field)
+    {
+        String ref = "row." + field.getName();
+        Class type = field.getType();
+        if (!type.isPrimitive()) {
+            return ref;
+        }
+        final String boxName;
+        if (type == boolean.class) {
+            boxName = "Boolean";
+        } else if (type == byte.class) {
+            boxName = "Byte";
+        } else if (type == short.class) {
+            boxName = "Short";
+        } else if (type == int.class) {
+            boxName = "Integer";
+        } else if (type == long.class) {
+            boxName = "Long";
+        } else if (type == float.class) {
+            boxName = "Float";
+        } else if (type == double.class) {
+            boxName = "Double";
+        } else if (type == char.class) {
+            boxName = "Character";
+        } else {
+            throw new AssertionError(type);
+        }
+        return "java.lang." + boxName + ".valueOf(" + ref + ")";
+    }
+}
+
+// End FarragoColumnGetterGenerator.java
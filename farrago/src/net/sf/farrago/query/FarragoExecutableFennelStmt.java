@@ -57,6 +57,7 @@ class FarragoExecutableFennelStmt
     protected final String xmiFennelPlan;
     private final Map<String, String> referencedObjectTimestampMap;
     private final String streamName;
+    private final long memoryCost;
     private final Map<String, RelDataType> resultSetTypeMap;
 
     //~ Constructors -----------------------------------------------------------
@@ -67,6 +68,7 @@ class FarragoExecutableFennelStmt
         RelDataType dynamicParamRowType,
         String xmiFennelPlan,
         String streamName,
+        long memoryCost,
         boolean isDml,
         TableModificationRel.Operation tableModOp,
         Map<String, String> referencedObjectTimestampMap,
@@ -78,6 +80,7 @@ class FarragoExecutableFennelStmt
         this.fieldOrigins = fieldOrigins;
         this.xmiFennelPlan = xmiFennelPlan;
         this.streamName = streamName;
+        this.memoryCost = memoryCost;
         this.referencedObjectTimestampMap = referencedObjectTimestampMap;
         this.resultSetTypeMap = typeMap;
         this.rowType = preparedRowType;
@@ -101,6 +104,12 @@ class FarragoExecutableFennelStmt
         return fieldOrigins;
     }
 
+    // implement FarragoSessionExecutableStmt
+    public long getMemoryCost()
+    {
+        return memoryCost;
+    }
+
     // implement FarragoSessionExecutableStmt
     public Set<String> getReferencedObjectIds()
     {
@@ -145,7 +154,8 @@ class FarragoExecutableFennelStmt
                     tupleReader,
                     runtimeContext.getFennelStreamGraph(),
                     streamHandle,
-                    cachePageSize);
+                    cachePageSize,
+                    true);
             FennelOnlyResultSet resultSet =
                 new FennelOnlyResultSet(
                     tupleIter,
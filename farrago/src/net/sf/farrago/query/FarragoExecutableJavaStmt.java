@@ -59,11 +59,14 @@ class FarragoExecutableJavaStmt
     // just the class name, and dynamically load it per-execution.  This
     // will keep cache memory usage down.
     private final Class rowClass;
+    private final AbstractIterResultSet.ColumnGetter columnGetter;
     private final ClassLoader stmtClassLoader;
     private final Method stmtMethod;
     private final List<FarragoTransformDef> transformDefs;
     private final Map<String, RelDataType> resultSetTypeMap;
     private final Map<String, RelDataType> iterCalcTypeMap;
+    private final List<String> fennelStreamNames;
+    private final List<Integer> fennelStreamIds;
     private final int totalByteCodeSize;
 
     //~ Constructors -----------------------------------------------------------
@@ -71,6 +74,7 @@ class FarragoExecutableJavaStmt
     FarragoExecutableJavaStmt(
         File packageDir,
         Class rowClass,
+        AbstractIterResultSet.ColumnGetter columnGetter,
         ClassLoader stmtClassLoader,
         RelDataType preparedRowType,
         List<List<String>> fieldOrigins,
@@ -78,12 +82,15 @@ class FarragoExecutableJavaStmt
         Method stmtMethod,
         List<FarragoTransformDef> transformDefs,
         String xmiFennelPlan,
+        long memoryCost,
         boolean isDml,
         TableModificationRel.Operation tableModOp,
         Map<String, String> referencedObjectTimestampMap,
         TableAccessMap tableAccessMap,
         Map<String, RelDataType> resultSetTypeMap,
         Map<String, RelDataType> iterCalcTypeMap,
+        List<String> fennelStreamNames,
+        List<Integer> fennelStreamIds,
         int totalByteCodeSize)
     {
         super(
@@ -92,6 +99,7 @@ class FarragoExecutableJavaStmt
             dynamicParamRowType,
             xmiFennelPlan,
             null,
+            memoryCost,
             isDml,
             tableModOp,
             referencedObjectTimestampMap,
@@ -100,11 +108,14 @@ class FarragoExecutableJavaStmt
 
         this.packageDir = packageDir;
         this.rowClass = rowClass;
+        this.columnGetter = columnGetter;
         this.stmtClassLoader = stmtClassLoader;
         this.stmtMethod = stmtMethod;
         this.transformDefs = transformDefs;
         this.resultSetTypeMap = resultSetTypeMap;
         this.iterCalcTypeMap = iterCalcTypeMap;
+        this.fennelStreamNames = fennelStreamNames;
+        this.fennelStreamIds = fennelStreamIds;
         this.totalByteCodeSize = totalByteCodeSize;
     }
 
@@ -115,6 +126,7 @@ class FarragoExecutableJavaStmt
     {
         try {
             runtimeContext.setStatementClassLoader(stmtClassLoader);
+            runtimeContext.setFennelStreams(fennelStreamNames, fennelStreamIds);
 
             if (xmiFennelPlan != null) {
                 runtimeContext.loadFennelPlan(xmiFennelPlan);
@@ -140,7 +152,7 @@ class FarragoExecutableJavaStmt
                     rowType,
                     fieldOrigins,
                     runtimeContext,
-                    null);
+                    columnGetter);
 
             // instantiate and initialize all generated FarragoTransforms.
             for (FarragoTransformDef tdef : transformDefs) {
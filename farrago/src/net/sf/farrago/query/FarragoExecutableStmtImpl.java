@@ -52,6 +52,7 @@ abstract class FarragoExecutableStmtImpl
     private final TableModificationRel.Operation tableModOp;
     private final RelDataType dynamicParamRowType;
     private final TableAccessMap tableAccessMap;
+    private volatile long verifiedChangeSeq = -1;
 
     //~ Constructors -----------------------------------------------------------
 
@@ -87,6 +88,12 @@ abstract class FarragoExecutableStmtImpl
         return dynamicParamRowType;
     }
 
+    // implement FarragoSessionExecutableStmt
+    public long getMemoryCost()
+    {
+        return 0;
+    }
+
     // implement FarragoSessionExecutableStmt
     public Set<String> getReferencedObjectIds()
     {
@@ -99,6 +106,18 @@ abstract class FarragoExecutableStmtImpl
         return null;
     }
 
+    // implement FarragoSessionExecutableStmt
+    public long getVerifiedChangeSeq()
+    {
+        return verifiedChangeSeq;
+    }
+
+    // implement FarragoSessionExecutableStmt
+    public void setVerifiedChangeSeq(long seq)
+    {
+        verifiedChangeSeq = seq;
+    }
+
     // implement FarragoSessionExecutableStmt
     public TableAccessMap getTableAccessMap()
     {
@@ -18,12 +18,15 @@
 */
 package net.sf.farrago.query;
 
+import java.util.*;
 import java.util.List;
 
 import net.sf.farrago.catalog.*;
 import net.sf.farrago.resource.*;
 import net.sf.farrago.runtime.*;
 import net.sf.farrago.session.*;
+import net.sf.farrago.type.*;
+import net.sf.farrago.type.runtime.*;
 
 import openjava.mop.*;
 
@@ -39,6 +42,8 @@ import org.eigenbase.rex.*;
 import org.eigenbase.runtime.*;
 import org.eigenbase.sql.*;
 import org.eigenbase.sql.parser.*;
+import org.eigenbase.sql.type.*;
+import org.eigenbase.util.*;
 
 
 /**
@@ -52,6 +57,55 @@ public class FarragoJavaUdxRel
     extends TableFunctionRelBase
     implements JavaRel
 {
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Setters which the generated result inserter implements by writing
+     * primitive values directly into the fields of the output row; see {@link
+     * #implementResultInserter}.
+     */
+    private static final DirectSetter [] directSetters =
+        {
+            new DirectSetter(
+                "setBoolean",
+                boolean.class,
+                EnumSet.of(SqlTypeName.BOOLEAN)),
+            new DirectSetter(
+                "setByte",
+                byte.class,
+                EnumSet.of(
+                    SqlTypeName.TINYINT,
+                    SqlTypeName.SMALLINT,
+                    SqlTypeName.INTEGER,
+                    SqlTypeName.BIGINT)),
+            new DirectSetter(
+                "setShort",
+                short.class,
+                EnumSet.of(
+                    SqlTypeName.SMALLINT,
+                    SqlTypeName.INTEGER,
+                    SqlTypeName.BIGINT)),
+            new DirectSetter(
+                "setInt",
+                int.class,
+                EnumSet.of(SqlTypeName.INTEGER, SqlTypeName.BIGINT)),
+            new DirectSetter(
+                "setLong",
+                long.class,
+                EnumSet.of(SqlTypeName.BIGINT)),
+            new DirectSetter(
+                "setFloat",
+                float.class,
+                EnumSet.of(
+                    SqlTypeName.REAL,
+                    SqlTypeName.FLOAT,
+                    SqlTypeName.DOUBLE)),
+            new DirectSetter(
+                "setDouble",
+                double.class,
+                EnumSet.of(SqlTypeName.FLOAT, SqlTypeName.DOUBLE)),
+        };
+
     //~ Instance fields --------------------------------------------------------
 
     private final String serverMofId;
@@ -395,7 +449,8 @@ public class FarragoJavaUdxRel
                 new ExpressionList(
                     implementor.getConnectionVariable(),
                     new ClassLiteral(TypeName.forOJClass(outputRowClass)),
-                    typeLookupCall),
+                    typeLookupCall,
+                    implementResultInserter(implementor, outputRowClass)),
                 memberList);
 
         if (restartable) {
@@ -408,19 +463,211 @@ public class FarragoJavaUdxRel
         return tupleIterExp;
     }
 
+    /**
+     * Generates a {@link FarragoUdxResultInserter} specialized to the output
+     * row class, which locates columns without reflection, and which writes
+     * primitive values into their fields without boxing or conversion where
+     * the {@link #directSetters setter} matches the column type. Calls which
+     * need conversion are passed on to the base class.
+     *
+     * @param implementor implementor
+     * @param outputRowClass class of output rows
+     *
+     * @return expression which allocates the inserter
+     */
+    private Expression implementResultInserter(
+        JavaRelImplementor implementor,
+        OJClass outputRowClass)
+    {
+        final RelDataTypeField [] fields = getRowType().getFields();
+        final FarragoTypeFactory typeFactory =
+            (FarragoTypeFactory) implementor.getTypeFactory();
+        final TypeName rowTypeName = TypeName.forOJClass(outputRowClass);
+        MemberDeclarationList memberList = new MemberDeclarationList();
+
+        // Generate
+        //   protected Object getFieldHolder(int iField)
+        //   {
+        //       OutputRow row = (OutputRow) getCurrentRow();
+        //       if (iField == 0) {
+        //           return row.field0;
+        //       }
+        //       ...
+        //       return super.getFieldHolder(iField);
+        //   }
+        // for columns whose fields hold objects.
+        Variable varField = implementor.newVariable();
+        Variable varRow = implementor.newVariable();
+        StatementList holderBody = new StatementList();
+        holderBody.add(
+            newRowDeclaration(rowTypeName, varRow));
+        for (int i = 0; i < fields.length; ++i) {
+            RelDataType type = fields[i].getType();
+            if (OJUtil.typeToOJClass(type, typeFactory).isPrimitive()) {
+                continue;
+            }
+            holderBody.add(
+                new IfStatement(
+                    new BinaryExpression(
+                        varField,
+                        BinaryExpression.EQUAL,
+                        Literal.makeLiteral(i)),
+                    new StatementList(
+                        new ReturnStatement(
+                            newFieldAccess(varRow, fields[i], i)))));
+        }
+        holderBody.add(
+            new ReturnStatement(
+                new MethodCall(
+                    SelfAccess.makeSuper(),
+                    "getFieldHolder",
+                    new ExpressionList(varField))));
+        memberList.add(
+            new MethodDeclaration(
+                new ModifierList(ModifierList.PROTECTED),
+                OJUtil.typeNameForClass(Object.class),
+                "getFieldHolder",
+                new ParameterList(
+                    new Parameter(
+                        OJUtil.typeNameForClass(int.class),
+                        varField.toString())),
+                null,
+                holderBody));
+
+        // For each direct setter, generate
+        //   public void setInt(int parameterIndex, int x)
+        //       throws SQLException
+        //   {
+        //       OutputRow row = (OutputRow) getCurrentRow();
+        //       if (parameterIndex == 1) {
+        //           row.field0.isNull = false;
+        //           row.field0.value = x;
+        //           return;
+        //       }
+        //       ...
+        //       super.setInt(parameterIndex, x);
+        //   }
+        // if any column can be assigned directly.
+        for (DirectSetter setter : directSetters) {
+            Variable varIndex = implementor.newVariable();
+            Variable varValue = implementor.newVariable();
+            varRow = implementor.newVariable();
+            StatementList setterBody = new StatementList();
+            setterBody.add(newRowDeclaration(rowTypeName, varRow));
+            boolean direct = false;
+            for (int i = 0; i < fields.length; ++i) {
+                RelDataType type = fields[i].getType();
+                if (!setter.typeNames.contains(type.getSqlTypeName())) {
+                    continue;
+                }
+                direct = true;
+                Expression fieldExp = newFieldAccess(varRow, fields[i], i);
+                StatementList assignList = new StatementList();
+                if (type.isNullable()) {
+                    assignList.add(
+                        new ExpressionStatement(
+                            new AssignmentExpression(
+                                new FieldAccess(
+                                    fieldExp,
+                                    NullablePrimitive.NULL_IND_FIELD_NAME),
+                                AssignmentExpression.EQUALS,
+                                Literal.constantFalse())));
+                }
+                assignList.add(
+                    new ExpressionStatement(
+                        new AssignmentExpression(
+                            typeFactory.getValueAccessExpression(
+                                type,
+                                fieldExp),
+                            AssignmentExpression.EQUALS,
+                            varValue)));
+                assignList.add(new ReturnStatement());
+                setterBody.add(
+                    new IfStatement(
+                        new BinaryExpression(
+                            varIndex,
+                            BinaryExpression.EQUAL,
+                            Literal.makeLiteral(i + 1)),
+                        assignList));
+            }
+            if (!direct) {
+                continue;
+            }
+            setterBody.add(
+                new ExpressionStatement(
+                    new MethodCall(
+                        SelfAccess.makeSuper(),
+                        setter.methodName,
+                        new ExpressionList(varIndex, varValue))));
+            ParameterList paramList = new ParameterList();
+            paramList.add(
+                new Parameter(
+                    OJUtil.typeNameForClass(int.class),
+                    varIndex.toString()));
+            paramList.add(
+                new Parameter(
+                    OJUtil.typeNameForClass(setter.paramClass),
+                    varValue.toString()));
+            memberList.add(
+                new MethodDeclaration(
+                    new ModifierList(ModifierList.PUBLIC),
+                    TypeName.forOJClass(OJSystem.VOID),
+                    setter.methodName,
+                    paramList,
+                    new TypeName[] {
+                        OJUtil.typeNameForClass(
+                            java.sql.SQLException.class)
+                    },
+                    setterBody));
+        }
+
+        return new AllocationExpression(
+            OJUtil.typeNameForClass(FarragoUdxResultInserter.class),
+            new ExpressionList(),
+            memberList);
+    }
+
+    private static Statement newRowDeclaration(
+        TypeName rowTypeName,
+        Variable varRow)
+    {
+        return new VariableDeclaration(
+            rowTypeName,
+            varRow.toString(),
+            new CastExpression(
+                rowTypeName,
+                new MethodCall(
+                    "getCurrentRow",
+                    new ExpressionList())));
+    }
+
+    private static Expression newFieldAccess(
+        Variable varRow,
+        RelDataTypeField field,
+        int i)
+    {
+        return new FieldAccess(
+            varRow,
+            Util.toJavaId(
+                field.getName(),
+                i));
+    }
+
     /**
      * Stores the row type for a relational expression in the PreparingStmt, and
      * generates a call which will retrieve it from the executable context at
-     * runtime. The literal string key used is based on the relational
-     * expression id.
+     * runtime. The literal string key used is based on the number of types
+     * stored so far rather than on the relational expression id, so that it
+     * is the same each time the statement is prepared.
      */
     private Expression generateTypeLookupCall(
         JavaRelImplementor implementor,
         RelNode relNode)
     {
-        String resultSetName = "ResultSet:" + relNode.getId();
         FarragoPreparingStmt preparingStmt =
             ((FarragoRelImplementor) implementor).getPreparingStmt();
+        String resultSetName =
+            "ResultSet:" + preparingStmt.getResultSetTypeMap().size();
         preparingStmt.mapResultSetType(
             resultSetName,
             relNode.getRowType());
@@ -434,6 +681,33 @@ public class FarragoJavaUdxRel
 
         return typeLookupCall;
     }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * A setter of {@link java.sql.PreparedStatement} whose argument can be
+     * assigned to a field without conversion.
+     */
+    private static class DirectSetter
+    {
+        final String methodName;
+        final Class paramClass;
+
+        /**
+         * Types of the columns which can hold any value of the argument type.
+         */
+        final EnumSet<SqlTypeName> typeNames;
+
+        DirectSetter(
+            String methodName,
+            Class paramClass,
+            EnumSet<SqlTypeName> typeNames)
+        {
+            this.methodName = methodName;
+            this.paramClass = paramClass;
+            this.typeNames = typeNames;
+        }
+    }
 }
 
 // End FarragoJavaUdxRel.java
@@ -0,0 +1,593 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.query;
+
+import java.util.*;
+
+import org.eigenbase.sql.*;
+import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.parser.*;
+import org.eigenbase.sql.util.*;
+
+
+/**
+ * FarragoMaterializedView describes the shape of the query which defines a
+ * materialized view, as far as it matters for maintaining the view and for
+ * answering other queries from it.
+ *
+ * <p>Two shapes are understood, both over a single local table:
+ *
+ * <ul>
+ * <li>a projection of plain columns, optionally filtered, to which rows
+ * appended to the table can simply be appended;
+ * <li>a filtered or unfiltered GROUP BY over plain columns whose select list
+ * consists of grouping columns and SUM, COUNT, MIN and MAX over plain columns
+ * (or COUNT(*)). Rows appended to the table can be aggregated separately and
+ * merged into the view, and queries which group by a subset of the view's
+ * grouping columns can be answered by aggregating the view again.
+ * </ul>
+ *
+ * <p>Any other query can still be materialized, but has to be recomputed in
+ * full when the table changes.
+ */
+public class FarragoMaterializedView
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final List<String> ROLLUP_FUNCTIONS =
+        Arrays.asList("SUM", "COUNT", "MIN", "MAX");
+
+    private static final String VIEW_ALIAS = "MV";
+
+    private static final String DELTA_ALIAS = "DELTA";
+
+    //~ Enums ------------------------------------------------------------------
+
+    /**
+     * What a column of a materialized view holds.
+     */
+    public enum ItemKind
+    {
+        /**
+         * A grouping column, or a plain column of a non-aggregate view.
+         */
+        COLUMN,
+
+        /**
+         * SUM, COUNT, MIN or MAX of a column, or COUNT(*).
+         */
+        AGGREGATE
+    }
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final String sql;
+    private final List<String> baseTableName;
+    private final String baseAlias;
+    private final List<Item> items;
+    private final List<String> groupColumns;
+    private final boolean filtered;
+
+    //~ Constructors -----------------------------------------------------------
+
+    private FarragoMaterializedView(
+        String sql,
+        List<String> baseTableName,
+        String baseAlias,
+        List<Item> items,
+        List<String> groupColumns,
+        boolean filtered)
+    {
+        this.sql = sql;
+        this.baseTableName = baseTableName;
+        this.baseAlias = baseAlias;
+        this.items = items;
+        this.groupColumns = groupColumns;
+        this.filtered = filtered;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Analyzes the defining query of a materialized view.
+     *
+     * @param sql validated (fully qualified) text of the query
+     *
+     * @return description of the query; if the query does not have one of the
+     * shapes described above, the description is not {@link #isIncremental
+     * incremental}
+     */
+    public static FarragoMaterializedView analyze(String sql)
+    {
+        FarragoMaterializedView unknown =
+            new FarragoMaterializedView(sql, null, null, null, null, true);
+        SqlSelect select = parseSelect(sql);
+        if ((select == null)
+            || select.isDistinct()
+            || (select.getHaving() != null)
+            || (select.getWindowList().size() > 0)
+            || (select.getOrderList() != null)
+            || (select.getOffset() != null)
+            || (select.getFetch() != null)
+            || ((select.getWhere() != null)
+                && containsQuery(select.getWhere())))
+        {
+            return unknown;
+        }
+
+        // FROM must name a single table
+        SqlNode from = select.getFrom();
+        String alias = null;
+        if (from.getKind() == SqlKind.AS) {
+            SqlNode [] operands = ((SqlCall) from).getOperands();
+            if (operands.length != 2) {
+                // derived column list
+                return unknown;
+            }
+            from = operands[0];
+            alias = ((SqlIdentifier) operands[1]).getSimple();
+        }
+        if (!(from instanceof SqlIdentifier)) {
+            return unknown;
+        }
+        SqlIdentifier tableId = (SqlIdentifier) from;
+        if (alias == null) {
+            alias = tableId.names[tableId.names.length - 1];
+        }
+
+        List<String> groupColumns = new ArrayList<String>();
+        SqlNodeList groupList = select.getGroup();
+        if (groupList != null) {
+            for (SqlNode node : groupList) {
+                String column = getColumnName(node, alias);
+                if (column == null) {
+                    return unknown;
+                }
+                groupColumns.add(column);
+            }
+            if (groupColumns.isEmpty()) {
+                return unknown;
+            }
+        }
+
+        List<Item> items = new ArrayList<Item>();
+        Set<String> selectedColumns = new HashSet<String>();
+        for (SqlNode node : select.getSelectList()) {
+            if (node.getKind() == SqlKind.AS) {
+                node = ((SqlCall) node).getOperands()[0];
+            }
+            String column = getColumnName(node, alias);
+            if (column != null) {
+                if ((groupList != null) && !groupColumns.contains(column)) {
+                    return unknown;
+                }
+                items.add(new Item(ItemKind.COLUMN, null, column));
+                selectedColumns.add(column);
+                continue;
+            }
+            if ((groupList == null) || !(node instanceof SqlCall)) {
+                return unknown;
+            }
+            SqlCall call = (SqlCall) node;
+            String function = call.getOperator().getName().toUpperCase();
+            SqlLiteral quantifier = call.getFunctionQuantifier();
+            if (!ROLLUP_FUNCTIONS.contains(function)
+                || ((quantifier != null)
+                    && (quantifier.getValue() == SqlSelectKeyword.Distinct)))
+            {
+                return unknown;
+            }
+            if (call.isCountStar()) {
+                items.add(new Item(ItemKind.AGGREGATE, function, null));
+                continue;
+            }
+            SqlNode [] operands = call.getOperands();
+            if (operands.length != 1) {
+                return unknown;
+            }
+            column = getColumnName(operands[0], alias);
+            if (column == null) {
+                return unknown;
+            }
+            items.add(new Item(ItemKind.AGGREGATE, function, column));
+        }
+
+        // An aggregate view can only be merged into if every group is
+        // identified by the view's columns.
+        if (!selectedColumns.containsAll(groupColumns)) {
+            return unknown;
+        }
+
+        return new FarragoMaterializedView(
+            sql,
+            Collections.unmodifiableList(Arrays.asList(tableId.names)),
+            alias,
+            Collections.unmodifiableList(items),
+            (groupList == null) ? null
+            : Collections.unmodifiableList(groupColumns),
+            select.getWhere() != null);
+    }
+
+    private static SqlSelect parseSelect(String sql)
+    {
+        SqlNode node;
+        try {
+            node = new SqlParser(sql).parseQuery();
+        } catch (SqlParseException ex) {
+            return null;
+        }
+        if (!(node instanceof SqlSelect)) {
+            return null;
+        }
+        return (SqlSelect) node;
+    }
+
+    private static String getColumnName(SqlNode node, String alias)
+    {
+        if (!(node instanceof SqlIdentifier)) {
+            return null;
+        }
+        String [] names = ((SqlIdentifier) node).names;
+        if (names.length == 1) {
+            return names[0];
+        }
+        if ((names.length == 2) && names[0].equals(alias)) {
+            return names[1];
+        }
+        return null;
+    }
+
+    private static boolean containsQuery(SqlNode node)
+    {
+        if (node instanceof SqlNodeList) {
+            for (SqlNode child : (SqlNodeList) node) {
+                if (containsQuery(child)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (!(node instanceof SqlCall)) {
+            return false;
+        }
+        switch (node.getKind()) {
+        case SELECT:
+        case UNION:
+        case EXCEPT:
+        case INTERSECT:
+        case VALUES:
+        case ORDER_BY:
+        case EXPLICIT_TABLE:
+        case OVER:
+            return true;
+        default:
+            break;
+        }
+        for (SqlNode operand : ((SqlCall) node).getOperands()) {
+            if ((operand != null) && containsQuery(operand)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return validated text of the defining query
+     */
+    public String getSql()
+    {
+        return sql;
+    }
+
+    /**
+     * @return whether rows appended to the base table can be added to the
+     * view without recomputing it
+     */
+    public boolean isIncremental()
+    {
+        return items != null;
+    }
+
+    /**
+     * @return whether the view is an aggregate view which other aggregate
+     * queries on its base table can be rolled up from
+     */
+    public boolean isRewritable()
+    {
+        return isIncremental() && isAggregate() && !filtered;
+    }
+
+    /**
+     * @return whether the view has a GROUP BY; only meaningful for an
+     * incremental view
+     */
+    public boolean isAggregate()
+    {
+        return groupColumns != null;
+    }
+
+    /**
+     * @return qualified name of the single table the view is defined on, or
+     * null if the view is not incremental
+     */
+    public List<String> getBaseTableName()
+    {
+        return baseTableName;
+    }
+
+    /**
+     * @return columns of the view, in order, or null if the view is not
+     * incremental
+     */
+    public List<Item> getItems()
+    {
+        return items;
+    }
+
+    /**
+     * @return names of the base table columns the view groups by, or null if
+     * the view is not an incremental aggregate view
+     */
+    public List<String> getGroupColumns()
+    {
+        return groupColumns;
+    }
+
+    /**
+     * Generates a query which returns the highest row id of the base table
+     * above a given one, or null if there is no such row. Requires an
+     * incremental view.
+     *
+     * <p>Passing the previous high-water mark as <code>lowRid</code> lets a
+     * row store start its scan there, so that only the appended rows are
+     * read.
+     *
+     * @param ridFunction name of a function which returns the row id of a
+     * base table row given one of its columns; row ids must increase as rows
+     * are appended
+     * @param lowRid only rows with ids greater than this are considered; -1
+     * for all rows
+     *
+     * @return query text
+     */
+    public String getHighWaterMarkSql(String ridFunction, long lowRid)
+    {
+        assert isIncremental();
+        String rid = getRidExpression(ridFunction);
+        SqlBuilder buf = new SqlBuilder(SqlDialect.EIGENBASE);
+        buf.append("SELECT MAX(");
+        buf.append(rid);
+        buf.append(") FROM ");
+        buf.identifier(baseTableName);
+        buf.append(" AS ");
+        buf.identifier(baseAlias);
+        if (lowRid >= 0) {
+            buf.append(" WHERE ").append(rid).append(" > ").append(lowRid);
+        }
+        return buf.getSql();
+    }
+
+    /**
+     * Generates the defining query restricted to a range of rows of the base
+     * table. Requires an incremental view.
+     *
+     * @param ridFunction name of a function which returns the row id of a
+     * base table row given one of its columns
+     * @param lowRid rows with ids greater than this are included
+     * @param highRid rows with ids up to and including this are included
+     *
+     * @return query text
+     */
+    public String getRangeSql(
+        String ridFunction,
+        long lowRid,
+        long highRid)
+    {
+        assert isIncremental();
+        SqlSelect select = parseSelect(sql);
+        String rid = getRidExpression(ridFunction);
+        SqlBuilder buf = new SqlBuilder(SqlDialect.EIGENBASE);
+        buf.append(rid).append(" > ").append(lowRid);
+        buf.append(" AND ").append(rid).append(" <= ").append(highRid);
+        SqlNode predicate;
+        try {
+            predicate = new SqlParser(buf.getSql()).parseExpression();
+        } catch (SqlParseException ex) {
+            throw new AssertionError(ex);
+        }
+        SqlNode where = select.getWhere();
+        if (where != null) {
+            predicate =
+                SqlStdOperatorTable.andOperator.createCall(
+                    SqlParserPos.ZERO,
+                    where,
+                    predicate);
+        }
+        select.setOperand(SqlSelect.WHERE_OPERAND, predicate);
+        return select.toSqlString(SqlDialect.EIGENBASE).getSql();
+    }
+
+    private String getRidExpression(String ridFunction)
+    {
+        // Any column identifies the row; every incremental view has at least
+        // one plain column.
+        String column = null;
+        for (Item item : items) {
+            if (item.kind == ItemKind.COLUMN) {
+                column = item.column;
+                break;
+            }
+        }
+        assert column != null;
+        SqlBuilder buf = new SqlBuilder(SqlDialect.EIGENBASE);
+        buf.append(ridFunction).append("(");
+        buf.identifier(baseAlias, column);
+        buf.append(")");
+        return buf.getSql();
+    }
+
+    /**
+     * Generates a statement which adds the result of a query over newly
+     * appended rows to the view. For a non-aggregate view this is a simple
+     * INSERT; for an aggregate view, a MERGE which combines each new group
+     * with the existing one.
+     *
+     * @param viewName qualified name of the view's table
+     * @param viewColumns names of the view's columns, in order
+     * @param deltaSql query over the newly appended rows, as returned by
+     * {@link #getRangeSql}
+     *
+     * @return statement text
+     */
+    public String getAppendSql(
+        List<String> viewName,
+        List<String> viewColumns,
+        String deltaSql)
+    {
+        assert isIncremental();
+        assert viewColumns.size() == items.size();
+        SqlBuilder buf = new SqlBuilder(SqlDialect.EIGENBASE);
+        if (!isAggregate()) {
+            buf.append("INSERT INTO ");
+            buf.identifier(viewName);
+            buf.append(" ");
+            buf.append(deltaSql);
+            return buf.getSql();
+        }
+
+        buf.append("MERGE INTO ");
+        buf.identifier(viewName);
+        buf.append(" AS ");
+        buf.identifier(VIEW_ALIAS);
+        buf.append(" USING (");
+        buf.append(deltaSql);
+        buf.append(") AS ");
+        buf.identifier(DELTA_ALIAS);
+        buf.append(" (");
+        appendColumnList(buf, null, viewColumns);
+        buf.append(") ON ");
+        int nKeys = 0;
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i).kind != ItemKind.COLUMN) {
+                continue;
+            }
+            if (nKeys++ > 0) {
+                buf.append(" AND ");
+            }
+            buf.identifier(VIEW_ALIAS, viewColumns.get(i));
+            buf.append(" = ");
+            buf.identifier(DELTA_ALIAS, viewColumns.get(i));
+        }
+        buf.append(" WHEN MATCHED THEN UPDATE SET ");
+        int nAggs = 0;
+        for (int i = 0; i < items.size(); i++) {
+            Item item = items.get(i);
+            if (item.kind != ItemKind.AGGREGATE) {
+                continue;
+            }
+            if (nAggs++ > 0) {
+                buf.append(", ");
+            }
+            buf.identifier(viewColumns.get(i));
+            buf.append(" = ");
+            appendCombination(buf, item.function, viewColumns.get(i));
+        }
+        buf.append(" WHEN NOT MATCHED THEN INSERT (");
+        appendColumnList(buf, null, viewColumns);
+        buf.append(") VALUES (");
+        appendColumnList(buf, DELTA_ALIAS, viewColumns);
+        buf.append(")");
+        return buf.getSql();
+    }
+
+    private static void appendColumnList(
+        SqlBuilder buf,
+        String qualifier,
+        List<String> columns)
+    {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                buf.append(", ");
+            }
+            if (qualifier == null) {
+                buf.identifier(columns.get(i));
+            } else {
+                buf.identifier(qualifier, columns.get(i));
+            }
+        }
+    }
+
+    private static void appendCombination(
+        SqlBuilder buf,
+        String function,
+        String column)
+    {
+        SqlBuilder oldValue = new SqlBuilder(SqlDialect.EIGENBASE);
+        oldValue.identifier(VIEW_ALIAS, column);
+        SqlBuilder newValue = new SqlBuilder(SqlDialect.EIGENBASE);
+        newValue.identifier(DELTA_ALIAS, column);
+        String o = oldValue.getSql();
+        String n = newValue.getSql();
+        if (function.equals("MIN") || function.equals("MAX")) {
+            // a null delta compares unknown, so keeps the old value
+            String op = function.equals("MIN") ? " < " : " > ";
+            buf.append("CASE WHEN ").append(o).append(" IS NULL OR ");
+            buf.append(n).append(op).append(o);
+            buf.append(" THEN ").append(n);
+            buf.append(" ELSE ").append(o).append(" END");
+        } else {
+            // SUM of no non-null values is null
+            buf.append("CASE WHEN ").append(o).append(" IS NULL THEN ");
+            buf.append(n);
+            buf.append(" WHEN ").append(n).append(" IS NULL THEN ");
+            buf.append(o);
+            buf.append(" ELSE ").append(o).append(" + ").append(n);
+            buf.append(" END");
+        }
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Describes one column of a materialized view.
+     */
+    public static class Item
+    {
+        public final ItemKind kind;
+
+        /**
+         * Aggregate function (SUM, COUNT, MIN or MAX), or null for a column.
+         */
+        public final String function;
+
+        /**
+         * Base table column, or null for COUNT(*).
+         */
+        public final String column;
+
+        Item(ItemKind kind, String function, String column)
+        {
+            this.kind = kind;
+            this.function = function;
+            this.column = column;
+        }
+    }
+}
+
+// End FarragoMaterializedView.java
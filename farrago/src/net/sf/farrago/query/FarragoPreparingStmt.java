@@ -49,6 +49,7 @@ import openjava.mop.*;
 
 import openjava.ptree.*;
 
+import org.eigenbase.javac.*;
 import org.eigenbase.jmi.*;
 import org.eigenbase.oj.rel.*;
 import org.eigenbase.oj.stmt.*;
@@ -59,6 +60,7 @@ import org.eigenbase.rel.metadata.*;
 import org.eigenbase.relopt.*;
 import org.eigenbase.reltype.*;
 import org.eigenbase.rex.*;
+import org.eigenbase.runtime.*;
 import org.eigenbase.sql.*;
 import org.eigenbase.sql.advise.*;
 import org.eigenbase.sql.type.*;
@@ -107,6 +109,7 @@ public class FarragoPreparingStmt
     protected SqlValidatorImpl sqlValidator;
     private final Set<CwmModelElement> directDependencies;
     protected final Set<CwmModelElement> allDependencies;
+    private final Map<String, Set<String>> requestedPrivileges;
     private final Set<URL> jarUrlSet;
     protected SqlOperatorTable sqlOperatorTable;
     private final FarragoUserDefinedRoutineLookup routineLookup;
@@ -119,6 +122,8 @@ public class FarragoPreparingStmt
     private boolean allowPartialImplementation;
     private final Map<String, RelDataType> resultSetTypeMap;
     private final Map<String, RelDataType> iterCalcTypeMap;
+    private final List<String> fennelStreamNames;
+    private final List<Integer> fennelStreamIds;
     private boolean cachingDisabled;
     private FarragoPreparingStmt parentStmt;
     private final FarragoSessionStmtContext rootStmtContext;
@@ -173,6 +178,7 @@ public class FarragoPreparingStmt
 
         directDependencies = new HashSet<CwmModelElement>();
         allDependencies = new HashSet<CwmModelElement>();
+        requestedPrivileges = new LinkedHashMap<String, Set<String>>();
         jarUrlSet = new LinkedHashSet<URL>();
 
         classesRoot = new File(FarragoProperties.instance().homeDir.get(true));
@@ -191,6 +197,8 @@ public class FarragoPreparingStmt
 
         resultSetTypeMap = new HashMap<String, RelDataType>();
         iterCalcTypeMap = new HashMap<String, RelDataType>();
+        fennelStreamNames = new ArrayList<String>();
+        fennelStreamIds = new ArrayList<Integer>();
 
         clearDmlValidation();
 
@@ -217,6 +225,12 @@ public class FarragoPreparingStmt
         return true;
     }
 
+    // implement FarragoSessionPreparingStmt
+    public Map<String, Set<String>> getRequestedPrivileges()
+    {
+        return Collections.unmodifiableMap(requestedPrivileges);
+    }
+
     // implement FarragoSessionPreparingStmt
     public void disableStatementCaching()
     {
@@ -598,6 +612,7 @@ public class FarragoPreparingStmt
                         Collections.singleton(cmdPrepareStream));
                 streamGraphTracer.fine(xmiFennelPlan);
             }
+            long memoryCost = estimateMemoryCost(streamDefSet);
 
             assert (tableAccessMap != null);
             if (containsJava) {
@@ -620,6 +635,16 @@ public class FarragoPreparingStmt
                 } catch (ClassNotFoundException ex) {
                     throw Util.newInternal(ex);
                 }
+
+                // Each compilation gets a new class loader, which only
+                // accounts for its own bytecode; so capture the size of the
+                // main statement code before compiling the column getter.
+                int totalByteCodeSize = javaCompiler.getTotalByteCodeSize();
+                AbstractIterResultSet.ColumnGetter columnGetter =
+                    compileColumnGetter(rowClass);
+                if (columnGetter != null) {
+                    totalByteCodeSize += javaCompiler.getTotalByteCodeSize();
+                }
                 final RelDataType preparedRowType =
                     (originalRowType == null) ? rowType : originalRowType;
                 if (fieldOrigins == null
@@ -633,6 +658,7 @@ public class FarragoPreparingStmt
                     new FarragoExecutableJavaStmt(
                         packageDir,
                         rowClass,
+                        columnGetter,
                         javaCompiler.getClassLoader(),
                         preparedRowType,
                         fieldOrigins,
@@ -640,13 +666,16 @@ public class FarragoPreparingStmt
                         preparedExecution.getMethod(),
                         getTransformDefs(),
                         xmiFennelPlan,
+                        memoryCost,
                         preparedResult.isDml(),
                         preparedResult.getTableModOp(),
                         getReferencedObjectTimestampMap(),
                         tableAccessMap,
                         resultSetTypeMap,
                         iterCalcTypeMap,
-                        javaCompiler.getTotalByteCodeSize());
+                        fennelStreamNames,
+                        fennelStreamIds,
+                        totalByteCodeSize);
             } else {
                 executableStmt =
                     new FarragoExecutableFennelStmt(
@@ -655,6 +684,7 @@ public class FarragoPreparingStmt
                         dynamicParamRowType,
                         xmiFennelPlan,
                         streamName,
+                        memoryCost,
                         preparedResult.isDml(),
                         preparedResult.getTableModOp(),
                         getReferencedObjectTimestampMap(),
@@ -680,6 +710,84 @@ public class FarragoPreparingStmt
         return executableStmt;
     }
 
+    /**
+     * Estimates how much cache memory the memory-intensive streams of a plan
+     * would like to use, from the row counts the optimizer gave them and the
+     * width of the rows they produce. Fixed-width attributes, for which tuple
+     * descriptors record no length, are counted as 8 bytes.
+     *
+     * @param streamDefs streams of the plan
+     *
+     * @return estimate in bytes, 0 if the plan has no memory-intensive
+     * streams, or -1 if the row count of one of them is unknown
+     */
+    private static long estimateMemoryCost(
+        Collection<FemExecutionStreamDef> streamDefs)
+    {
+        double memoryCost = 0;
+        for (FemExecutionStreamDef streamDef : streamDefs) {
+            long numRows;
+            if (streamDef instanceof FemSortingStreamDef) {
+                numRows =
+                    ((FemSortingStreamDef) streamDef).getEstimatedNumRows();
+            } else if (streamDef instanceof FemLhxJoinStreamDef) {
+                numRows = ((FemLhxJoinStreamDef) streamDef).getNumBuildRows();
+            } else if (streamDef instanceof FemLhxAggStreamDef) {
+                numRows = ((FemLhxAggStreamDef) streamDef).getNumRows();
+            } else {
+                continue;
+            }
+            if (numRows < 0) {
+                return -1;
+            }
+            long rowBytes = 0;
+            for (
+                FemTupleAttrDescriptor attrDesc
+                : streamDef.getOutputDesc().getAttrDescriptor())
+            {
+                rowBytes += Math.max(attrDesc.getByteLength(), 8);
+            }
+            memoryCost += (double) numRows * rowBytes;
+        }
+        return (long) Math.min(memoryCost, Long.MAX_VALUE);
+    }
+
+    /**
+     * Generates and compiles a column getter specialized to the row class of a
+     * Java plan, so that the statement's result sets can read columns without
+     * reflection.
+     *
+     * @param rowClass class of rows returned by the plan
+     *
+     * @return column getter, or null if the row class is not suitable, in
+     * which case result sets fall back to reflection
+     */
+    private AbstractIterResultSet.ColumnGetter compileColumnGetter(
+        Class rowClass)
+    {
+        FarragoColumnGetterGenerator generator =
+            new FarragoColumnGetterGenerator(rowClass);
+        if (!generator.isApplicable()) {
+            dynamicTracer.fine(
+                "using reflective column getter for " + rowClass.getName());
+            return null;
+        }
+        final String className = "ResultColumnGetter";
+        Class getterClass =
+            compileClass(
+                packageName,
+                className,
+                generator.generateSource(packageName, className));
+        try {
+            return (AbstractIterResultSet.ColumnGetter)
+                getterClass.newInstance();
+        } catch (InstantiationException ex) {
+            throw Util.newInternal(ex);
+        } catch (IllegalAccessException ex) {
+            throw Util.newInternal(ex);
+        }
+    }
+
     // implement FarragoSessionPreparingStmt
     public void analyzeSql(
         SqlNode sqlNode,
@@ -949,9 +1057,15 @@ public class FarragoPreparingStmt
         getSession().getPersonality().registerRelMetadataProviders(
             relMetadataProvider);
 
-        // Add caching on top of all that.
+        // Add caching on top of all that. Results about tables are shared
+        // with later statements until the tables' statistics change.
         CachingRelMetadataProvider cacheProvider =
-            new CachingRelMetadataProvider(relMetadataProvider, planner);
+            new CachingRelMetadataProvider(
+                relMetadataProvider,
+                planner,
+                CachingRelMetadataProvider.DEFAULT_MAX_ENTRIES,
+                SharedRelMetadataCache.instance(),
+                new StatisticsVersioner());
 
         // Put the planner at the head of its own chain before all the rest.
         // It's a bad idea to cache the planner's results.
@@ -1418,6 +1532,19 @@ public class FarragoPreparingStmt
             }
         }
 
+        // The contents of a materialized view may only be changed by
+        // refreshing it (or by rebuilding its table).
+        if ((action != PrivilegedActionEnum.SELECT)
+            && FarragoCatalogUtil.isMaterializedView(getRepos(), table)
+            && !getSession().isMaterializedViewRefresh()
+            && !getSession().isReentrantAlterTableRebuild()
+            && !getSession().isReentrantAlterTableAddColumn())
+        {
+            throw FarragoResource.instance()
+            .ValidatorDmlOnMaterializedView.ex(
+                getRepos().getLocalizedObjectName(table));
+        }
+
         // If the session has a label setting, only allow access to local
         // tables that were created prior to when the label was created.
         Timestamp labelTimestamp =
@@ -1572,6 +1699,13 @@ public class FarragoPreparingStmt
                 stmtValidator.requestPrivilege(
                     supplier,
                     action.toString());
+                Set<String> actions =
+                    requestedPrivileges.get(supplier.refMofId());
+                if (actions == null) {
+                    actions = new HashSet<String>();
+                    requestedPrivileges.put(supplier.refMofId(), actions);
+                }
+                actions.add(action.toString());
             }
         }
         allDependencies.add(supplier);
@@ -1599,6 +1733,27 @@ public class FarragoPreparingStmt
         iterCalcTypeMap.put(iterCalcName, rowType);
     }
 
+    /**
+     * Registers a Fennel stream read by generated code. The name and id of a
+     * stream differ each time a statement is prepared, so generated code
+     * refers to the stream by ordinal instead, and looks up its name and id
+     * at execution time; see {@link
+     * net.sf.farrago.runtime.FarragoRuntimeContext#getFennelStreamName}.
+     * This keeps the generated code the same from one preparation to the
+     * next, so that its bytecode can be stored.
+     *
+     * @param streamName global name of the stream
+     * @param streamId id of the stream, unique within the statement
+     *
+     * @return ordinal of the stream
+     */
+    public int registerFennelStream(String streamName, int streamId)
+    {
+        fennelStreamNames.add(streamName);
+        fennelStreamIds.add(streamId);
+        return fennelStreamNames.size() - 1;
+    }
+
     public Variable getConnectionVariable()
     {
         return new Variable(connectionVariable);
@@ -1617,6 +1772,18 @@ public class FarragoPreparingStmt
         return getRepos().getCurrentConfig().getJavaCompilerClassName();
     }
 
+    // override OJPreparingStmt
+    protected JavaCompiler createCompiler()
+    {
+        JavaCompiler compiler = super.createCompiler();
+        FarragoByteCodeStore byteCodeStore = FarragoByteCodeStore.instance();
+        if (byteCodeStore != null) {
+            compiler.getArgs().setByteCodeCache(
+                new StoredByteCodeCache(byteCodeStore));
+        }
+        return compiler;
+    }
+
     // override OJPreparingStmt
     protected boolean shouldSetConnectionInfo()
     {
@@ -1720,6 +1887,87 @@ public class FarragoPreparingStmt
         }
     }
 
+    /**
+     * Identifies the version of a catalog table's statistics, for sharing
+     * metadata results between statements. The version changes when the table
+     * is analyzed or its rowcounts are updated by DML, and depends on the
+     * session's label and personality, since both affect the statistics which
+     * are seen.
+     */
+    private class StatisticsVersioner
+        implements CachingRelMetadataProvider.TableVersioner
+    {
+        // implement TableVersioner
+        public Object getTableVersion(RelOptTable table)
+        {
+            if (!(table instanceof FarragoQueryColumnSet)) {
+                return null;
+            }
+            CwmNamedColumnSet cwmColumnSet =
+                ((FarragoQueryColumnSet) table).getCwmColumnSet();
+            if (!(cwmColumnSet instanceof FemAbstractColumnSet)) {
+                return null;
+            }
+            FemAbstractColumnSet columnSet =
+                (FemAbstractColumnSet) cwmColumnSet;
+            return Arrays.asList(
+                columnSet.refMofId(),
+                columnSet.getRowCount(),
+                columnSet.getDeletedRowCount(),
+                columnSet.getLastAnalyzeRowCount(),
+                columnSet.getAnalyzeTime(),
+                getSession().getSessionLabelCreationTimestamp(),
+                getSession().getPersonality().getClass().getName());
+        }
+    }
+
+    /**
+     * Cache which lets the compiler load the bytecode for this statement from
+     * a {@link FarragoByteCodeStore}, keyed by the generated source and the
+     * timestamps of the objects the statement depends on.
+     */
+    private class StoredByteCodeCache
+        implements ByteCodeCache
+    {
+        private final FarragoByteCodeStore byteCodeStore;
+
+        StoredByteCodeCache(FarragoByteCodeStore byteCodeStore)
+        {
+            this.byteCodeStore = byteCodeStore;
+        }
+
+        // implement ByteCodeCache
+        public Map<String, byte []> get(String fullClassName, String source)
+        {
+            Map<String, byte []> byteCodes =
+                byteCodeStore.get(
+                    byteCodeStore.makeKey(
+                        fullClassName,
+                        source,
+                        getReferencedObjectTimestampMap()),
+                    fullClassName);
+            if ((byteCodes != null) && (timingTracer != null)) {
+                timingTracer.traceTime("loaded stored bytecode");
+            }
+            return byteCodes;
+        }
+
+        // implement ByteCodeCache
+        public void put(
+            String fullClassName,
+            String source,
+            Map<String, byte []> byteCodes)
+        {
+            byteCodeStore.put(
+                byteCodeStore.makeKey(
+                    fullClassName,
+                    source,
+                    getReferencedObjectTimestampMap()),
+                fullClassName,
+                byteCodes);
+        }
+    }
+
     /**
      * Transform which permutes the columns of an input table, applying casts
      * amd renaming columns if necessary, to make the output rowtype match the
@@ -19,9 +19,11 @@
 package net.sf.farrago.query;
 
 import java.util.*;
+import java.util.logging.*;
 import java.util.regex.*;
 
 import net.sf.farrago.session.*;
+import net.sf.farrago.trace.*;
 
 import org.eigenbase.rel.*;
 import org.eigenbase.relopt.*;
@@ -38,7 +40,9 @@ import org.eigenbase.util.*;
  *
  * <ul>
  * <li>Constant reduction, which evaluates constant subtrees, replacing them
- * with a corresponding RexLiteral
+ * with a corresponding RexLiteral. Subtrees are evaluated by a {@link
+ * RexInterpreter} if possible, and otherwise by executing a reentrant
+ * statement.
  * <li>Removal of redundant casts, which occurs when the argument into the cast
  * is the same as the type of the resulting cast expression
  * </ul>
@@ -51,6 +55,9 @@ public abstract class FarragoReduceExpressionsRule
 {
     //~ Static fields/initializers ---------------------------------------------
 
+    private static final Logger tracer =
+        FarragoTrace.getClassTracer(FarragoReduceExpressionsRule.class);
+
     /**
      * Regular expression which matches the description of all instances of this
      * rule and {@link net.sf.farrago.query.FarragoReduceValuesRule} also. Use
@@ -363,18 +370,44 @@ public abstract class FarragoReduceExpressionsRule
             return true;
         }
 
-        // Compute the values they reduce to.
+        // Compute the values they reduce to. Most expressions can be
+        // evaluated in place; only those the interpreter cannot handle (such
+        // as calls to user-defined routines) need a reentrant statement,
+        // which has to generate and compile code for them.
         List<RexNode> reducedValues = new ArrayList<RexNode>();
-        ReentrantValuesStmt reentrantStmt =
-            new ReentrantValuesStmt(
-                preparingStmt.getRootStmtContext(),
-                rexBuilder,
-                constExps,
-                reducedValues);
-        FarragoSession session = getSession(rel);
-        reentrantStmt.execute(session, true);
-        if (reentrantStmt.failed) {
-            return false;
+        List<RexNode> reentrantExps = new ArrayList<RexNode>();
+        RexInterpreter interpreter = new RexInterpreter(rexBuilder);
+        for (RexNode exp : constExps) {
+            RexNode reducedValue = interpreter.evaluate(exp);
+            if (reducedValue == null) {
+                reentrantExps.add(exp);
+            }
+            reducedValues.add(reducedValue);
+        }
+        if (tracer.isLoggable(Level.FINE)) {
+            tracer.fine(
+                "interpreted " + (constExps.size() - reentrantExps.size())
+                + " of " + constExps.size() + " constant expressions");
+        }
+        if (!reentrantExps.isEmpty()) {
+            List<RexNode> reentrantValues = new ArrayList<RexNode>();
+            ReentrantValuesStmt reentrantStmt =
+                new ReentrantValuesStmt(
+                    preparingStmt.getRootStmtContext(),
+                    rexBuilder,
+                    reentrantExps,
+                    reentrantValues);
+            FarragoSession session = getSession(rel);
+            reentrantStmt.execute(session, true);
+            if (reentrantStmt.failed) {
+                return false;
+            }
+            Iterator<RexNode> reentrantIter = reentrantValues.iterator();
+            for (int i = 0; i < reducedValues.size(); i++) {
+                if (reducedValues.get(i) == null) {
+                    reducedValues.set(i, reentrantIter.next());
+                }
+            }
         }
 
         // For ProjectRel, we have to be sure to preserve the result
@@ -548,6 +548,15 @@ public class FarragoRelImplementor
         return preparingStmt.getConnectionVariable();
     }
 
+    // override JavaRelImplementor
+    public Expression getDegreeOfParallelismExpression()
+    {
+        return new MethodCall(
+            getConnectionVariable(),
+            "getDegreeOfParallelism",
+            new ExpressionList());
+    }
+
     // override JavaRelImplementor
     protected RexToOJTranslator newTranslator(RelNode rel)
     {
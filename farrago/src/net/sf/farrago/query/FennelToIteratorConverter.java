@@ -198,6 +198,30 @@ public class FennelToIteratorConverter
         String rootStreamName = rootStream.getName();
         int rootStreamId = getId();
 
+        // The stream's name and id differ each time the statement is
+        // prepared; refer to the stream by ordinal instead, so that the
+        // generated code doesn't.
+        Expression rootStreamNameExp;
+        Expression rootStreamIdExp;
+        if (implementor instanceof FarragoRelImplementor) {
+            int ordinal =
+                ((FarragoRelImplementor) implementor).getPreparingStmt()
+                .registerFennelStream(rootStreamName, rootStreamId);
+            rootStreamNameExp =
+                new MethodCall(
+                    connectionVariable,
+                    "getFennelStreamName",
+                    new ExpressionList(Literal.makeLiteral(ordinal)));
+            rootStreamIdExp =
+                new MethodCall(
+                    connectionVariable,
+                    "getFennelStreamId",
+                    new ExpressionList(Literal.makeLiteral(ordinal)));
+        } else {
+            rootStreamNameExp = Literal.makeLiteral(rootStreamName);
+            rootStreamIdExp = Literal.makeLiteral(rootStreamId);
+        }
+
         FemTupleDescriptor tupleDesc =
             FennelRelUtil.createTupleDescriptorFromRowType(
                 repos,
@@ -259,6 +283,11 @@ public class FennelToIteratorConverter
         // code with help from the tuple accessor
         RelDataTypeField [] fields = rowType.getFields();
         Variable varPrevEndOffset = null;
+
+        // If no field is extracted from byteArray, the reader copies
+        // everything it needs out of the buffer, so the iterator can read
+        // tuples in place from Fennel.
+        boolean canReadDirect = true;
         assert (fields.length == tupleAccessor.getAttrAccessor().size());
         int i = -1;
         for (
@@ -349,6 +378,7 @@ public class FennelToIteratorConverter
                                 expStartOffset,
                                 varEndOffset))));
                 varPrevEndOffset = varEndOffset;
+                canReadDirect = false;
             } else {
                 // fixed-width CHARACTER or BINARY
                 Expression expStartOffset =
@@ -376,6 +406,7 @@ public class FennelToIteratorConverter
                                 new FieldAccess("byteArray"),
                                 expStartOffset,
                                 expEndOffset))));
+                canReadDirect = false;
             }
         }
 
@@ -463,8 +494,9 @@ public class FennelToIteratorConverter
             // FennelTupleReader to unmarshal
             ExpressionList argList = new ExpressionList();
             argList.add(newTupleReaderExp);
-            argList.add(Literal.makeLiteral(rootStreamName));
-            argList.add(Literal.makeLiteral(rootStreamId));
+            argList.add(rootStreamNameExp);
+            argList.add(rootStreamIdExp);
+            argList.add(Literal.makeLiteral(canReadDirect));
             argList.add(childrenExp);
 
             return new MethodCall(
@@ -502,10 +534,11 @@ public class FennelToIteratorConverter
             argList.add(newTupleReaderExp);
             argList.add(
                 new Variable(IteratorToFennelConverter.STREAM_NAME_VAR_NAME));
-            argList.add(Literal.makeLiteral(rootStreamName));
+            argList.add(rootStreamNameExp);
             argList.add(
                 new Variable(
                     IteratorToFennelConverter.INPUT_BINDINGS_VAR_NAME));
+            argList.add(Literal.makeLiteral(canReadDirect));
             argList.add(childrenExp);
 
             return new MethodCall(
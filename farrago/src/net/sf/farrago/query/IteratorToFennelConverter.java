@@ -159,6 +159,11 @@ public class IteratorToFennelConverter
                 stmt.getFennelDbHandle(),
                 tupleDesc);
 
+        // The generated writer computes the marshalled length of each tuple
+        // before writing it, so that FennelTupleWriter can check for room
+        // without relying on buffer exceptions, and then writes the tuple in
+        // place at an offset in the caller's buffer.
+
         // we're going to build up a long method body
         StatementList methodBody = new StatementList();
 
@@ -180,8 +185,8 @@ public class IteratorToFennelConverter
                         new FieldAccess(varTuple.toString()),
                         "marshalBitFields",
                         new ExpressionList(
-                            new FieldAccess("sliceBuffer"),
-                            Literal.makeLiteral(
+                            new FieldAccess("byteBuffer"),
+                            makeOffsetExp(
                                 tupleAccessor.getBitFieldOffset())))));
         }
 
@@ -190,6 +195,11 @@ public class IteratorToFennelConverter
         RelDataTypeField [] fields = rowType.getFields();
         assert (fields.length == tupleAccessor.getAttrAccessor().size());
         boolean variableWidth = false;
+
+        // marshalled length: the start of the variable-width data, plus the
+        // length of each variable-width field
+        Expression lengthExp =
+            Literal.makeLiteral(tupleAccessor.getMinByteLength());
         int i = -1;
         for (
             FemTupleAttrAccessor attrAccessor : tupleAccessor.getAttrAccessor())
@@ -214,35 +224,45 @@ public class IteratorToFennelConverter
                 String byteBufferAccessorName = method.getName();
 
                 // this field is marshalled to a fixed offset relative
-                // to the sliceBuffer start
+                // to the tuple start
                 fieldExp = factory.getValueAccessExpression(type, fieldExp);
 
                 // REVIEW:  skip write if field is null?
                 methodBody.add(
                     new ExpressionStatement(
                         new MethodCall(
-                            new FieldAccess("sliceBuffer"),
+                            new FieldAccess("byteBuffer"),
                             byteBufferAccessorName,
                             new ExpressionList(
-                                Literal.makeLiteral(
-                                    attrAccessor.getFixedOffset()),
+                                makeOffsetExp(attrAccessor.getFixedOffset()),
                                 fieldExp))));
             } else if (SqlTypeUtil.isBoundedVariableWidth(type)) {
-                variableWidth = true;
                 if (attrAccessor.getFixedOffset() != -1) {
                     // first variable-width field:  position to the start of the
                     // variable width data
+                    assert (!variableWidth);
                     methodBody.add(
                         new ExpressionStatement(
                             new MethodCall(
-                                new FieldAccess("sliceBuffer"),
+                                new FieldAccess("byteBuffer"),
                                 "position",
                                 new ExpressionList(
-                                    Literal.makeLiteral(
+                                    makeOffsetExp(
                                         attrAccessor.getFixedOffset())))));
+                    lengthExp =
+                        Literal.makeLiteral(attrAccessor.getFixedOffset());
                 } else {
                     // use position set by previous variable-width field
                 }
+                variableWidth = true;
+                lengthExp =
+                    new BinaryExpression(
+                        lengthExp,
+                        BinaryExpression.PLUS,
+                        new MethodCall(
+                            fieldExp,
+                            "getWriteByteCount",
+                            new ExpressionList()));
 
                 // write data
                 methodBody.add(
@@ -251,26 +271,29 @@ public class IteratorToFennelConverter
                             fieldExp,
                             "writeToBuffer",
                             new ExpressionList(
-                                new FieldAccess("sliceBuffer")))));
+                                new FieldAccess("byteBuffer")))));
 
-                // position after data has been written is the end
-                // offset for this field
+                // position after data has been written, relative to the
+                // tuple start, is the end offset for this field
                 Expression currPosExp =
                     new CastExpression(
                         OJSystem.SHORT,
-                        new MethodCall(
-                            new FieldAccess("sliceBuffer"),
-                            "position",
-                            new ExpressionList()));
+                        new BinaryExpression(
+                            new MethodCall(
+                                new FieldAccess("byteBuffer"),
+                                "position",
+                                new ExpressionList()),
+                            BinaryExpression.MINUS,
+                            new FieldAccess("offset")));
 
                 // write the end indirect offset
                 methodBody.add(
                     new ExpressionStatement(
                         new MethodCall(
-                            new FieldAccess("sliceBuffer"),
+                            new FieldAccess("byteBuffer"),
                             "putShort",
                             new ExpressionList(
-                                Literal.makeLiteral(
+                                makeOffsetExp(
                                     attrAccessor.getEndIndirectOffset()),
                                 currPosExp))));
             } else {
@@ -282,8 +305,8 @@ public class IteratorToFennelConverter
                             fieldExp,
                             "writeToBufferAbsolute",
                             new ExpressionList(
-                                new FieldAccess("sliceBuffer"),
-                                Literal.makeLiteral(
+                                new FieldAccess("byteBuffer"),
+                                makeOffsetExp(
                                     attrAccessor.getFixedOffset())))));
             }
         }
@@ -293,20 +316,25 @@ public class IteratorToFennelConverter
             methodBody.add(
                 new ExpressionStatement(
                     new MethodCall(
-                        new FieldAccess("sliceBuffer"),
+                        new FieldAccess("byteBuffer"),
                         "position",
                         new ExpressionList(
-                            Literal.makeLiteral(
+                            makeOffsetExp(
                                 tupleAccessor.getMinByteLength())))));
         }
 
-        // method parameter list matches FennelTupleWriter.marshalTupleOrThrow
+        // method parameter list matches FennelTupleWriter.marshalTupleAt
         ParameterList paramList = new ParameterList();
         paramList.add(
             new Parameter(
                 new ModifierList(0),
                 OJUtil.typeNameForClass(ByteBuffer.class),
-                "sliceBuffer"));
+                "byteBuffer"));
+        paramList.add(
+            new Parameter(
+                new ModifierList(0),
+                TypeName.forOJClass(OJSystem.INT),
+                "offset"));
         paramList.add(
             new Parameter(
                 new ModifierList(0),
@@ -318,16 +346,95 @@ public class IteratorToFennelConverter
             new MethodDeclaration(
                 new ModifierList(ModifierList.PROTECTED),
                 TypeName.forOJClass(OJSystem.VOID),
-                "marshalTupleOrThrow",
+                "marshalTupleAt",
                 paramList,
                 null,
                 methodBody);
 
+        // generate FennelTupleWriter.getMarshalledLength
+        StatementList lengthBody = new StatementList();
+        if (variableWidth) {
+            lengthBody.add(
+                new VariableDeclaration(
+                    TypeName.forOJClass(ojClass),
+                    varTuple.toString(),
+                    new CastExpression(
+                        TypeName.forOJClass(ojClass),
+                        new FieldAccess("object"))));
+        }
+        lengthBody.add(new ReturnStatement(lengthExp));
+        ParameterList lengthParamList = new ParameterList();
+        lengthParamList.add(
+            new Parameter(
+                new ModifierList(0),
+                TypeName.forOJClass(OJSystem.OBJECT),
+                "object"));
+        MemberDeclaration lengthMethodDecl =
+            new MethodDeclaration(
+                new ModifierList(ModifierList.PROTECTED),
+                TypeName.forOJClass(OJSystem.INT),
+                "getMarshalledLength",
+                lengthParamList,
+                null,
+                lengthBody);
+
+        // generate FennelTupleWriter.marshalTupleOrThrow; it is not called,
+        // since the length is always known, but writes the tuple at the
+        // start of the slice
+        ParameterList sliceParamList = new ParameterList();
+        sliceParamList.add(
+            new Parameter(
+                new ModifierList(0),
+                OJUtil.typeNameForClass(ByteBuffer.class),
+                "sliceBuffer"));
+        sliceParamList.add(
+            new Parameter(
+                new ModifierList(0),
+                TypeName.forOJClass(OJSystem.OBJECT),
+                "object"));
+        StatementList sliceBody = new StatementList();
+        sliceBody.add(
+            new ExpressionStatement(
+                new MethodCall(
+                    "marshalTupleAt",
+                    new ExpressionList(
+                        new FieldAccess("sliceBuffer"),
+                        Literal.makeLiteral(0),
+                        new FieldAccess("object")))));
+        MemberDeclaration sliceMethodDecl =
+            new MethodDeclaration(
+                new ModifierList(ModifierList.PROTECTED),
+                TypeName.forOJClass(OJSystem.VOID),
+                "marshalTupleOrThrow",
+                sliceParamList,
+                null,
+                sliceBody);
+
         // generate code to allocate instance of anonymous class defined above
+        MemberDeclarationList memberDeclList = new MemberDeclarationList();
+        memberDeclList.add(lengthMethodDecl);
+        memberDeclList.add(methodDecl);
+        memberDeclList.add(sliceMethodDecl);
         return new AllocationExpression(
             OJUtil.typeNameForClass(FennelTupleWriter.class),
             new ExpressionList(),
-            new MemberDeclarationList(methodDecl));
+            memberDeclList);
+    }
+
+    /**
+     * Generates an offset relative to the start of the tuple being marshalled
+     * by a generated {@link FennelTupleWriter#marshalTupleAt}.
+     *
+     * @param tupleOffset offset within the tuple
+     *
+     * @return expression for the offset within the buffer
+     */
+    private static Expression makeOffsetExp(int tupleOffset)
+    {
+        return new BinaryExpression(
+            new FieldAccess("offset"),
+            BinaryExpression.PLUS,
+            Literal.makeLiteral(tupleOffset));
     }
 
     private static ClassDeclaration generateTransformer(
@@ -0,0 +1,92 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.runtime;
+
+import org.eigenbase.runtime.*;
+import org.eigenbase.util.*;
+
+
+/**
+ * FarragoCompiledColumnGetter is the superclass of column getters generated
+ * at prepare time for a particular row class (see {@link
+ * net.sf.farrago.query.FarragoColumnGetterGenerator}). Generated subclasses
+ * read fields directly rather than through <code>java.lang.reflect</code>,
+ * and read primitive columns without boxing.
+ *
+ * <p>Instances are stateless, so one instance is shared by all executions of
+ * a cached statement.
+ *
+ * @version $Id$
+ */
+public abstract class FarragoCompiledColumnGetter
+    implements AbstractIterResultSet.PrimitiveColumnGetter
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final String [] columnNames;
+    private final int [] primitiveKinds;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a FarragoCompiledColumnGetter. (Called from generated code.)
+     *
+     * @param columnNames names of the row class's fields
+     * @param primitiveKinds for each column, one of the <code>KIND_</code>
+     * constants in {@link AbstractIterResultSet.PrimitiveColumnGetter}
+     */
+    protected FarragoCompiledColumnGetter(
+        String [] columnNames,
+        int [] primitiveKinds)
+    {
+        assert columnNames.length == primitiveKinds.length;
+        this.columnNames = columnNames;
+        this.primitiveKinds = primitiveKinds;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement ColumnGetter
+    public String [] getColumnNames()
+    {
+        return columnNames;
+    }
+
+    // implement PrimitiveColumnGetter
+    public int getPrimitiveKind(int columnIndex)
+    {
+        return primitiveKinds[columnIndex - 1];
+    }
+
+    /**
+     * Reports a column ordinal for which a generated accessor has no case.
+     *
+     * @param columnIndex 1-based column ordinal
+     *
+     * @return an error to throw
+     */
+    protected Error newBadColumn(int columnIndex)
+    {
+        return Util.newInternal(
+            "no accessor for column " + columnIndex + " of "
+            + columnNames.length + " in " + getClass().getName());
+    }
+}
+
+// End FarragoCompiledColumnGetter.java
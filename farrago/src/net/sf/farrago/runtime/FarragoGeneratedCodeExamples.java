@@ -90,11 +90,25 @@ public class FarragoGeneratedCodeExamples
 
                 // tuple writer generated by IteratorToFennelConverter
                 new FennelTupleWriter() {
+                    protected int getMarshalledLength(Object object)
+                    {
+                        // ...
+                        return 0;
+                    }
+
+                    protected void marshalTupleAt(
+                        ByteBuffer byteBuffer,
+                        int offset,
+                        Object object)
+                    {
+                        // ...
+                    }
+
                     protected void marshalTupleOrThrow(
                         ByteBuffer sliceBuffer,
                         Object object)
                     {
-                        // ...
+                        marshalTupleAt(sliceBuffer, 0, object);
                     }
                 },
 
@@ -117,6 +131,7 @@ public class FarragoGeneratedCodeExamples
                     farragoTransformStreamName,
                     "SomeExecStream#1:100", // the input ExecStream's name
                     inputBindings,
+                    true, // whether the reader can read in place
                     null));
         }
     }
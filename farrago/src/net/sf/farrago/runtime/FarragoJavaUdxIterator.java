@@ -18,20 +18,16 @@
 */
 package net.sf.farrago.runtime;
 
-import java.lang.reflect.*;
-
-import java.math.*;
-
 import java.sql.*;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.logging.*;
 
-import net.sf.farrago.jdbc.param.*;
+import net.sf.farrago.defimpl.*;
 import net.sf.farrago.session.*;
 import net.sf.farrago.trace.*;
-import net.sf.farrago.type.*;
 import net.sf.farrago.type.runtime.*;
 
 import org.eigenbase.reltype.*;
@@ -44,6 +40,13 @@ import org.eigenbase.util.*;
  * supports both the blocking interface {@link Iterator} and the non-blocking
  * {@link TupleIter}.
  *
+ * <p>The UDX runs in its own thread, and hands rows to the consumer through a
+ * queue. Rows are handed over in batches, so that the cost of synchronizing
+ * the two threads is paid once per batch rather than once per row. A batch is
+ * handed over early if it is only partially filled but the consumer is
+ * waiting for it. With a batch size of 1 (the default), every row is handed
+ * over as soon as the UDX produces it.
+ *
  * @author John V. Sichi
  * @version $Id$
  */
@@ -54,27 +57,64 @@ public abstract class FarragoJavaUdxIterator
 {
     //~ Static fields/initializers ---------------------------------------------
 
+    /**
+     * Approximate number of rows which can be queued between the UDX thread
+     * and the consumer.
+     */
     private static final int QUEUE_ARRAY_SIZE = 100;
     protected static final Logger tracer =
         FarragoTrace.getRuntimeContextTracer();
 
+    private static final AtomicLong batchCount = new AtomicLong();
+    private static final AtomicLong batchRowCount = new AtomicLong();
+    private static final AtomicLong producerWaitNanos = new AtomicLong();
+    private static final AtomicLong consumerWaitNanos = new AtomicLong();
+
     //~ Instance fields --------------------------------------------------------
 
-    private final FarragoSyntheticObject [] rowObjs;
+    private final RowBatch [] batches;
 
-    private final PreparedStatement resultInserter;
+    private final FarragoUdxResultInserter resultInserter;
 
     // protected because needed by generated subclasses
     protected final FarragoSessionRuntimeContext runtimeContext;
 
+    private final int batchSize;
+
+    /**
+     * Index of the batch being filled by the UDX thread.
+     */
+    private int iBatch;
+
+    /**
+     * Index within the batch being filled of the row being written by the UDX
+     * thread.
+     */
     private int iRow;
+
+    /**
+     * Batch being read by the consumer, or null if it must take the next one
+     * from the queue.
+     */
+    private RowBatch consumerBatch;
+
+    /**
+     * Index within {@link #consumerBatch} of the next row to be returned.
+     */
+    private int consumerRow;
+
+    /**
+     * Set while the consumer is waiting for a batch, to tell the UDX thread
+     * to hand over what it has so far.
+     */
+    private volatile boolean consumerWaiting;
+
     private long defaultTimeout = Long.MAX_VALUE;
     private boolean timeoutAsUnderflow = true;
     private boolean didUnderflow = false;
     private boolean stopThread;
 
     private CountDownLatch latch;
-    private final ParameterMetaData parameterMetaData;
     private List<TupleIter> restartableInputs;
     private List<MoreDataListener> moreDataListeners;
 
@@ -85,30 +125,69 @@ public abstract class FarragoJavaUdxIterator
         Class rowClass,
         RelDataType rowType)
     {
-        super(new ArrayBlockingQueue(QUEUE_ARRAY_SIZE));
+        this(
+            runtimeContext,
+            rowClass,
+            rowType,
+            new FarragoUdxResultInserter());
+    }
+
+    /**
+     * Creates an iterator whose UDX writes rows through a given inserter. The
+     * batch size is read from the session variable {@link
+     * FarragoDefaultSessionPersonality#UDX_BATCH_SIZE} each time the
+     * statement is executed, so that a cached plan follows the session's
+     * current setting.
+     *
+     * @param runtimeContext runtime context
+     * @param rowClass class of rows produced by the UDX
+     * @param rowType type of rows produced by the UDX
+     * @param resultInserter inserter, typically generated to match rowClass;
+     * must not have been used by another iterator
+     */
+    protected FarragoJavaUdxIterator(
+        FarragoSessionRuntimeContext runtimeContext,
+        Class rowClass,
+        RelDataType rowType,
+        FarragoUdxResultInserter resultInserter)
+    {
+        this(
+            runtimeContext,
+            rowClass,
+            rowType,
+            resultInserter,
+            getBatchSize(runtimeContext));
+    }
+
+    private FarragoJavaUdxIterator(
+        FarragoSessionRuntimeContext runtimeContext,
+        Class rowClass,
+        RelDataType rowType,
+        FarragoUdxResultInserter resultInserter,
+        int batchSize)
+    {
+        super(new ArrayBlockingQueue(getQueueCapacity(batchSize)));
         this.runtimeContext = runtimeContext;
         runtimeContext.addAllocation(this);
 
-        parameterMetaData = new FarragoParameterMetaData(rowType);
-
         // NOTE jvs 16-Jan-2006: We construct a circular array with two extra
         // slots:  one for the producer thread to write into, and one for the
         // consumer thread to read from; this guarantees that we
         // never recycle a row still accessible by the consumer.
-        rowObjs = new FarragoSyntheticObject[QUEUE_ARRAY_SIZE + 2];
+        // The slots hold batches of rows rather than single rows.
+        this.batchSize = batchSize;
+        batches = new RowBatch[getQueueCapacity(batchSize) + 2];
         try {
-            for (int i = 0; i < rowObjs.length; ++i) {
-                rowObjs[i] = (FarragoSyntheticObject) rowClass.newInstance();
+            for (int i = 0; i < batches.length; ++i) {
+                batches[i] = new RowBatch(rowClass, batchSize);
             }
         } catch (Throwable ex) {
             throw Util.newInternal(ex);
         }
+        iBatch = 0;
         iRow = 0;
-        resultInserter =
-            (PreparedStatement) Proxy.newProxyInstance(
-                null,
-                new Class[] { PreparedStatement.class },
-                new PreparedStatementInvocationHandler(rowType));
+        this.resultInserter = resultInserter;
+        resultInserter.init(this, rowType);
 
         restartableInputs = new ArrayList<TupleIter>();
         moreDataListeners = new ArrayList<MoreDataListener>();
@@ -116,6 +195,68 @@ public abstract class FarragoJavaUdxIterator
 
     //~ Methods ----------------------------------------------------------------
 
+    private static int getBatchSize(
+        FarragoSessionRuntimeContext runtimeContext)
+    {
+        FarragoSession session = runtimeContext.getSession();
+        if (session == null) {
+            return 1;
+        }
+        FarragoSessionVariables sessionVariables =
+            session.getSessionVariables();
+        if (!sessionVariables.containsVariable(
+                FarragoDefaultSessionPersonality.UDX_BATCH_SIZE))
+        {
+            return 1;
+        }
+        Integer batchSize =
+            sessionVariables.getInteger(
+                FarragoDefaultSessionPersonality.UDX_BATCH_SIZE);
+        return (batchSize == null) ? 1 : Math.max(1, batchSize);
+    }
+
+    private static int getQueueCapacity(int batchSize)
+    {
+        assert (batchSize >= 1);
+        return Math.max(1, QUEUE_ARRAY_SIZE / batchSize);
+    }
+
+    /**
+     * @return number of row batches handed from UDX threads to their
+     * consumers since the server started
+     */
+    public static long getBatchCount()
+    {
+        return batchCount.get();
+    }
+
+    /**
+     * @return number of rows in the batches counted by {@link
+     * #getBatchCount}
+     */
+    public static long getBatchRowCount()
+    {
+        return batchRowCount.get();
+    }
+
+    /**
+     * @return total time in milliseconds UDX threads have spent waiting for
+     * room in a full queue
+     */
+    public static long getProducerWaitMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(producerWaitNanos.get());
+    }
+
+    /**
+     * @return total time in milliseconds consumers have spent waiting for
+     * UDX threads to hand over rows
+     */
+    public static long getConsumerWaitMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(consumerWaitNanos.get());
+    }
+
     // override QueueIterator
     public boolean hasNext()
     {
@@ -125,7 +266,17 @@ public abstract class FarragoJavaUdxIterator
             // including subclasses; also the Fennel plan needs to be loaded.
             startWithLatch();
         }
-        return super.hasNext();
+        if (hasConsumerRow()) {
+            return true;
+        }
+        long startNanos = System.nanoTime();
+        consumerWaiting = true;
+        try {
+            return takeBatch(super.hasNext());
+        } finally {
+            consumerWaiting = false;
+            consumerWaitNanos.addAndGet(System.nanoTime() - startNanos);
+        }
     }
 
     // override QueueIterator
@@ -135,7 +286,50 @@ public abstract class FarragoJavaUdxIterator
         if (latch == null) {
             startWithLatch();
         }
-        return super.hasNext(timeout);
+        if (hasConsumerRow()) {
+            return true;
+        }
+        long startNanos = System.nanoTime();
+        consumerWaiting = true;
+        try {
+            return takeBatch(super.hasNext(timeout));
+        } finally {
+            consumerWaiting = false;
+            consumerWaitNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+    }
+
+    // override QueueIterator
+    public Object next()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return consumerBatch.rows[consumerRow++];
+    }
+
+    private boolean hasConsumerRow()
+    {
+        if (consumerBatch == null) {
+            return false;
+        }
+        if (consumerRow < consumerBatch.count) {
+            return true;
+        }
+
+        // Done with this batch; the UDX thread may now refill it.
+        consumerBatch = null;
+        return false;
+    }
+
+    private boolean takeBatch(boolean hasNext)
+    {
+        if (hasNext) {
+            consumerBatch = (RowBatch) next;
+            consumerRow = 0;
+            next = null;
+        }
+        return hasNext;
     }
 
     // implement TupleIter
@@ -247,6 +441,7 @@ public abstract class FarragoJavaUdxIterator
             }
             try {
                 executeUdx();
+                flushBatch();
             } finally {
                 if (runtimeContext.getSession() != null) {
                     runtimeContext.getSession().getRepos().endReposSession();
@@ -267,7 +462,55 @@ public abstract class FarragoJavaUdxIterator
 
     public FarragoSyntheticObject getCurrentRow()
     {
-        return rowObjs[iRow];
+        return batches[iBatch].rows[iRow];
+    }
+
+    /**
+     * Adds the current row to the batch being filled, and moves on to the next
+     * row. Called by the result inserter. The batch is passed to the consumer
+     * once it is full, or sooner if the consumer is waiting.
+     */
+    void putCurrentRow()
+    {
+        checkCancel();
+        ++iRow;
+        if ((iRow < batchSize) && !consumerWaiting) {
+            return;
+        }
+        flushBatch();
+    }
+
+    /**
+     * Passes the rows in the batch being filled to the consumer, if there are
+     * any, and moves on to the next batch.
+     */
+    private void flushBatch()
+    {
+        if (iRow == 0) {
+            return;
+        }
+        RowBatch batch = batches[iBatch];
+        batch.count = iRow;
+        if (!offer(batch, 0)) {
+            long startNanos = System.nanoTime();
+
+            // on a full pipe, timeout every second to check cancellation; we
+            // have to do it this way because the iterator above us
+            // may not get sucked dry when the cursor is closed, in which
+            // case we'll be stuck on the full pipe unless we can check
+            // for cancellation
+            while (!offer(batch, 1000)) {
+                checkCancel();
+            }
+            producerWaitNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+        batchCount.incrementAndGet();
+        batchRowCount.addAndGet(iRow);
+        iRow = 0;
+        ++iBatch;
+        if (iBatch >= batches.length) {
+            iBatch = 0;
+        }
     }
 
     // implement RestartableIterator
@@ -282,6 +525,9 @@ public abstract class FarragoJavaUdxIterator
 
         // Toss anything it was producing.
         queue.clear();
+        consumerBatch = null;
+        iBatch = 0;
+        iRow = 0;
 
         // Input cursors are currently "throwaway", but this is still
         // needed so that we correctly invoke a restart on Fennel streams.
@@ -342,293 +588,26 @@ public abstract class FarragoJavaUdxIterator
 
     //~ Inner Classes ----------------------------------------------------------
 
-    public class PreparedStatementInvocationHandler
-        extends BarfingInvocationHandler
+    /**
+     * A batch of rows handed from the UDX thread to the consumer. The count is
+     * written by the UDX thread before the batch is queued, and read by the
+     * consumer after it is dequeued, so the queue orders the accesses.
+     */
+    private static class RowBatch
     {
-        private final FarragoJdbcParamDef [] dynamicParamDefs;
-
-        PreparedStatementInvocationHandler(RelDataType paramRowType)
-        {
-            RelDataTypeField [] fields = paramRowType.getFields();
-            dynamicParamDefs = new FarragoJdbcParamDef[fields.length];
-            for (int i = 0; i < fields.length; ++i) {
-                FarragoParamFieldMetaData paramMetaData =
-                    FarragoRuntimeJdbcUtil.newParamFieldMetaData(
-                        fields[i].getType(),
-                        ParameterMetaData.parameterModeIn);
-                dynamicParamDefs[i] =
-                    FarragoJdbcParamDefFactory.instance.newParamDef(
-                        fields[i].getName(),
-                        paramMetaData,
-                        false);
-            }
-        }
-
-        // implement PreparedStatement
-        public int executeUpdate()
-            throws SQLException
-        {
-            checkCancel();
-
-            // on a full pipe, timeout every second to check cancellation; we
-            // have to do it this way because the iterator above us
-            // may not get sucked dry when the cursor is closed, in which
-            // case we'll be stuck on the full pipe unless we can check
-            // for cancellation
-            while (!offer(
-                    getCurrentRow(),
-                    1000))
-            {
-                checkCancel();
-            }
-            ++iRow;
-            if (iRow >= rowObjs.length) {
-                iRow = 0;
-            }
-            return 1;
-        }
-
-        // implement PreparedStatement
-        public ParameterMetaData getParameterMetaData()
-        {
-            return parameterMetaData;
-        }
+        final FarragoSyntheticObject [] rows;
+        int count;
 
-        // implement PreparedStatement
-        public void clearParameters()
-            throws SQLException
+        RowBatch(Class rowClass, int batchSize)
+            throws Exception
         {
-            int n = getCurrentRow().getFields().length;
-            for (int i = 0; i < n; ++i) {
-                setDynamicParam(i + 1, null, null);
+            rows = new FarragoSyntheticObject[batchSize];
+            for (int i = 0; i < batchSize; ++i) {
+                rows[i] = (FarragoSyntheticObject) rowClass.newInstance();
             }
         }
-
-        private void setDynamicParam(
-            int parameterIndex,
-            Object obj,
-            Calendar calendar)
-            throws SQLException
-        {
-            int iField = parameterIndex - 1;
-
-            // Result types are always nullable, so we should get something
-            // which is both a NullableValue and an AssignableValue. However
-            // SqlDateTimeWithoutTZ is not a NullableValue, for some reason.
-            // Hack around this for the time being, as changing
-            // SqlDateTimeWithoutTZ seems to cause unmarshalling problems.
-            Object fieldObj = getCurrentRow().getFieldValue(iField);
-
-            if (fieldObj instanceof NullableValue) {
-                NullableValue nullableValue = (NullableValue) fieldObj;
-                nullableValue.setNull(obj == null);
-            } else if (fieldObj instanceof SqlDateTimeWithoutTZ) {
-                SqlDateTimeWithoutTZ dt = (SqlDateTimeWithoutTZ) fieldObj;
-                dt.setNull(obj == null); // its own public method!
-            }
-
-            if (obj != null) {
-                AssignableValue assignableValue = (AssignableValue) fieldObj;
-
-                // Note: Calendar is an optional argument so it wouldn't
-                // make sense to pass in a null Calendar as a parameter
-                Object scrubbedValue;
-                if (calendar == null) {
-                    scrubbedValue = dynamicParamDefs[iField].scrubValue(obj);
-                } else {
-                    scrubbedValue =
-                        dynamicParamDefs[iField].scrubValue(obj, calendar);
-                }
-                assignableValue.assignFrom(scrubbedValue);
-            }
-        }
-
-        // implement PreparedStatement
-        public void setNull(
-            int parameterIndex,
-            int sqlType)
-            throws SQLException
-        {
-            setDynamicParam(parameterIndex, null, null);
-        }
-
-        // implement PreparedStatement
-        public void setBoolean(
-            int parameterIndex,
-            boolean x)
-            throws SQLException
-        {
-            setDynamicParam(
-                parameterIndex,
-                Boolean.valueOf(x),
-                null);
-        }
-
-        // implement PreparedStatement
-        public void setByte(
-            int parameterIndex,
-            byte x)
-            throws SQLException
-        {
-            setDynamicParam(
-                parameterIndex,
-                new Byte(x),
-                null);
-        }
-
-        // implement PreparedStatement
-        public void setShort(
-            int parameterIndex,
-            short x)
-            throws SQLException
-        {
-            setDynamicParam(
-                parameterIndex,
-                new Short(x),
-                null);
-        }
-
-        // implement PreparedStatement
-        public void setInt(
-            int parameterIndex,
-            int x)
-            throws SQLException
-        {
-            setDynamicParam(
-                parameterIndex,
-                new Integer(x),
-                null);
-        }
-
-        // implement PreparedStatement
-        public void setLong(
-            int parameterIndex,
-            long x)
-            throws SQLException
-        {
-            setDynamicParam(
-                parameterIndex,
-                new Long(x),
-                null);
-        }
-
-        // implement PreparedStatement
-        public void setFloat(
-            int parameterIndex,
-            float x)
-            throws SQLException
-        {
-            setDynamicParam(
-                parameterIndex,
-                new Float(x),
-                null);
-        }
-
-        // implement PreparedStatement
-        public void setDouble(
-            int parameterIndex,
-            double x)
-            throws SQLException
-        {
-            setDynamicParam(
-                parameterIndex,
-                new Double(x),
-                null);
-        }
-
-        // implement PreparedStatement
-        public void setBigDecimal(
-            int parameterIndex,
-            BigDecimal x)
-            throws SQLException
-        {
-            setDynamicParam(parameterIndex, x, null);
-        }
-
-        // implement PreparedStatement
-        public void setString(
-            int parameterIndex,
-            String x)
-            throws SQLException
-        {
-            setDynamicParam(parameterIndex, x, null);
-        }
-
-        // implement PreparedStatement
-        public void setBytes(
-            int parameterIndex,
-            byte [] x)
-            throws SQLException
-        {
-            setDynamicParam(parameterIndex, x, null);
-        }
-
-        // implement PreparedStatement
-        public void setDate(
-            int parameterIndex,
-            java.sql.Date x)
-            throws SQLException
-        {
-            setDynamicParam(parameterIndex, x, null);
-        }
-
-        // implement PreparedStatement
-        public void setDate(
-            int parameterIndex,
-            java.sql.Date x,
-            Calendar c)
-            throws SQLException
-        {
-            setDynamicParam(parameterIndex, x, c);
-        }
-
-        // implement PreparedStatement
-        public void setTime(
-            int parameterIndex,
-            Time x)
-            throws SQLException
-        {
-            setDynamicParam(parameterIndex, x, null);
-        }
-
-        // implement PreparedStatement
-        public void setTime(
-            int parameterIndex,
-            Time x,
-            Calendar c)
-            throws SQLException
-        {
-            setDynamicParam(parameterIndex, x, c);
-        }
-
-        // implement PreparedStatement
-        public void setTimestamp(
-            int parameterIndex,
-            Timestamp x)
-            throws SQLException
-        {
-            setDynamicParam(parameterIndex, x, null);
-        }
-
-        // implement PreparedStatement
-        public void setTimestamp(
-            int parameterIndex,
-            Timestamp x,
-            Calendar c)
-            throws SQLException
-        {
-            setDynamicParam(parameterIndex, x, c);
-        }
-
-        // implement PreparedStatement
-        public void setObject(
-            int parameterIndex,
-            Object x)
-            throws SQLException
-        {
-            setDynamicParam(parameterIndex, x, null);
-        }
     }
+
 }
 
 // End FarragoJavaUdxIterator.java
@@ -29,6 +29,7 @@ import java.util.logging.*;
 import javax.jmi.reflect.*;
 
 import net.sf.farrago.catalog.*;
+import net.sf.farrago.defimpl.*;
 import net.sf.farrago.fem.fennel.*;
 import net.sf.farrago.fem.med.*;
 import net.sf.farrago.fennel.*;
@@ -96,6 +97,14 @@ public class FarragoRuntimeContext
     private final Map<String, FarragoTransform> transformMap =
         new HashMap<String, FarragoTransform>();
 
+    /**
+     * Maps table MOFID to the statistics collected by any statistics taps
+     * loading that table; see {@link #newStatisticsTapTupleIter}.
+     */
+    private final Map<String, List<FarragoTableStatisticsDelta>>
+        statisticsDeltaMap =
+            new HashMap<String, List<FarragoTableStatisticsDelta>>();
+
     protected final Object [] dynamicParamValues;
     protected FennelStreamGraph streamGraph;
 
@@ -113,6 +122,8 @@ public class FarragoRuntimeContext
     private boolean isCanceled;
     protected boolean isClosed;
     private ClassLoader statementClassLoader;
+    private List<String> fennelStreamNames;
+    private List<Integer> fennelStreamIds;
     protected Map<String, RelDataType> resultSetTypeMap;
     protected long stmtId;
 
@@ -458,6 +469,22 @@ public class FarragoRuntimeContext
             session.getDatabaseMetaData());
     }
 
+    /**
+     * Called from generated code.
+     *
+     * @return the maximum number of threads which the statement may use to
+     * read independent inputs at the same time, from the session's
+     * degreeOfParallelism variable when the statement was executed
+     */
+    public int getDegreeOfParallelism()
+    {
+        Integer degreeOfParallelism =
+            sessionVariables.getInteger(
+                FarragoDefaultSessionPersonality.DEGREE_OF_PARALLELISM);
+        return (degreeOfParallelism == null) ? 1
+            : degreeOfParallelism.intValue();
+    }
+
     protected long getCurrentTime()
     {
         // NOTE jvs 25-Sept-2004:  per SQL standard, the same time
@@ -670,6 +697,65 @@ public class FarragoRuntimeContext
         return streamGraph;
     }
 
+    /**
+     * Wraps an iterator producing rows to be loaded into a table so that
+     * statistics on the rows are collected as they pass. Called from code
+     * generated by LucidDB's statistics tap when incremental statistics are
+     * enabled; the collected statistics can be retrieved with {@link
+     * #getStatisticsDelta} once execution has completed.
+     *
+     * @param tupleIter iterator producing rows to be loaded
+     * @param tableMofId MOFID of the table being loaded
+     * @param offset index of the field holding the table's first column
+     *
+     * @return tuple iterator
+     */
+    public TupleIter newStatisticsTapTupleIter(
+        TupleIter tupleIter,
+        String tableMofId,
+        int offset)
+    {
+        FarragoTableStatisticsDelta delta = new FarragoTableStatisticsDelta();
+        synchronized (statisticsDeltaMap) {
+            List<FarragoTableStatisticsDelta> deltas =
+                statisticsDeltaMap.get(tableMofId);
+            if (deltas == null) {
+                deltas = new ArrayList<FarragoTableStatisticsDelta>();
+                statisticsDeltaMap.put(tableMofId, deltas);
+            }
+            deltas.add(delta);
+        }
+        return new FarragoStatisticsTapTupleIter(tupleIter, delta, offset);
+    }
+
+    /**
+     * Retrieves the statistics collected for a table by statistics taps
+     * during execution of this statement.
+     *
+     * @param tableMofId MOFID of the table
+     *
+     * @return collected statistics, or null if the table was not tapped
+     */
+    public FarragoTableStatisticsDelta getStatisticsDelta(String tableMofId)
+    {
+        synchronized (statisticsDeltaMap) {
+            List<FarragoTableStatisticsDelta> deltas =
+                statisticsDeltaMap.get(tableMofId);
+            if (deltas == null) {
+                return null;
+            }
+            if (deltas.size() == 1) {
+                return deltas.get(0);
+            }
+            FarragoTableStatisticsDelta combined =
+                new FarragoTableStatisticsDelta();
+            for (FarragoTableStatisticsDelta delta : deltas) {
+                combined.merge(delta);
+            }
+            return combined;
+        }
+    }
+
     /**
      * Creates a FennelTupleIter for executing a plan represented as XML. This
      * is called at execution from code generated by FennelToIteratorConverter.
@@ -688,6 +774,36 @@ public class FarragoRuntimeContext
         String streamName,
         int streamId,
         Object dummies)
+    {
+        return newFennelTupleIter(
+            tupleReader,
+            streamName,
+            streamId,
+            false,
+            dummies);
+    }
+
+    /**
+     * Creates a FennelTupleIter for executing a plan represented as XML, like
+     * {@link #newFennelTupleIter(FennelTupleReader, String, int, Object)}, but
+     * allowing tuples to be read in place from Fennel's buffers.
+     *
+     * @param tupleReader object providing FennelTupleReader implementation
+     * @param streamName name of stream from which to read (globally unique)
+     * @param streamId id of stream from which to read (unique within statement)
+     * @param canReadDirect whether tupleReader can work without a byte array;
+     * see {@link FennelTupleIter}
+     * @param dummies a dummy parameter to give non-Fennel children a place to
+     * generate code
+     *
+     * @return tuple iterator
+     */
+    public TupleIter newFennelTupleIter(
+        FennelTupleReader tupleReader,
+        String streamName,
+        int streamId,
+        boolean canReadDirect,
+        Object dummies)
     {
         assert (dummies == null);
         assert (streamGraph != null);
@@ -702,7 +818,8 @@ public class FarragoRuntimeContext
                     streamGraph,
                     streamHandle,
                     repos.getCurrentConfig().getFennelConfig()
-                         .getCachePageSize());
+                         .getCachePageSize(),
+                    canReadDirect);
             registerJavaStream(streamId, iter);
             return iter;
         } finally {
@@ -736,6 +853,40 @@ public class FarragoRuntimeContext
         String inputStreamName,
         FarragoTransform.InputBinding [] inputBindings,
         Object dummies)
+    {
+        return newFennelTransformTupleIter(
+            tupleReader,
+            streamName,
+            inputStreamName,
+            inputBindings,
+            false,
+            dummies);
+    }
+
+    /**
+     * Creates a FennelTupleIter for use in Fennel's JavaTransformExecStream,
+     * like {@link #newFennelTransformTupleIter(FennelTupleReader, String,
+     * String, FarragoTransform.InputBinding[], Object)}, but allowing tuples to
+     * be read in place from Fennel's buffers.
+     *
+     * @param tupleReader object providing FennelTupleReader implementation
+     * @param streamName name of the JavaExecTransformStream we're reading on
+     * behalf of
+     * @param inputStreamName the global name of a stream to read
+     * @param canReadDirect whether tupleReader can work without a byte array;
+     * see {@link FennelTransformTupleIter}
+     * @param dummies a dummy parameter to give non-Fennel children a place to
+     * generate code
+     *
+     * @return tuple iterator
+     */
+    public TupleIter newFennelTransformTupleIter(
+        FennelTupleReader tupleReader,
+        String streamName,
+        String inputStreamName,
+        FarragoTransform.InputBinding [] inputBindings,
+        boolean canReadDirect,
+        Object dummies)
     {
         assert (dummies == null);
         assert (streamGraph != null);
@@ -769,7 +920,8 @@ public class FarragoRuntimeContext
                 streamHandle,
                 inputStreamHandle,
                 inputBinding.getOrdinal(),
-                repos.getCurrentConfig().getFennelConfig().getCachePageSize());
+                repos.getCurrentConfig().getFennelConfig().getCachePageSize(),
+                canReadDirect);
         } finally {
             txn.commit();
         }
@@ -1103,6 +1255,41 @@ public class FarragoRuntimeContext
         this.statementClassLoader = statementClassLoader;
     }
 
+    // implement FarragoSessionRuntimeContext
+    public void setFennelStreams(
+        List<String> streamNames,
+        List<Integer> streamIds)
+    {
+        this.fennelStreamNames = streamNames;
+        this.fennelStreamIds = streamIds;
+    }
+
+    /**
+     * Returns the global name of a Fennel stream which generated code reads.
+     * Called at execution from code generated by FennelToIteratorConverter.
+     *
+     * @param ordinal ordinal of the stream within the statement
+     *
+     * @return global stream name
+     */
+    public String getFennelStreamName(int ordinal)
+    {
+        return fennelStreamNames.get(ordinal);
+    }
+
+    /**
+     * Returns the id of a Fennel stream which generated code reads. Called at
+     * execution from code generated by FennelToIteratorConverter.
+     *
+     * @param ordinal ordinal of the stream within the statement
+     *
+     * @return stream id, unique within the statement
+     */
+    public int getFennelStreamId(int ordinal)
+    {
+        return fennelStreamIds.get(ordinal);
+    }
+
     public Class statementClassForName(String statementClassName)
     {
         try {
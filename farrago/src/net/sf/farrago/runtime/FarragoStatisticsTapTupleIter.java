@@ -0,0 +1,86 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.runtime;
+
+import net.sf.farrago.catalog.*;
+import net.sf.farrago.type.runtime.*;
+
+import org.eigenbase.runtime.*;
+
+
+/**
+ * FarragoStatisticsTapTupleIter passes rows through unchanged, adding each one
+ * to a {@link FarragoTableStatisticsDelta} on the way. It is placed in front
+ * of a table modification so that the table's statistics can be maintained
+ * when the statement commits.
+ *
+ * @see FarragoRuntimeContext#newStatisticsTapTupleIter
+ */
+public class FarragoStatisticsTapTupleIter
+    extends CalcTupleIter
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final FarragoTableStatisticsDelta delta;
+
+    private final int offset;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a FarragoStatisticsTapTupleIter.
+     *
+     * @param inputIterator iterator producing rows to be loaded
+     * @param delta delta to add the rows to
+     * @param offset index of the field holding the table's first column; any
+     * fields before it (e.g. a target row id) are ignored
+     */
+    public FarragoStatisticsTapTupleIter(
+        TupleIter inputIterator,
+        FarragoTableStatisticsDelta delta,
+        int offset)
+    {
+        super(inputIterator);
+        this.delta = delta;
+        this.offset = offset;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement TupleIter
+    public Object fetchNext()
+    {
+        Object row = inputIterator.fetchNext();
+        if (!(row instanceof NoDataReason)) {
+            delta.addRow(
+                ((FarragoSyntheticObject) row).getAttributes(),
+                offset);
+        }
+        return row;
+    }
+
+    // override CalcTupleIter
+    public void restart()
+    {
+        delta.clear();
+        super.restart();
+    }
+}
+
+// End FarragoStatisticsTapTupleIter.java
@@ -56,6 +56,12 @@ public class FarragoTupleIterResultSet
     private final RelDataType rowType;
     private final List<List<String>> fieldOrigins;
 
+    /**
+     * Maps column names to 1-based ordinals; built on first use by {@link
+     * #findColumn}.
+     */
+    private Map<String, Integer> columnOrdinalMap;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -205,6 +211,28 @@ public class FarragoTupleIterResultSet
         return new FarragoResultSetMetaData(rowType, fieldOrigins);
     }
 
+    // override AbstractResultSet
+    public int findColumn(String columnName)
+        throws SQLException
+    {
+        if (columnOrdinalMap == null) {
+            RelDataTypeField [] fields = rowType.getFields();
+            Map<String, Integer> map = new HashMap<String, Integer>();
+
+            // Iterate backwards so that the first of any duplicate names
+            // wins, as in the linear search this replaces.
+            for (int i = fields.length - 1; i >= 0; i--) {
+                map.put(fields[i].getName(), i + 1);
+            }
+            columnOrdinalMap = map;
+        }
+        Integer ordinal = columnOrdinalMap.get(columnName);
+        if (ordinal == null) {
+            throw new SQLException("column '" + columnName + "' not found");
+        }
+        return ordinal;
+    }
+
     // implement ResultSet
     public void close()
         throws SQLException
@@ -0,0 +1,920 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.runtime;
+
+import java.io.*;
+
+import java.math.*;
+
+import java.net.*;
+
+import java.sql.*;
+
+import java.util.*;
+
+import net.sf.farrago.jdbc.param.*;
+import net.sf.farrago.type.*;
+import net.sf.farrago.type.runtime.*;
+
+import org.eigenbase.jdbc4.*;
+import org.eigenbase.reltype.*;
+
+
+/**
+ * FarragoUdxResultInserter is the {@link PreparedStatement} through which a
+ * Java UDX writes its output rows; see {@link
+ * FarragoJavaUdxIterator#getResultInserter}. Each call to {@link
+ * #executeUpdate()} passes the row built up by the preceding setter calls to
+ * the consumer, and starts a new row.
+ *
+ * <p>This class implements the setters generically: values are converted to
+ * the column's type by a {@link FarragoJdbcParamDef}, just as for a dynamic
+ * parameter, and columns are located via reflection. For each call to a UDX,
+ * {@link net.sf.farrago.query.FarragoJavaUdxRel} generates a subclass which
+ * knows the row class, and which overrides the setters to write primitive
+ * values straight into their fields, without reflection or boxing, when no
+ * conversion is needed; other calls are passed on to this class.
+ *
+ * <p>The generated subclass is the statement handed to the UDX, so each
+ * setter call is an ordinary virtual call. Methods which make no sense for a
+ * UDX throw {@link SQLFeatureNotSupportedException}, as JDBC prescribes for
+ * optional features a driver does not support.
+ */
+public class FarragoUdxResultInserter
+    extends Unwrappable
+    implements PreparedStatement
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private FarragoJavaUdxIterator iterator;
+
+    private ParameterMetaData parameterMetaData;
+
+    private FarragoJdbcParamDef [] dynamicParamDefs;
+
+    //~ Constructors -----------------------------------------------------------
+
+    public FarragoUdxResultInserter()
+    {
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Binds this inserter to the iterator whose rows it fills in. Called once,
+     * by the iterator's constructor.
+     *
+     * @param iterator iterator
+     * @param rowType type of the rows produced by the UDX
+     */
+    void init(FarragoJavaUdxIterator iterator, RelDataType rowType)
+    {
+        assert (this.iterator == null);
+        this.iterator = iterator;
+        parameterMetaData = new FarragoParameterMetaData(rowType);
+        RelDataTypeField [] fields = rowType.getFields();
+        dynamicParamDefs = new FarragoJdbcParamDef[fields.length];
+        for (int i = 0; i < fields.length; ++i) {
+            FarragoParamFieldMetaData paramMetaData =
+                FarragoRuntimeJdbcUtil.newParamFieldMetaData(
+                    fields[i].getType(),
+                    ParameterMetaData.parameterModeIn);
+            dynamicParamDefs[i] =
+                FarragoJdbcParamDefFactory.instance.newParamDef(
+                    fields[i].getName(),
+                    paramMetaData,
+                    false);
+        }
+    }
+
+    /**
+     * Returns the row currently being filled in. A new row is returned after
+     * each call to {@link #executeUpdate()}.
+     *
+     * @return current row
+     */
+    protected FarragoSyntheticObject getCurrentRow()
+    {
+        return iterator.getCurrentRow();
+    }
+
+    /**
+     * Returns the object holding the value of a column of the current row.
+     * Generated subclasses override this to access the field directly rather
+     * than via reflection.
+     *
+     * @param iField 0-based column ordinal
+     *
+     * @return holder object
+     */
+    protected Object getFieldHolder(int iField)
+    {
+        return getCurrentRow().getFieldValue(iField);
+    }
+
+    private void setDynamicParam(
+        int parameterIndex,
+        Object obj,
+        Calendar calendar)
+        throws SQLException
+    {
+        int iField = parameterIndex - 1;
+
+        // Result types are always nullable, so we should get something
+        // which is both a NullableValue and an AssignableValue. However
+        // SqlDateTimeWithoutTZ is not a NullableValue, for some reason.
+        // Hack around this for the time being, as changing
+        // SqlDateTimeWithoutTZ seems to cause unmarshalling problems.
+        Object fieldObj = getFieldHolder(iField);
+
+        if (fieldObj instanceof NullableValue) {
+            NullableValue nullableValue = (NullableValue) fieldObj;
+            nullableValue.setNull(obj == null);
+        } else if (fieldObj instanceof SqlDateTimeWithoutTZ) {
+            SqlDateTimeWithoutTZ dt = (SqlDateTimeWithoutTZ) fieldObj;
+            dt.setNull(obj == null); // its own public method!
+        }
+
+        if (obj != null) {
+            AssignableValue assignableValue = (AssignableValue) fieldObj;
+
+            // Note: Calendar is an optional argument so it wouldn't
+            // make sense to pass in a null Calendar as a parameter
+            Object scrubbedValue;
+            if (calendar == null) {
+                scrubbedValue = dynamicParamDefs[iField].scrubValue(obj);
+            } else {
+                scrubbedValue =
+                    dynamicParamDefs[iField].scrubValue(obj, calendar);
+            }
+            assignableValue.assignFrom(scrubbedValue);
+        }
+    }
+
+    // implement PreparedStatement
+    public int executeUpdate()
+        throws SQLException
+    {
+        iterator.putCurrentRow();
+        return 1;
+    }
+
+    // implement PreparedStatement
+    public ParameterMetaData getParameterMetaData()
+        throws SQLException
+    {
+        return parameterMetaData;
+    }
+
+    // implement PreparedStatement
+    public void clearParameters()
+        throws SQLException
+    {
+        for (int i = 0; i < dynamicParamDefs.length; ++i) {
+            setDynamicParam(i + 1, null, null);
+        }
+    }
+
+    // implement PreparedStatement
+    public void setNull(
+        int parameterIndex,
+        int sqlType)
+        throws SQLException
+    {
+        setDynamicParam(parameterIndex, null, null);
+    }
+
+    // implement PreparedStatement
+    public void setBoolean(
+        int parameterIndex,
+        boolean x)
+        throws SQLException
+    {
+        setDynamicParam(
+            parameterIndex,
+            Boolean.valueOf(x),
+            null);
+    }
+
+    // implement PreparedStatement
+    public void setByte(
+        int parameterIndex,
+        byte x)
+        throws SQLException
+    {
+        setDynamicParam(
+            parameterIndex,
+            Byte.valueOf(x),
+            null);
+    }
+
+    // implement PreparedStatement
+    public void setShort(
+        int parameterIndex,
+        short x)
+        throws SQLException
+    {
+        setDynamicParam(
+            parameterIndex,
+            Short.valueOf(x),
+            null);
+    }
+
+    // implement PreparedStatement
+    public void setInt(
+        int parameterIndex,
+        int x)
+        throws SQLException
+    {
+        setDynamicParam(
+            parameterIndex,
+            Integer.valueOf(x),
+            null);
+    }
+
+    // implement PreparedStatement
+    public void setLong(
+        int parameterIndex,
+        long x)
+        throws SQLException
+    {
+        setDynamicParam(
+            parameterIndex,
+            Long.valueOf(x),
+            null);
+    }
+
+    // implement PreparedStatement
+    public void setFloat(
+        int parameterIndex,
+        float x)
+        throws SQLException
+    {
+        setDynamicParam(
+            parameterIndex,
+            Float.valueOf(x),
+            null);
+    }
+
+    // implement PreparedStatement
+    public void setDouble(
+        int parameterIndex,
+        double x)
+        throws SQLException
+    {
+        setDynamicParam(
+            parameterIndex,
+            Double.valueOf(x),
+            null);
+    }
+
+    // implement PreparedStatement
+    public void setBigDecimal(
+        int parameterIndex,
+        BigDecimal x)
+        throws SQLException
+    {
+        setDynamicParam(parameterIndex, x, null);
+    }
+
+    // implement PreparedStatement
+    public void setString(
+        int parameterIndex,
+        String x)
+        throws SQLException
+    {
+        setDynamicParam(parameterIndex, x, null);
+    }
+
+    // implement PreparedStatement
+    public void setBytes(
+        int parameterIndex,
+        byte [] x)
+        throws SQLException
+    {
+        setDynamicParam(parameterIndex, x, null);
+    }
+
+    // implement PreparedStatement
+    public void setDate(
+        int parameterIndex,
+        java.sql.Date x)
+        throws SQLException
+    {
+        setDynamicParam(parameterIndex, x, null);
+    }
+
+    // implement PreparedStatement
+    public void setDate(
+        int parameterIndex,
+        java.sql.Date x,
+        Calendar cal)
+        throws SQLException
+    {
+        setDynamicParam(parameterIndex, x, cal);
+    }
+
+    // implement PreparedStatement
+    public void setTime(
+        int parameterIndex,
+        Time x)
+        throws SQLException
+    {
+        setDynamicParam(parameterIndex, x, null);
+    }
+
+    // implement PreparedStatement
+    public void setTime(
+        int parameterIndex,
+        Time x,
+        Calendar cal)
+        throws SQLException
+    {
+        setDynamicParam(parameterIndex, x, cal);
+    }
+
+    // implement PreparedStatement
+    public void setTimestamp(
+        int parameterIndex,
+        Timestamp x)
+        throws SQLException
+    {
+        setDynamicParam(parameterIndex, x, null);
+    }
+
+    // implement PreparedStatement
+    public void setTimestamp(
+        int parameterIndex,
+        Timestamp x,
+        Calendar cal)
+        throws SQLException
+    {
+        setDynamicParam(parameterIndex, x, cal);
+    }
+
+    // implement PreparedStatement
+    public void setObject(
+        int parameterIndex,
+        Object x)
+        throws SQLException
+    {
+        setDynamicParam(parameterIndex, x, null);
+    }
+
+    // implement PreparedStatement
+    public ResultSet executeQuery()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("executeQuery");
+    }
+
+    // implement PreparedStatement
+    public boolean execute()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("execute");
+    }
+
+    // implement PreparedStatement
+    public void addBatch()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("addBatch");
+    }
+
+    // implement PreparedStatement
+    public ResultSetMetaData getMetaData()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("getMetaData");
+    }
+
+    // implement PreparedStatement
+    public void setNull(int parameterIndex, int sqlType, String typeName)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setNull");
+    }
+
+    // implement PreparedStatement
+    public void setAsciiStream(int parameterIndex, InputStream x, int length)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setAsciiStream");
+    }
+
+    // implement PreparedStatement
+    public void setUnicodeStream(int parameterIndex, InputStream x, int length)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setUnicodeStream");
+    }
+
+    // implement PreparedStatement
+    public void setBinaryStream(int parameterIndex, InputStream x, int length)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setBinaryStream");
+    }
+
+    // implement PreparedStatement
+    public void setCharacterStream(
+        int parameterIndex,
+        Reader reader,
+        int length)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setCharacterStream");
+    }
+
+    // implement PreparedStatement
+    public void setObject(int parameterIndex, Object x, int targetSqlType)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setObject");
+    }
+
+    // implement PreparedStatement
+    public void setObject(
+        int parameterIndex,
+        Object x,
+        int targetSqlType,
+        int scale)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setObject");
+    }
+
+    // implement PreparedStatement
+    public void setRef(int parameterIndex, Ref x)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setRef");
+    }
+
+    // implement PreparedStatement
+    public void setBlob(int parameterIndex, Blob x)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setBlob");
+    }
+
+    // implement PreparedStatement
+    public void setClob(int parameterIndex, Clob x)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setClob");
+    }
+
+    // implement PreparedStatement
+    public void setArray(int parameterIndex, Array x)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setArray");
+    }
+
+    // implement PreparedStatement
+    public void setURL(int parameterIndex, URL x)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setURL");
+    }
+
+    // implement Statement
+    public ResultSet executeQuery(String sql)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("executeQuery");
+    }
+
+    // implement Statement
+    public int executeUpdate(String sql)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("executeUpdate");
+    }
+
+    // implement Statement
+    public void close()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("close");
+    }
+
+    // implement Statement
+    public int getMaxFieldSize()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("getMaxFieldSize");
+    }
+
+    // implement Statement
+    public void setMaxFieldSize(int max)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setMaxFieldSize");
+    }
+
+    // implement Statement
+    public int getMaxRows()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("getMaxRows");
+    }
+
+    // implement Statement
+    public void setMaxRows(int max)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setMaxRows");
+    }
+
+    // implement Statement
+    public void setEscapeProcessing(boolean enable)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setEscapeProcessing");
+    }
+
+    // implement Statement
+    public int getQueryTimeout()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("getQueryTimeout");
+    }
+
+    // implement Statement
+    public void setQueryTimeout(int seconds)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setQueryTimeout");
+    }
+
+    // implement Statement
+    public void cancel()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("cancel");
+    }
+
+    // implement Statement
+    public SQLWarning getWarnings()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("getWarnings");
+    }
+
+    // implement Statement
+    public void clearWarnings()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("clearWarnings");
+    }
+
+    // implement Statement
+    public void setCursorName(String name)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setCursorName");
+    }
+
+    // implement Statement
+    public boolean execute(String sql)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("execute");
+    }
+
+    // implement Statement
+    public ResultSet getResultSet()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("getResultSet");
+    }
+
+    // implement Statement
+    public int getUpdateCount()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("getUpdateCount");
+    }
+
+    // implement Statement
+    public boolean getMoreResults()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("getMoreResults");
+    }
+
+    // implement Statement
+    public void setFetchDirection(int direction)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setFetchDirection");
+    }
+
+    // implement Statement
+    public int getFetchDirection()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("getFetchDirection");
+    }
+
+    // implement Statement
+    public void setFetchSize(int rows)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setFetchSize");
+    }
+
+    // implement Statement
+    public int getFetchSize()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("getFetchSize");
+    }
+
+    // implement Statement
+    public int getResultSetConcurrency()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("getResultSetConcurrency");
+    }
+
+    // implement Statement
+    public int getResultSetType()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("getResultSetType");
+    }
+
+    // implement Statement
+    public void addBatch(String sql)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("addBatch");
+    }
+
+    // implement Statement
+    public void clearBatch()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("clearBatch");
+    }
+
+    // implement Statement
+    public int [] executeBatch()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("executeBatch");
+    }
+
+    // implement Statement
+    public Connection getConnection()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("getConnection");
+    }
+
+    // implement Statement
+    public boolean getMoreResults(int current)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("getMoreResults");
+    }
+
+    // implement Statement
+    public ResultSet getGeneratedKeys()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("getGeneratedKeys");
+    }
+
+    // implement Statement
+    public int executeUpdate(String sql, int autoGeneratedKeys)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("executeUpdate");
+    }
+
+    // implement Statement
+    public int executeUpdate(String sql, int [] columnIndexes)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("executeUpdate");
+    }
+
+    // implement Statement
+    public int executeUpdate(String sql, String [] columnNames)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("executeUpdate");
+    }
+
+    // implement Statement
+    public boolean execute(String sql, int autoGeneratedKeys)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("execute");
+    }
+
+    // implement Statement
+    public boolean execute(String sql, int [] columnIndexes)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("execute");
+    }
+
+    // implement Statement
+    public boolean execute(String sql, String [] columnNames)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("execute");
+    }
+
+    // implement Statement
+    public int getResultSetHoldability()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("getResultSetHoldability");
+    }
+
+    //
+    // begin JDBC 4 methods
+    //
+
+    // implement Statement
+    public boolean isClosed()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("isClosed");
+    }
+
+    // implement Statement
+    public void setPoolable(boolean poolable)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setPoolable");
+    }
+
+    // implement Statement
+    public boolean isPoolable()
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("isPoolable");
+    }
+
+    // implement PreparedStatement
+    public void setCharacterStream(int parameterIndex, Reader reader)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setCharacterStream");
+    }
+
+    // implement PreparedStatement
+    public void setCharacterStream(
+        int parameterIndex,
+        Reader reader,
+        long length)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setCharacterStream");
+    }
+
+    // implement PreparedStatement
+    public void setNCharacterStream(int parameterIndex, Reader reader)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setNCharacterStream");
+    }
+
+    // implement PreparedStatement
+    public void setNCharacterStream(
+        int parameterIndex,
+        Reader reader,
+        long length)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setNCharacterStream");
+    }
+
+    // implement PreparedStatement
+    public void setClob(int parameterIndex, Reader reader)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setClob");
+    }
+
+    // implement PreparedStatement
+    public void setClob(int parameterIndex, Reader reader, long length)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setClob");
+    }
+
+    // implement PreparedStatement
+    public void setNClob(int parameterIndex, Reader reader)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setNClob");
+    }
+
+    // implement PreparedStatement
+    public void setNClob(int parameterIndex, NClob x)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setNClob");
+    }
+
+    // implement PreparedStatement
+    public void setNClob(int parameterIndex, Reader reader, long length)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setNClob");
+    }
+
+    // implement PreparedStatement
+    public void setBlob(int parameterIndex, InputStream x)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setBlob");
+    }
+
+    // implement PreparedStatement
+    public void setBlob(int parameterIndex, InputStream x, long length)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setBlob");
+    }
+
+    // implement PreparedStatement
+    public void setBinaryStream(int parameterIndex, InputStream x)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setBinaryStream");
+    }
+
+    // implement PreparedStatement
+    public void setBinaryStream(int parameterIndex, InputStream x, long length)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setBinaryStream");
+    }
+
+    // implement PreparedStatement
+    public void setAsciiStream(int parameterIndex, InputStream x)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setAsciiStream");
+    }
+
+    // implement PreparedStatement
+    public void setAsciiStream(int parameterIndex, InputStream x, long length)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setAsciiStream");
+    }
+
+    // implement PreparedStatement
+    public void setSQLXML(int parameterIndex, SQLXML x)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setSQLXML");
+    }
+
+    // implement PreparedStatement
+    public void setNString(int parameterIndex, String x)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setNString");
+    }
+
+    // implement PreparedStatement
+    public void setRowId(int parameterIndex, RowId x)
+        throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("setRowId");
+    }
+
+    //
+    // end JDBC 4 methods
+    //
+}
+
+// End FarragoUdxResultInserter.java
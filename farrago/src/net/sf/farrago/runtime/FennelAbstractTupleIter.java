@@ -52,6 +52,12 @@ public abstract class FennelAbstractTupleIter
      */
     private static FennelTupleAccessor tupleAligner = new FennelTupleAccessor();
 
+    /**
+     * Buffer with nothing in it, for subclasses which have no buffer between
+     * fetches.
+     */
+    protected static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
     //~ Instance fields --------------------------------------------------------
 
     protected final FennelTupleReader tupleReader;
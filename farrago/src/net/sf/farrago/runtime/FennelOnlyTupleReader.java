@@ -62,7 +62,9 @@ public class FennelOnlyTupleReader
         byte [] byteArray,
         ByteBuffer sliceBuffer)
     {
-        if (tupleAccessor.getCurrentTupleBuf() == null) {
+        // The iterator may switch buffers between fetches when it reads them
+        // in place from Fennel.
+        if (tupleAccessor.getCurrentTupleBuf() != byteBuffer) {
             tupleAccessor.setCurrentTupleBuf(byteBuffer);
         }
         tupleAccessor.unmarshal(tupleData);
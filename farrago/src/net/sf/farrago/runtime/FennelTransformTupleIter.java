@@ -21,6 +21,7 @@ package net.sf.farrago.runtime;
 import java.nio.*;
 
 import net.sf.farrago.fennel.*;
+import net.sf.farrago.util.*;
 
 
 /**
@@ -35,6 +36,9 @@ import net.sf.farrago.fennel.*;
  * <p>FennelTransformTupleIter's implementation of {@link #populateBuffer()}
  * does not block.
  *
+ * <p>Like {@link FennelTupleIter}, FennelTransformTupleIter can read tuples in
+ * place from Fennel's buffer if the tuple reader allows it.
+ *
  * @author Stephan Zuercher
  * @version $Id$
  */
@@ -49,6 +53,22 @@ public class FennelTransformTupleIter
     private final FennelStreamHandle streamHandle;
     private final FennelStreamHandle inputStreamHandle;
 
+    /**
+     * Whether tuples are read in place from Fennel's buffer.
+     */
+    private final boolean direct;
+
+    /**
+     * Receives the direct buffer from {@link
+     * FennelStreamGraph#transformFetchDirect}.
+     */
+    private final ByteBuffer [] bufferHolder;
+
+    /**
+     * Number of bytes fetched directly and not yet released.
+     */
+    private int cbPinned;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -70,6 +90,41 @@ public class FennelTransformTupleIter
         FennelStreamHandle inputStreamHandle,
         int inputOrdinal,
         int bufferSize)
+    {
+        this(
+            tupleReader,
+            streamGraph,
+            streamHandle,
+            inputStreamHandle,
+            inputOrdinal,
+            bufferSize,
+            false);
+    }
+
+    /**
+     * Creates a new FennelTransformTupleIter object which may read tuples in
+     * place.
+     *
+     * @param tupleReader FennelTupleReader to use to interpret Fennel data
+     * @param streamGraph underlying FennelStreamGraph
+     * @param streamHandle handle to underlying Fennel JavaTransformExecStream
+     * @param inputStreamHandle handle to the Fennel ExecStream that this
+     * TupleIter reads from -- used only for reset
+     * @param inputOrdinal the input stream's ordinal in the underlying
+     * JavaTransformExecStream
+     * @param bufferSize number of bytes in buffer used for fetching from Fennel
+     * if tuples are copied
+     * @param canReadDirect whether tupleReader can work without the byte array
+     * underlying the buffer, and copies everything it needs out of the buffer
+     */
+    public FennelTransformTupleIter(
+        FennelTupleReader tupleReader,
+        FennelStreamGraph streamGraph,
+        FennelStreamHandle streamHandle,
+        FennelStreamHandle inputStreamHandle,
+        int inputOrdinal,
+        int bufferSize,
+        boolean canReadDirect)
     {
         super(tupleReader);
 
@@ -77,6 +132,17 @@ public class FennelTransformTupleIter
         this.streamGraph = streamGraph;
         this.streamHandle = streamHandle;
         this.inputStreamHandle = inputStreamHandle;
+        this.direct =
+            canReadDirect
+            && FarragoProperties.instance().fennelDirectFetch.get();
+
+        if (direct) {
+            // byteBuffer is set by populateBuffer.
+            bufferHolder = new ByteBuffer[1];
+            byteBuffer = EMPTY_BUFFER;
+            return;
+        }
+        bufferHolder = null;
 
         // In this implementation of FennelAbstractTupleIter, byteBuffer and
         // bufferAsArray are effectively final. In other implementations, they
@@ -94,9 +160,13 @@ public class FennelTransformTupleIter
     public void restart()
     {
         super.restart();
-        bufferAsArray = byteBuffer.array();
-        byteBuffer.clear();
-        byteBuffer.limit(0);
+        if (direct) {
+            releaseBuffer();
+        } else {
+            bufferAsArray = byteBuffer.array();
+            byteBuffer.clear();
+            byteBuffer.limit(0);
+        }
 
         // a reset on streamHandle is what got us here -- pass it on
         streamGraph.restart(inputStreamHandle);
@@ -106,6 +176,8 @@ public class FennelTransformTupleIter
     public void closeAllocation()
     {
         // REVIEW: SWZ: 2/23/2006: Deallocate byteBuffer here?
+        // Tuples fetched directly need not be released here; their buffer
+        // goes away when the stream graph is closed.
     }
 
     /**
@@ -116,6 +188,21 @@ public class FennelTransformTupleIter
      */
     protected int populateBuffer()
     {
+        if (direct) {
+            releaseBuffer();
+            int cb =
+                streamGraph.transformFetchDirect(
+                    streamHandle,
+                    execStreamInputOrdinal,
+                    bufferHolder);
+            if (cb > 0) {
+                byteBuffer = bufferHolder[0];
+                bufferHolder[0] = null;
+                byteBuffer.order(ByteOrder.nativeOrder());
+                cbPinned = cb;
+            }
+            return cb;
+        }
         byteBuffer.clear();
         int cb =
             streamGraph.transformFetch(
@@ -128,6 +215,28 @@ public class FennelTransformTupleIter
         }
         return cb;
     }
+
+    // override FennelAbstractTupleIter
+    protected void requestData()
+    {
+        // The tuple reader has copied out everything it needs, so the input
+        // can have its buffer back as soon as the last tuple is unmarshalled.
+        if (direct) {
+            releaseBuffer();
+        }
+    }
+
+    private void releaseBuffer()
+    {
+        if (cbPinned > 0) {
+            streamGraph.release(
+                streamHandle,
+                execStreamInputOrdinal,
+                cbPinned);
+            cbPinned = 0;
+        }
+        byteBuffer = EMPTY_BUFFER;
+    }
 }
 
 // End FennelTransformTupleIter.java
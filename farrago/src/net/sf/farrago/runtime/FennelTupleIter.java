@@ -21,6 +21,7 @@ package net.sf.farrago.runtime;
 import java.nio.*;
 
 import net.sf.farrago.fennel.*;
+import net.sf.farrago.util.*;
 
 
 /**
@@ -32,6 +33,13 @@ import net.sf.farrago.fennel.*;
  *
  * <p>FennelTupleIter's implementation of {@link #populateBuffer()} blocks.
  *
+ * <p>If the tuple reader does not need the byte array underlying the buffer,
+ * FennelTupleIter can read tuples in place from Fennel's buffer, via a direct
+ * ByteBuffer, rather than having them copied into a Java array. The tuples
+ * stay pinned in Fennel's buffer until the last of them has been unmarshalled.
+ * This is disabled by setting {@link
+ * net.sf.farrago.util.FarragoProperties#fennelDirectFetch} to false.
+ *
  * @author John V. Sichi, Stephan Zuercher
  * @version $Id$
  */
@@ -43,6 +51,21 @@ public class FennelTupleIter
     private final FennelStreamGraph streamGraph;
     private final FennelStreamHandle streamHandle;
 
+    /**
+     * Whether tuples are read in place from Fennel's buffer.
+     */
+    private final boolean direct;
+
+    /**
+     * Receives the direct buffer from {@link FennelStreamGraph#fetchDirect}.
+     */
+    private final ByteBuffer [] bufferHolder;
+
+    /**
+     * Number of bytes fetched directly and not yet released.
+     */
+    private int cbPinned;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -59,10 +82,43 @@ public class FennelTupleIter
         FennelStreamGraph streamGraph,
         FennelStreamHandle streamHandle,
         int bufferSize)
+    {
+        this(tupleReader, streamGraph, streamHandle, bufferSize, false);
+    }
+
+    /**
+     * Creates a new FennelTupleIter object which may read tuples in place.
+     *
+     * @param tupleReader FennelTupleReader to use to interpret Fennel data
+     * @param streamGraph underlying FennelStreamGraph
+     * @param streamHandle handle to underlying Fennel ExecStream that this
+     * TupleIter reads from
+     * @param bufferSize number of bytes in buffer used for fetching from Fennel
+     * if tuples are copied
+     * @param canReadDirect whether tupleReader can work without the byte array
+     * underlying the buffer, and copies everything it needs out of the buffer
+     */
+    public FennelTupleIter(
+        FennelTupleReader tupleReader,
+        FennelStreamGraph streamGraph,
+        FennelStreamHandle streamHandle,
+        int bufferSize,
+        boolean canReadDirect)
     {
         super(tupleReader);
         this.streamGraph = streamGraph;
         this.streamHandle = streamHandle;
+        this.direct =
+            canReadDirect
+            && FarragoProperties.instance().fennelDirectFetch.get();
+
+        if (direct) {
+            // byteBuffer is set by populateBuffer.
+            bufferHolder = new ByteBuffer[1];
+            byteBuffer = EMPTY_BUFFER;
+            return;
+        }
+        bufferHolder = null;
 
         // In this implementation of FennelAbstractTupleIter, byteBuffer and
         // bufferAsArray are effectively final. In other implementations, they
@@ -80,9 +136,13 @@ public class FennelTupleIter
     public void restart()
     {
         super.restart();
-        bufferAsArray = byteBuffer.array();
-        byteBuffer.clear();
-        byteBuffer.limit(0);
+        if (direct) {
+            releaseBuffer();
+        } else {
+            bufferAsArray = byteBuffer.array();
+            byteBuffer.clear();
+            byteBuffer.limit(0);
+        }
         streamGraph.restart(streamHandle);
     }
 
@@ -90,6 +150,8 @@ public class FennelTupleIter
     public void closeAllocation()
     {
         // REVIEW: SWZ: 2/23/2006: Deallocate byteBuffer here?
+        // Tuples fetched directly need not be released here; their buffer
+        // goes away when the stream graph is closed.
     }
 
     /**
@@ -100,9 +162,39 @@ public class FennelTupleIter
      */
     protected int populateBuffer()
     {
+        if (direct) {
+            releaseBuffer();
+            int cb = streamGraph.fetchDirect(streamHandle, bufferHolder);
+            if (cb > 0) {
+                byteBuffer = bufferHolder[0];
+                bufferHolder[0] = null;
+                byteBuffer.order(ByteOrder.nativeOrder());
+                cbPinned = cb;
+            }
+            return cb;
+        }
         byteBuffer.clear();
         return streamGraph.fetch(streamHandle, bufferAsArray);
     }
+
+    // override FennelAbstractTupleIter
+    protected void requestData()
+    {
+        // The tuple reader has copied out everything it needs, so Fennel can
+        // have its buffer back as soon as the last tuple is unmarshalled.
+        if (direct) {
+            releaseBuffer();
+        }
+    }
+
+    private void releaseBuffer()
+    {
+        if (cbPinned > 0) {
+            streamGraph.release(streamHandle, -1, cbPinned);
+            cbPinned = 0;
+        }
+        byteBuffer = EMPTY_BUFFER;
+    }
 }
 
 // End FennelTupleIter.java
@@ -28,6 +28,13 @@ import net.sf.farrago.fennel.tuple.*;
  * Fennel. Implementations are responsible for marshalling specific tuple
  * formats.
  *
+ * <p>An implementation which can compute the marshalled length of a tuple
+ * before writing it overrides {@link #getMarshalledLength}; tuples are then
+ * written in place by {@link #marshalTupleAt}, and a full buffer is detected
+ * without an exception being thrown. Otherwise each tuple is written into a
+ * slice of the buffer by {@link #marshalTupleOrThrow}, relying on buffer
+ * exceptions to detect that it did not fit.
+ *
  * @author John V. Sichi
  * @version $Id$
  */
@@ -40,6 +47,11 @@ public abstract class FennelTupleWriter
      */
     private static long MAGIC_NUMBER = 0x9897ab509de7dcf5L;
 
+    /**
+     * Number of bytes occupied by {@link #MAGIC_NUMBER}.
+     */
+    private static final int MAGIC_NUMBER_LENGTH = 8;
+
     /**
      * Singleton helper for aligning tuple buffers correctly.
      */
@@ -50,7 +62,8 @@ public abstract class FennelTupleWriter
     /**
      * Marshals one tuple if it can fit; otherwise, throws either {@link
      * BufferOverflowException} or {@link IndexOutOfBoundsException} (depending
-     * on whether absolute or relative puts are used).
+     * on whether absolute or relative puts are used). Only called if {@link
+     * #getMarshalledLength} returns -1.
      *
      * @param sliceBuffer buffer to be filled with marshalled tuple data; on
      * entry, the buffer position is 0; on return, the buffer position should be
@@ -64,6 +77,35 @@ public abstract class FennelTupleWriter
         ByteBuffer sliceBuffer,
         Object object);
 
+    /**
+     * Computes the number of bytes a tuple will occupy once marshalled, not
+     * counting final alignment padding. The default implementation returns
+     * -1, meaning that the length is not known in advance.
+     *
+     * @param object subclass-specific object to be marshalled
+     *
+     * @return marshalled length in bytes, or -1 if unknown
+     */
+    protected int getMarshalledLength(Object object)
+    {
+        return -1;
+    }
+
+    /**
+     * Marshals one tuple, which is known to fit, at a given offset. Only
+     * called if {@link #getMarshalledLength} returns a length.
+     *
+     * @param byteBuffer buffer to be filled with marshalled tuple data; on
+     * return, the buffer position should be the unaligned end of the tuple
+     * @param offset offset in byteBuffer of the start of the tuple; all of
+     * the tuple's offsets are relative to this
+     * @param object subclass-specific object to be marshalled
+     */
+    protected abstract void marshalTupleAt(
+        ByteBuffer byteBuffer,
+        int offset,
+        Object object);
+
     /**
      * Marshals one tuple if it can fit.
      *
@@ -77,6 +119,32 @@ public abstract class FennelTupleWriter
     public boolean marshalTuple(
         ByteBuffer byteBuffer,
         Object object)
+    {
+        int cb = getMarshalledLength(object);
+        if (cb < 0) {
+            return marshalTupleSlice(byteBuffer, object);
+        }
+        int start = byteBuffer.position();
+        int end = start + Math.max(cb, MAGIC_NUMBER_LENGTH);
+        if (tupleAligner.alignRoundUp(end) > byteBuffer.limit()) {
+            return false;
+        }
+
+        // In case TupleAccessor's DEBUG_TUPLE_ACCESS is enabled,
+        // store the correct magic number at the beginning of the
+        // marshalled tuple.
+        byteBuffer.putLong(start, MAGIC_NUMBER);
+        marshalTupleAt(byteBuffer, start, object);
+        assert (byteBuffer.position() == (start + cb));
+
+        // add final alignment padding
+        byteBuffer.position(tupleAligner.alignRoundUp(start + cb));
+        return true;
+    }
+
+    private boolean marshalTupleSlice(
+        ByteBuffer byteBuffer,
+        Object object)
     {
         try {
             // REVIEW:  is slice allocation worth it?
@@ -421,6 +421,23 @@ public interface FarragoSession
      * otherwise
      */
     public boolean isReentrantAlterTableAddColumn();
+
+    /**
+     * Flags this FarragoSession as being a reentrant session which refreshes
+     * materialized views. Only such a session may modify the table holding
+     * the contents of a materialized view.
+     */
+    public void setMaterializedViewRefresh();
+
+    /**
+     * Tests whether this session refreshes materialized views.
+     *
+     * @return true if this session refreshes materialized views, false
+     * otherwise
+     *
+     * @see #setMaterializedViewRefresh()
+     */
+    public boolean isMaterializedViewRefresh();
 }
 
 // End FarragoSession.java
@@ -83,6 +83,11 @@ public class FarragoSessionAnalyzedSql
      */
     public boolean hasTopLevelOrderBy;
 
+    /**
+     * True if the expression is a query with a top-level OFFSET or FETCH.
+     */
+    public boolean hasTopLevelFetch;
+
     /**
      * True if the expression contains dynamic parameter markers.
      */
@@ -99,6 +99,14 @@ public interface FarragoSessionExecutableStmt
      */
     public long getMemoryUsage();
 
+    /**
+     * @return estimated number of bytes of cache memory which the
+     * memory-intensive streams of this statement's plan (sorts, hash joins and
+     * hash aggregations) would like to use; 0 if the plan has no such streams,
+     * or -1 if it has some but their inputs could not be estimated
+     */
+    public long getMemoryCost();
+
     /**
      * @return Set of MOFID's of objects accessed when this stmt is executed
      */
@@ -110,6 +118,19 @@ public interface FarragoSessionExecutableStmt
      */
     public String getReferencedObjectModTime(String mofid);
 
+    /**
+     * @return catalog change sequence number as of which this statement was
+     * last found not to be stale, or -1 if it has not been checked
+     */
+    public long getVerifiedChangeSeq();
+
+    /**
+     * Records that this statement was found not to be stale.
+     *
+     * @param seq catalog change sequence number read before the check
+     */
+    public void setVerifiedChangeSeq(long seq);
+
     /**
      * @return map of access modes for all tables referenced
      */
@@ -385,6 +385,35 @@ public interface FarragoSessionPersonality
      */
     public void resetRowCounts(FemAbstractColumnSet table);
 
+    /**
+     * Gives this personality the opportunity to perform work which has to
+     * wait until a DML statement has committed, such as maintaining
+     * materialized views defined on the modified table. Only called for
+     * statements executed in autocommit mode.
+     *
+     * @param session session which executed the DML statement
+     * @param tableName fully qualified name of the modified table
+     * @param tableModOp table modification operation performed
+     */
+    public void completeDml(
+        FarragoSession session,
+        List<String> tableName,
+        TableModificationRel.Operation tableModOp);
+
+    /**
+     * Brings a materialized view up to date with the tables it is defined
+     * on.
+     *
+     * @param session session to execute the refresh in
+     * @param rootStmtContext statement context to make refresh statements
+     * children of, or null
+     * @param mofId MOFID of the table holding the view's contents
+     */
+    public void refreshMaterializedView(
+        FarragoSession session,
+        FarragoSessionStmtContext rootStmtContext,
+        String mofId);
+
     /**
      * Gives the personality the opportunity to update an index root page when
      * the index is rebuilt
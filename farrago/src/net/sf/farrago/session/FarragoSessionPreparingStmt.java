@@ -18,6 +18,8 @@
 */
 package net.sf.farrago.session;
 
+import java.util.*;
+
 import net.sf.farrago.catalog.*;
 import net.sf.farrago.fennel.*;
 import net.sf.farrago.type.*;
@@ -119,6 +121,16 @@ public interface FarragoSessionPreparingStmt
      */
     public boolean mayCacheImplementation();
 
+    /**
+     * Returns the privileges requested while validating the statement. A
+     * cached implementation found without validating the statement again may
+     * only be used by a session which still holds them.
+     *
+     * @return map from the MOFID of each object accessed to the actions
+     * performed on it
+     */
+    public Map<String, Set<String>> getRequestedPrivileges();
+
     /**
      * Disables caching for the statement
      */
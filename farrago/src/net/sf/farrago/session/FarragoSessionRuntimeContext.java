@@ -18,6 +18,8 @@
 */
 package net.sf.farrago.session;
 
+import java.util.*;
+
 import net.sf.farrago.catalog.*;
 import net.sf.farrago.fennel.*;
 import net.sf.farrago.util.*;
@@ -144,6 +146,17 @@ public interface FarragoSessionRuntimeContext
      */
     public void setStatementClassLoader(ClassLoader classLoader);
 
+    /**
+     * Supplies the names and ids of the Fennel streams which generated code
+     * refers to by ordinal.
+     *
+     * @param streamNames global stream names, indexed by ordinal
+     * @param streamIds stream ids, indexed by ordinal
+     */
+    public void setFennelStreams(
+        List<String> streamNames,
+        List<Integer> streamIds);
+
     /**
      * Gets the row type for instantiating a result set.
      *
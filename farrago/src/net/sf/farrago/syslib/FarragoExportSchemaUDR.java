@@ -20,15 +20,20 @@ package net.sf.farrago.syslib;
 
 import java.io.*;
 
+import java.nio.channels.*;
+
 import java.sql.*;
 
 import java.text.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
+import java.util.zip.*;
 
 import org.eigenbase.sql.*;
 import org.eigenbase.sql.util.*;
+import org.eigenbase.util.*;
 import net.sf.farrago.resource.*;
 import net.sf.farrago.runtime.*;
 import net.sf.farrago.session.*;
@@ -71,6 +76,27 @@ public abstract class FarragoExportSchemaUDR
         "Merge"
     };
 
+    /**
+     * Format which writes delimited text data files, with BCP control files.
+     */
+    public static final String TEXT_FORMAT = "TEXT";
+
+    /**
+     * Format which writes data files of serialized rows, in the layout read by
+     * the applib READ_ROWS_FROM_FILE function.
+     */
+    public static final String BINARY_FORMAT = "BINARY";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Number of rows after which a binary data file stops referring back to
+     * the objects already written.
+     */
+    private static final int RESET_INTERVAL = 1000;
+
+    private static final long CANCEL_POLL_MILLIS = 1000;
+
     //~ Methods ----------------------------------------------------------------
 
     /**
@@ -115,6 +141,80 @@ public abstract class FarragoExportSchemaUDR
         String timeFormat,
         String timestampFormat)
         throws SQLException
+    {
+        exportSchemaToFile(
+            catalog,
+            schema,
+            exclude,
+            tableList,
+            tablePattern,
+            directory,
+            withBcp,
+            deleteFailedFiles,
+            fieldDelimiter,
+            fileExtension,
+            dateFormat,
+            timeFormat,
+            timestampFormat,
+            null, // format
+            false, // compress
+            1); // parallelism
+    }
+
+    /**
+     * Exports tables within a schema to flat files, several tables at a time.
+     *
+     * @param catalog name of the catalog where schema resides, if null, default
+     * catalog
+     * @param schema name of local schema
+     * @param exclude if true, tables matching either the table_list of the
+     * table_pattern will be excluded. if false, tables will be included
+     * @param tableList comma separated list of tables or null value if
+     * table_pattern is being used
+     * @param tablePattern table name pattern where '_' represents any single
+     * character
+     * @param directory the directory in which to place the exported data and
+     * BCP files
+     * @param withBcp indicates whether BCP files should be created. If true,
+     * BCP files will be created for TEXT format. If false, they will not be
+     * created
+     * @param deleteFailedFiles if true, data and bcp files for tables which
+     * fail during export will be deleted, otherwise they will remain
+     * @param fieldDelimiter used to delimit column fields in the flat file if
+     * null, defaults to tab separated
+     * @param fileExtension the file extension for the created flat file, if
+     * null, defaults to .txt for TEXT format and .dat for BINARY format
+     * @param dateFormat format for DATE fields ({@link SimpleDateFormat})
+     * @param timeFormat format for TIME fields ({@link SimpleDateFormat})
+     * @param timestampFormat format for TIMESTAMP fields ({@link
+     * SimpleDateFormat})
+     * @param format {@link #TEXT_FORMAT} for delimited text (the default if
+     * null), or {@link #BINARY_FORMAT} for serialized rows which can be read
+     * back without parsing
+     * @param compress if true, data files are compressed with gzip, and get an
+     * extra .gz extension
+     * @param parallelism maximum number of tables to export at once, each in a
+     * session of its own; if 1 or less, tables are exported one at a time in
+     * the calling session
+     */
+    public static void exportSchemaToFile(
+        String catalog,
+        String schema,
+        boolean exclude,
+        String tableList,
+        String tablePattern,
+        String directory,
+        boolean withBcp,
+        boolean deleteFailedFiles,
+        String fieldDelimiter,
+        String fileExtension,
+        String dateFormat,
+        String timeFormat,
+        String timestampFormat,
+        String format,
+        boolean compress,
+        int parallelism)
+        throws SQLException
     {
         Connection conn =
             DriverManager.getConnection("jdbc:default:connection");
@@ -148,6 +248,9 @@ public abstract class FarragoExportSchemaUDR
             timestampFormat,
             tableNames,
             null, // querySql
+            format,
+            compress,
+            parallelism,
             conn);
     }
 
@@ -268,6 +371,9 @@ public abstract class FarragoExportSchemaUDR
             null, // timestampFormat
             tableNames,
             null, // querySql
+            null, // format
+            false, // compress
+            1, // parallelism
             conn);
     }
 
@@ -438,6 +544,9 @@ public abstract class FarragoExportSchemaUDR
             null, // timestampFormat
             tableNames,
             null, // querySql
+            null, // format
+            false, // compress
+            1, // parallelism
             conn);
     }
 
@@ -580,6 +689,67 @@ public abstract class FarragoExportSchemaUDR
         boolean withBcp,
         boolean deleteFailedFiles)
         throws SQLException
+    {
+        exportMergedSchemas(
+            origCatalog,
+            origSchema,
+            incrCatalog,
+            incrSchema,
+            exclude,
+            tableList,
+            tablePattern,
+            idColumn,
+            directory,
+            withBcp,
+            deleteFailedFiles,
+            null, // format
+            false, // compress
+            1); // parallelism
+    }
+
+    /**
+     * Exports tables from two schemas, merging the incremental data into the
+     * original data, several tables at a time.
+     *
+     * @param origCatalog name of catalog where original data tables reside
+     * @param origSchema name of schema where original data tables reside
+     * @param incrCatalog name of catalog where incremental data tables reside
+     * @param incrSchema name of schema where incremental data tables reside
+     * @param exclude if true, tables matching either the tableList of the
+     * tablePattern will be excluded. if false, tables will be included
+     * @param tableList comma separated list of tables or null value if
+     * tablePattern is being used
+     * @param tablePattern table name pattern where '_' represents any single
+     * character
+     * @param idColumn name of the id column used to join tables
+     * @param directory the directory in which to place the exported data and
+     * BCP files
+     * @param withBcp indicates whether bcp files should be created. if true,
+     * bcp files will be created for TEXT format. If false, they will not be
+     * created
+     * @param deleteFailedFiles if true, data and bcp files for tables which
+     * fail during export will be deleted, otherwise they will remain
+     * @param format {@link #TEXT_FORMAT} for delimited text (the default if
+     * null), or {@link #BINARY_FORMAT} for serialized rows
+     * @param compress if true, data files are compressed with gzip
+     * @param parallelism maximum number of tables to export at once
+     */
+    public static void exportMergedSchemas(
+        String origCatalog,
+        String origSchema,
+        String incrCatalog,
+        String incrSchema,
+        boolean exclude,
+        String tableList,
+        String tablePattern,
+        String idColumn,
+        String directory,
+        boolean withBcp,
+        boolean deleteFailedFiles,
+        String format,
+        boolean compress,
+        int parallelism)
+        throws SQLException
     {
         Connection conn =
             DriverManager.getConnection("jdbc:default:connection");
@@ -629,6 +799,9 @@ public abstract class FarragoExportSchemaUDR
             null, // timestampFormat
             incrTblNames,
             null, // querySql
+            format,
+            compress,
+            parallelism,
             conn);
     }
 
@@ -958,6 +1131,9 @@ public abstract class FarragoExportSchemaUDR
                 null, // timestampFormat
                 tableNames,
                 null, // querySql
+                null, // format
+                false, // compress
+                1, // parallelism
                 conn);
 
             // drop temp schema
@@ -1026,6 +1202,10 @@ public abstract class FarragoExportSchemaUDR
      * @param tableNames HashSet with names of the table to export
      * @param querySql SQL query to execute (if non-null, all table-related
      * parameters should be null; and vice versa)
+     * @param format {@link #TEXT_FORMAT} (the default if null) or {@link
+     * #BINARY_FORMAT}
+     * @param compress if true, data files are compressed with gzip
+     * @param parallelism maximum number of tables to export at once
      * @param conn connection to the dtaabase
      */
     private static void toCsv(
@@ -1047,17 +1227,24 @@ public abstract class FarragoExportSchemaUDR
         String timestampFormat,
         HashSet<String> tableNames,
         String querySql,
+        String format,
+        boolean compress,
+        int parallelism,
         Connection conn)
         throws SQLException
     {
-        File csvFile = null;
-        File bcpFile = null;
         File logFile = null;
-        Writer csvOut = null;
-        Writer bcpOut = null;
         Writer logOut = null;
 
-        boolean tracing = tracer.isLoggable(Level.FINE);
+        boolean binary;
+        if ((format == null) || format.equalsIgnoreCase(TEXT_FORMAT)) {
+            binary = false;
+        } else if (format.equalsIgnoreCase(BINARY_FORMAT)) {
+            binary = true;
+        } else {
+            throw FarragoResource.instance().ExportSchemaInvalidFormat.ex(
+                format);
+        }
 
         // Expand stuff like ${FARRAGO_HOME}.
         directory = FarragoProperties.instance().expandProperties(directory);
@@ -1118,17 +1305,14 @@ public abstract class FarragoExportSchemaUDR
         }
         logOut = new BufferedWriter(logOut);
 
-        Iterator<String> tableIter;
+        List<String> tblNameList;
         if (tableNames != null) {
             assert (querySql == null);
-            tableIter = tableNames.iterator();
+            tblNameList = new ArrayList<String>(tableNames);
         } else {
             assert (querySql != null);
-            tableIter = Collections.singleton("{QUERY}").iterator();
+            tblNameList = Collections.singletonList("{QUERY}");
         }
-        Statement stmt = conn.createStatement();
-        ResultSet tblData;
-        ResultSetMetaData tblMeta;
 
         try {
             logOut.write(
@@ -1158,345 +1342,251 @@ public abstract class FarragoExportSchemaUDR
             fieldDelimiter = TAB;
         }
 
-        // file extension for data file defaults to .txt
+        // file extension for data file defaults to .txt, or .dat for
+        // serialized rows
         if (fileExtension == null) {
-            fileExtension = ".txt";
+            fileExtension = binary ? ".dat" : ".txt";
         }
 
-        // loop through the tables and output data to csv/bcp files
-        while (tableIter.hasNext()) {
-            String tblName = tableIter.next();
-
-            try {
-                logOut.write(tblName + TAB + getTimestampString() + TAB);
-
-                // if column doesn't exist in table, does a full export
-                // for incremental, for merge table won't be merged
-                // but will be logged in log file
-                int export =
-                    checkColumnName(
-                        expType,
-                        catalog,
-                        schema,
-                        incrCatalog,
-                        incrSchema,
-                        tblName,
-                        columnName,
-                        conn);
-
-                if (tableNames != null) {
-                    querySql =
-                        buildQuerySql(
-                            export,
-                            catalog,
-                            schema,
-                            tblName,
-                            lastModified,
-                            columnName,
-                            incrCatalog,
-                            incrSchema);
-                }
-
-                logOut.write(EXPORT_TYPES[export] + TAB);
-
-                // TODO jvs 21-Oct-2006:  For case of !withData,
-                // don't bother executing query; just prepare and
-                // use ResultSetMetaData
+        TableExporter exporter =
+            new TableExporter(
+                expType,
+                catalog,
+                schema,
+                lastModified,
+                columnName,
+                incrCatalog,
+                incrSchema,
+                directory,
+                withBcp,
+                withData,
+                deleteFailedFiles,
+                fieldDelimiter,
+                fileExtension,
+                dateFormat,
+                timeFormat,
+                timestampFormat,
+                tableNames != null,
+                querySql,
+                binary,
+                compress);
 
-                tblData = stmt.executeQuery(querySql);
-                tblMeta = tblData.getMetaData();
-            } catch (SQLException se) {
-                try {
-                    logOut.write(
-                        "FAIL" + TAB + getTimestampString() + TAB
-                        + se.toString() + NEWLINE);
-                    logOut.flush();
-                } catch (IOException ie) {
-                    throw FarragoResource.instance().ExportSchemaFileWriterError
-                    .ex(
-                        logFileName,
-                        ie.getMessage(),
-                        ie);
-                }
-                continue;
-            } catch (IOException ie) {
-                try {
-                    logOut.flush();
-                    logOut.close();
-                } catch (IOException ie2) {
-                    throw FarragoResource.instance().ExportSchemaFileWriterError
-                    .ex(
-                        logFileName,
-                        ie.getMessage() + ie2.getMessage(),
-                        ie);
-                }
-                throw FarragoResource.instance().ExportSchemaFileWriterError.ex(
+        // loop through the tables and output data to csv/bcp files
+        if ((parallelism <= 1) || (tblNameList.size() <= 1)) {
+            for (String tblName : tblNameList) {
+                writeLogEntry(
+                    logOut,
                     logFileName,
-                    ie.getMessage(),
-                    ie);
+                    exporter.exportTable(tblName, conn));
             }
+        } else {
+            exportInParallel(
+                exporter,
+                tblNameList,
+                parallelism,
+                logOut,
+                logFileName);
+        }
 
-            String csvName;
-            String bcpName;
-            if (tableNames == null) {
-                csvName = directory + fileExtension;
-                bcpName = directory + ".bcp";
-            } else {
-                csvName = directory + File.separator + tblName + fileExtension;
-                bcpName = directory + File.separator + tblName + ".bcp";
-            }
-            boolean tableFailed = false;
-            try {
-                if (withData) {
-                    csvFile = new File(csvName);
-                    csvOut =
-                        new OutputStreamWriter(
-                            new FileOutputStream(csvFile),
-                            "ISO-8859-1");
-                    csvOut = new BufferedWriter(csvOut);
-                }
-                int numCols = tblMeta.getColumnCount();
-                if (withBcp) {
-                    // write BCP header
-                    bcpFile = new File(bcpName);
-                    bcpOut =
-                        new OutputStreamWriter(
-                            new FileOutputStream(bcpFile),
-                            "ISO-8859-1");
-                    bcpOut = new BufferedWriter(bcpOut);
-
-                    // version using BroadBase
-                    bcpOut.write("6.0" + NEWLINE);
-                    bcpOut.write(numCols + NEWLINE);
-                }
-
-                for (int i = 1; i <= numCols; i++) {
-                    if (withData) {
-                        // write column names to CSV, delimited and quoted
-                        csvOut.write(QUOTE + tblMeta.getColumnName(i));
-                        if (i != numCols) {
-                            csvOut.write(QUOTE + fieldDelimiter);
-                        } else {
-                            csvOut.write(QUOTE + NEWLINE);
-                        }
-                    }
-
-                    // write bcp file
-                    if (withBcp) {
-                        bcpOut.write(getBcpLine(i, tblMeta, fieldDelimiter));
-                    }
-                }
-
-                if (withBcp) {
-                    bcpOut.flush();
-                }
-
-                long nRows = 0;
+        try {
+            logOut.flush();
+            logOut.close();
+        } catch (IOException ie) {
+            throw FarragoResource.instance().ExportSchemaFileWriterError.ex(
+                logFileName,
+                ie.getMessage(),
+                ie);
+        }
 
-                // write the csv file
-                while (withData && tblData.next()) {
-                    for (int i = 1; i <= numCols; i++) {
-                        String field;
-
-                        // format date/time/timestamp fields
-                        int columnType = tblMeta.getColumnType(i);
-
-                        if ((columnType == Types.DATE)
-                            && (dateFormat != null))
-                        {
-                            field =
-                                FarragoConvertDatetimeUDR.date_to_char(
-                                    dateFormat,
-                                    tblData.getDate(i),
-                                    true);
-                        } else if (
-                            (columnType == Types.TIME)
-                            && (timeFormat != null))
-                        {
-                            field =
-                                FarragoConvertDatetimeUDR.time_to_char(
-                                    timeFormat,
-                                    tblData.getTime(i),
-                                    true);
-                        } else if (
-                            (columnType == Types.TIMESTAMP)
-                            && (timestampFormat != null))
-                        {
-                            field =
-                                FarragoConvertDatetimeUDR.timestamp_to_char(
-                                    timestampFormat,
-                                    tblData.getTimestamp(i),
-                                    true);
-                        } else {
-                            // everything else
-                            field = tblData.getString(i);
-                        }
+        if (tableNames == null) {
+            // For a successful single-query export, delete when done to reduce
+            // clutter.
 
-                        if (field == null) {
-                            if (i != numCols) {
-                                csvOut.write(fieldDelimiter);
-                            } else {
-                                csvOut.write(NEWLINE);
-                            }
-                        } else {
-                            csvOut.write(QUOTE);
+            // REVIEW jvs 17-Jun-2008:  but we don't even check that
+            // it was successful!
 
-                            // quote the quotes
-                            csvOut.write(quote(field));
+            logFile.delete();
+        }
+    }
 
-                            if (i != numCols) {
-                                csvOut.write(QUOTE + fieldDelimiter);
-                            } else {
-                                csvOut.write(QUOTE + NEWLINE);
+    /**
+     * Helper function which exports several tables at once. Each table is
+     * exported through a session of its own, cloned from the session calling
+     * the UDR, so each sees the data as of the start of its own statement.
+     * Log entries are written in the order of the table list.
+     *
+     * @param exporter exports each table
+     * @param tblNameList names of the tables to export
+     * @param parallelism maximum number of tables to export at once
+     * @param logOut writer for the export log
+     * @param logFileName name of the export log file
+     */
+    private static void exportInParallel(
+        final TableExporter exporter,
+        List<String> tblNameList,
+        int parallelism,
+        Writer logOut,
+        String logFileName)
+        throws SQLException
+    {
+        FarragoSession session = FarragoUdrRuntime.getSession();
+        int nConns = Math.min(parallelism, tblNameList.size());
+        List<Connection> connList = new ArrayList<Connection>(nConns);
+        final BlockingQueue<Connection> idleConns =
+            new ArrayBlockingQueue<Connection>(nConns);
+        ExecutorService executor = Executors.newFixedThreadPool(nConns);
+        try {
+            for (int i = 0; i < nConns; i++) {
+                Connection conn =
+                    session.getConnectionSource().newConnection(
+                        session.getSessionVariables());
+                connList.add(conn);
+                idleConns.add(conn);
+            }
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (final String tblName : tblNameList) {
+                futures.add(
+                    executor.submit(
+                        new Callable<String>() {
+                            public String call()
+                                throws Exception
+                            {
+                                Connection conn = idleConns.take();
+                                try {
+                                    return exporter.exportTable(
+                                        tblName,
+                                        conn);
+                                } finally {
+                                    idleConns.add(conn);
+                                }
                             }
-                        }
-                    }
-
-                    if (tracing) {
-                        if ((nRows % 100) == 0) {
-                            // When trace is on, be nice to the poor little
-                            // Windows users, otherwise they can't see anything
-                            // until the very end because the file size only
-                            // gets updated on explicit flush.  Do this on row
-                            // 1 so that they'll know something's happening if
-                            // it takes a long time to compute the rest.
-                            // Normally, don't do any explicit flushing because
-                            // it's bad for performance.
-                            csvOut.flush();
-                            tracer.fine("Exported row #" + nRows);
-                        }
-                    }
-                    ++nRows;
-                }
-
-                // log success
-                try {
-                    logOut.write(
-                        "PASS" + TAB + getTimestampString() + TAB
-                        + "None" + NEWLINE);
-                    logOut.flush();
-                } catch (IOException ie) {
-                    try {
-                        logOut.flush();
-                        logOut.close();
-                    } catch (IOException ie2) {
-                        throw FarragoResource.instance()
-                        .ExportSchemaFileWriterError.ex(
-                            logFileName,
-                            ie.getMessage() + ie2.getMessage(),
-                            ie);
-                    }
-                    throw FarragoResource.instance().ExportSchemaFileWriterError
-                    .ex(
-                        logFileName,
-                        ie.getMessage(),
-                        ie);
-                }
-            } catch (SQLException se) {
-                tableFailed = true;
+                        }));
+            }
+            for (Future<String> future : futures) {
+                writeLogEntry(
+                    logOut,
+                    logFileName,
+                    waitForTable(future));
+            }
+        } finally {
+            // NOTE: if we are here because of an error or a cancel, some
+            // tables may still be exporting; closing their sessions aborts
+            // them.
+            executor.shutdownNow();
+            for (Connection conn : connList) {
                 try {
-                    logOut.write(
-                        "FAIL" + TAB + getTimestampString() + TAB
-                        + se.toString() + NEWLINE);
-                    logOut.flush();
-                } catch (IOException ie) {
-                    try {
-                        logOut.flush();
-                        logOut.close();
-                    } catch (IOException ie2) {
-                        throw FarragoResource.instance()
-                        .ExportSchemaFileWriterError.ex(
-                            logFileName,
-                            ie.getMessage() + ie2.getMessage(),
-                            ie);
-                    }
-                    throw FarragoResource.instance().ExportSchemaFileWriterError
-                    .ex(
-                        logFileName,
-                        ie.getMessage(),
-                        ie);
-                }
-            } catch (IOException ie) {
-                tableFailed = true;
-                try {
-                    logOut.write(
-                        "FAIL" + TAB + getTimestampString() + TAB
-                        + ie.toString() + NEWLINE);
-                    logOut.flush();
-                } catch (IOException ie2) {
-                    try {
-                        logOut.flush();
-                        logOut.close();
-                    } catch (IOException ie3) {
-                        throw FarragoResource.instance()
-                        .ExportSchemaFileWriterError.ex(
-                            logFileName,
-                            ie2.getMessage() + ie3.getMessage(),
-                            ie2);
-                    }
-                    throw FarragoResource.instance().ExportSchemaFileWriterError
-                    .ex(
-                        logFileName,
-                        ie2.getMessage(),
-                        ie2);
-                }
-            } finally {
-                tblData.close();
-                if (csvOut != null) {
-                    try {
-                        csvOut.flush();
-                        csvOut.close();
-                    } catch (IOException ie) {
-                        throw FarragoResource.instance()
-                        .ExportSchemaFileWriterError.ex(
-                            csvName,
-                            ie.getMessage(),
-                            ie);
-                    }
-                }
-                if (bcpOut != null) {
-                    try {
-                        bcpOut.flush();
-                        bcpOut.close();
-                    } catch (IOException ie) {
-                        throw FarragoResource.instance()
-                        .ExportSchemaFileWriterError.ex(
-                            bcpName,
-                            ie.getMessage(),
-                            ie);
-                    }
+                    conn.close();
+                } catch (SQLException ex) {
+                    tracer.warning(
+                        "Failed to close export connection: "
+                        + ex.getMessage());
                 }
+            }
+        }
+    }
 
-                // delete partial files if table export failed
-                if (tableFailed && deleteFailedFiles) {
-                    if (csvFile != null) {
-                        csvFile.delete();
-                    }
-                    if (bcpFile != null) {
-                        bcpFile.delete();
-                    }
+    /**
+     * Helper function which waits for a table being exported in parallel,
+     * checking periodically whether the export has been cancelled.
+     *
+     * @param future result of the table's export
+     *
+     * @return log entry for the table
+     */
+    private static String waitForTable(Future<String> future)
+        throws SQLException
+    {
+        while (true) {
+            try {
+                return future.get(CANCEL_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                FarragoUdrRuntime.checkCancel();
+            } catch (InterruptedException ex) {
+                throw Util.newInternal(ex);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof SQLException) {
+                    throw (SQLException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
                 }
+                throw Util.newInternal(cause);
             }
         }
+    }
+
+    /**
+     * Helper function which writes an entry to the export log.
+     *
+     * @param logOut writer for the export log
+     * @param logFileName name of the export log file
+     * @param entry entry to write
+     */
+    private static void writeLogEntry(
+        Writer logOut,
+        String logFileName,
+        String entry)
+    {
         try {
+            logOut.write(entry);
             logOut.flush();
-            logOut.close();
         } catch (IOException ie) {
+            try {
+                logOut.flush();
+                logOut.close();
+            } catch (IOException ie2) {
+                throw FarragoResource.instance().ExportSchemaFileWriterError
+                .ex(
+                    logFileName,
+                    ie.getMessage() + ie2.getMessage(),
+                    ie);
+            }
             throw FarragoResource.instance().ExportSchemaFileWriterError.ex(
                 logFileName,
                 ie.getMessage(),
                 ie);
         }
-        stmt.close();
-
-        if (tableNames == null) {
-            // For a successful single-query export, delete when done to reduce
-            // clutter.
+    }
 
-            // REVIEW jvs 17-Jun-2008:  but we don't even check that
-            // it was successful!
+    /**
+     * Helper function which opens an export data file for writing.
+     *
+     * @param file file to write
+     * @param compress if true, data is compressed with gzip
+     *
+     * @return buffered stream
+     */
+    private static OutputStream openDataFile(File file, boolean compress)
+        throws IOException
+    {
+        FileChannel channel = new FileOutputStream(file).getChannel();
+        OutputStream out =
+            new BufferedOutputStream(
+                Channels.newOutputStream(channel),
+                BUFFER_SIZE);
+        if (compress) {
+            out = new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+        return out;
+    }
 
-            logFile.delete();
+    /**
+     * Helper function which closes an export file.
+     *
+     * @param out stream or writer to close
+     * @param fileName name of the file
+     */
+    private static void closeFile(Closeable out, String fileName)
+    {
+        try {
+            out.close();
+        } catch (IOException ie) {
+            throw FarragoResource.instance().ExportSchemaFileWriterError.ex(
+                fileName,
+                ie.getMessage(),
+                ie);
         }
     }
 
@@ -1641,6 +1731,9 @@ public abstract class FarragoExportSchemaUDR
             timestampFormat,
             null, // tableNames
             querySql,
+            null, // format
+            false, // compress
+            1, // parallelism
             conn);
     }
 
@@ -1763,7 +1856,10 @@ public abstract class FarragoExportSchemaUDR
      */
     private static String quote(String value)
     {
-        return value.replaceAll("\"", "\"\"");
+        if (value.indexOf('"') < 0) {
+            return value;
+        }
+        return value.replace(QUOTE, QUOTE + QUOTE);
     }
 
     /**
@@ -1993,6 +2089,370 @@ public abstract class FarragoExportSchemaUDR
 
         return exportType;
     }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * TableExporter writes the data and BCP files for one table (or query) at
+     * a time. It holds only the options of the export, so it may be used by
+     * several threads at once, each with its own connection.
+     */
+    private static class TableExporter
+    {
+        private final int expType;
+        private final String catalog;
+        private final String schema;
+        private final Timestamp lastModified;
+        private final String columnName;
+        private final String incrCatalog;
+        private final String incrSchema;
+        private final String directory;
+        private final boolean withBcp;
+        private final boolean withData;
+        private final boolean deleteFailedFiles;
+        private final String fieldDelimiter;
+        private final String fileExtension;
+        private final String dateFormat;
+        private final String timeFormat;
+        private final String timestampFormat;
+        private final boolean exportingTables;
+        private final String querySql;
+        private final boolean binary;
+        private final boolean compress;
+        private final boolean tracing;
+
+        TableExporter(
+            int expType,
+            String catalog,
+            String schema,
+            Timestamp lastModified,
+            String columnName,
+            String incrCatalog,
+            String incrSchema,
+            String directory,
+            boolean withBcp,
+            boolean withData,
+            boolean deleteFailedFiles,
+            String fieldDelimiter,
+            String fileExtension,
+            String dateFormat,
+            String timeFormat,
+            String timestampFormat,
+            boolean exportingTables,
+            String querySql,
+            boolean binary,
+            boolean compress)
+        {
+            this.expType = expType;
+            this.catalog = catalog;
+            this.schema = schema;
+            this.lastModified = lastModified;
+            this.columnName = columnName;
+            this.incrCatalog = incrCatalog;
+            this.incrSchema = incrSchema;
+            this.directory = directory;
+            this.withBcp = withBcp;
+            this.withData = withData;
+            this.deleteFailedFiles = deleteFailedFiles;
+            this.fieldDelimiter = fieldDelimiter;
+            this.fileExtension = fileExtension;
+            this.dateFormat = dateFormat;
+            this.timeFormat = timeFormat;
+            this.timestampFormat = timestampFormat;
+            this.exportingTables = exportingTables;
+            this.querySql = querySql;
+            this.binary = binary;
+            this.compress = compress;
+            this.tracing = tracer.isLoggable(Level.FINE);
+        }
+
+        /**
+         * Exports one table.
+         *
+         * @param tblName name of the table, or a placeholder when exporting a
+         * query
+         * @param conn connection to use
+         *
+         * @return entry for the export log, recording whether the export
+         * passed or failed
+         */
+        String exportTable(String tblName, Connection conn)
+            throws SQLException
+        {
+            StringBuilder entry = new StringBuilder();
+            entry.append(tblName).append(TAB);
+            entry.append(getTimestampString()).append(TAB);
+
+            Statement stmt = conn.createStatement();
+            try {
+                ResultSet tblData;
+                try {
+                    // if column doesn't exist in table, does a full export
+                    // for incremental, for merge table won't be merged
+                    // but will be logged in log file
+                    int export =
+                        checkColumnName(
+                            expType,
+                            catalog,
+                            schema,
+                            incrCatalog,
+                            incrSchema,
+                            tblName,
+                            columnName,
+                            conn);
+
+                    String sql = querySql;
+                    if (exportingTables) {
+                        sql =
+                            buildQuerySql(
+                                export,
+                                catalog,
+                                schema,
+                                tblName,
+                                lastModified,
+                                columnName,
+                                incrCatalog,
+                                incrSchema);
+                    }
+
+                    entry.append(EXPORT_TYPES[export]).append(TAB);
+
+                    // TODO jvs 21-Oct-2006:  For case of !withData,
+                    // don't bother executing query; just prepare and
+                    // use ResultSetMetaData
+
+                    tblData = stmt.executeQuery(sql);
+                } catch (SQLException se) {
+                    return endEntry(entry, "FAIL", se.toString());
+                }
+
+                List<File> files = new ArrayList<File>();
+                Exception failure = null;
+                try {
+                    writeFiles(tblName, tblData, files);
+                } catch (SQLException se) {
+                    failure = se;
+                } catch (IOException ie) {
+                    failure = ie;
+                } finally {
+                    tblData.close();
+
+                    // delete partial files if table export failed
+                    if ((failure != null) && deleteFailedFiles) {
+                        for (File file : files) {
+                            file.delete();
+                        }
+                    }
+                }
+                if (failure != null) {
+                    return endEntry(entry, "FAIL", failure.toString());
+                }
+                return endEntry(entry, "PASS", "None");
+            } finally {
+                stmt.close();
+            }
+        }
+
+        private String endEntry(
+            StringBuilder entry,
+            String status,
+            String reason)
+        {
+            entry.append(status).append(TAB);
+            entry.append(getTimestampString()).append(TAB);
+            entry.append(reason).append(NEWLINE);
+            return entry.toString();
+        }
+
+        private void writeFiles(
+            String tblName,
+            ResultSet tblData,
+            List<File> files)
+            throws SQLException, IOException
+        {
+            String dataName;
+            String bcpName;
+            if (!exportingTables) {
+                dataName = directory + fileExtension;
+                bcpName = directory + ".bcp";
+            } else {
+                dataName = directory + File.separator + tblName
+                    + fileExtension;
+                bcpName = directory + File.separator + tblName + ".bcp";
+            }
+            if (compress) {
+                dataName += ".gz";
+            }
+
+            ResultSetMetaData tblMeta = tblData.getMetaData();
+            int numCols = tblMeta.getColumnCount();
+
+            // serialized rows carry their own header, and don't need a
+            // control file
+            if (withBcp && !binary) {
+                // write BCP header
+                File bcpFile = new File(bcpName);
+                files.add(bcpFile);
+                Writer bcpOut =
+                    new BufferedWriter(
+                        new OutputStreamWriter(
+                            new FileOutputStream(bcpFile),
+                            "ISO-8859-1"));
+                try {
+                    // version using BroadBase
+                    bcpOut.write("6.0" + NEWLINE);
+                    bcpOut.write(numCols + NEWLINE);
+                    for (int i = 1; i <= numCols; i++) {
+                        bcpOut.write(getBcpLine(i, tblMeta, fieldDelimiter));
+                    }
+                } finally {
+                    closeFile(bcpOut, bcpName);
+                }
+            }
+
+            if (!withData) {
+                return;
+            }
+            File dataFile = new File(dataName);
+            files.add(dataFile);
+            OutputStream dataOut = openDataFile(dataFile, compress);
+            try {
+                if (binary) {
+                    writeBinaryRows(tblData, tblMeta, dataOut);
+                } else {
+                    writeTextRows(tblData, tblMeta, dataOut);
+                }
+            } finally {
+                closeFile(dataOut, dataName);
+            }
+        }
+
+        private void writeTextRows(
+            ResultSet tblData,
+            ResultSetMetaData tblMeta,
+            OutputStream out)
+            throws SQLException, IOException
+        {
+            int numCols = tblMeta.getColumnCount();
+            Writer csvOut =
+                new BufferedWriter(
+                    new OutputStreamWriter(out, "ISO-8859-1"),
+                    BUFFER_SIZE);
+
+            // write column names to CSV, delimited and quoted
+            int [] columnTypes = new int[numCols + 1];
+            for (int i = 1; i <= numCols; i++) {
+                columnTypes[i] = tblMeta.getColumnType(i);
+                csvOut.write(QUOTE);
+                csvOut.write(tblMeta.getColumnName(i));
+                csvOut.write(QUOTE);
+                csvOut.write((i != numCols) ? fieldDelimiter : NEWLINE);
+            }
+
+            long nRows = 0;
+
+            // write the csv file
+            while (tblData.next()) {
+                for (int i = 1; i <= numCols; i++) {
+                    String field = getField(tblData, i, columnTypes[i]);
+                    if (field != null) {
+                        csvOut.write(QUOTE);
+
+                        // quote the quotes
+                        csvOut.write(quote(field));
+                        csvOut.write(QUOTE);
+                    }
+                    csvOut.write((i != numCols) ? fieldDelimiter : NEWLINE);
+                }
+
+                if (tracing) {
+                    if ((nRows % 100) == 0) {
+                        // When trace is on, be nice to the poor little
+                        // Windows users, otherwise they can't see anything
+                        // until the very end because the file size only
+                        // gets updated on explicit flush.  Do this on row
+                        // 1 so that they'll know something's happening if
+                        // it takes a long time to compute the rest.
+                        // Normally, don't do any explicit flushing because
+                        // it's bad for performance.
+                        csvOut.flush();
+                        tracer.fine("Exported row #" + nRows);
+                    }
+                }
+                ++nRows;
+            }
+            csvOut.flush();
+        }
+
+        private String getField(ResultSet tblData, int i, int columnType)
+            throws SQLException
+        {
+            // format date/time/timestamp fields
+            if ((columnType == Types.DATE) && (dateFormat != null)) {
+                return FarragoConvertDatetimeUDR.date_to_char(
+                    dateFormat,
+                    tblData.getDate(i),
+                    true);
+            } else if ((columnType == Types.TIME) && (timeFormat != null)) {
+                return FarragoConvertDatetimeUDR.time_to_char(
+                    timeFormat,
+                    tblData.getTime(i),
+                    true);
+            } else if (
+                (columnType == Types.TIMESTAMP)
+                && (timestampFormat != null))
+            {
+                return FarragoConvertDatetimeUDR.timestamp_to_char(
+                    timestampFormat,
+                    tblData.getTimestamp(i),
+                    true);
+            } else {
+                // everything else
+                return tblData.getString(i);
+            }
+        }
+
+        private void writeBinaryRows(
+            ResultSet tblData,
+            ResultSetMetaData tblMeta,
+            OutputStream out)
+            throws SQLException, IOException
+        {
+            int numCols = tblMeta.getColumnCount();
+            ObjectOutputStream objOut = new ObjectOutputStream(out);
+
+            // Same layout as the applib WRITE_ROWS_TO_FILE procedure: a
+            // header holding a version and the display size of each column,
+            // then one list of column values per row.
+            List<Object> header = new ArrayList<Object>(2);
+            header.add(1);
+            ArrayList<Integer> displaySizes = new ArrayList<Integer>(numCols);
+            for (int i = 1; i <= numCols; i++) {
+                displaySizes.add(tblMeta.getColumnDisplaySize(i));
+            }
+            header.add(displaySizes);
+            objOut.writeObject(header);
+
+            long nRows = 0;
+            while (tblData.next()) {
+                ArrayList<Object> row = new ArrayList<Object>(numCols);
+                for (int i = 1; i <= numCols; i++) {
+                    row.add(tblData.getObject(i));
+                }
+                objOut.writeObject(row);
+                ++nRows;
+                if ((nRows % RESET_INTERVAL) == 0) {
+                    // Otherwise the stream remembers every row written, so
+                    // that it could refer back to it.
+                    objOut.reset();
+                    if (tracing) {
+                        tracer.fine("Exported row #" + nRows);
+                    }
+                }
+            }
+            objOut.flush();
+        }
+    }
 }
 
 // End FarragoExportSchemaUDR.java
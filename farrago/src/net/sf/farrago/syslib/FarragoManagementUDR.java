@@ -38,7 +38,9 @@ import net.sf.farrago.runtime.*;
 import net.sf.farrago.session.*;
 import net.sf.farrago.util.*;
 
+import org.eigenbase.javac.*;
 import org.eigenbase.jmi.*;
+import org.eigenbase.rel.metadata.*;
 import org.eigenbase.util.*;
 import org.eigenbase.util14.*;
 
@@ -203,6 +205,54 @@ public abstract class FarragoManagementUDR
             new String[]{"Buffer Pool Statistics", "Write-Specific", "pages"});
         perf_counter_info.put(
             "JvmNanoTime", new String[]{"Miscellaneous", null, "ns"});
+        perf_counter_info.put(
+            "StatementCacheHits",
+            new String[]{"Statement Cache", null, null});
+        perf_counter_info.put(
+            "StatementCacheMisses",
+            new String[]{"Statement Cache", null, null});
+        perf_counter_info.put(
+            "JavaCompilations",
+            new String[]{"Java Compilation", null, null});
+        perf_counter_info.put(
+            "JavaCompileMillis",
+            new String[]{"Java Compilation", null, "ms"});
+        perf_counter_info.put(
+            "JavaCompileQueueDepth",
+            new String[]{"Java Compilation", null, null});
+        perf_counter_info.put(
+            "JavaCompileWaitMillis",
+            new String[]{"Java Compilation", null, "ms"});
+        perf_counter_info.put(
+            "MetadataCacheHits",
+            new String[]{"Metadata Cache", null, null});
+        perf_counter_info.put(
+            "MetadataCacheMisses",
+            new String[]{"Metadata Cache", null, null});
+        perf_counter_info.put(
+            "UdxBatchedRows",
+            new String[]{"Java UDX", null, null});
+        perf_counter_info.put(
+            "UdxConsumerWaitMillis",
+            new String[]{"Java UDX", null, "ms"});
+        perf_counter_info.put(
+            "UdxProducerWaitMillis",
+            new String[]{"Java UDX", null, "ms"});
+        perf_counter_info.put(
+            "UdxRowBatches",
+            new String[]{"Java UDX", null, null});
+        perf_counter_info.put(
+            "WorkloadMemoryBudget",
+            new String[]{"Workload Management", null, "bytes"});
+        perf_counter_info.put(
+            "WorkloadMemoryAdmitted",
+            new String[]{"Workload Management", null, "bytes"});
+        perf_counter_info.put(
+            "WorkloadStatementsAdmitted",
+            new String[]{"Workload Management", null, null});
+        perf_counter_info.put(
+            "WorkloadStatementsWaiting",
+            new String[]{"Workload Management", null, null});
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -327,6 +377,31 @@ public abstract class FarragoManagementUDR
         }
     }
 
+    /**
+     * Populates a table of the workload manager's admission queues, one per
+     * user and role which has had a statement wait for admission.
+     */
+    public static void workloadQueues(PreparedStatement resultInserter)
+        throws SQLException
+    {
+        FarragoSession callerSession = FarragoUdrRuntime.getSession();
+        FarragoDatabase db = ((FarragoDbSession) callerSession).getDatabase();
+        for (
+            FarragoDbWorkloadManager.QueueStatistics stats
+            : db.getWorkloadManager().getQueueStatistics())
+        {
+            int i = 0;
+            resultInserter.setString(++i, stats.userName);
+            resultInserter.setString(++i, stats.roleName);
+            resultInserter.setInt(++i, stats.statementsWaiting);
+            resultInserter.setLong(++i, stats.longestWaitMillis);
+            resultInserter.setLong(++i, stats.statementsAdmitted);
+            resultInserter.setLong(++i, stats.totalWaitMillis);
+            resultInserter.setLong(++i, stats.statementsTimedOut);
+            resultInserter.executeUpdate();
+        }
+    }
+
     /**
      * Populates a list of session parameters
      */
@@ -572,6 +647,7 @@ public abstract class FarragoManagementUDR
         throws Exception
     {
         String JVM_SRC = "JVM";
+        String FARRAGO_SRC = "Farrago";
         Runtime runtime = Runtime.getRuntime();
 
         // Read values from System and Runtime
@@ -608,6 +684,151 @@ public abstract class FarragoManagementUDR
             Long.toString(System.nanoTime()),
             "ns");
 
+        // Read values from the statement cache
+        FarragoSession callerSession = FarragoUdrRuntime.getSession();
+        FarragoDatabase db = ((FarragoDbSession) callerSession).getDatabase();
+        addSysInfo(
+            resultInserter,
+            perf_counter_info.get("StatementCacheHits")[0],
+            perf_counter_info.get("StatementCacheHits")[1],
+            FARRAGO_SRC,
+            "StatementCacheHits",
+            Long.toString(db.getSqlTextCacheHits()),
+            perf_counter_info.get("StatementCacheHits")[2]);
+        addSysInfo(
+            resultInserter,
+            perf_counter_info.get("StatementCacheMisses")[0],
+            perf_counter_info.get("StatementCacheMisses")[1],
+            FARRAGO_SRC,
+            "StatementCacheMisses",
+            Long.toString(db.getSqlTextCacheMisses()),
+            perf_counter_info.get("StatementCacheMisses")[2]);
+
+        // Read values from the Java compilation service
+        JavaCompilationService compilationService =
+            JavaCompilationService.instance();
+        addSysInfo(
+            resultInserter,
+            perf_counter_info.get("JavaCompilations")[0],
+            perf_counter_info.get("JavaCompilations")[1],
+            FARRAGO_SRC,
+            "JavaCompilations",
+            Long.toString(compilationService.getCompilationCount()),
+            perf_counter_info.get("JavaCompilations")[2]);
+        addSysInfo(
+            resultInserter,
+            perf_counter_info.get("JavaCompileMillis")[0],
+            perf_counter_info.get("JavaCompileMillis")[1],
+            FARRAGO_SRC,
+            "JavaCompileMillis",
+            Long.toString(compilationService.getCompileMillis()),
+            perf_counter_info.get("JavaCompileMillis")[2]);
+        addSysInfo(
+            resultInserter,
+            perf_counter_info.get("JavaCompileQueueDepth")[0],
+            perf_counter_info.get("JavaCompileQueueDepth")[1],
+            FARRAGO_SRC,
+            "JavaCompileQueueDepth",
+            Integer.toString(compilationService.getQueueDepth()),
+            perf_counter_info.get("JavaCompileQueueDepth")[2]);
+        addSysInfo(
+            resultInserter,
+            perf_counter_info.get("JavaCompileWaitMillis")[0],
+            perf_counter_info.get("JavaCompileWaitMillis")[1],
+            FARRAGO_SRC,
+            "JavaCompileWaitMillis",
+            Long.toString(compilationService.getWaitMillis()),
+            perf_counter_info.get("JavaCompileWaitMillis")[2]);
+
+        // Read values from the shared metadata cache
+        SharedRelMetadataCache metadataCache =
+            SharedRelMetadataCache.instance();
+        addSysInfo(
+            resultInserter,
+            perf_counter_info.get("MetadataCacheHits")[0],
+            perf_counter_info.get("MetadataCacheHits")[1],
+            FARRAGO_SRC,
+            "MetadataCacheHits",
+            Long.toString(metadataCache.getHitCount()),
+            perf_counter_info.get("MetadataCacheHits")[2]);
+        addSysInfo(
+            resultInserter,
+            perf_counter_info.get("MetadataCacheMisses")[0],
+            perf_counter_info.get("MetadataCacheMisses")[1],
+            FARRAGO_SRC,
+            "MetadataCacheMisses",
+            Long.toString(metadataCache.getMissCount()),
+            perf_counter_info.get("MetadataCacheMisses")[2]);
+
+        // Read values from Java UDX row handoff
+        addSysInfo(
+            resultInserter,
+            perf_counter_info.get("UdxBatchedRows")[0],
+            perf_counter_info.get("UdxBatchedRows")[1],
+            FARRAGO_SRC,
+            "UdxBatchedRows",
+            Long.toString(FarragoJavaUdxIterator.getBatchRowCount()),
+            perf_counter_info.get("UdxBatchedRows")[2]);
+        addSysInfo(
+            resultInserter,
+            perf_counter_info.get("UdxConsumerWaitMillis")[0],
+            perf_counter_info.get("UdxConsumerWaitMillis")[1],
+            FARRAGO_SRC,
+            "UdxConsumerWaitMillis",
+            Long.toString(FarragoJavaUdxIterator.getConsumerWaitMillis()),
+            perf_counter_info.get("UdxConsumerWaitMillis")[2]);
+        addSysInfo(
+            resultInserter,
+            perf_counter_info.get("UdxProducerWaitMillis")[0],
+            perf_counter_info.get("UdxProducerWaitMillis")[1],
+            FARRAGO_SRC,
+            "UdxProducerWaitMillis",
+            Long.toString(FarragoJavaUdxIterator.getProducerWaitMillis()),
+            perf_counter_info.get("UdxProducerWaitMillis")[2]);
+        addSysInfo(
+            resultInserter,
+            perf_counter_info.get("UdxRowBatches")[0],
+            perf_counter_info.get("UdxRowBatches")[1],
+            FARRAGO_SRC,
+            "UdxRowBatches",
+            Long.toString(FarragoJavaUdxIterator.getBatchCount()),
+            perf_counter_info.get("UdxRowBatches")[2]);
+
+        // Read values from the workload manager
+        FarragoDbWorkloadManager workloadManager = db.getWorkloadManager();
+        addSysInfo(
+            resultInserter,
+            perf_counter_info.get("WorkloadMemoryBudget")[0],
+            perf_counter_info.get("WorkloadMemoryBudget")[1],
+            FARRAGO_SRC,
+            "WorkloadMemoryBudget",
+            Long.toString(workloadManager.getBudget()),
+            perf_counter_info.get("WorkloadMemoryBudget")[2]);
+        addSysInfo(
+            resultInserter,
+            perf_counter_info.get("WorkloadMemoryAdmitted")[0],
+            perf_counter_info.get("WorkloadMemoryAdmitted")[1],
+            FARRAGO_SRC,
+            "WorkloadMemoryAdmitted",
+            Long.toString(workloadManager.getBytesAdmitted()),
+            perf_counter_info.get("WorkloadMemoryAdmitted")[2]);
+        addSysInfo(
+            resultInserter,
+            perf_counter_info.get("WorkloadStatementsAdmitted")[0],
+            perf_counter_info.get("WorkloadStatementsAdmitted")[1],
+            FARRAGO_SRC,
+            "WorkloadStatementsAdmitted",
+            Integer.toString(workloadManager.getStatementsAdmitted()),
+            perf_counter_info.get("WorkloadStatementsAdmitted")[2]);
+        addSysInfo(
+            resultInserter,
+            perf_counter_info.get("WorkloadStatementsWaiting")[0],
+            perf_counter_info.get("WorkloadStatementsWaiting")[1],
+            FARRAGO_SRC,
+            "WorkloadStatementsWaiting",
+            Integer.toString(workloadManager.getStatementsWaiting()),
+            perf_counter_info.get("WorkloadStatementsWaiting")[2]);
+
         // Read values from Fennel
         Map<String, String> perfCounters =
             NativeTrace.instance().getPerfCounters();
@@ -0,0 +1,128 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.test;
+
+import java.io.*;
+
+import java.sql.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.util.*;
+
+
+/**
+ * FarragoByteCodeStoreTest tests that bytecode kept by {@link
+ * FarragoByteCodeStore} is used after the database restarts.
+ */
+public class FarragoByteCodeStoreTest
+    extends FarragoTestCase
+{
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Initializes a new FarragoByteCodeStoreTest.
+     *
+     * @param testName JUnit test name
+     *
+     * @throws Exception .
+     */
+    public FarragoByteCodeStoreTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement TestCase
+    public static Test suite()
+    {
+        return wrappedSuite(FarragoByteCodeStoreTest.class);
+    }
+
+    /**
+     * Tests that a statement prepared again after a restart loads its bytecode
+     * from the store instead of compiling it. The statement reads from Fennel,
+     * and its streams get different names and ids the second time.
+     */
+    public void testRestartCacheHit()
+        throws Exception
+    {
+        File dir = File.createTempFile("FarragoByteCodeStoreTest", "");
+        dir.delete();
+        allocOwner.addAllocation(new FarragoFileAllocation(dir));
+        FarragoProperties props = FarragoProperties.instance();
+        props.codeCacheDir.set(dir.getPath());
+        try {
+            String sql = "select name from sales.depts order by name";
+            String expected = executeForString(sql);
+            FarragoByteCodeStore store = FarragoByteCodeStore.instance();
+            assertNotNull(store);
+
+            restart();
+
+            // Prepare another statement first, so that no stream name or id
+            // can coincide with the first preparation's.
+            executeForString("select * from sales.emps order by empno");
+            int hitCount = store.getHitCount();
+            assertEquals(expected, executeForString(sql));
+            assertSame(store, FarragoByteCodeStore.instance());
+            assertTrue(store.getHitCount() > hitCount);
+        } finally {
+            props.remove(props.codeCacheDir.getPath());
+        }
+    }
+
+    /**
+     * Shuts down the database and starts it again, discarding its in-memory
+     * code cache.
+     */
+    private void restart()
+        throws Exception
+    {
+        stmt.close();
+        stmt = null;
+        forceShutdown();
+        staticSetUp();
+        stmt = connection.createStatement();
+    }
+
+    private String executeForString(String sql)
+        throws SQLException
+    {
+        StringBuilder buf = new StringBuilder();
+        resultSet = stmt.executeQuery(sql);
+        try {
+            int n = resultSet.getMetaData().getColumnCount();
+            while (resultSet.next()) {
+                for (int i = 1; i <= n; ++i) {
+                    buf.append(resultSet.getString(i)).append('|');
+                }
+                buf.append('\n');
+            }
+        } finally {
+            resultSet.close();
+            resultSet = null;
+        }
+        return buf.toString();
+    }
+}
+
+// End FarragoByteCodeStoreTest.java
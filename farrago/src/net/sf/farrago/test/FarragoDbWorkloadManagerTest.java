@@ -0,0 +1,290 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.test;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.db.*;
+import net.sf.farrago.util.*;
+
+import org.eigenbase.util.*;
+
+
+/**
+ * FarragoDbWorkloadManagerTest is a unit test for {@link
+ * FarragoDbWorkloadManager}.
+ */
+public class FarragoDbWorkloadManagerTest
+    extends TestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * How long to wait for a thread which should finish promptly.
+     */
+    private static final long JOIN_MILLIS = 10000;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private FarragoDbWorkloadManager workloadManager;
+
+    //~ Constructors -----------------------------------------------------------
+
+    public FarragoDbWorkloadManagerTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    public void setUp()
+    {
+        workloadManager = new FarragoDbWorkloadManager();
+    }
+
+    /**
+     * Tests that statements are charged their cost, up to one statement's
+     * share of the budget, and that statements without memory-intensive
+     * streams are not charged at all.
+     */
+    public void testCharges()
+    {
+        workloadManager.setBudget(1000, 4);
+        FarragoAllocation a1 = admit("A", 0, 0);
+        FarragoAllocation a2 = admit("A", 100, 0);
+        FarragoAllocation a3 = admit("A", 5000, 0);
+        FarragoAllocation a4 = admit("A", -1, 0);
+        assertEquals(600, workloadManager.getBytesAdmitted());
+        assertEquals(3, workloadManager.getStatementsAdmitted());
+
+        a1.closeAllocation();
+        a2.closeAllocation();
+        a3.closeAllocation();
+        a4.closeAllocation();
+
+        // closing twice must not release twice
+        a4.closeAllocation();
+        assertEquals(0, workloadManager.getBytesAdmitted());
+        assertEquals(0, workloadManager.getStatementsAdmitted());
+    }
+
+    /**
+     * Tests that everything is admitted when admission control is disabled.
+     */
+    public void testNoBudget()
+    {
+        FarragoAllocation a1 = admit("A", -1, 0);
+        FarragoAllocation a2 = admit("A", Long.MAX_VALUE, 0);
+        assertEquals(0, workloadManager.getStatementsAdmitted());
+        a1.closeAllocation();
+        a2.closeAllocation();
+    }
+
+    /**
+     * Tests that a statement which does not fit waits until memory is
+     * released.
+     */
+    public void testWaitForRelease()
+        throws Exception
+    {
+        workloadManager.setBudget(1000, 2);
+        FarragoAllocation a1 = admit("A", 500, 0);
+        FarragoAllocation a2 = admit("A", 500, 0);
+
+        final List<String> admitted = new ArrayList<String>();
+        Thread thread = startWaiter("B", 1, 500, admitted);
+        waitForWaiters(1);
+        assertTrue(admitted.isEmpty());
+
+        a1.closeAllocation();
+        thread.join(JOIN_MILLIS);
+        assertFalse(thread.isAlive());
+        assertEquals(Collections.singletonList("B"), admitted);
+        a2.closeAllocation();
+
+        boolean found = false;
+        for (
+            FarragoDbWorkloadManager.QueueStatistics stats
+            : workloadManager.getQueueStatistics())
+        {
+            if (stats.userName.equals("B")) {
+                assertEquals(0, stats.statementsWaiting);
+                assertEquals(1, stats.statementsAdmitted);
+                found = true;
+            }
+        }
+        assertTrue(found);
+    }
+
+    /**
+     * Tests that waiting statements with higher priority are admitted first.
+     */
+    public void testPriority()
+        throws Exception
+    {
+        workloadManager.setBudget(1000, 1);
+        FarragoAllocation a1 = admit("A", 1000, 0);
+
+        final List<String> admitted = new ArrayList<String>();
+        Thread low = startWaiter("LOW", 1, 1000, admitted);
+        waitForWaiters(1);
+        Thread high = startWaiter("HIGH", 9, 1000, admitted);
+        waitForWaiters(2);
+
+        a1.closeAllocation();
+        low.join(JOIN_MILLIS);
+        high.join(JOIN_MILLIS);
+        assertEquals(Arrays.asList("HIGH", "LOW"), admitted);
+    }
+
+    /**
+     * Tests that a statement gives up waiting when its timeout expires.
+     */
+    public void testTimeout()
+    {
+        workloadManager.setBudget(1000, 1);
+        FarragoAllocation a1 = admit("A", 1000, 0);
+        try {
+            admit("B", 1000, 100);
+            fail("expected timeout");
+        } catch (EigenbaseException ex) {
+            // expected
+        }
+        assertEquals(0, workloadManager.getStatementsWaiting());
+        a1.closeAllocation();
+
+        // the timed-out statement must not have been charged
+        assertEquals(0, workloadManager.getBytesAdmitted());
+    }
+
+    /**
+     * Tests that a session which already has memory does not wait for more.
+     */
+    public void testSameSession()
+    {
+        workloadManager.setBudget(1000, 1);
+        FarragoAllocation a1 = admit("A", 1000, 0);
+        FarragoAllocation a2 = admit("A", 1000, 100);
+        assertEquals(2000, workloadManager.getBytesAdmitted());
+        a1.closeAllocation();
+        a2.closeAllocation();
+        assertEquals(0, workloadManager.getBytesAdmitted());
+    }
+
+    /**
+     * Tests that a waiting statement gives up when it is canceled.
+     */
+    public void testCancel()
+        throws Exception
+    {
+        workloadManager.setBudget(1000, 1);
+        FarragoAllocation a1 = admit("A", 1000, 0);
+        final CancelFlag cancelFlag = new CancelFlag();
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        Thread thread =
+            new Thread() {
+                public void run()
+                {
+                    try {
+                        workloadManager.admit(
+                            2,
+                            "B",
+                            null,
+                            1000,
+                            5,
+                            0,
+                            cancelFlag);
+                    } catch (Throwable ex) {
+                        errors.add(ex);
+                    }
+                }
+            };
+        thread.start();
+        waitForWaiters(1);
+        cancelFlag.requestCancel();
+        thread.join(JOIN_MILLIS);
+        assertFalse(thread.isAlive());
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0) instanceof EigenbaseException);
+        a1.closeAllocation();
+    }
+
+    private FarragoAllocation admit(
+        String userName,
+        long memoryCost,
+        long timeoutMillis)
+    {
+        return workloadManager.admit(
+            userName.hashCode(),
+            userName,
+            null,
+            memoryCost,
+            5,
+            timeoutMillis,
+            new CancelFlag());
+    }
+
+    /**
+     * Starts a thread which waits for admission, records its user name once
+     * admitted, and releases its memory.
+     */
+    private Thread startWaiter(
+        final String userName,
+        final int priority,
+        final long memoryCost,
+        final List<String> admitted)
+    {
+        Thread thread =
+            new Thread() {
+                public void run()
+                {
+                    FarragoAllocation admission =
+                        workloadManager.admit(
+                            userName.hashCode(),
+                            userName,
+                            null,
+                            memoryCost,
+                            priority,
+                            0,
+                            new CancelFlag());
+                    synchronized (admitted) {
+                        admitted.add(userName);
+                    }
+                    admission.closeAllocation();
+                }
+            };
+        thread.start();
+        return thread;
+    }
+
+    private void waitForWaiters(int n)
+        throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + JOIN_MILLIS;
+        while (workloadManager.getStatementsWaiting() < n) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
+
+// End FarragoDbWorkloadManagerTest.java
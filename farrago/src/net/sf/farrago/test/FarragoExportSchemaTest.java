@@ -0,0 +1,208 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.test;
+
+import java.io.*;
+
+import java.sql.*;
+
+import java.util.*;
+import java.util.zip.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.syslib.*;
+import net.sf.farrago.util.*;
+
+
+/**
+ * FarragoExportSchemaTest reads back the compressed and serialized-row data
+ * files written by {@link FarragoExportSchemaUDR}, which the flat file wrapper
+ * cannot read.
+ */
+public class FarragoExportSchemaTest
+    extends FarragoTestCase
+{
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Initializes a new FarragoExportSchemaTest.
+     *
+     * @param testName JUnit test name
+     *
+     * @throws Exception .
+     */
+    public FarragoExportSchemaTest(String testName)
+        throws Exception
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement TestCase
+    public static Test suite()
+    {
+        return wrappedSuite(FarragoExportSchemaTest.class);
+    }
+
+    /**
+     * Tests that a compressed text export holds the same bytes as an
+     * uncompressed one.
+     */
+    public void testCompressedText()
+        throws Exception
+    {
+        File plainDir = export("TEXT", false, 1);
+        File gzipDir = export("TEXT", true, 2);
+
+        assertEquals(
+            readBytes(new FileInputStream(new File(plainDir, "DEPTS.txt"))),
+            readBytes(
+                new GZIPInputStream(
+                    new FileInputStream(new File(gzipDir, "DEPTS.txt.gz")))));
+        assertTrue(new File(gzipDir, "DEPTS.bcp").exists());
+        assertFalse(new File(gzipDir, "DEPTS.txt").exists());
+    }
+
+    /**
+     * Tests that a binary export holds the rows of the table, serialized in
+     * the layout read by READ_ROWS_FROM_FILE.
+     */
+    public void testBinary()
+        throws Exception
+    {
+        File dir = export("BINARY", false, 1);
+        checkBinaryRows(new FileInputStream(new File(dir, "DEPTS.dat")));
+        assertFalse(new File(dir, "DEPTS.bcp").exists());
+    }
+
+    /**
+     * Tests that a compressed binary export, written by a parallel export,
+     * holds the rows of the table.
+     */
+    public void testCompressedBinary()
+        throws Exception
+    {
+        File dir = export("BINARY", true, 2);
+        checkBinaryRows(
+            new GZIPInputStream(
+                new FileInputStream(new File(dir, "DEPTS.dat.gz"))));
+    }
+
+    /**
+     * Exports SALES.DEPTS into a new directory, which is deleted when the
+     * test ends.
+     *
+     * @param format file format
+     * @param compress whether to compress the data file
+     * @param parallelism maximum number of tables to export at once
+     *
+     * @return directory holding the exported files
+     */
+    private File export(String format, boolean compress, int parallelism)
+        throws Exception
+    {
+        File dir = File.createTempFile("FarragoExportSchemaTest", "");
+        dir.delete();
+        allocOwner.addAllocation(new FarragoFileAllocation(dir));
+
+        PreparedStatement ps =
+            connection.prepareStatement(
+                "call sys_boot.mgmt.export_schema_to_file("
+                + "'LOCALDB', 'SALES', false, 'DEPTS', null, ?, true, false, "
+                + "',', null, null, null, null, ?, ?, ?)");
+        try {
+            ps.setString(1, dir.getPath());
+            ps.setString(2, format);
+            ps.setBoolean(3, compress);
+            ps.setInt(4, parallelism);
+            ps.execute();
+        } finally {
+            ps.close();
+        }
+        return dir;
+    }
+
+    private void checkBinaryRows(InputStream in)
+        throws Exception
+    {
+        Set<List<Object>> expected = new HashSet<List<Object>>();
+        List<Integer> expectedDisplaySizes = new ArrayList<Integer>();
+        resultSet = stmt.executeQuery("select * from sales.depts");
+        try {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            int n = metaData.getColumnCount();
+            for (int i = 1; i <= n; ++i) {
+                expectedDisplaySizes.add(metaData.getColumnDisplaySize(i));
+            }
+            while (resultSet.next()) {
+                List<Object> row = new ArrayList<Object>();
+                for (int i = 1; i <= n; ++i) {
+                    row.add(resultSet.getObject(i));
+                }
+                expected.add(row);
+            }
+        } finally {
+            resultSet.close();
+            resultSet = null;
+        }
+
+        ObjectInputStream objIn = new ObjectInputStream(in);
+        Set<List<Object>> actual = new HashSet<List<Object>>();
+        int rowCount = 0;
+        try {
+            List header = (List) objIn.readObject();
+            assertEquals(1, header.get(0));
+            assertEquals(expectedDisplaySizes, header.get(1));
+            while (true) {
+                List<Object> row;
+                try {
+                    row = (List<Object>) objIn.readObject();
+                } catch (EOFException ex) {
+                    break;
+                }
+                actual.add(row);
+                ++rowCount;
+            }
+        } finally {
+            objIn.close();
+        }
+        assertEquals(expected.size(), rowCount);
+        assertEquals(expected, actual);
+    }
+
+    private String readBytes(InputStream in)
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte [] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toString("ISO-8859-1");
+    }
+}
+
+// End FarragoExportSchemaTest.java
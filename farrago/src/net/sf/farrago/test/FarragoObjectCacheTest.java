@@ -385,6 +385,43 @@ public class FarragoObjectCacheTest
         // Let tearDown take care of cleanup verification.
     }
 
+    /**
+     * Tests a scenario where a customer only wants a car if one is already
+     * sitting idle in the fleet.
+     */
+    public void testOneThreadPinIfPresent()
+    {
+        // Start a new agency which prohibits car sharing.
+        agency = new RentalCarAgency(true, MAX_TIRES);
+
+        // Nothing in the fleet yet, and asking doesn't build anything.
+        String description = "Hatchback 3-door";
+        assertNull(agency.rentIdleCar(description));
+        assertEquals(0, nCarsCreated.get());
+        assertEquals(0, agency.getTiresInFleet());
+
+        // The only matching car is rented out exclusively.
+        RentalCarAgreement a1 = agency.rentCar(description);
+        RentalCar car1 = a1.getCar();
+        assertNull(agency.rentIdleCar(description));
+
+        // Once it's back, it can be had.
+        agency.returnCar(a1);
+        RentalCarAgreement a2 = agency.rentIdleCar(description);
+        assertNotNull(a2);
+        assertSame(car1, a2.getCar());
+        assertEquals(1, nCarsCreated.get());
+
+        // Wear it out; a stale car is discarded rather than rented.
+        a2.getCar().drive(MAX_MILEAGE + 1);
+        agency.returnCar(a2);
+        assertNull(agency.rentIdleCar(description));
+        assertEquals(1, nCarsDestroyed.get());
+        assertEquals(0, agency.getTiresInFleet());
+
+        // Let tearDown take care of cleanup verification.
+    }
+
     /**
      * Tests a scenario where an exception is thrown during initialization.
      */
@@ -698,6 +735,24 @@ public class FarragoObjectCacheTest
             return rca;
         }
 
+        /**
+         * Rents out a car of a given description, but only if the fleet
+         * already has one available; never makes a new one.
+         *
+         * @param description of car to rent
+         *
+         * @return rental agreement, or null if no car was available
+         */
+        RentalCarAgreement rentIdleCar(String description)
+        {
+            FarragoObjectCache.Entry entry =
+                fleet.pinIfPresent(description, this, exclusiveRentals);
+            if (entry == null) {
+                return null;
+            }
+            return new RentalCarAgreement(entry);
+        }
+
         /**
          * Records that a customer has returned a car, terminating the
          * agreement.
@@ -21,6 +21,7 @@ package net.sf.farrago.test;
 import java.sql.*;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
 import java.util.logging.*;
 
 import javax.jmi.reflect.*;
@@ -29,12 +30,15 @@ import junit.framework.*;
 
 import net.sf.farrago.catalog.*;
 import net.sf.farrago.cwm.relational.*;
+import net.sf.farrago.db.*;
 import net.sf.farrago.fem.security.*;
 import net.sf.farrago.fem.sql2003.*;
+import net.sf.farrago.jdbc.*;
 import net.sf.farrago.jdbc.engine.*;
 import net.sf.farrago.resource.*;
 import net.sf.farrago.session.*;
 import net.sf.farrago.type.*;
+import net.sf.farrago.util.*;
 
 import org.eigenbase.rel.metadata.*;
 import org.eigenbase.relopt.*;
@@ -52,6 +56,13 @@ import org.eigenbase.util14.*;
 public class FarragoQueryTest
     extends FarragoTestCase
 {
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * How long a test waits for DDL or another thread to get done.
+     */
+    private static final long WAIT_MILLIS = 30000;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -798,6 +809,470 @@ public class FarragoQueryTest
         }
     }
 
+    /**
+     * Tests that rows read in place from Fennel's buffers are the same as rows
+     * copied into Java, both for a reader which needs no byte array and for
+     * one which does (and so always copies), and traces the time taken.
+     */
+    public void testDirectFetch()
+        throws Exception
+    {
+        String [] queries = {
+            "select e1.empno * e2.deptno + e3.empno, e1.age + 0"
+            + " from sales.emps e1, sales.emps e2, sales.emps e3,"
+            + " sales.depts d",
+            "select e1.name || e2.city, e3.empno"
+            + " from sales.emps e1, sales.emps e2, sales.emps e3"
+        };
+        String propName =
+            FarragoProperties.instance().fennelDirectFetch.getPath();
+        String oldValue = System.getProperty(propName);
+        try {
+            for (String sql : queries) {
+                List<List<String>> results = new ArrayList<List<String>>();
+                for (boolean direct : new boolean[] { false, true }) {
+                    System.setProperty(propName, String.valueOf(direct));
+                    preparedStmt = connection.prepareStatement(sql);
+                    List<String> rows = new ArrayList<String>();
+                    long start = System.nanoTime();
+                    resultSet = preparedStmt.executeQuery();
+                    while (resultSet.next()) {
+                        rows.add(
+                            resultSet.getString(1) + ","
+                            + resultSet.getString(2));
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    resultSet.close();
+                    resultSet = null;
+                    preparedStmt.close();
+                    preparedStmt = null;
+                    tracer.info(
+                        "directFetch=" + direct + ": " + rows.size()
+                        + " rows in " + (elapsed / 1000) + " us");
+                    Collections.sort(rows);
+                    results.add(rows);
+                }
+                assertFalse(results.get(0).isEmpty());
+                assertEquals(results.get(0), results.get(1));
+            }
+        } finally {
+            if (oldValue == null) {
+                System.clearProperty(propName);
+            } else {
+                System.setProperty(propName, oldValue);
+            }
+        }
+    }
+
+    /**
+     * Tests that DDL advances the catalog change sequence numbers which
+     * short-circuit staleness checks on cached statements, and that a cached
+     * statement is still found stale when an object it depends on changes.
+     */
+    public void testCatalogChangeSeq()
+        throws Exception
+    {
+        FarragoReposImpl reposImpl = (FarragoReposImpl) repos;
+        String sql = "select * from cseq_test.t";
+        try {
+            stmt.execute("create schema cseq_test");
+            stmt.execute(
+                "create table cseq_test.t(i int not null primary key)");
+            assertEquals(1, getColumnCount(sql));
+            assertEquals(1, getColumnCount(sql));
+
+            // An unrelated change leaves the cached statement usable.
+            long seq = reposImpl.getCatalogChangeSeq();
+            stmt.execute(
+                "create table cseq_test.u(i int not null primary key)");
+            assertTrue(reposImpl.getCatalogChangeSeq() > seq);
+            assertEquals(1, getColumnCount(sql));
+
+            // Replacing the table makes it stale.
+            seq = reposImpl.getCatalogChangeSeq();
+            stmt.execute("drop table cseq_test.t");
+            stmt.execute(
+                "create table cseq_test.t(i int not null primary key, j int)");
+            assertTrue(reposImpl.getCatalogChangeSeq() > seq);
+            assertEquals(2, getColumnCount(sql));
+        } finally {
+            stmt.execute("drop schema cseq_test cascade");
+        }
+    }
+
+    /**
+     * Tests the generated column getters of Java result sets: typed getters
+     * read primitive and nullable columns with the usual conversions and
+     * null handling, and columns are found by name.
+     */
+    public void testCompiledColumnGetter()
+        throws Exception
+    {
+        String sql =
+            "select cast(i as integer) as i, cast(null as integer) as n,"
+            + " cast(2.5 as double) as d, i = 1 as b,"
+            + " cast(7 as bigint) as l, 'x' as s, 9 as \"s\""
+            + " from (values (1)) as t(i)";
+        stmt.execute("alter system set \"calcVirtualMachine\"='CALCVM_JAVA'");
+        try {
+            resultSet = stmt.executeQuery(sql);
+            assertTrue(resultSet.next());
+            assertEquals(1, resultSet.getInt("I"));
+            assertFalse(resultSet.wasNull());
+            assertEquals(0, resultSet.getInt("N"));
+            assertTrue(resultSet.wasNull());
+            assertNull(resultSet.getObject(2));
+            assertEquals(2.5, resultSet.getDouble("D"), 0);
+            assertEquals(2, resultSet.getInt("D"));
+            assertEquals(2.5f, resultSet.getFloat(3), 0);
+            assertTrue(resultSet.getBoolean("B"));
+            assertEquals(7L, resultSet.getLong(5));
+            assertEquals((short) 7, resultSet.getShort(5));
+            assertEquals("7", resultSet.getString(5));
+            assertEquals("x", resultSet.getString("S"));
+            assertEquals(9, resultSet.getInt("s"));
+            assertEquals(6, resultSet.findColumn("S"));
+            assertEquals(7, resultSet.findColumn("s"));
+            try {
+                resultSet.findColumn("NONE");
+                fail("expected exception");
+            } catch (SQLException ex) {
+                // expected
+            }
+            assertFalse(resultSet.next());
+        } finally {
+            stmt.execute(
+                "alter system set \"calcVirtualMachine\"='CALCVM_AUTO'");
+        }
+    }
+
+    /**
+     * Tests that a statement found in the cache by its raw text is only
+     * reused on behalf of a user who still holds the privileges it needs.
+     */
+    public void testSqlTextCachePrivileges()
+        throws Exception
+    {
+        FarragoDatabase db = ((FarragoDbSession) getSession()).getDatabase();
+        String sql = "select * from sqlpriv_test.t";
+        Connection conn1 = null;
+        Connection conn2 = null;
+        try {
+            stmt.execute("create schema sqlpriv_test");
+            stmt.execute(
+                "create table sqlpriv_test.t(i int not null primary key)");
+            stmt.execute("create user sqlpriv_user1 authorization 'Unknown'");
+            stmt.execute("create user sqlpriv_user2 authorization 'Unknown'");
+            stmt.execute("create role sqlpriv_reader");
+            stmt.execute("create role sqlpriv_role");
+            stmt.execute("grant select on sqlpriv_test.t to sqlpriv_reader");
+            stmt.execute("grant role sqlpriv_reader to sqlpriv_role");
+            stmt.execute("grant role sqlpriv_role to sqlpriv_user1");
+
+            conn1 = newUserConnection("SQLPRIV_USER1");
+            Statement stmt1 = conn1.createStatement();
+            stmt1.execute("set role 'sqlpriv_role'");
+            assertEquals(0, countRows(stmt1, sql));
+            long hits = db.getSqlTextCacheHits();
+            assertEquals(0, countRows(stmt1, sql));
+            assertTrue(db.getSqlTextCacheHits() > hits);
+
+            // The same text from a user without the privilege must not find
+            // the statement prepared for the first one.
+            conn2 = newUserConnection("SQLPRIV_USER2");
+            Statement stmt2 = conn2.createStatement();
+            assertSelectDenied(stmt2, sql);
+            assertSelectDenied(stmt2, sql);
+
+            // Dropping the role which held the privilege takes it away from
+            // the first user, without changing the user or current role.
+            stmt.execute("drop role sqlpriv_reader cascade");
+            assertSelectDenied(stmt1, sql);
+        } finally {
+            if (conn1 != null) {
+                conn1.close();
+            }
+            if (conn2 != null) {
+                conn2.close();
+            }
+            stmt.execute("drop schema sqlpriv_test cascade");
+            stmt.execute("drop role sqlpriv_role cascade");
+            dropIfExists("role sqlpriv_reader cascade");
+            stmt.execute("drop user sqlpriv_user1");
+            stmt.execute("drop user sqlpriv_user2");
+        }
+    }
+
+    /**
+     * Tests that a statement found by its text without locking the repository
+     * has its privileges checked again, under the lock, after DDL which may
+     * change privileges; and that it can be found without the lock again once
+     * they have been checked.
+     */
+    public void testSqlTextCacheUnlockedPrivileges()
+        throws Exception
+    {
+        FarragoDatabase db = ((FarragoDbSession) getSession()).getDatabase();
+        String sql = "select * from sqlunlock_test.t";
+        Connection conn1 = null;
+        try {
+            stmt.execute("create schema sqlunlock_test");
+            stmt.execute(
+                "create table sqlunlock_test.t(i int not null primary key)");
+            stmt.execute("create user sqlunlock_user authorization 'Unknown'");
+            stmt.execute("create role sqlunlock_reader");
+            stmt.execute(
+                "grant select on sqlunlock_test.t to sqlunlock_reader");
+            stmt.execute("grant role sqlunlock_reader to sqlunlock_user");
+
+            conn1 = newUserConnection("SQLUNLOCK_USER");
+            Statement stmt1 = conn1.createStatement();
+            stmt1.execute("set role 'sqlunlock_reader'");
+            assertUnlockedHit(db, stmt1, sql);
+
+            // After a GRANT, the next lookup takes the lock to check
+            // privileges, and still finds the statement.
+            stmt.execute(
+                "grant insert on sqlunlock_test.t to sqlunlock_reader");
+            long unlockedHits = db.getSqlTextCacheUnlockedHits();
+            long hits = db.getSqlTextCacheHits();
+            assertEquals(0, countRows(stmt1, sql));
+            assertEquals(unlockedHits, db.getSqlTextCacheUnlockedHits());
+            assertTrue(db.getSqlTextCacheHits() > hits);
+            assertUnlockedHit(db, stmt1, sql);
+
+            // Once the privilege is gone, the statement must not be found
+            // without the lock.
+            unlockedHits = db.getSqlTextCacheUnlockedHits();
+            stmt.execute("drop role sqlunlock_reader cascade");
+            assertSelectDenied(stmt1, sql);
+            assertSelectDenied(stmt1, sql);
+            assertEquals(unlockedHits, db.getSqlTextCacheUnlockedHits());
+        } finally {
+            if (conn1 != null) {
+                conn1.close();
+            }
+            stmt.execute("drop schema sqlunlock_test cascade");
+            dropIfExists("role sqlunlock_reader cascade");
+            stmt.execute("drop user sqlunlock_user");
+        }
+    }
+
+    /**
+     * Tests statements found by their text while another session replaces
+     * the view they read. Once the replacement has committed, no session may
+     * find a statement prepared for the old definition; and a session which
+     * has seen a definition must never see an older one.
+     */
+    public void testSqlTextCacheConcurrentDdl()
+        throws Exception
+    {
+        final String sql = "select * from sqlddl_test.v";
+        final int definitionCount = 5;
+        final AtomicBoolean done = new AtomicBoolean();
+        final List<Integer> columnCounts = new ArrayList<Integer>();
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        Connection conn1 = null;
+        Connection conn2 = null;
+        Thread reader = null;
+        try {
+            stmt.execute("create schema sqlddl_test");
+            stmt.execute(
+                "create table sqlddl_test.t(i int not null primary key)");
+            stmt.execute(makeViewDdl("sqlddl_test", 1));
+
+            conn1 = newConnection();
+            conn1.setAutoCommit(true);
+            final Statement stmt1 = conn1.createStatement();
+            conn2 = newConnection();
+            conn2.setAutoCommit(true);
+            Statement stmt2 = conn2.createStatement();
+            assertEquals(1, countColumns(stmt2, sql));
+
+            reader =
+                new Thread() {
+                    public void run()
+                    {
+                        try {
+                            while (!done.get()) {
+                                int n = countColumns(stmt1, sql);
+                                synchronized (columnCounts) {
+                                    columnCounts.add(n);
+                                }
+                            }
+                        } catch (Throwable ex) {
+                            synchronized (errors) {
+                                errors.add(ex);
+                            }
+                        }
+                    }
+                };
+            reader.start();
+
+            for (int i = 2; i <= definitionCount; ++i) {
+                replaceView(makeViewDdl("sqlddl_test", i));
+                assertEquals(i, countColumns(stmt2, sql));
+                assertEquals(i, countColumns(stmt2, sql));
+            }
+            done.set(true);
+            reader.join(WAIT_MILLIS);
+            assertFalse(reader.isAlive());
+            reader = null;
+            synchronized (errors) {
+                assertTrue(errors.toString(), errors.isEmpty());
+            }
+            synchronized (columnCounts) {
+                int prev = 1;
+                for (int n : columnCounts) {
+                    assertTrue(columnCounts.toString(), n >= prev);
+                    assertTrue(columnCounts.toString(), n <= definitionCount);
+                    prev = n;
+                }
+            }
+        } finally {
+            done.set(true);
+            if (reader != null) {
+                reader.join(WAIT_MILLIS);
+            }
+            if (conn1 != null) {
+                conn1.close();
+            }
+            if (conn2 != null) {
+                conn2.close();
+            }
+            stmt.execute("drop schema sqlddl_test cascade");
+        }
+    }
+
+    /**
+     * Runs a query until it is found by its text without locking the
+     * repository. The first execution may prepare it, and the next may have
+     * to make the catalog snapshot cover it.
+     */
+    private static void assertUnlockedHit(
+        FarragoDatabase db,
+        Statement stmt,
+        String sql)
+        throws SQLException
+    {
+        long unlockedHits = db.getSqlTextCacheUnlockedHits();
+        for (int i = 0; i < 3; ++i) {
+            assertEquals(0, countRows(stmt, sql));
+            if (db.getSqlTextCacheUnlockedHits() > unlockedHits) {
+                return;
+            }
+        }
+        fail("statement was not found without locking the repository");
+    }
+
+    /**
+     * @return CREATE OR REPLACE VIEW statement for a view v which has a given
+     * number of columns
+     */
+    private static String makeViewDdl(String schemaName, int columnCount)
+    {
+        StringBuilder buf = new StringBuilder();
+        buf.append("create or replace view ").append(schemaName)
+            .append(".v as select ");
+        for (int i = 0; i < columnCount; ++i) {
+            if (i > 0) {
+                buf.append(", ");
+            }
+            buf.append("i as c").append(i);
+        }
+        buf.append(" from ").append(schemaName).append(".t");
+        return buf.toString();
+    }
+
+    /**
+     * Executes DDL, trying again while it fails because statements in other
+     * sessions are using the object it replaces.
+     */
+    private void replaceView(String ddl)
+        throws Exception
+    {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        for (;;) {
+            try {
+                stmt.execute(ddl);
+                return;
+            } catch (SQLException ex) {
+                if ((ex.getMessage() == null)
+                    || !ex.getMessage().contains("currently in use")
+                    || (System.currentTimeMillis() > deadline))
+                {
+                    throw ex;
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static int countColumns(Statement stmt, String sql)
+        throws SQLException
+    {
+        ResultSet rs = stmt.executeQuery(sql);
+        int n = rs.getMetaData().getColumnCount();
+        rs.close();
+        return n;
+    }
+
+    private Connection newUserConnection(String user)
+        throws Exception
+    {
+        FarragoAbstractJdbcDriver driver = newJdbcEngineDriver();
+        Properties props = new Properties();
+        props.put("user", user);
+        props.put("password", "tiger");
+        return driver.connect(getJdbcUri(driver), props);
+    }
+
+    private static int countRows(Statement stmt, String sql)
+        throws SQLException
+    {
+        ResultSet rs = stmt.executeQuery(sql);
+        int n = 0;
+        while (rs.next()) {
+            ++n;
+        }
+        rs.close();
+        return n;
+    }
+
+    private static void assertSelectDenied(Statement stmt, String sql)
+    {
+        try {
+            countRows(stmt, sql);
+            fail("expected privilege error");
+        } catch (SQLException ex) {
+            FarragoJdbcTest.assertExceptionMatches(
+                ex,
+                ".*Privilege \"SELECT\" required for access to table.*");
+        }
+    }
+
+    private void dropIfExists(String object)
+    {
+        try {
+            stmt.execute("drop " + object);
+        } catch (SQLException ex) {
+            // already dropped
+        }
+    }
+
+    private int getColumnCount(String sql)
+        throws SQLException
+    {
+        preparedStmt = connection.prepareStatement(sql);
+        resultSet = preparedStmt.executeQuery();
+        int n = resultSet.getMetaData().getColumnCount();
+        resultSet.close();
+        resultSet = null;
+        preparedStmt.close();
+        preparedStmt = null;
+        return n;
+    }
+
     //~ Inner Classes ----------------------------------------------------------
 
     private static class TxnListener
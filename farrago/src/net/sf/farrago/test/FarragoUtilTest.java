@@ -18,10 +18,13 @@
 */
 package net.sf.farrago.test;
 
+import java.io.*;
+
 import java.util.*;
 
 import junit.framework.*;
 
+import net.sf.farrago.catalog.*;
 import net.sf.farrago.util.*;
 
 import org.eigenbase.util.*;
@@ -71,8 +74,228 @@ public class FarragoUtilTest
         }
     }
 
+    /**
+     * Tests {@link FarragoHyperLogLog}.
+     */
+    public void testHyperLogLog()
+    {
+        FarragoHyperLogLog small = new FarragoHyperLogLog();
+        for (int i = 0; i < 1000; ++i) {
+            small.add("v" + (i % 100));
+        }
+        assertEstimate(100, small.estimate(), 0.02);
+
+        FarragoHyperLogLog h1 = new FarragoHyperLogLog();
+        FarragoHyperLogLog h2 = new FarragoHyperLogLog();
+        for (int i = 0; i < 100000; ++i) {
+            h1.add("v" + i);
+            h2.add("v" + (i + 50000));
+        }
+        assertEstimate(100000, h1.estimate(), 0.05);
+
+        // Merging counts the overlapping values once.
+        h1.merge(h2);
+        assertEstimate(150000, h1.estimate(), 0.05);
+
+        try {
+            h1.merge(new FarragoHyperLogLog(10));
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    /**
+     * Tests {@link FarragoQuantileSketch}.
+     */
+    public void testQuantileSketch()
+    {
+        final int n = 200000;
+        Comparator<Integer> order =
+            new Comparator<Integer>() {
+                public int compare(Integer i1, Integer i2)
+                {
+                    return i1.compareTo(i2);
+                }
+            };
+        FarragoQuantileSketch<Integer> s1 =
+            new FarragoQuantileSketch<Integer>(order);
+        FarragoQuantileSketch<Integer> s2 =
+            new FarragoQuantileSketch<Integer>(order);
+        for (int i = 0; i < n; ++i) {
+            s1.add((i * 7919) % n);
+        }
+        s2.add(n, n);
+
+        assertEquals(n, s1.getCount());
+        assertTrue(s1.getSortedItems().size() < (n / 10));
+        assertEstimate(n / 2, s1.getQuantile(0.5), 0.02);
+        assertEstimate(n / 10, s1.getQuantile(0.1), 0.1);
+
+        // Weights of retained items add up to the exact count, also after
+        // a merge.
+        s1.merge(s2);
+        long total = 0;
+        Integer prev = null;
+        for (FarragoQuantileSketch.WeightedItem<Integer> item
+            : s1.getSortedItems())
+        {
+            assertTrue((prev == null) || (prev <= item.item));
+            prev = item.item;
+            total += item.weight;
+        }
+        assertEquals(2 * n, total);
+        assertEquals(2 * n, s1.getCount());
+        assertEquals(Integer.valueOf(n), s1.getQuantile(0.75));
+        assertEstimate(n / 2, s1.getQuantile(0.25), 0.02);
+    }
+
+    /**
+     * Tests collecting and merging a {@link FarragoTableStatisticsDelta}.
+     */
+    public void testTableStatisticsDelta()
+    {
+        FarragoTableStatisticsDelta d1 = new FarragoTableStatisticsDelta();
+        FarragoTableStatisticsDelta d2 = new FarragoTableStatisticsDelta();
+        assertEquals(0, d1.getColumnCount());
+
+        // Values before the offset, such as a MERGE's row id, are ignored.
+        for (int i = 0; i < 10; ++i) {
+            d1.addRow(
+                new Object[] { 99L, (long) i, (i % 2 == 0) ? null : "x" },
+                1);
+        }
+        assertEquals(10, d1.getRowCount());
+        assertEquals(2, d1.getColumnCount());
+
+        // Merging into an empty delta takes its columns from the other one.
+        d2.merge(d1);
+        d2.merge(new FarragoTableStatisticsDelta());
+        d2.merge(d1);
+        assertEquals(20, d2.getRowCount());
+        assertEquals(2, d2.getColumnCount());
+        assertEquals(10, d1.getRowCount());
+
+        d2.clear();
+        assertEquals(0, d2.getRowCount());
+        assertEquals(0, d2.getColumnCount());
+        d2.addRow(new Object[] { "a" }, 0);
+        assertEquals(1, d2.getRowCount());
+        assertEquals(1, d2.getColumnCount());
+    }
+
+    /**
+     * Tests {@link FarragoByteCodeStore}, including moving stored classes to
+     * another package.
+     */
+    public void testByteCodeStore()
+        throws Exception
+    {
+        String className = RelocatableClass.class.getName();
+        String fromPackage = "net.sf.farrago.test";
+        String toPackage = "net.sf.farrago.dynamic.stmt42";
+        String relocatedName =
+            toPackage + className.substring(fromPackage.length());
+        Map<String, byte []> byteCodes = new HashMap<String, byte []>();
+        byteCodes.put(className, readClassFile(RelocatableClass.class));
+
+        File dir = File.createTempFile("FarragoUtilTest", "");
+        dir.delete();
+        FarragoCompoundAllocation owner = new FarragoCompoundAllocation();
+        try {
+            owner.addAllocation(new FarragoFileAllocation(dir));
+            FarragoByteCodeStore store = new FarragoByteCodeStore(dir);
+            String source = "package " + fromPackage + "; class C {}";
+            Map<String, String> timestamps = new HashMap<String, String>();
+            timestamps.put("j:0000000000001234", "2010-01-01 00:00:00");
+            String key = store.makeKey(className, source, timestamps);
+            assertNull(store.get(key, relocatedName));
+            store.put(key, className, byteCodes);
+
+            // The same code generated into another package has the same key.
+            String relocatedSource = "package " + toPackage + "; class C {}";
+            assertEquals(
+                key,
+                store.makeKey(relocatedName, relocatedSource, timestamps));
+
+            // A change to a referenced object changes the key.
+            timestamps.put("j:0000000000001234", "2010-01-02 00:00:00");
+            assertFalse(
+                key.equals(
+                    store.makeKey(relocatedName, relocatedSource, timestamps)));
+
+            Map<String, byte []> loaded = store.get(key, relocatedName);
+            assertNotNull(loaded);
+            assertEquals(
+                Collections.singleton(relocatedName),
+                loaded.keySet());
+            final byte [] relocatedFile = loaded.get(relocatedName);
+            ClassLoader classLoader =
+                new ClassLoader(getClass().getClassLoader()) {
+                    protected Class<?> findClass(String name)
+                        throws ClassNotFoundException
+                    {
+                        return defineClass(
+                            name,
+                            relocatedFile,
+                            0,
+                            relocatedFile.length);
+                    }
+                };
+            Class<?> relocatedClass = classLoader.loadClass(relocatedName);
+            assertEquals(relocatedName, relocatedClass.getName());
+            assertEquals(
+                toPackage + ".FarragoUtilTest",
+                relocatedClass.newInstance().toString());
+        } finally {
+            owner.closeAllocation();
+        }
+        assertFalse(dir.exists());
+    }
+
+    private static byte [] readClassFile(Class clazz)
+        throws IOException
+    {
+        String name = clazz.getName();
+        InputStream in =
+            clazz.getResourceAsStream(
+                name.substring(name.lastIndexOf('.') + 1) + ".class");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte [] buf = new byte[4096];
+            for (int n = in.read(buf); n != -1; n = in.read(buf)) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void assertEstimate(
+        long expected,
+        long actual,
+        double tolerance)
+    {
+        assertTrue(
+            "expected " + expected + " but got " + actual,
+            Math.abs(actual - expected) <= (expected * tolerance));
+    }
+
     //~ Inner Classes ----------------------------------------------------------
 
+    /**
+     * Class which {@link #testByteCodeStore} moves to another package. The
+     * string constant should move along with it.
+     */
+    public static class RelocatableClass
+    {
+        public String toString()
+        {
+            return "net.sf.farrago.test.FarragoUtilTest";
+        }
+    }
+
     private class TimerTestTask
         extends TimerTask
     {
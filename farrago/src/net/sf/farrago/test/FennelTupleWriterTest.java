@@ -0,0 +1,176 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.test;
+
+import java.nio.*;
+
+import junit.framework.*;
+
+import net.sf.farrago.fennel.tuple.*;
+import net.sf.farrago.runtime.*;
+
+
+/**
+ * Tests {@link FennelTupleWriter}, both writing tuples in place when their
+ * length is known and writing them into a slice when it is not.
+ *
+ * @version $Id$
+ */
+public class FennelTupleWriterTest
+    extends TestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Length of a tuple written by {@link TestWriter}: a long and an int,
+     * which is not a multiple of the tuple alignment.
+     */
+    private static final int TUPLE_LENGTH = 12;
+
+    //~ Constructors -----------------------------------------------------------
+
+    public FennelTupleWriterTest(String testName)
+    {
+        super(testName);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Tests writing tuples in place, via {@link
+     * FennelTupleWriter#marshalTupleAt}.
+     */
+    public void testMarshalInPlace()
+    {
+        checkMarshal(new TestWriter(true));
+    }
+
+    /**
+     * Tests writing tuples into slices, via {@link
+     * FennelTupleWriter#marshalTupleOrThrow}.
+     */
+    public void testMarshalSlice()
+    {
+        checkMarshal(new TestWriter(false));
+    }
+
+    /**
+     * Tests that both ways of writing produce the same bytes.
+     */
+    public void testMarshalSame()
+    {
+        ByteBuffer inPlace = fill(new TestWriter(true), 100);
+        ByteBuffer slice = fill(new TestWriter(false), 100);
+        assertEquals(slice.position(), inPlace.position());
+        inPlace.flip();
+        slice.flip();
+        assertEquals(slice, inPlace);
+    }
+
+    private void checkMarshal(TestWriter writer)
+    {
+        int alignedLength =
+            new FennelTupleAccessor().alignRoundUp(TUPLE_LENGTH);
+        int expectedCount = 6;
+
+        // leave room for less than the magic number after the last tuple,
+        // so that a failed write leaves no trace
+        int capacity = (expectedCount * alignedLength) + 4;
+        ByteBuffer buffer = fill(writer, capacity);
+
+        // every tuple which fit was written, at an aligned position
+        assertEquals(expectedCount * alignedLength, buffer.position());
+        for (int i = 0; i < expectedCount; ++i) {
+            int offset = i * alignedLength;
+            assertEquals(i, buffer.getLong(offset));
+            assertEquals(-i, buffer.getInt(offset + 8));
+        }
+
+        // the tuple which did not fit left the buffer alone
+        for (int i = buffer.position(); i < capacity; ++i) {
+            assertEquals(0, buffer.get(i));
+        }
+    }
+
+    /**
+     * Writes tuples into a new buffer until one does not fit.
+     *
+     * @param writer tuple writer
+     * @param capacity capacity of the buffer
+     *
+     * @return buffer, positioned after the last tuple written
+     */
+    private ByteBuffer fill(FennelTupleWriter writer, int capacity)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        buffer.order(ByteOrder.nativeOrder());
+        for (long i = 0;; ++i) {
+            int position = buffer.position();
+            if (!writer.marshalTuple(buffer, i)) {
+                assertEquals(position, buffer.position());
+                break;
+            }
+        }
+        return buffer;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Writes a Long i as the tuple (i, -i).
+     */
+    private static class TestWriter
+        extends FennelTupleWriter
+    {
+        private final boolean knowsLength;
+
+        TestWriter(boolean knowsLength)
+        {
+            this.knowsLength = knowsLength;
+        }
+
+        // override FennelTupleWriter
+        protected int getMarshalledLength(Object object)
+        {
+            return knowsLength ? TUPLE_LENGTH : -1;
+        }
+
+        // implement FennelTupleWriter
+        protected void marshalTupleAt(
+            ByteBuffer byteBuffer,
+            int offset,
+            Object object)
+        {
+            long value = (Long) object;
+            byteBuffer.putLong(offset, value);
+            byteBuffer.putInt(offset + 8, (int) -value);
+            byteBuffer.position(offset + TUPLE_LENGTH);
+        }
+
+        // implement FennelTupleWriter
+        protected void marshalTupleOrThrow(
+            ByteBuffer sliceBuffer,
+            Object object)
+        {
+            marshalTupleAt(sliceBuffer, 0, object);
+        }
+    }
+}
+
+// End FennelTupleWriterTest.java
@@ -589,6 +589,20 @@ public class BytePointer
         return n;
     }
 
+    /**
+     * Returns the number of bytes {@link #writeToBuffer} will write, which is
+     * 0 if this pointer is null.
+     *
+     * @return byte count
+     */
+    public final int getWriteByteCount()
+    {
+        if (buf == null) {
+            return 0;
+        }
+        return count - pos;
+    }
+
     /**
      * Writes the contents of this pointer to a ByteBuffer.
      *
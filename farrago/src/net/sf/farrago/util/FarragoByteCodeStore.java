@@ -0,0 +1,477 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.util;
+
+import java.io.*;
+
+import java.net.*;
+
+import java.security.*;
+
+import java.util.*;
+import java.util.logging.*;
+import java.util.regex.*;
+
+import net.sf.farrago.trace.*;
+
+import org.eigenbase.util.*;
+
+
+/**
+ * FarragoByteCodeStore keeps the bytecode generated for statements in a
+ * directory, so that a restarted database can load it instead of compiling
+ * the same code again. It is enabled by setting {@link
+ * FarragoProperties#codeCacheDir}.
+ *
+ * <p>Entries are keyed by a digest of the generated source and of the
+ * modification timestamps of the catalog objects the statement depends on
+ * (the same information used to decide whether an entry in the in-memory code
+ * cache is stale). So when a referenced object changes, the statement is
+ * compiled afresh and the old entry is simply never read again. The key also
+ * covers the {@link #FORMAT_VERSION format version} and the Farrago build
+ * which generated the code, since generated code is only valid against the
+ * runtime classes it was compiled against.
+ *
+ * <p>Generated code lives in a package of its own per statement, and package
+ * names are not stable across restarts. Before digesting the source and
+ * storing the bytecode, the package is renamed to a {@link
+ * #CANONICAL_PACKAGE_NAME canonical} one; bytecode is renamed back to the
+ * package of the statement being prepared when it is loaded. Other values
+ * which differ between preparations, such as the names and ids of the Fennel
+ * streams a statement reads, are kept out of generated code and looked up at
+ * execution time instead.
+ *
+ * <p>The store is only a cache. Entries are written atomically, and any
+ * failure to read or write one is traced and treated as a miss.
+ */
+public class FarragoByteCodeStore
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Logger tracer =
+        FarragoTrace.getClassTracer(FarragoByteCodeStore.class);
+
+    /**
+     * Version of the format of stored entries. Entries of other versions are
+     * kept in other directories, and are ignored.
+     */
+    public static final int FORMAT_VERSION = 1;
+
+    /**
+     * Package in which generated classes are stored.
+     */
+    public static final String CANONICAL_PACKAGE_NAME =
+        "net.sf.farrago.dynamic.stored";
+
+    private static final String FILE_SUFFIX = ".classes";
+
+    private static final int CONSTANT_Utf8 = 1;
+    private static final int CONSTANT_Integer = 3;
+    private static final int CONSTANT_Float = 4;
+    private static final int CONSTANT_Long = 5;
+    private static final int CONSTANT_Double = 6;
+    private static final int CONSTANT_Class = 7;
+    private static final int CONSTANT_String = 8;
+    private static final int CONSTANT_Fieldref = 9;
+    private static final int CONSTANT_Methodref = 10;
+    private static final int CONSTANT_InterfaceMethodref = 11;
+    private static final int CONSTANT_NameAndType = 12;
+    private static final int CONSTANT_MethodHandle = 15;
+    private static final int CONSTANT_MethodType = 16;
+    private static final int CONSTANT_InvokeDynamic = 18;
+
+    private static FarragoByteCodeStore instance;
+
+    private static String instanceDirName;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final File dir;
+
+    private final String buildFingerprint;
+
+    private int hitCount;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a FarragoByteCodeStore.
+     *
+     * @param rootDir directory under which to keep entries; a subdirectory is
+     * used for each {@link #FORMAT_VERSION format version}
+     */
+    public FarragoByteCodeStore(File rootDir)
+    {
+        this.dir = new File(rootDir, "v" + FORMAT_VERSION);
+        this.buildFingerprint = computeBuildFingerprint();
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the store configured by {@link FarragoProperties#codeCacheDir}.
+     * Nothing is read from the store until entries are asked for. If the
+     * property has changed since the last call, a new store is returned.
+     *
+     * @return the store, or null if bytecode is not to be stored
+     */
+    public static synchronized FarragoByteCodeStore instance()
+    {
+        String dirName = FarragoProperties.instance().codeCacheDir.get();
+        if (!Util.equal(dirName, instanceDirName)) {
+            if (dirName == null) {
+                instance = null;
+            } else {
+                instance = new FarragoByteCodeStore(new File(dirName));
+                tracer.config(
+                    "storing generated bytecode in " + instance.dir);
+            }
+            instanceDirName = dirName;
+        }
+        return instance;
+    }
+
+    /**
+     * Computes the key under which to store the bytecode for a class.
+     *
+     * @param fullClassName fully qualified name of the class
+     * @param source source code of the class
+     * @param referencedObjectTimestampMap map from the MOFID of each catalog
+     * object the code depends on to its modification timestamp
+     *
+     * @return key
+     */
+    public String makeKey(
+        String fullClassName,
+        String source,
+        Map<String, String> referencedObjectTimestampMap)
+    {
+        String packageName = getPackageName(fullClassName);
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw Util.newInternal(ex);
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(FORMAT_VERSION).append('\n');
+        sb.append(buildFingerprint).append('\n');
+        sb.append(relocateName(fullClassName, packageName)).append('\n');
+        for (Map.Entry<String, String> entry
+            : new TreeMap<String, String>(
+                referencedObjectTimestampMap).entrySet())
+        {
+            sb.append(entry.getKey()).append('=').append(entry.getValue());
+            sb.append('\n');
+        }
+        sb.append(relocateSource(source, packageName));
+        try {
+            digest.update(sb.toString().getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException ex) {
+            throw Util.newInternal(ex);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Loads the bytecode stored for a class.
+     *
+     * @param key key computed by {@link #makeKey}
+     * @param fullClassName fully qualified name the class is to have
+     *
+     * @return map from fully qualified class name to bytecode, or null if
+     * nothing (usable) is stored under the key
+     */
+    public Map<String, byte []> get(String key, String fullClassName)
+    {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        Map<String, byte []> byteCodes = new HashMap<String, byte []>();
+        try {
+            DataInputStream in =
+                new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                int n = in.readInt();
+                for (int i = 0; i < n; ++i) {
+                    String name = in.readUTF();
+                    byte [] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    byteCodes.put(name, bytes);
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            tracer.log(Level.WARNING, "Could not read " + file, ex);
+            file.delete();
+            return null;
+        }
+        tracer.fine("loaded " + fullClassName + " from " + file);
+        synchronized (this) {
+            ++hitCount;
+        }
+        return relocate(
+            byteCodes,
+            CANONICAL_PACKAGE_NAME,
+            getPackageName(fullClassName));
+    }
+
+    /**
+     * Stores the bytecode generated for a class.
+     *
+     * @param key key computed by {@link #makeKey}
+     * @param fullClassName fully qualified name of the class
+     * @param byteCodes map from fully qualified class name to bytecode, for
+     * the class and any classes nested in it
+     */
+    public void put(
+        String key,
+        String fullClassName,
+        Map<String, byte []> byteCodes)
+    {
+        Map<String, byte []> relocated =
+            relocate(
+                byteCodes,
+                getPackageName(fullClassName),
+                CANONICAL_PACKAGE_NAME);
+        File file = getFile(key);
+        File tmpFile = null;
+        try {
+            file.getParentFile().mkdirs();
+            tmpFile = File.createTempFile(key, ".tmp", file.getParentFile());
+            DataOutputStream out =
+                new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(relocated.size());
+                for (Map.Entry<String, byte []> entry : relocated.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    out.write(entry.getValue());
+                }
+            } finally {
+                out.close();
+            }
+
+            // Another statement may have stored the same entry meanwhile;
+            // either copy will do.
+            if (!tmpFile.renameTo(file) && !file.exists()) {
+                throw new IOException("Could not rename " + tmpFile);
+            }
+            tracer.fine("stored " + fullClassName + " in " + file);
+        } catch (IOException ex) {
+            tracer.log(Level.WARNING, "Could not write " + file, ex);
+        } finally {
+            if (tmpFile != null) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     * @return number of times {@link #get} has found an entry
+     */
+    public synchronized int getHitCount()
+    {
+        return hitCount;
+    }
+
+    private File getFile(String key)
+    {
+        // Spread entries over subdirectories to keep directories small.
+        return new File(
+            new File(dir, key.substring(0, 2)),
+            key + FILE_SUFFIX);
+    }
+
+    private static String relocateName(
+        String fullClassName,
+        String packageName)
+    {
+        return CANONICAL_PACKAGE_NAME
+            + fullClassName.substring(packageName.length());
+    }
+
+    private static String relocateSource(String source, String packageName)
+    {
+        return source.replaceAll(
+            Pattern.quote(packageName) + "\\b",
+            Matcher.quoteReplacement(CANONICAL_PACKAGE_NAME));
+    }
+
+    private static String getPackageName(String fullClassName)
+    {
+        int i = fullClassName.lastIndexOf('.');
+        assert (i != -1) : fullClassName;
+        return fullClassName.substring(0, i);
+    }
+
+    /**
+     * Identifies the Farrago build, by the location and modification time of
+     * the code this class was loaded from.
+     */
+    private static String computeBuildFingerprint()
+    {
+        CodeSource codeSource =
+            FarragoByteCodeStore.class.getProtectionDomain().getCodeSource();
+        if ((codeSource == null) || (codeSource.getLocation() == null)) {
+            return "";
+        }
+        URL location = codeSource.getLocation();
+        long lastModified = 0;
+        if ("file".equals(location.getProtocol())) {
+            try {
+                lastModified = new File(location.toURI()).lastModified();
+            } catch (URISyntaxException ex) {
+                // use location alone
+            }
+        }
+        return location + "@" + lastModified;
+    }
+
+    /**
+     * Moves classes from one package to another.
+     *
+     * @param byteCodes map from fully qualified class name to bytecode
+     * @param fromPackageName package the classes are in
+     * @param toPackageName package to move them to
+     *
+     * @return new map from fully qualified class name to bytecode
+     */
+    public static Map<String, byte []> relocate(
+        Map<String, byte []> byteCodes,
+        String fromPackageName,
+        String toPackageName)
+    {
+        Map<String, byte []> relocated = new HashMap<String, byte []>();
+        for (Map.Entry<String, byte []> entry : byteCodes.entrySet()) {
+            String name = entry.getKey();
+            if (name.startsWith(fromPackageName + ".")) {
+                name =
+                    toPackageName + name.substring(fromPackageName.length());
+            }
+            relocated.put(
+                name,
+                relocateClassFile(
+                    entry.getValue(),
+                    fromPackageName,
+                    toPackageName));
+        }
+        return relocated;
+    }
+
+    /**
+     * Moves a class from one package to another, by renaming the package
+     * wherever it occurs in the strings of the class's constant pool: as
+     * part of class names and descriptors (in internal form), and as part of
+     * string constants (in source form). The rest of the class file refers to
+     * constant pool entries by index, so it is copied as is.
+     *
+     * @param classFile bytecode of the class
+     * @param fromPackageName package the class is in
+     * @param toPackageName package to move it to
+     *
+     * @return bytecode of the moved class
+     */
+    public static byte [] relocateClassFile(
+        byte [] classFile,
+        String fromPackageName,
+        String toPackageName)
+    {
+        String fromInternal = fromPackageName.replace('.', '/') + "/";
+        String toInternal = toPackageName.replace('.', '/') + "/";
+        String fromSource = fromPackageName + ".";
+        String toSource = toPackageName + ".";
+        try {
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(classFile));
+            ByteArrayOutputStream bytes =
+                new ByteArrayOutputStream(classFile.length + 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            // magic, minor_version, major_version
+            out.writeInt(in.readInt());
+            out.writeShort(in.readUnsignedShort());
+            out.writeShort(in.readUnsignedShort());
+
+            int constantPoolCount = in.readUnsignedShort();
+            out.writeShort(constantPoolCount);
+            for (int i = 1; i < constantPoolCount; ++i) {
+                int tag = in.readUnsignedByte();
+                out.writeByte(tag);
+                switch (tag) {
+                case CONSTANT_Utf8:
+                    String s = in.readUTF();
+                    s = s.replace(fromInternal, toInternal);
+                    s = s.replace(fromSource, toSource);
+                    out.writeUTF(s);
+                    break;
+                case CONSTANT_Class:
+                case CONSTANT_String:
+                case CONSTANT_MethodType:
+                    out.writeShort(in.readUnsignedShort());
+                    break;
+                case CONSTANT_MethodHandle:
+                    out.writeByte(in.readUnsignedByte());
+                    out.writeShort(in.readUnsignedShort());
+                    break;
+                case CONSTANT_Integer:
+                case CONSTANT_Float:
+                case CONSTANT_Fieldref:
+                case CONSTANT_Methodref:
+                case CONSTANT_InterfaceMethodref:
+                case CONSTANT_NameAndType:
+                case CONSTANT_InvokeDynamic:
+                    out.writeInt(in.readInt());
+                    break;
+                case CONSTANT_Long:
+                case CONSTANT_Double:
+                    // eight-byte constants take up two entries
+                    out.writeLong(in.readLong());
+                    ++i;
+                    break;
+                default:
+                    throw Util.newInternal(
+                        "unknown constant pool tag " + tag);
+                }
+            }
+
+            // access flags, this_class, super_class, interfaces, fields,
+            // methods and attributes
+            byte [] buf = new byte[4096];
+            for (int n = in.read(buf); n != -1; n = in.read(buf)) {
+                out.write(buf, 0, n);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            throw Util.newInternal(ex, "while relocating class file");
+        }
+    }
+}
+
+// End FarragoByteCodeStore.java
@@ -0,0 +1,202 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.util;
+
+/**
+ * FarragoHyperLogLog estimates the number of distinct values in a stream using
+ * a fixed amount of memory. The algorithm is the one described in
+ * "HyperLogLog: the analysis of a near-optimal cardinality estimation
+ * algorithm" by Flajolet, Fusy, Gandouet and Meunier (2007), using a 64-bit
+ * hash so that no large-range correction is required.
+ *
+ * <p>Two instances with the same precision may be {@link #merge merged}; the
+ * result is the same as if a single instance had seen both streams.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class FarragoHyperLogLog
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    public static final int MIN_PRECISION = 4;
+
+    public static final int MAX_PRECISION = 18;
+
+    public static final int DEFAULT_PRECISION = 14;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final int precision;
+
+    /**
+     * One register per bucket; register i holds the maximum rank seen by any
+     * hash whose top {@link #precision} bits are i.
+     */
+    private final byte [] registers;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates an estimator with the {@link #DEFAULT_PRECISION default
+     * precision} (standard error about 0.8%).
+     */
+    public FarragoHyperLogLog()
+    {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Creates an estimator.
+     *
+     * @param precision log2 of the number of registers; standard error is
+     * about 1.04 / sqrt(2^precision)
+     */
+    public FarragoHyperLogLog(int precision)
+    {
+        if ((precision < MIN_PRECISION) || (precision > MAX_PRECISION)) {
+            throw new IllegalArgumentException(
+                "precision must be between " + MIN_PRECISION + " and "
+                + MAX_PRECISION + ": " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @return log2 of the number of registers
+     */
+    public int getPrecision()
+    {
+        return precision;
+    }
+
+    /**
+     * Adds a value to the stream.
+     *
+     * @param value value to add; must not be null
+     */
+    public void add(String value)
+    {
+        addHash(hash(value));
+    }
+
+    /**
+     * Adds a value to the stream given its 64-bit hash. Callers must hash
+     * values consistently across all instances which are to be merged.
+     *
+     * @param hash well-mixed 64-bit hash of the value
+     */
+    public void addHash(long hash)
+    {
+        int index = (int) (hash >>> (64 - precision));
+        long rest = hash << precision;
+        int rank =
+            Math.min(
+                Long.numberOfLeadingZeros(rest) + 1,
+                64 - precision + 1);
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Merges another estimator into this one.
+     *
+     * @param other estimator with the same precision
+     */
+    public void merge(FarragoHyperLogLog other)
+    {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException(
+                "cannot merge precision " + other.precision + " into "
+                + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * @return estimated number of distinct values added so far
+     */
+    public long estimate()
+    {
+        final int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += Math.scalb(1.0, -register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        double estimate = alpha(m) * m * m / sum;
+        if ((estimate <= (2.5 * m)) && (zeros != 0)) {
+            // Small range correction:  linear counting is more accurate
+            // while many registers are still empty.
+            estimate = m * Math.log((double) m / (double) zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    private static double alpha(int m)
+    {
+        switch (m) {
+        case 16:
+            return 0.673;
+        case 32:
+            return 0.697;
+        case 64:
+            return 0.709;
+        default:
+            return 0.7213 / (1.0 + (1.079 / m));
+        }
+    }
+
+    /**
+     * Computes a 64-bit hash of a string: FNV-1a over its characters,
+     * followed by the MurmurHash3 finalizer so that every input bit affects
+     * the leading bits used to choose a register.
+     *
+     * @param value string to hash
+     *
+     * @return hash code
+     */
+    public static long hash(String value)
+    {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
+
+// End FarragoHyperLogLog.java
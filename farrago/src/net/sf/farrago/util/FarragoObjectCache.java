@@ -146,6 +146,57 @@ public class FarragoObjectCache
         }
     }
 
+    /**
+     * Pins an existing entry in the cache, without creating one on a miss.
+     * The entry must be unpinned as for {@link #pin}. If another caller is
+     * still constructing the entry, this waits for the construction to
+     * complete.
+     *
+     * @param key key of the entry to pin
+     * @param factory CachedObjectFactory used only to test existing entries for
+     * staleness; its initializeEntry method is never called
+     * @param exclusive as for {@link #pin}
+     *
+     * @return pinned entry, or null if no usable entry was found
+     */
+    public Entry pinIfPresent(
+        Object key,
+        CachedObjectFactory factory,
+        boolean exclusive)
+    {
+        FarragoCacheEntry entry =
+            findOrCreateEntry(
+                Thread.currentThread(),
+                key,
+                factory,
+                exclusive,
+                false);
+        if (entry == null) {
+            return null;
+        }
+
+        boolean usable = false;
+        try {
+            synchronized (entry) {
+                while (entry.constructionThread != null) {
+                    try {
+                        entry.wait();
+                    } catch (InterruptedException ex) {
+                        throw new AssertionError();
+                    }
+                }
+                usable = (entry.value != null) && entry.isReusable();
+            }
+        } finally {
+            if (!usable) {
+                synchronized (mapKeyToEntry) {
+                    entry.pinCount--;
+                }
+            }
+        }
+        return usable ? entry : null;
+    }
+
     private Entry tryPin(
         Object key,
         CachedObjectFactory factory,
@@ -157,7 +208,7 @@ public class FarragoObjectCache
         // back pinned.  Note that we both acquire and release map lock in here
         // since construction work below may be time-consuming.
         FarragoCacheEntry entry =
-            findOrCreateEntry(currentThread, key, factory, exclusive);
+            findOrCreateEntry(currentThread, key, factory, exclusive, true);
 
         boolean unpinEntry = false;
         try {
@@ -287,7 +338,8 @@ public class FarragoObjectCache
         Thread currentThread,
         Object key,
         CachedObjectFactory factory,
-        boolean exclusive)
+        boolean exclusive,
+        boolean create)
     {
         FarragoCacheEntry entry = null;
 
@@ -353,7 +405,7 @@ public class FarragoObjectCache
                 // entries are returned via an immutable list).
                 mapKeyToEntry.remove(key);
             }
-            if (entry == null) {
+            if ((entry == null) && create) {
                 // create a new entry and add it to the map
                 entry = victimPolicy.newEntry(this);
                 entry.key = key;
@@ -84,6 +84,25 @@ public class FarragoProperties
             "net.sf.farrago.defaultSessionFactoryLibraryName",
             "class net.sf.farrago.defimpl.FarragoDefaultSessionFactory");
 
+    /**
+     * The optional string property "net.sf.farrago.codeCacheDir" is the path
+     * to a directory in which the bytecode generated for statements is kept
+     * across restarts; see {@link FarragoByteCodeStore}. If not set, generated
+     * code is only cached in memory.
+     */
+    public final StringProperty codeCacheDir =
+        new StringProperty(this, "net.sf.farrago.codeCacheDir", null);
+
+    /**
+     * The boolean property "net.sf.farrago.fennel.directFetch" controls
+     * whether rows fetched from Fennel into Java are read in place from
+     * Fennel's buffers, rather than copied into Java arrays, where the reader
+     * allows it; see {@link net.sf.farrago.runtime.FennelTupleIter}. Default
+     * is true.
+     */
+    public final BooleanProperty fennelDirectFetch =
+        new BooleanProperty(this, "net.sf.farrago.fennel.directFetch", true);
+
     /**
      * The string property "net.sf.farrago.test.jdbcDriverClass" specifies the
      * fully qualified name of the JDBC driver to use during testing. If not
@@ -0,0 +1,272 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package net.sf.farrago.util;
+
+import java.util.*;
+
+
+/**
+ * FarragoQuantileSketch summarizes the distribution of a stream of ordered
+ * values in a bounded amount of memory, following "Optimal Quantile
+ * Approximation in Streams" by Karnin, Lang and Liberty (2016).
+ *
+ * <p>Retained items are kept in a stack of compactors. An item at level h
+ * stands for 2<sup>h</sup> items of the stream. When a level fills up it is
+ * sorted and every other item (starting at a random offset) is promoted to
+ * the next level, so the total weight always equals {@link #getCount()}
+ * exactly while the rank of any value is only approximately preserved.
+ * Capacities shrink geometrically towards the lower levels, so the memory
+ * used grows only with the logarithm of the stream length.
+ *
+ * <p>Two sketches with the same comparator may be {@link #merge merged}.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class FarragoQuantileSketch<T>
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int MIN_LEVEL_CAPACITY = 8;
+
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final Comparator<? super T> comparator;
+
+    private final int capacity;
+
+    private final Random random;
+
+    private final List<List<T>> levels;
+
+    private long count;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a sketch with the {@link #DEFAULT_CAPACITY default capacity}.
+     *
+     * @param comparator defines the order of values
+     */
+    public FarragoQuantileSketch(Comparator<? super T> comparator)
+    {
+        this(comparator, DEFAULT_CAPACITY, 0L);
+    }
+
+    /**
+     * Creates a sketch.
+     *
+     * @param comparator defines the order of values
+     * @param capacity capacity of the top level; larger values reduce rank
+     * error proportionally
+     * @param seed seed for choosing compaction offsets, so that results are
+     * repeatable
+     */
+    public FarragoQuantileSketch(
+        Comparator<? super T> comparator,
+        int capacity,
+        long seed)
+    {
+        if (capacity < MIN_LEVEL_CAPACITY) {
+            throw new IllegalArgumentException(
+                "capacity must be at least " + MIN_LEVEL_CAPACITY);
+        }
+        this.comparator = comparator;
+        this.capacity = capacity;
+        this.random = new Random(seed);
+        this.levels = new ArrayList<List<T>>();
+        levels.add(new ArrayList<T>());
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @return number of values added so far, including the weight of merged
+     * sketches
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Adds a value to the stream.
+     *
+     * @param item value to add; must not be null
+     */
+    public void add(T item)
+    {
+        levels.get(0).add(item);
+        count++;
+        compress();
+    }
+
+    /**
+     * Adds a value to the stream as if it had been added {@code weight}
+     * times. The weight is decomposed into powers of two, so this costs
+     * O(log weight) rather than O(weight).
+     *
+     * @param item value to add; must not be null
+     * @param weight number of occurrences
+     */
+    public void add(T item, long weight)
+    {
+        assert (weight >= 0);
+        count += weight;
+        for (int level = 0; weight != 0; level++, weight >>>= 1) {
+            if ((weight & 1) != 0) {
+                ensureLevel(level).add(item);
+            }
+        }
+        compress();
+    }
+
+    /**
+     * Merges another sketch into this one.
+     *
+     * @param other sketch to merge; it is not modified
+     */
+    public void merge(FarragoQuantileSketch<? extends T> other)
+    {
+        for (int level = 0; level < other.levels.size(); level++) {
+            ensureLevel(level).addAll(other.levels.get(level));
+        }
+        count += other.count;
+        compress();
+    }
+
+    /**
+     * Returns the retained items in ascending order, each with the number of
+     * stream values it represents. Adjacent equal items are not combined.
+     * The weights sum to {@link #getCount()}.
+     *
+     * @return sorted list of weighted items
+     */
+    public List<WeightedItem<T>> getSortedItems()
+    {
+        List<WeightedItem<T>> items = new ArrayList<WeightedItem<T>>();
+        for (int level = 0; level < levels.size(); level++) {
+            long weight = 1L << level;
+            for (T item : levels.get(level)) {
+                items.add(new WeightedItem<T>(item, weight));
+            }
+        }
+        Collections.sort(
+            items,
+            new Comparator<WeightedItem<T>>() {
+                public int compare(WeightedItem<T> o1, WeightedItem<T> o2)
+                {
+                    return comparator.compare(o1.item, o2.item);
+                }
+            });
+        return items;
+    }
+
+    /**
+     * Returns the approximate value at a given rank.
+     *
+     * @param fraction rank as a fraction of {@link #getCount()}, between 0 and
+     * 1
+     *
+     * @return approximate quantile, or null if the sketch is empty
+     */
+    public T getQuantile(double fraction)
+    {
+        List<WeightedItem<T>> items = getSortedItems();
+        if (items.isEmpty()) {
+            return null;
+        }
+        long target = (long) Math.floor(fraction * count);
+        long rank = 0;
+        for (WeightedItem<T> item : items) {
+            rank += item.weight;
+            if (rank > target) {
+                return item.item;
+            }
+        }
+        return items.get(items.size() - 1).item;
+    }
+
+    private List<T> ensureLevel(int level)
+    {
+        while (levels.size() <= level) {
+            levels.add(new ArrayList<T>());
+        }
+        return levels.get(level);
+    }
+
+    private int getLevelCapacity(int level)
+    {
+        int depth = levels.size() - 1 - level;
+        int levelCapacity =
+            (int) Math.ceil(capacity * Math.pow(CAPACITY_DECAY, depth));
+        return Math.max(levelCapacity, MIN_LEVEL_CAPACITY);
+    }
+
+    private void compress()
+    {
+        for (int level = 0; level < levels.size(); level++) {
+            List<T> items = levels.get(level);
+            if (items.size() < getLevelCapacity(level)) {
+                continue;
+            }
+            List<T> next = ensureLevel(level + 1);
+            Collections.sort(items, comparator);
+
+            // With an odd number of items, keep the last one behind so that
+            // the promoted pairs account for the weight exactly.
+            T leftover = null;
+            if ((items.size() & 1) != 0) {
+                leftover = items.remove(items.size() - 1);
+            }
+            for (int i = random.nextBoolean() ? 1 : 0;
+                i < items.size();
+                i += 2)
+            {
+                next.add(items.get(i));
+            }
+            items.clear();
+            if (leftover != null) {
+                items.add(leftover);
+            }
+        }
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * A retained item and the number of stream values it represents.
+     */
+    public static class WeightedItem<T>
+    {
+        public final T item;
+        public final long weight;
+
+        WeightedItem(T item, long weight)
+        {
+            this.item = item;
+            this.weight = weight;
+        }
+    }
+}
+
+// End FarragoQuantileSketch.java
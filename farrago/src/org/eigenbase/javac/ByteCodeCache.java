@@ -0,0 +1,62 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.eigenbase.javac;
+
+import java.util.*;
+
+
+/**
+ * A <code>ByteCodeCache</code> remembers the bytecode which a {@link
+ * JavaCompiler} generated for a given source, so that compiling the same
+ * source again can be skipped. Implementations may keep the bytecode beyond
+ * the life of the process.
+ *
+ * @see JavaCompilerArgs#setByteCodeCache
+ */
+public interface ByteCodeCache
+{
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Looks up the bytecode previously generated for a class.
+     *
+     * @param fullClassName fully qualified name of the class being compiled
+     * @param source source code of the class
+     *
+     * @return map from fully qualified class name to bytecode, for the class
+     * and any classes nested in it, or null if the source has not been
+     * compiled before
+     */
+    public Map<String, byte []> get(String fullClassName, String source);
+
+    /**
+     * Remembers the bytecode generated for a class.
+     *
+     * @param fullClassName fully qualified name of the class being compiled
+     * @param source source code of the class
+     * @param byteCodes map from fully qualified class name to bytecode, for
+     * the class and any classes nested in it
+     */
+    public void put(
+        String fullClassName,
+        String source,
+        Map<String, byte []> byteCodes);
+}
+
+// End ByteCodeCache.java
@@ -25,6 +25,7 @@ import java.nio.*;
 import java.security.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.codehaus.janino.*;
 import org.codehaus.janino.util.*;
@@ -92,13 +93,47 @@ public class JaninoCompiler
                 parentClassLoader,
                 sourceFinder,
                 null);
+        if (args.getByteCodeCache() != null) {
+            classLoader.setByteCodeCache(
+                args.getByteCodeCache(),
+                args.fullClassName,
+                args.source);
+        }
+        // Janino compiles the source when the class is first loaded.
+        final ClassLoader compilingClassLoader = classLoader;
+        final String fullClassName = args.fullClassName;
         try {
-            classLoader.loadClass(args.fullClassName);
-        } catch (ClassNotFoundException ex) {
-            throw Util.newInternal(ex, "while compiling " + args.fullClassName);
+            runCompilation(
+                new Callable<Class>() {
+                    public Class call()
+                        throws ClassNotFoundException
+                    {
+                        return compilingClassLoader.loadClass(fullClassName);
+                    }
+                });
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw Util.newInternal(ex, "while compiling " + fullClassName);
         }
     }
 
+    /**
+     * Runs a compilation and waits for it to finish. By default, the
+     * compilation runs on a thread of the {@link JavaCompilationService}.
+     *
+     * @param compilation compilation, which loads the class being compiled
+     *
+     * @return the compiled class
+     *
+     * @throws Exception if the compilation throws
+     */
+    protected Class runCompilation(Callable<Class> compilation)
+        throws Exception
+    {
+        return JavaCompilationService.instance().compile(compilation);
+    }
+
     // implement JavaCompiler
     public JavaCompilerArgs getArgs()
     {
@@ -162,6 +197,12 @@ public class JaninoCompiler
     {
         private int nBytes;
 
+        private ByteCodeCache byteCodeCache;
+
+        private String cachedClassName;
+
+        private String cachedSource;
+
         public AccountingClassLoader(
             ClassLoader parentClassLoader,
             ResourceFinder sourceFinder,
@@ -178,13 +219,36 @@ public class JaninoCompiler
             return nBytes;
         }
 
+        void setByteCodeCache(
+            ByteCodeCache byteCodeCache,
+            String fullClassName,
+            String source)
+        {
+            this.byteCodeCache = byteCodeCache;
+            this.cachedClassName = fullClassName;
+            this.cachedSource = source;
+        }
+
         // override JavaSourceClassLoader
         public Map generateBytecodes(String name)
             throws ClassNotFoundException
         {
-            Map map = super.generateBytecodes(name);
+            // Only the class being compiled is worth caching; all classes
+            // nested in it are generated (and defined) along with it.
+            boolean cacheable =
+                (byteCodeCache != null) && name.equals(cachedClassName);
+            Map map = null;
+            if (cacheable) {
+                map = byteCodeCache.get(name, cachedSource);
+            }
             if (map == null) {
-                return map;
+                map = super.generateBytecodes(name);
+                if (map == null) {
+                    return map;
+                }
+                if (cacheable) {
+                    byteCodeCache.put(name, cachedSource, map);
+                }
             }
 
             // NOTE jvs 18-Oct-2006:  Janino has actually compiled everything
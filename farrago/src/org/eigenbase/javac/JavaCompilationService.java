@@ -0,0 +1,217 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.eigenbase.javac;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.eigenbase.util.*;
+
+
+/**
+ * JavaCompilationService runs compilations on a bounded pool of threads, so
+ * that preparing statements in many sessions at once keeps all processors
+ * busy without oversubscribing them, and keeps statistics about the
+ * compilations it has run.
+ *
+ * <p>Compilations are independent of each other: each one has a class loader
+ * of its own (see {@link JaninoCompiler#compile}), so no lock is held across
+ * compilations. The caller waits for its compilation to finish; if all
+ * threads are busy, the compilation waits in a queue whose depth is reported
+ * by {@link #getQueueDepth}.
+ *
+ * <p>The number of threads is given by {@link
+ * SaffronProperties#javaCompilerThreads}.
+ */
+public class JavaCompilationService
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static JavaCompilationService instance;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final ThreadPoolExecutor executor;
+
+    private final ThreadLocal<Boolean> inWorker = new ThreadLocal<Boolean>();
+
+    private final AtomicLong compilationCount = new AtomicLong();
+
+    private final AtomicLong compileNanos = new AtomicLong();
+
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a JavaCompilationService.
+     *
+     * @param threadCount maximum number of compilations to run at the same
+     * time
+     */
+    public JavaCompilationService(int threadCount)
+    {
+        assert (threadCount > 0);
+        final AtomicInteger threadId = new AtomicInteger();
+        executor =
+            new ThreadPoolExecutor(
+                threadCount,
+                threadCount,
+                60L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread thread =
+                            new Thread(
+                                r,
+                                "JavaCompilationService-"
+                                + threadId.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @return the {@link org.eigenbase.util.Glossary#SingletonPattern
+     * singleton} service, sized by {@link
+     * SaffronProperties#javaCompilerThreads}
+     */
+    public static synchronized JavaCompilationService instance()
+    {
+        if (instance == null) {
+            int threadCount =
+                SaffronProperties.instance().javaCompilerThreads.get();
+            if (threadCount <= 0) {
+                threadCount = Runtime.getRuntime().availableProcessors();
+            }
+            instance = new JavaCompilationService(threadCount);
+        }
+        return instance;
+    }
+
+    /**
+     * Runs a compilation on one of the service's threads, and waits for it to
+     * finish. The compilation sees the caller's context class loader. A
+     * compilation started from within another one runs directly on the
+     * current thread, since waiting for a thread could deadlock.
+     *
+     * @param compilation compilation to run
+     *
+     * @return result of the compilation
+     *
+     * @throws Exception if the compilation throws
+     */
+    public <T> T compile(final Callable<T> compilation)
+        throws Exception
+    {
+        if (inWorker.get() != null) {
+            return compilation.call();
+        }
+        final ClassLoader contextClassLoader =
+            Thread.currentThread().getContextClassLoader();
+        final long submitTime = System.nanoTime();
+        Future<T> future =
+            executor.submit(
+                new Callable<T>() {
+                    public T call()
+                        throws Exception
+                    {
+                        long startTime = System.nanoTime();
+                        waitNanos.addAndGet(startTime - submitTime);
+                        Thread thread = Thread.currentThread();
+                        ClassLoader savedClassLoader =
+                            thread.getContextClassLoader();
+                        thread.setContextClassLoader(contextClassLoader);
+                        inWorker.set(Boolean.TRUE);
+                        try {
+                            return compilation.call();
+                        } finally {
+                            inWorker.remove();
+                            thread.setContextClassLoader(savedClassLoader);
+                            compilationCount.incrementAndGet();
+                            compileNanos.addAndGet(
+                                System.nanoTime() - startTime);
+                        }
+                    }
+                });
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw Util.newInternal(ex, "while waiting for compilation");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            } else if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw Util.newInternal(cause);
+        }
+    }
+
+    /**
+     * @return number of compilations waiting for a thread
+     */
+    public int getQueueDepth()
+    {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return number of compilations running
+     */
+    public int getActiveCount()
+    {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return number of compilations run so far, including failed ones
+     */
+    public long getCompilationCount()
+    {
+        return compilationCount.get();
+    }
+
+    /**
+     * @return total time spent compiling, in milliseconds
+     */
+    public long getCompileMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(compileNanos.get());
+    }
+
+    /**
+     * @return total time compilations spent waiting for a thread, in
+     * milliseconds
+     */
+    public long getWaitMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+    }
+}
+
+// End JavaCompilationService.java
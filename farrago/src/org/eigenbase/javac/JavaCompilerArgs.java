@@ -43,6 +43,8 @@ public class JavaCompilerArgs
 
     ClassLoader classLoader;
 
+    ByteCodeCache byteCodeCache;
+
     //~ Constructors -----------------------------------------------------------
 
     public JavaCompilerArgs()
@@ -179,6 +181,25 @@ public class JavaCompilerArgs
     {
         return classLoader;
     }
+
+    /**
+     * Sets a cache to consult before compiling, and to which to add the
+     * bytecode of classes which had to be compiled. Unlike the other
+     * arguments, the cache is not reset by {@link #clear}.
+     *
+     * <p>Compilers which do not support caching ignore this argument.
+     *
+     * @param byteCodeCache cache, or null to always compile
+     */
+    public void setByteCodeCache(ByteCodeCache byteCodeCache)
+    {
+        this.byteCodeCache = byteCodeCache;
+    }
+
+    public ByteCodeCache getByteCodeCache()
+    {
+        return byteCodeCache;
+    }
 }
 
 // End JavaCompilerArgs.java
@@ -18,6 +18,9 @@
 */
 package org.eigenbase.javac;
 
+import java.util.concurrent.*;
+
+
 /**
  * SynchronizedJaninoCompiler exists as a fallback in case Janino has
  * more multi-threading bugs.  We hope never to have to use it, but
@@ -25,16 +28,21 @@ package org.eigenbase.javac;
  * <code>alter system set "javaCompilerClassName" =
  * 'org.eigenbase.javac.SynchronizedJaninoCompiler';</code>
  *
+ * <p>Compilations run on the calling thread, one at a time in the JVM,
+ * rather than on the threads of the {@link JavaCompilationService}, so they
+ * are not counted in its statistics.
+ *
  * @author John Sichi
  * @version $Id$
  */
 public class SynchronizedJaninoCompiler extends JaninoCompiler
 {
     // override JaninoCompiler
-    public void compile()
+    protected Class runCompilation(Callable<Class> compilation)
+        throws Exception
     {
         synchronized (SynchronizedJaninoCompiler.class) {
-            super.compile();
+            return compilation.call();
         }
     }
 }
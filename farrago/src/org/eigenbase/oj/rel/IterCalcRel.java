@@ -111,16 +111,12 @@ public class IterCalcRel
         program.explainCalc(this, pw);
     }
 
-    protected String computeDigest()
+    protected RelDigest computeDigestKey()
     {
-        String tempDigest = super.computeDigest();
+        RelDigest tempDigest = super.computeDigestKey();
         if (tag != null) {
             // append logger type to digest
-            int lastParen = tempDigest.lastIndexOf(')');
-            tempDigest =
-                tempDigest.substring(0, lastParen)
-                + ",type=" + tag
-                + tempDigest.substring(lastParen);
+            tempDigest = tempDigest.append("type", tag);
         }
         return tempDigest;
     }
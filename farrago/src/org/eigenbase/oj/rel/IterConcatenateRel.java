@@ -90,15 +90,23 @@ public class IterConcatenateRel
             org.eigenbase.runtime.CompoundTupleIter.class);
     }
 
+    protected OJClass getCompoundParallelIteratorClass()
+    {
+        return OJClass.forClass(
+            org.eigenbase.runtime.CompoundParallelTupleIter.class);
+    }
+
     public ParseTree implement(JavaRelImplementor implementor)
     {
         // Generate
         //   new CompoundTupleIter(
         //     new TupleIter[] {<<input0>>, ...})
-        // If any input is infinite, should instead generate
-        //   new CompoundParallelTupleIter(
-        //     new TupleIter[] {<<input0>>, ...})
-        // but there's no way to tell, so we can't.
+        // or, if the implementor allows more than one thread,
+        //   CompoundParallelTupleIter.newTupleIter(
+        //     new TupleIter[] {<<input0>>, ...}, <<degreeOfParallelism>>)
+        // where the degree of parallelism is only known at execution time.
+        // The parallel form would also be required if any input is
+        // infinite, but there's no way to tell.
 
         // REVIEW: mb 9-Sep-2005: add a predicate RelNode.isInfinite().
         ExpressionList exps = new ExpressionList();
@@ -107,13 +115,22 @@ public class IterConcatenateRel
                 implementor.visitJavaChild(this, i, (JavaRel) inputs[i]);
             exps.add(exp);
         }
+        Expression inputArray =
+            new ArrayAllocationExpression(
+                OJUtil.clazzTupleIter,
+                new ExpressionList(null),
+                new ArrayInitializer(exps));
+        Expression degreeOfParallelism =
+            implementor.getDegreeOfParallelismExpression();
+        if ((degreeOfParallelism != null) && (inputs.length > 1)) {
+            return new MethodCall(
+                TypeName.forOJClass(getCompoundParallelIteratorClass()),
+                "newTupleIter",
+                new ExpressionList(inputArray, degreeOfParallelism));
+        }
         return new AllocationExpression(
             getCompoundIteratorClass(),
-            new ExpressionList(
-                new ArrayAllocationExpression(
-                    OJUtil.clazzTupleIter,
-                    new ExpressionList(null),
-                    new ArrayInitializer(exps))));
+            new ExpressionList(inputArray));
     }
 }
 
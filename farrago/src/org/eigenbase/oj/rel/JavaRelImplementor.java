@@ -469,6 +469,21 @@ public class JavaRelImplementor
         throw Util.needToImplement("getConnectionVariable");
     }
 
+    /**
+     * Returns an expression which generated code evaluates, when it is
+     * executed, to find the maximum number of threads it may use to read
+     * independent inputs at the same time, for example the inputs of an
+     * {@link IterConcatenateRel}. The value is not known at prepare time, so
+     * that it can change without invalidating cached code. The default, null,
+     * means that inputs are always read serially.
+     *
+     * @return int-valued expression, or null
+     */
+    public Expression getDegreeOfParallelismExpression()
+    {
+        return null;
+    }
+
     public void popStatementList(StatementList stmtList)
     {
         assert (stmtList == getStatementList());
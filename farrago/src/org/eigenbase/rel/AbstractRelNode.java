@@ -62,11 +62,16 @@ public abstract class AbstractRelNode
     protected RelDataType rowType;
 
     /**
-     * A short description of this relational expression's type, inputs, and
-     * other properties. The string uniquely identifies the node; another node
-     * is equivalent if and only if it has the same value. Computed by {@link
-     * #computeDigest}, assigned by {@link #onRegister}, returned by {@link
-     * #getDigest()}.
+     * Structural description of this relational expression's type, inputs,
+     * and other properties. Another node is equivalent if and only if it has
+     * an equal digest. Computed by {@link #computeDigestKey}, assigned by
+     * {@link #onRegister}, returned by {@link #getDigestKey()}.
+     */
+    private RelDigest digestKey;
+
+    /**
+     * String form of {@link #digestKey}, built the first time {@link
+     * #getDigest()} is called.
      *
      * @see #desc
      */
@@ -104,7 +109,8 @@ public abstract class AbstractRelNode
         this.cluster = cluster;
         this.traits = traits;
         this.id = nextId++;
-        this.digest = getRelTypeName() + "#" + id;
+        this.digestKey = new RelDigest(getRelTypeName(), id, new RelTrait[0]);
+        this.digest = digestKey.toString();
         this.desc = digest;
         tracer.finest("new " + digest);
     }
@@ -347,17 +353,16 @@ public abstract class AbstractRelNode
         recomputeDigest();
     }
 
-    public String recomputeDigest()
+    public RelDigest recomputeDigest()
     {
-        String tempDigest = computeDigest();
+        RelDigest tempDigest = computeDigestKey();
         assert tempDigest != null : "post: return != null";
-        String prefix = "rel#" + id + ":";
 
-        // Substring uses the same underlying array of chars, so saves a bit
-        // of memory.
-        this.desc = prefix + tempDigest;
-        this.digest = this.desc.substring(prefix.length());
-        return this.digest;
+        // The strings are built lazily; the planner only needs the key.
+        this.digestKey = tempDigest;
+        this.digest = null;
+        this.desc = null;
+        return tempDigest;
     }
 
     public void registerCorrelVariable(String correlVariable)
@@ -376,19 +381,30 @@ public abstract class AbstractRelNode
 
     public String toString()
     {
-        return desc;
+        return getDescription();
     }
 
     public final String getDescription()
     {
+        if (desc == null) {
+            desc = "rel#" + id + ":" + getDigest();
+        }
         return desc;
     }
 
     public final String getDigest()
     {
+        if (digest == null) {
+            digest = digestKey.toString();
+        }
         return digest;
     }
 
+    public final RelDigest getDigestKey()
+    {
+        return digestKey;
+    }
+
     public RelOptTable getTable()
     {
         return null;
@@ -399,12 +415,12 @@ public abstract class AbstractRelNode
      *
      * @post return != null
      */
-    protected String computeDigest()
+    protected RelDigest computeDigestKey()
     {
-        StringWriter sw = new StringWriter();
+        final RelDigest [] digests = new RelDigest[1];
         RelOptPlanWriter pw =
             new RelOptPlanWriter(
-                new PrintWriter(sw),
+                new PrintWriter(new StringWriter()),
                 SqlExplainLevel.DIGEST_ATTRIBUTES)
             {
                 public void explain(
@@ -421,41 +437,28 @@ public abstract class AbstractRelNode
                         + " inputs.length=" + inputs.length
                         + " childExps.length=" + childExps.length
                         + " values.length=" + values.length;
-                    write(getRelTypeName());
-
-                    for (int i = 0; i < traits.size(); i++) {
-                        write(".");
-                        write(traits.getTrait(i).toString());
-                    }
-
-                    write("(");
+                    assert digests[0] == null : "explain called twice";
+                    Object [] operands = new Object[terms.length];
                     int j = 0;
                     for (int i = 0; i < inputs.length; i++) {
-                        if (j > 0) {
-                            write(",");
-                        }
-                        write(terms[j++] + "=" + inputs[i].getDigest());
+                        operands[j++] = inputs[i].getDigestKey();
                     }
                     for (int i = 0; i < childExps.length; i++) {
-                        if (j > 0) {
-                            write(",");
-                        }
-                        RexNode childExp = childExps[i];
-                        write(terms[j++] + "=" + childExp.toString());
+                        operands[j++] = childExps[i].toString();
                     }
                     for (int i = 0; i < values.length; i++) {
-                        Object value = values[i];
-                        if (j > 0) {
-                            write(",");
-                        }
-                        write(terms[j++] + "=" + value);
+                        operands[j++] = String.valueOf(values[i]);
                     }
-                    write(")");
+                    digests[0] =
+                        new RelDigest(
+                            getRelTypeName(),
+                            RelDigest.toArray(traits),
+                            terms,
+                            operands);
                 }
             };
         explain(pw);
-        pw.flush();
-        return sw.toString();
+        return digests[0];
     }
 }
 
@@ -0,0 +1,245 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.eigenbase.rel;
+
+import java.util.*;
+
+import org.eigenbase.relopt.*;
+
+
+/**
+ * RelDigest is the structural identity of a relational expression: its type,
+ * traits, and a list of named operands, each of which is either the digest
+ * of an input or the string form of an expression or attribute. Two
+ * relational expressions are equivalent if and only if their digests are
+ * equal.
+ *
+ * <p>The hash code is computed once, when the digest is created, from the
+ * hash codes of the operands. Since the inputs of a registered expression are
+ * subsets, whose digests have no operands, hashing and comparing a digest
+ * costs time proportional to the number of operands of the one expression,
+ * not the size of the tree beneath it. The string form, which is what {@link
+ * RelNode#getDigest()} returns, is only built if someone asks for it.
+ *
+ * <p>A digest is immutable. When the digest of an input changes (say because
+ * two sets merge), the parent's digest has to be recomputed.
+ *
+ * @see RelNode#getDigestKey()
+ */
+public final class RelDigest
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final String name;
+
+    /**
+     * Identifier which follows the name, or -1.
+     */
+    private final int ordinal;
+
+    private final RelTrait [] traits;
+
+    /**
+     * Names of the operands, or null if the digest has no operand list.
+     */
+    private final String [] terms;
+
+    /**
+     * Operand values; each is a {@link RelDigest} or a {@link String}.
+     */
+    private final Object [] operands;
+
+    private final int hash;
+
+    private String string;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a digest which has an operand list.
+     *
+     * @param name Name of the type of relational expression
+     * @param traits Traits; the array is not copied, and must not be modified
+     * afterwards
+     * @param terms Names of the operands; the array is not copied
+     * @param operands Operands; each is a {@link RelDigest} or a {@link
+     * String}
+     */
+    public RelDigest(
+        String name,
+        RelTrait [] traits,
+        String [] terms,
+        Object [] operands)
+    {
+        this(name, -1, traits, terms, operands);
+    }
+
+    /**
+     * Creates a digest which consists of a name, an identifier and traits,
+     * such as "Subset#3.ITERATOR".
+     *
+     * @param name Name
+     * @param ordinal Identifier which follows the name, or -1
+     * @param traits Traits; the array is not copied, and must not be modified
+     * afterwards
+     */
+    public RelDigest(
+        String name,
+        int ordinal,
+        RelTrait [] traits)
+    {
+        this(name, ordinal, traits, null, null);
+    }
+
+    private RelDigest(
+        String name,
+        int ordinal,
+        RelTrait [] traits,
+        String [] terms,
+        Object [] operands)
+    {
+        assert (terms == null) == (operands == null);
+        assert (terms == null) || (terms.length == operands.length);
+        this.name = name.intern();
+        this.ordinal = ordinal;
+        this.traits = traits;
+        this.terms = terms;
+        this.operands = operands;
+        int h = this.name.hashCode();
+        h = (h * 31) + ordinal;
+        h = (h * 31) + Arrays.hashCode(traits);
+        if (terms != null) {
+            h = (h * 31) + Arrays.hashCode(terms);
+            h = (h * 31) + Arrays.hashCode(operands);
+        }
+        this.hash = h;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Returns the traits of a trait set as an array suitable for the
+     * constructor.
+     *
+     * @param traitSet Trait set
+     *
+     * @return copy of the traits
+     */
+    public static RelTrait [] toArray(RelTraitSet traitSet)
+    {
+        RelTrait [] traits = new RelTrait[traitSet.size()];
+        for (int i = 0; i < traits.length; i++) {
+            traits[i] = traitSet.getTrait(i);
+        }
+        return traits;
+    }
+
+    /**
+     * Returns a digest with an extra operand at the end of the operand list.
+     *
+     * @param term Name of the operand
+     * @param operand Operand
+     *
+     * @return new digest
+     */
+    public RelDigest append(String term, Object operand)
+    {
+        assert terms != null;
+        String [] newTerms = new String[terms.length + 1];
+        System.arraycopy(terms, 0, newTerms, 0, terms.length);
+        newTerms[terms.length] = term;
+        Object [] newOperands = new Object[operands.length + 1];
+        System.arraycopy(operands, 0, newOperands, 0, operands.length);
+        newOperands[operands.length] = operand;
+        return new RelDigest(name, ordinal, traits, newTerms, newOperands);
+    }
+
+    /**
+     * Returns whether this digest has an operand list. A digest without one,
+     * such as that of an expression which has not been registered, may
+     * contain an identifier which is only meaningful to the current planner.
+     */
+    public boolean hasOperands()
+    {
+        return terms != null;
+    }
+
+    public int hashCode()
+    {
+        return hash;
+    }
+
+    public boolean equals(Object obj)
+    {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof RelDigest)) {
+            return false;
+        }
+        final RelDigest that = (RelDigest) obj;
+
+        // Names are interned.
+        return (this.hash == that.hash)
+            && (this.name == that.name)
+            && (this.ordinal == that.ordinal)
+            && Arrays.equals(this.traits, that.traits)
+            && Arrays.equals(this.terms, that.terms)
+            && Arrays.equals(this.operands, that.operands);
+    }
+
+    /**
+     * Returns the string form of this digest, for example
+     * "FilterRel.NONE(child=Subset#1.NONE,condition=true)". It is built the
+     * first time it is needed.
+     */
+    public String toString()
+    {
+        if (string == null) {
+            StringBuilder buf = new StringBuilder();
+            write(buf);
+            string = buf.toString();
+        }
+        return string;
+    }
+
+    private void write(StringBuilder buf)
+    {
+        buf.append(name);
+        if (ordinal >= 0) {
+            buf.append('#').append(ordinal);
+        }
+        for (RelTrait trait : traits) {
+            buf.append('.').append(trait);
+        }
+        if (terms == null) {
+            return;
+        }
+        buf.append('(');
+        for (int i = 0; i < terms.length; i++) {
+            if (i > 0) {
+                buf.append(',');
+            }
+            buf.append(terms[i]).append('=').append(operands[i]);
+        }
+        buf.append(')');
+    }
+}
+
+// End RelDigest.java
@@ -257,7 +257,7 @@ public interface RelNode
     /**
      * Computes the digest, assigns it, and returns it. For planner use only.
      */
-    public String recomputeDigest();
+    public RelDigest recomputeDigest();
 
     /**
      * Registers a correlation variable.
@@ -333,6 +333,15 @@ public interface RelNode
      */
     String getDigest();
 
+    /**
+     * Returns the structural form of {@link #getDigest()}. Two relational
+     * expressions are equivalent if and only if their digest keys are equal.
+     * Unlike the string, the key's hash code and equality test do not depend
+     * on the size of the tree beneath this expression, so planners should use
+     * it in preference.
+     */
+    RelDigest getDigestKey();
+
     /**
      * Returns a string which describes the relational expression and, unlike
      * {@link #getDigest()}, also includes the identity. Typically returns
@@ -27,14 +27,29 @@ import org.eigenbase.rex.*;
 /**
  * Relational expression which imposes a particular sort order on its input
  * without otherwise changing its content.
+ *
+ * <p>A sort may also limit its output, as in <code>ORDER BY x OFFSET 10 ROWS
+ * FETCH NEXT 5 ROWS ONLY</code>: it skips the first {@link #getOffset()} rows
+ * of its sorted input, and returns at most {@link #getFetch()} of the rest. A
+ * sort with a limit may have no collations, in which case it returns an
+ * arbitrary subset of its input.
  */
 public class SortRel
     extends SingleRel
 {
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Value of {@link #getFetch()} for a sort which returns all rows.
+     */
+    public static final long FETCH_ALL = -1;
+
     //~ Instance fields --------------------------------------------------------
 
     protected final RelFieldCollation [] collations;
     protected final RexNode [] fieldExps;
+    protected final long offset;
+    protected final long fetch;
 
     //~ Constructors -----------------------------------------------------------
 
@@ -50,12 +65,36 @@ public class SortRel
         RelOptCluster cluster,
         RelNode child,
         RelFieldCollation [] collations)
+    {
+        this(cluster, child, collations, 0, FETCH_ALL);
+    }
+
+    /**
+     * Creates a sorter which limits its output.
+     *
+     * @param cluster {@link RelOptCluster}  this relational expression belongs
+     * to
+     * @param child input relational expression
+     * @param collations array of sort specifications
+     * @param offset number of leading rows to skip
+     * @param fetch maximum number of rows to return, or {@link #FETCH_ALL}
+     */
+    public SortRel(
+        RelOptCluster cluster,
+        RelNode child,
+        RelFieldCollation [] collations,
+        long offset,
+        long fetch)
     {
         super(
             cluster,
             new RelTraitSet(CallingConvention.NONE),
             child);
+        assert offset >= 0;
+        assert (fetch >= 0) || (fetch == FETCH_ALL);
         this.collations = collations;
+        this.offset = offset;
+        this.fetch = fetch;
 
         fieldExps = new RexNode[collations.length];
         final RelDataTypeField [] fields = getRowType().getFields();
@@ -76,7 +115,9 @@ public class SortRel
             new SortRel(
                 getCluster(),
                 getChild().clone(),
-                collations);
+                collations,
+                offset,
+                fetch);
         clone.inheritTraitsFrom(this);
         return clone;
     }
@@ -95,20 +136,102 @@ public class SortRel
         return collations;
     }
 
+    /**
+     * @return number of leading rows of sorted input to skip
+     */
+    public long getOffset()
+    {
+        return offset;
+    }
+
+    /**
+     * @return maximum number of rows to return, or {@link #FETCH_ALL}
+     */
+    public long getFetch()
+    {
+        return fetch;
+    }
+
+    /**
+     * @return whether this sort skips or limits rows
+     */
+    public boolean isLimited()
+    {
+        return (offset > 0) || (fetch != FETCH_ALL);
+    }
+
+    /**
+     * Computes the number of rows a sort returns.
+     *
+     * @param rowCount number of input rows
+     * @param offset number of leading rows to skip
+     * @param fetch maximum number of rows to return, or {@link #FETCH_ALL}
+     *
+     * @return number of output rows
+     */
+    public static double limitRowCount(
+        double rowCount,
+        long offset,
+        long fetch)
+    {
+        rowCount = Math.max(rowCount - offset, 0);
+        if (fetch != FETCH_ALL) {
+            rowCount = Math.min(rowCount, fetch);
+        }
+        return rowCount;
+    }
+
     public void explain(RelOptPlanWriter pw)
     {
-        String [] terms = new String[1 + (collations.length * 2)];
-        Object [] values = new Object[collations.length];
+        explainSort(pw, this, collations, offset, fetch);
+    }
+
+    /**
+     * Explains a sort. The offset and fetch are only mentioned if the sort
+     * has a limit.
+     *
+     * @param pw plan writer
+     * @param rel sort being explained
+     * @param collations sort specifications
+     * @param offset number of leading rows to skip
+     * @param fetch maximum number of rows to return, or {@link #FETCH_ALL}
+     */
+    public static void explainSort(
+        RelOptPlanWriter pw,
+        RelNode rel,
+        RelFieldCollation [] collations,
+        long offset,
+        long fetch)
+    {
+        int nLimitTerms = 0;
+        if (offset > 0) {
+            ++nLimitTerms;
+        }
+        if (fetch != FETCH_ALL) {
+            ++nLimitTerms;
+        }
+        String [] terms =
+            new String[1 + (collations.length * 2) + nLimitTerms];
+        Object [] values = new Object[collations.length + nLimitTerms];
         int i = 0;
         terms[i++] = "child";
         for (int j = 0; j < collations.length; ++j) {
             terms[i++] = "sort" + j;
         }
+        int k = 0;
         for (int j = 0; j < collations.length; ++j) {
             terms[i++] = "dir" + j;
-            values[j] = collations[j].getDirection();
+            values[k++] = collations[j].getDirection();
+        }
+        if (offset > 0) {
+            terms[i++] = "offset";
+            values[k++] = offset;
+        }
+        if (fetch != FETCH_ALL) {
+            terms[i++] = "fetch";
+            values[k++] = fetch;
         }
-        pw.explain(this, terms, values);
+        pw.explain(rel, terms, values);
     }
 }
 
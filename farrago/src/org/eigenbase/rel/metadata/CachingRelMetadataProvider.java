@@ -29,30 +29,96 @@ import org.eigenbase.util.*;
  * CachingRelMetadataProvider implements the {@link RelMetadataProvider}
  * interface by caching results from an underlying provider.
  *
+ * <p>The cache holds at most a fixed number of results, discarding the least
+ * recently used first. Looking up a result does not allocate memory; a key is
+ * only created when a result is added.
+ *
+ * <p>Results for expressions which read a table and have no inputs depend
+ * only on the expression and the table's statistics, so they can outlive the
+ * planner. If a {@link SharedRelMetadataCache} and a {@link TableVersioner}
+ * are supplied, such results are also kept in the shared cache, keyed by the
+ * expression's digest and the version of the table's statistics.
+ *
  * @author John V. Sichi
  * @version $Id$
  */
 public class CachingRelMetadataProvider
     implements RelMetadataProvider
 {
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * Default maximum number of results cached for one planner.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 50000;
+
+    private static final Object NO_VERSION = new Object();
+
     //~ Instance fields --------------------------------------------------------
 
-    private final Map<List, CacheEntry> cache;
+    private final Map<Key, CacheEntry> cache;
 
     private final RelMetadataProvider underlyingProvider;
 
     private final RelOptPlanner planner;
 
+    private final SharedRelMetadataCache sharedCache;
+
+    private final TableVersioner tableVersioner;
+
+    /**
+     * Versions of the tables seen so far, so that the versioner is consulted
+     * at most once per table. Null values are stored as {@link #NO_VERSION}.
+     */
+    private final Map<RelOptTable, Object> tableVersions;
+
+    /**
+     * Key used for lookups; reset on each call.
+     */
+    private final Key probeKey = new Key();
+
     //~ Constructors -----------------------------------------------------------
 
     public CachingRelMetadataProvider(
         RelMetadataProvider underlyingProvider,
         RelOptPlanner planner)
     {
+        this(underlyingProvider, planner, DEFAULT_MAX_ENTRIES, null, null);
+    }
+
+    /**
+     * Creates a CachingRelMetadataProvider.
+     *
+     * @param underlyingProvider provider whose results are cached
+     * @param planner planner, which determines when results become stale
+     * @param maxEntries maximum number of results to cache
+     * @param sharedCache cache shared between planners for results about
+     * tables, or null
+     * @param tableVersioner identifies the version of a table's statistics,
+     * or null to disable the shared cache
+     */
+    public CachingRelMetadataProvider(
+        RelMetadataProvider underlyingProvider,
+        RelOptPlanner planner,
+        final int maxEntries,
+        SharedRelMetadataCache sharedCache,
+        TableVersioner tableVersioner)
+    {
+        assert maxEntries > 0;
         this.underlyingProvider = underlyingProvider;
         this.planner = planner;
+        this.sharedCache = sharedCache;
+        this.tableVersioner = tableVersioner;
 
-        cache = new HashMap<List, CacheEntry>();
+        cache =
+            new LinkedHashMap<Key, CacheEntry>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(
+                    Map.Entry<Key, CacheEntry> eldest)
+                {
+                    return size() > maxEntries;
+                }
+            };
+        tableVersions = new IdentityHashMap<RelOptTable, Object>();
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -66,21 +132,13 @@ public class CachingRelMetadataProvider
         // TODO jvs 30-Mar-2006: Use meta-metadata to decide which metadata
         // query results can stay fresh until the next Ice Age.
 
-        // Compute hash key.
-        List<Object> hashKey;
-        if (args != null) {
-            hashKey = new ArrayList<Object>(args.length + 2);
-            hashKey.add(rel);
-            hashKey.add(metadataQueryName);
-            hashKey.addAll(Arrays.asList(args));
-        } else {
-            hashKey = Arrays.asList(rel, metadataQueryName);
-        }
-
         long timestamp = planner.getRelMetadataTimestamp(rel);
 
-        // Perform cache lookup.
-        CacheEntry entry = cache.get(hashKey);
+        // Perform cache lookup. The probe key is only valid until the
+        // underlying provider is called, since that may call back into this
+        // cache.
+        CacheEntry entry =
+            cache.get(probeKey.set(rel, metadataQueryName, args));
         if (entry != null) {
             if (timestamp == entry.timestamp) {
                 return entry.result;
@@ -89,21 +147,101 @@ public class CachingRelMetadataProvider
             }
         }
 
-        // Cache miss or stale.
-        Object result =
-            underlyingProvider.getRelMetadata(
-                rel,
-                metadataQueryName,
-                args);
+        // Cache miss or stale; try the shared cache.
+        Object result = null;
+        List<Object> sharedKey = getSharedKey(rel, metadataQueryName, args);
+        if (sharedKey != null) {
+            result = sharedCache.get(sharedKey);
+        }
+        if (result == null) {
+            result =
+                underlyingProvider.getRelMetadata(
+                    rel,
+                    metadataQueryName,
+                    args);
+            if ((sharedKey != null)
+                && SharedRelMetadataCache.isSharable(result))
+            {
+                sharedCache.put(sharedKey, result);
+            }
+        }
         if (result != null) {
             entry = new CacheEntry();
             entry.timestamp = timestamp;
             entry.result = result;
-            cache.put(hashKey, entry);
+            cache.put(
+                new Key().set(
+                    rel,
+                    metadataQueryName,
+                    (args == null) ? null : args.clone()),
+                entry);
         }
         return result;
     }
 
+    /**
+     * Returns the key under which a result is kept in the shared cache, or
+     * null if it is not to be shared. Only results for expressions which read
+     * a table and have no inputs are shared.
+     */
+    private List<Object> getSharedKey(
+        RelNode rel,
+        String metadataQueryName,
+        Object [] args)
+    {
+        if ((sharedCache == null)
+            || (tableVersioner == null)
+            || !sharedCache.isEnabled())
+        {
+            return null;
+        }
+        RelOptTable table = rel.getTable();
+        if ((table == null)
+            || (rel.getInputs().length > 0)
+            || !rel.getDigestKey().hasOperands())
+        {
+            return null;
+        }
+        Object version = tableVersions.get(table);
+        if (version == null) {
+            version = tableVersioner.getTableVersion(table);
+            if (version == null) {
+                version = NO_VERSION;
+            }
+            tableVersions.put(table, version);
+        }
+        if (version == NO_VERSION) {
+            return null;
+        }
+        return SharedRelMetadataCache.makeKey(
+            version,
+            rel.getDigest(),
+            metadataQueryName,
+            args);
+    }
+
+    //~ Inner Interfaces -------------------------------------------------------
+
+    /**
+     * Identifies the version of a table's statistics, so that results in a
+     * {@link SharedRelMetadataCache} are not used after the statistics
+     * change.
+     */
+    public interface TableVersioner
+    {
+        /**
+         * Returns an object which identifies the table and the current version
+         * of its statistics. Two versions must be equal only if metadata
+         * results computed for the same expression would be the same.
+         *
+         * @param table table
+         *
+         * @return version, or null if results for the table should not be
+         * shared
+         */
+        Object getTableVersion(RelOptTable table);
+    }
+
     //~ Inner Classes ----------------------------------------------------------
 
     private static class CacheEntry
@@ -112,6 +250,52 @@ public class CachingRelMetadataProvider
 
         Object result;
     }
+
+    /**
+     * Key of the per-planner cache. Expressions are compared by identity.
+     */
+    private static class Key
+    {
+        private RelNode rel;
+
+        private String metadataQueryName;
+
+        private Object [] args;
+
+        private int hash;
+
+        Key set(
+            RelNode rel,
+            String metadataQueryName,
+            Object [] args)
+        {
+            this.rel = rel;
+            this.metadataQueryName = metadataQueryName;
+            this.args = args;
+            int h = System.identityHashCode(rel);
+            h = (h * 31) + metadataQueryName.hashCode();
+            h = (h * 31) + Arrays.hashCode(args);
+            this.hash = h;
+            return this;
+        }
+
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) obj;
+            return (this.hash == that.hash)
+                && (this.rel == that.rel)
+                && this.metadataQueryName.equals(that.metadataQueryName)
+                && Arrays.equals(this.args, that.args);
+        }
+    }
 }
 
 // End CachingRelMetadataProvider.java
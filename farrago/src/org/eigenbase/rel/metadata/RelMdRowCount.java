@@ -68,7 +68,14 @@ public class RelMdRowCount
 
     public Double getRowCount(SortRel rel)
     {
-        return RelMetadataQuery.getRowCount(rel.getChild());
+        Double rowCount = RelMetadataQuery.getRowCount(rel.getChild());
+        if ((rowCount == null) || !rel.isLimited()) {
+            return rowCount;
+        }
+        return SortRel.limitRowCount(
+            rowCount,
+            rel.getOffset(),
+            rel.getFetch());
     }
 
     public Double getRowCount(SemiJoinRel rel)
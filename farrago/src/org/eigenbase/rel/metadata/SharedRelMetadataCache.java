@@ -0,0 +1,224 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.eigenbase.rel.metadata;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import org.eigenbase.rex.*;
+import org.eigenbase.util.*;
+
+
+/**
+ * SharedRelMetadataCache holds metadata results which remain valid after the
+ * planner which computed them has gone, so that statements which read the
+ * same tables need not compute them again. It is used by {@link
+ * CachingRelMetadataProvider} for expressions which read a table and have no
+ * inputs; see {@link CachingRelMetadataProvider.TableVersioner}.
+ *
+ * <p>Only immutable results (numbers and booleans) are kept, and only for
+ * queries whose arguments can be compared across planners. The cache holds a
+ * bounded number of results, discarding the least recently used first. It is
+ * safe for use by several threads.
+ */
+public class SharedRelMetadataCache
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static SharedRelMetadataCache instance;
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final int maxEntries;
+
+    /**
+     * Map from key to result. Access must be synchronized on the map.
+     */
+    private final Map<List<Object>, Object> map;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a SharedRelMetadataCache.
+     *
+     * @param maxEntries maximum number of results to keep; 0 disables the
+     * cache
+     */
+    public SharedRelMetadataCache(final int maxEntries)
+    {
+        assert maxEntries >= 0;
+        this.maxEntries = maxEntries;
+        map =
+            new LinkedHashMap<List<Object>, Object>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(
+                    Map.Entry<List<Object>, Object> eldest)
+                {
+                    return size() > maxEntries;
+                }
+            };
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * @return the {@link org.eigenbase.util.Glossary#SingletonPattern
+     * singleton} cache, sized by {@link SaffronProperties#metadataCacheSize}
+     */
+    public static synchronized SharedRelMetadataCache instance()
+    {
+        if (instance == null) {
+            int maxEntries =
+                SaffronProperties.instance().metadataCacheSize.get();
+            instance = new SharedRelMetadataCache(Math.max(maxEntries, 0));
+        }
+        return instance;
+    }
+
+    /**
+     * Builds the key for a metadata result.
+     *
+     * @param version version of the table, as returned by {@link
+     * CachingRelMetadataProvider.TableVersioner#getTableVersion}
+     * @param digest digest of the relational expression
+     * @param metadataQueryName name of the metadata query
+     * @param args arguments to the query, or null
+     *
+     * @return key, or null if the arguments cannot be compared across
+     * planners
+     */
+    public static List<Object> makeKey(
+        Object version,
+        String digest,
+        String metadataQueryName,
+        Object [] args)
+    {
+        int argCount = (args == null) ? 0 : args.length;
+        Object [] key = new Object[argCount + 3];
+        key[0] = version;
+        key[1] = digest;
+        key[2] = metadataQueryName;
+        for (int i = 0; i < argCount; i++) {
+            Object arg = args[i];
+            if ((arg == null)
+                || (arg instanceof String)
+                || (arg instanceof Number)
+                || (arg instanceof Boolean))
+            {
+                key[i + 3] = arg;
+            } else if (arg instanceof BitSet) {
+                key[i + 3] = ((BitSet) arg).clone();
+            } else if (arg instanceof RexNode) {
+                // The digest of an expression which refers only to the
+                // fields of the relational expression identifies it.
+                key[i + 3] = arg.toString();
+            } else {
+                return null;
+            }
+        }
+        return Arrays.asList(key);
+    }
+
+    /**
+     * Returns whether a result may be kept in the cache. Mutable results are
+     * not, because callers might modify them.
+     *
+     * @param result metadata result
+     *
+     * @return whether result is immutable
+     */
+    public static boolean isSharable(Object result)
+    {
+        return (result instanceof Double) || (result instanceof Boolean);
+    }
+
+    /**
+     * @return whether the cache holds any results
+     */
+    public boolean isEnabled()
+    {
+        return maxEntries > 0;
+    }
+
+    /**
+     * Looks up a result.
+     *
+     * @param key key built by {@link #makeKey}
+     *
+     * @return result, or null if not cached
+     */
+    public Object get(Object key)
+    {
+        Object result;
+        synchronized (map) {
+            result = map.get(key);
+        }
+        if (result == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Adds a result.
+     *
+     * @param key key built by {@link #makeKey}
+     * @param result result; must be {@link #isSharable sharable}
+     */
+    public void put(List<Object> key, Object result)
+    {
+        assert isSharable(result);
+        synchronized (map) {
+            map.put(key, result);
+        }
+    }
+
+    /**
+     * Discards all results.
+     */
+    public void clear()
+    {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    /**
+     * @return number of lookups which found a result
+     */
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    /**
+     * @return number of lookups which did not find a result
+     */
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+}
+
+// End SharedRelMetadataCache.java
@@ -82,7 +82,7 @@ public class MergeCalcRule
                 mergedProgram,
                 Collections.<RelCollation>emptyList());
 
-        if (newCalc.getDigest().equals(bottomCalc.getDigest())) {
+        if (newCalc.getDigestKey().equals(bottomCalc.getDigestKey())) {
             // newCalc is equivalent to bottomCalc, which means that topCalc
             // must be trivial. Take it out of the game.
             call.getPlanner().setImportance(topCalc, 0.0);
@@ -752,7 +752,7 @@ public class HepPlanner
         // try to find equivalent rel only if DAG is allowed
         if (!noDAG) {
             // Now, check if an equivalent vertex already exists in graph.
-            String digest = rel.recomputeDigest();
+            String digest = rel.recomputeDigest().toString();
             HepRelVertex equivVertex = mapDigestToVertex.get(digest);
             if (equivVertex != null) {
                 // Use existing vertex.
@@ -825,7 +825,7 @@ public class HepPlanner
         if (mapDigestToVertex.get(oldDigest) == vertex) {
             mapDigestToVertex.remove(oldDigest);
         }
-        String newDigest = rel.recomputeDigest();
+        String newDigest = rel.recomputeDigest().toString();
         if (mapDigestToVertex.get(newDigest) == null) {
             mapDigestToVertex.put(newDigest, vertex);
         } else {
@@ -87,9 +87,12 @@ public class HepRelVertex
     }
 
     // implement RelNode
-    protected String computeDigest()
+    protected RelDigest computeDigestKey()
     {
-        return "HepRelVertex(" + currentRel + ")";
+        return new RelDigest(
+            "HepRelVertex(" + currentRel + ")",
+            -1,
+            new RelTrait[0]);
     }
 
     /**
@@ -176,14 +176,12 @@ public class RelSubset
             rels.get(0));
     }
 
-    protected String computeDigest()
+    protected RelDigest computeDigestKey()
     {
-        StringBuilder digest = new StringBuilder("Subset#");
-        digest.append(set.id);
-        for (int i = 0; i < traits.size(); i++) {
-            digest.append('.').append(traits.getTrait(i));
-        }
-        return digest.toString();
+        return new RelDigest(
+            "Subset",
+            set.id,
+            RelDigest.toArray(traits));
     }
 
     // implement RelNode
@@ -74,10 +74,10 @@ class RuleQueue
         new HashMap<VolcanoPlannerPhase, PhaseMatchList>();
 
     /**
-     * Sorts rule-matches into decreasing order of importance.
+     * Number of rule-matches queued so far; used to number them, so that
+     * matches which are otherwise equal are popped in the order they arrived.
      */
-    private final Comparator<VolcanoRuleMatch> ruleMatchImportanceComparator =
-        new RuleMatchImportanceComparator();
+    private int matchCount;
 
     private final VolcanoPlanner planner;
 
@@ -162,7 +162,7 @@ class RuleQueue
      */
     public boolean hasNextMatch(VolcanoPlannerPhase phase)
     {
-        return !matchListMap.get(phase).list.isEmpty();
+        return !matchListMap.get(phase).entries.isEmpty();
     }
 
     /**
@@ -287,6 +287,7 @@ class RuleQueue
             if (relMatchMap.containsKey(subset)) {
                 for (VolcanoRuleMatch match : relMatchMap.getMulti(subset)) {
                     match.clearCachedImportance();
+                    matchList.markDirty(match);
                 }
             }
         }
@@ -334,6 +335,9 @@ class RuleQueue
     void addMatch(VolcanoRuleMatch match)
     {
         final String matchName = match.toString();
+        if (match.sequence == 0) {
+            match.sequence = ++matchCount;
+        }
         for (PhaseMatchList matchList : matchListMap.values()) {
             if (!matchList.names.add(matchName)) {
                 // Identical match has already been added.
@@ -355,7 +359,7 @@ class RuleQueue
                     + matchName);
             }
 
-            matchList.list.add(match);
+            matchList.add(match);
 
             matchList.matchMap.putMulti(
                 planner.getSubset(match.rels[0]),
@@ -451,14 +455,14 @@ class RuleQueue
         assert (phaseMatchList != null) : "Used match list for phase " + phase
             + " after phase complete";
 
-        List<VolcanoRuleMatch> matchList = phaseMatchList.list;
-
-        Collections.sort(matchList, ruleMatchImportanceComparator);
+        // Move rule-matches whose importance may have changed since they
+        // were queued to their proper place in the heap.
+        phaseMatchList.reorder();
 
         if (tracer.isLoggable(Level.FINEST)) {
             StringBuilder b = new StringBuilder();
             b.append("Sorted rule queue:");
-            for (VolcanoRuleMatch match : matchList) {
+            for (VolcanoRuleMatch match : phaseMatchList.getSortedMatches()) {
                 final double importance = match.computeImportance();
                 b.append("\n");
                 b.append(match);
@@ -469,7 +473,7 @@ class RuleQueue
             tracer.finest(b.toString());
         }
 
-        VolcanoRuleMatch match = matchList.remove(0);
+        VolcanoRuleMatch match = phaseMatchList.poll();
 
         // A rule match's digest is composed of the operand RelNodes' digests,
         // which may have changed if sets have merged since the rule match was
@@ -577,35 +581,19 @@ class RuleQueue
         }
     }
 
-    /**
-     * Compares {@link VolcanoRuleMatch} objects according to their importance.
-     * Matches which are more important collate earlier. Ties are adjudicated by
-     * comparing the {@link RelNode#getId id}s of the relational expressions
-     * matched.
-     */
-    private class RuleMatchImportanceComparator
-        implements Comparator<VolcanoRuleMatch>
-    {
-        public int compare(
-            VolcanoRuleMatch match1,
-            VolcanoRuleMatch match2)
-        {
-            double imp1 = match1.getImportance();
-            double imp2 = match2.getImportance();
-            int c = Double.compare(imp1, imp2);
-            if (c == 0) {
-                c = compareRels(
-                    match1.getRels(),
-                    match2.getRels());
-            }
-            return -c;
-        }
-    }
-
     /**
      * PhaseMatchList represents a set of {@link VolcanoRuleMatch rule-matches}
      * for a particular {@link VolcanoPlannerPhase phase of the planner's
      * execution}.
+     *
+     * <p>The rule-matches are held in a binary heap, keyed on the importance
+     * each had when it was last placed. New rule-matches are {@link #pending}
+     * until the next pop, and when a rule-match's cached importance is
+     * cleared, it is recorded as {@link #dirty}; before the next rule-match is
+     * popped, these are given their current importance and moved to their
+     * place in the heap (see {@link #reorder}). Thus each pop costs O(log n)
+     * per new or changed rule-match, rather than the O(n log n) of sorting the
+     * whole queue, and pops the same rule-match that sorting would.
      */
     private static class PhaseMatchList
     {
@@ -615,15 +603,31 @@ class RuleQueue
         final VolcanoPlannerPhase phase;
 
         /**
-         * Current list of VolcanoRuleMatches for this phase. New rule-matches
-         * are appended to the end of this list. When removing a rule-match, the
-         * list is sorted and the highest importance rule-match removed. It is
-         * important for performance that this list remain mostly sorted.
+         * Current VolcanoRuleMatches for this phase, as a binary heap: the
+         * children of the entry at position i are at 2i + 1 and 2i + 2, and
+         * neither collates before it.
+         */
+        final List<HeapEntry> heap;
+
+        /**
+         * Heap entry of each rule-match in {@link #heap} or {@link #pending}.
+         */
+        final Map<VolcanoRuleMatch, HeapEntry> entries;
+
+        /**
+         * Entries for rule-matches added since the heap was last reordered.
          */
-        final List<VolcanoRuleMatch> list;
+        final List<HeapEntry> pending;
 
         /**
-         * A set of rule-match names contained in {@link #list}. Allows fast
+         * Entries in {@link #heap} whose rule-match's cached importance has
+         * been cleared since the heap was last reordered. Each entry appears
+         * at most once; see {@link HeapEntry#dirty}.
+         */
+        final List<HeapEntry> dirty;
+
+        /**
+         * A set of rule-match names contained in {@link #heap}. Allows fast
          * detection of duplicate rule-matches.
          */
         final Set<String> names;
@@ -640,13 +644,200 @@ class RuleQueue
         PhaseMatchList(VolcanoPlannerPhase phase)
         {
             this.phase = phase;
-
-            // Use a double-linked list because an array-list does not
-            // implement remove(0) efficiently.
-            this.list = new LinkedList<VolcanoRuleMatch>();
+            this.heap = new ArrayList<HeapEntry>();
+            this.entries = new IdentityHashMap<VolcanoRuleMatch, HeapEntry>();
+            this.pending = new ArrayList<HeapEntry>();
+            this.dirty = new ArrayList<HeapEntry>();
             this.names = new HashSet<String>();
             this.matchMap = new MultiMap<RelSubset, VolcanoRuleMatch>();
         }
+
+        /**
+         * Adds a rule-match. It enters the heap at the next {@link #reorder}.
+         */
+        void add(VolcanoRuleMatch match)
+        {
+            HeapEntry entry = new HeapEntry(match);
+            entries.put(match, entry);
+            pending.add(entry);
+        }
+
+        /**
+         * Records that a rule-match's cached importance has been cleared, so
+         * that it is moved to its proper place at the next {@link #reorder}.
+         * Does nothing if the rule-match has been popped, is still pending, or
+         * is already recorded.
+         */
+        void markDirty(VolcanoRuleMatch match)
+        {
+            HeapEntry entry = entries.get(match);
+            if ((entry == null) || (entry.position < 0) || entry.dirty) {
+                return;
+            }
+            entry.dirty = true;
+            dirty.add(entry);
+        }
+
+        /**
+         * Removes and returns the most important rule-match.
+         *
+         * @pre heap has been {@link #reorder reordered} since the last add
+         */
+        VolcanoRuleMatch poll()
+        {
+            assert pending.isEmpty();
+            HeapEntry first = heap.get(0);
+            entries.remove(first.match);
+            first.position = -1;
+            HeapEntry last = heap.remove(heap.size() - 1);
+            if (last != first) {
+                siftDown(last, 0);
+            }
+            return first.match;
+        }
+
+        /**
+         * Gives each {@link #dirty} rule-match its current importance, and
+         * moves it to its proper place in the heap; then adds the {@link
+         * #pending} rule-matches to the heap.
+         */
+        void reorder()
+        {
+            for (HeapEntry entry : dirty) {
+                entry.dirty = false;
+                if (entry.position < 0) {
+                    // popped since it was marked
+                    continue;
+                }
+                double importance = entry.match.getImportance();
+                if (importance == entry.importance) {
+                    continue;
+                }
+                entry.importance = importance;
+
+                // One of the sifts leaves the entry where it is.
+                siftDown(entry, siftUp(entry, entry.position));
+            }
+            dirty.clear();
+
+            for (HeapEntry entry : pending) {
+                entry.importance = entry.match.getImportance();
+                heap.add(entry);
+                siftUp(entry, heap.size() - 1);
+            }
+            pending.clear();
+        }
+
+        /**
+         * Returns the rule-matches in the order they would be popped. Used for
+         * tracing.
+         */
+        List<VolcanoRuleMatch> getSortedMatches()
+        {
+            assert pending.isEmpty();
+            List<HeapEntry> sortedEntries = new ArrayList<HeapEntry>(heap);
+            Collections.sort(sortedEntries);
+            List<VolcanoRuleMatch> matches = new ArrayList<VolcanoRuleMatch>();
+            for (HeapEntry entry : sortedEntries) {
+                matches.add(entry.match);
+            }
+            return matches;
+        }
+
+        private int siftUp(HeapEntry entry, int i)
+        {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                HeapEntry parentEntry = heap.get(parent);
+                if (entry.compareTo(parentEntry) >= 0) {
+                    break;
+                }
+                place(parentEntry, i);
+                i = parent;
+            }
+            place(entry, i);
+            return i;
+        }
+
+        private int siftDown(HeapEntry entry, int i)
+        {
+            final int size = heap.size();
+            while (true) {
+                int child = (2 * i) + 1;
+                if (child >= size) {
+                    break;
+                }
+                HeapEntry childEntry = heap.get(child);
+                if (child + 1 < size) {
+                    HeapEntry rightEntry = heap.get(child + 1);
+                    if (rightEntry.compareTo(childEntry) < 0) {
+                        ++child;
+                        childEntry = rightEntry;
+                    }
+                }
+                if (childEntry.compareTo(entry) >= 0) {
+                    break;
+                }
+                place(childEntry, i);
+                i = child;
+            }
+            place(entry, i);
+            return i;
+        }
+
+        private void place(HeapEntry entry, int i)
+        {
+            heap.set(i, entry);
+            entry.position = i;
+        }
+    }
+
+    /**
+     * Entry for a {@link VolcanoRuleMatch} in the heap of a {@link
+     * PhaseMatchList}. Entries which are more important collate earlier. Ties
+     * are adjudicated by comparing the {@link RelNode#getId id}s of the
+     * relational expressions matched (higher ids first), then by the order the
+     * rule-matches were queued.
+     */
+    private static class HeapEntry
+        implements Comparable<HeapEntry>
+    {
+        final VolcanoRuleMatch match;
+
+        /**
+         * Importance of the rule-match when it was last placed in the heap.
+         */
+        double importance;
+
+        /**
+         * Position in the heap, or -1 if the entry is pending or has been
+         * popped.
+         */
+        int position = -1;
+
+        /**
+         * Whether the entry is in {@link PhaseMatchList#dirty}.
+         */
+        boolean dirty;
+
+        HeapEntry(VolcanoRuleMatch match)
+        {
+            this.match = match;
+        }
+
+        public int compareTo(HeapEntry other)
+        {
+            int c = Double.compare(other.importance, importance);
+            if (c == 0) {
+                c = compareRels(
+                    other.match.getRels(),
+                    match.getRels());
+            }
+            if (c == 0) {
+                c = match.sequence - other.match.sequence;
+            }
+            return c;
+        }
     }
 }
 
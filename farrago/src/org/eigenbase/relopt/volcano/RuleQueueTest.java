@@ -0,0 +1,213 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.eigenbase.relopt.volcano;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+
+
+/**
+ * Unit test for {@link RuleQueue}.
+ */
+public class RuleQueueTest
+    extends TestCase
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final int LEAF_COUNT = 10;
+
+    /**
+     * Number of distinct importances given to rule-matches; small, so that
+     * many are tied.
+     */
+    private static final int IMPORTANCE_COUNT = 8;
+
+    //~ Constructors -----------------------------------------------------------
+
+    public RuleQueueTest(String name)
+    {
+        super(name);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Tests that rule-matches are popped in the order in which sorting the
+     * whole queue before each pop, as the queue used to, would pop them,
+     * while matches are added and their importances change at random.
+     */
+    public void testPopOrderMatchesSort()
+    {
+        for (int seed = 0; seed < 50; seed++) {
+            checkPopOrder(new Random(seed));
+        }
+    }
+
+    private void checkPopOrder(Random random)
+    {
+        VolcanoPlanner planner = new VolcanoPlanner();
+        planner.addRelTraitDef(CallingConventionTraitDef.instance);
+        RelOptCluster cluster = VolcanoPlannerTest.newCluster(planner);
+        RelNode [] leaves = new RelNode[LEAF_COUNT];
+        for (int i = 0; i < LEAF_COUNT; i++) {
+            leaves[i] =
+                new VolcanoPlannerTest.NoneLeafRel(cluster, "leaf" + i);
+            planner.ensureRegistered(leaves[i], null);
+        }
+
+        // Each match is of a different pair of leaves, so no two tie on
+        // both importance and rels.
+        List<RelNode []> pairs = new ArrayList<RelNode []>();
+        for (RelNode left : leaves) {
+            for (RelNode right : leaves) {
+                pairs.add(new RelNode[] { left, right });
+            }
+        }
+        Collections.shuffle(pairs, random);
+
+        final VolcanoPlannerPhase phase = VolcanoPlannerPhase.OPTIMIZE;
+        RuleQueue queue = new RuleQueue(planner);
+        TestRule rule = new TestRule();
+        List<TestRuleMatch> sortedQueue = new ArrayList<TestRuleMatch>();
+        int popCount = 0;
+        while (!pairs.isEmpty() || !sortedQueue.isEmpty()) {
+            int action = random.nextInt(3);
+            if ((action == 0) && !pairs.isEmpty()) {
+                for (int n = random.nextInt(4); n >= 0; n--) {
+                    if (pairs.isEmpty()) {
+                        break;
+                    }
+                    TestRuleMatch match =
+                        new TestRuleMatch(
+                            planner,
+                            rule.getOperand(),
+                            pairs.remove(pairs.size() - 1));
+                    match.importance = nextImportance(random);
+                    queue.addMatch(match);
+                    sortedQueue.add(match);
+                }
+            } else if (action == 1) {
+                // Change the importance of the matches of one leaf, as the
+                // planner does when it changes the importance of a subset.
+                RelNode leaf = leaves[random.nextInt(LEAF_COUNT)];
+                for (TestRuleMatch match : sortedQueue) {
+                    if (match.rels[0] == leaf) {
+                        match.importance = nextImportance(random);
+                    }
+                }
+                queue.updateImportance(
+                    planner.getSubset(leaf),
+                    nextImportance(random));
+            } else if (!sortedQueue.isEmpty()) {
+                assertTrue(queue.hasNextMatch(phase));
+                Collections.sort(sortedQueue, new SortComparator());
+                VolcanoRuleMatch expected = sortedQueue.remove(0);
+                assertSame(
+                    "pop #" + popCount,
+                    expected,
+                    queue.popMatch(phase));
+                ++popCount;
+            }
+        }
+        assertFalse(queue.hasNextMatch(phase));
+        assertEquals(LEAF_COUNT * LEAF_COUNT, popCount);
+    }
+
+    private static double nextImportance(Random random)
+    {
+        return (double) random.nextInt(IMPORTANCE_COUNT) / IMPORTANCE_COUNT;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Rule with two operands. It is never fired; it only gives the test's
+     * rule-matches a rule.
+     */
+    private static class TestRule
+        extends RelOptRule
+    {
+        TestRule()
+        {
+            super(
+                new RelOptRuleOperand(
+                    RelNode.class,
+                    new RelOptRuleOperand(RelNode.class, ANY)));
+        }
+
+        // implement RelOptRule
+        public void onMatch(RelOptRuleCall call)
+        {
+            throw new AssertionError();
+        }
+    }
+
+    /**
+     * Rule-match whose importance is set by the test.
+     */
+    private static class TestRuleMatch
+        extends VolcanoRuleMatch
+    {
+        double importance;
+
+        TestRuleMatch(
+            VolcanoPlanner planner,
+            RelOptRuleOperand operand0,
+            RelNode [] rels)
+        {
+            super(planner, operand0, rels);
+        }
+
+        // override VolcanoRuleMatch
+        double computeImportance()
+        {
+            return importance;
+        }
+    }
+
+    /**
+     * The order in which the queue used to sort rule-matches before each pop:
+     * by descending importance, then by descending ids of the rels matched.
+     */
+    private static class SortComparator
+        implements Comparator<VolcanoRuleMatch>
+    {
+        public int compare(
+            VolcanoRuleMatch match1,
+            VolcanoRuleMatch match2)
+        {
+            int c =
+                Double.compare(
+                    match2.getImportance(),
+                    match1.getImportance());
+            if (c == 0) {
+                c = RuleQueue.compareRels(
+                    match2.getRels(),
+                    match1.getRels());
+            }
+            return c;
+        }
+    }
+}
+
+// End RuleQueueTest.java
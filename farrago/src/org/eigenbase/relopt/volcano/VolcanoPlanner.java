@@ -87,11 +87,11 @@ public class VolcanoPlanner
     final List<RelSet> allSets = new ArrayList<RelSet>();
 
     /**
-     * Canonical map from {@link String digest} to the unique {@link RelNode
+     * Canonical map from {@link RelDigest digest} to the unique {@link RelNode
      * relational expression} with that digest.
      */
-    private final Map<String, RelNode> mapDigestToRel =
-        new HashMap<String, RelNode>();
+    private final Map<RelDigest, RelNode> mapDigestToRel =
+        new HashMap<RelDigest, RelNode>();
 
     /**
      * Map each registered expression ({@link RelNode}) to its equivalence set
@@ -993,13 +993,15 @@ SUBSET_LOOP:
      */
     void rename(RelNode rel)
     {
-        final String oldDigest = rel.getDigest();
+        final RelDigest oldDigest = rel.getDigestKey();
         if (fixupInputs(rel)) {
             assert mapDigestToRel.remove(oldDigest) == rel;
-            final String newDigest = rel.recomputeDigest();
-            tracer.finer(
-                "Rename #" + rel.getId() + " from '" + oldDigest
-                + "' to '" + newDigest + "'");
+            final RelDigest newDigest = rel.recomputeDigest();
+            if (tracer.isLoggable(Level.FINER)) {
+                tracer.finer(
+                    "Rename #" + rel.getId() + " from '" + oldDigest
+                    + "' to '" + newDigest + "'");
+            }
             final RelNode equivRel = mapDigestToRel.put(newDigest, rel);
             if (equivRel != null) {
                 assert equivRel != rel;
@@ -1010,7 +1012,7 @@ SUBSET_LOOP:
                     "After renaming rel#" + rel.getId()
                     + ", it is now equivalent to rel#" + equivRel.getId());
                 mapDigestToRel.put(
-                    equivRel.getDigest(),
+                    equivRel.getDigestKey(),
                     equivRel);
 
                 RelSubset equivRelSubset = getSubset(equivRel);
@@ -1056,7 +1058,7 @@ SUBSET_LOOP:
         // Is there an equivalent relational expression? (This might have
         // just occurred because the relational expression's child was just
         // found to be equivalent to another set.)
-        RelNode equivRel = mapDigestToRel.get(rel.getDigest());
+        RelNode equivRel = mapDigestToRel.get(rel.getDigestKey());
         if ((equivRel != null) && (equivRel != rel)) {
             assert (equivRel.getClass() == rel.getClass());
             assert (equivRel.getTraits().equals(rel.getTraits()));
@@ -1245,7 +1247,7 @@ SUBSET_LOOP:
 
         // If it is equivalent to an existing expression, return the set that
         // the equivalent expression belongs to.
-        String digest = rel.getDigest();
+        RelDigest digest = rel.getDigestKey();
         RelNode equivExp = mapDigestToRel.get(digest);
         if (equivExp == null) {
             ;
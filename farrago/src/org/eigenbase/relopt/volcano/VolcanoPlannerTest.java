@@ -440,7 +440,7 @@ public class VolcanoPlannerTest
         }
     }
 
-    private static abstract class TestLeafRel
+    static abstract class TestLeafRel
         extends AbstractRelNode
     {
         private String label;
@@ -539,7 +539,7 @@ public class VolcanoPlannerTest
         }
     }
 
-    private static class NoneLeafRel
+    static class NoneLeafRel
         extends TestLeafRel
     {
         protected NoneLeafRel(
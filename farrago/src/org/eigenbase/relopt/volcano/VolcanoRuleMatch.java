@@ -41,6 +41,12 @@ class VolcanoRuleMatch
     private final VolcanoPlanner volcanoPlanner;
     private double cachedImportance = Double.NaN;
 
+    /**
+     * Order in which this match was queued, or 0 if it has not been queued;
+     * assigned by {@link RuleQueue#addMatch}.
+     */
+    int sequence;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -0,0 +1,754 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.eigenbase.rex;
+
+import java.math.*;
+
+import java.nio.charset.*;
+
+import java.util.*;
+import java.util.regex.*;
+
+import org.eigenbase.reltype.*;
+import org.eigenbase.sql.*;
+import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.type.*;
+import org.eigenbase.util.*;
+
+
+/**
+ * RexInterpreter evaluates constant row-expressions directly, without
+ * generating and compiling code for them.
+ *
+ * <p>It understands literals and calls to a subset of the operators in {@link
+ * SqlStdOperatorTable}: arithmetic, comparison, boolean logic, CASE, CAST,
+ * and a few character functions. An expression is only evaluated if the
+ * interpreter can be sure of computing the same value as the generated code
+ * would; anything else (an unsupported operator, a user-defined routine, an
+ * arithmetic overflow, a rounding decision, a runtime error such as division
+ * by zero) makes {@link #evaluate} return null, and the caller should fall
+ * back to executing the expression.
+ */
+public class RexInterpreter
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    private static final Pattern EXACT_PATTERN =
+        Pattern.compile("[-+]?([0-9]+(\\.[0-9]*)?|\\.[0-9]+)");
+
+    private static final Pattern DATE_PATTERN =
+        Pattern.compile("[0-9]{4}-[0-9]{2}-[0-9]{2}");
+
+    private static final Pattern TIME_PATTERN =
+        Pattern.compile("[0-9]{2}:[0-9]{2}:[0-9]{2}");
+
+    private static final Pattern TIMESTAMP_PATTERN =
+        Pattern.compile(
+            "[0-9]{4}-[0-9]{2}-[0-9]{2} [0-9]{2}:[0-9]{2}:[0-9]{2}");
+
+    private static final BigDecimal TWO_TO_53 = BigDecimal.valueOf(1L << 53);
+
+    private static final CannotEvaluateException CANNOT_EVALUATE =
+        new CannotEvaluateException();
+
+    //~ Instance fields --------------------------------------------------------
+
+    private final RexBuilder rexBuilder;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a RexInterpreter.
+     *
+     * @param rexBuilder builder for the resulting literals
+     */
+    public RexInterpreter(RexBuilder rexBuilder)
+    {
+        this.rexBuilder = rexBuilder;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Evaluates a constant expression.
+     *
+     * @param exp expression, which must not reference inputs, correlating
+     * variables or dynamic parameters
+     *
+     * @return a literal of the same type as the expression (apart from
+     * nullability), or a null literal cast to the expression's type; or null
+     * if the expression cannot be evaluated here
+     */
+    public RexNode evaluate(RexNode exp)
+    {
+        Object value;
+        try {
+            value = eval(exp);
+        } catch (CannotEvaluateException e) {
+            return null;
+        } catch (ClassCastException e) {
+            // an operator applied to operands of a type not handled here
+            return null;
+        }
+        RelDataType type = exp.getType();
+        if (value == null) {
+            return rexBuilder.makeCast(
+                type,
+                rexBuilder.constantNull());
+        }
+        RelDataType literalType =
+            rexBuilder.getTypeFactory().createTypeWithNullability(
+                type,
+                false);
+        SqlTypeName typeName = type.getSqlTypeName();
+        if (value instanceof Boolean) {
+            return rexBuilder.makeLiteral(
+                (Boolean) value,
+                literalType,
+                SqlTypeName.BOOLEAN);
+        } else if (value instanceof BigDecimal) {
+            return rexBuilder.makeExactLiteral(
+                (BigDecimal) value,
+                literalType);
+        } else if (value instanceof Double) {
+            return rexBuilder.makeApproxLiteral(
+                new BigDecimal((Double) value),
+                literalType);
+        } else if (value instanceof String) {
+            if ((type.getCharset() == null) || (type.getCollation() == null)) {
+                return null;
+            }
+            return rexBuilder.makeLiteral(
+                new NlsString(
+                    (String) value,
+                    type.getCharset().name(),
+                    type.getCollation()),
+                literalType,
+                SqlTypeName.CHAR);
+        } else if (value instanceof Calendar) {
+            return rexBuilder.makeLiteral(
+                (Calendar) value,
+                literalType,
+                typeName);
+        }
+        throw Util.newInternal("unexpected value " + value);
+    }
+
+    /**
+     * Evaluates an expression to a Java value: null for the null value,
+     * {@link Boolean} for booleans, {@link BigDecimal} (with the scale of the
+     * expression's type) for exact numerics, {@link Double} for approximate
+     * numerics, {@link String} for character strings, and {@link Calendar}
+     * for datetimes.
+     */
+    private Object eval(RexNode exp)
+    {
+        if (exp instanceof RexLiteral) {
+            return evalLiteral((RexLiteral) exp);
+        }
+        if (!(exp instanceof RexCall) || (exp instanceof RexOver)) {
+            throw CANNOT_EVALUATE;
+        }
+        RexCall call = (RexCall) exp;
+        SqlOperator op = call.getOperator();
+        RexNode [] operands = call.getOperands();
+        RelDataType type = call.getType();
+
+        // Operators which do not simply return null when an operand is null
+        if (op == SqlStdOperatorTable.andOperator) {
+            return evalAnd(operands);
+        } else if (op == SqlStdOperatorTable.orOperator) {
+            return evalOr(operands);
+        } else if (op == SqlStdOperatorTable.isNullOperator) {
+            return eval(operands[0]) == null;
+        } else if (op == SqlStdOperatorTable.isNotNullOperator) {
+            return eval(operands[0]) != null;
+        } else if (op == SqlStdOperatorTable.isTrueOperator) {
+            return Boolean.TRUE.equals(eval(operands[0]));
+        } else if (op == SqlStdOperatorTable.isNotTrueOperator) {
+            return !Boolean.TRUE.equals(eval(operands[0]));
+        } else if (op == SqlStdOperatorTable.isFalseOperator) {
+            return Boolean.FALSE.equals(eval(operands[0]));
+        } else if (op == SqlStdOperatorTable.isNotFalseOperator) {
+            return !Boolean.FALSE.equals(eval(operands[0]));
+        } else if (op == SqlStdOperatorTable.caseOperator) {
+            return evalCase(operands, type);
+        } else if (op == SqlStdOperatorTable.castFunc) {
+            return cast(
+                eval(operands[0]),
+                operands[0].getType(),
+                type);
+        }
+
+        Object [] values = new Object[operands.length];
+        for (int i = 0; i < operands.length; i++) {
+            values[i] = eval(operands[i]);
+            if (values[i] == null) {
+                if (!isStrict(op)) {
+                    throw CANNOT_EVALUATE;
+                }
+
+                // Still evaluate the other operands, since one which cannot
+                // be evaluated must prevent reduction.
+                for (int j = i + 1; j < operands.length; j++) {
+                    eval(operands[j]);
+                }
+                return null;
+            }
+        }
+
+        if (op == SqlStdOperatorTable.notOperator) {
+            return !(Boolean) values[0];
+        } else if (op == SqlStdOperatorTable.equalsOperator) {
+            return compare(operands, values) == 0;
+        } else if (op == SqlStdOperatorTable.notEqualsOperator) {
+            return compare(operands, values) != 0;
+        } else if (op == SqlStdOperatorTable.lessThanOperator) {
+            return compare(operands, values) < 0;
+        } else if (op == SqlStdOperatorTable.lessThanOrEqualOperator) {
+            return compare(operands, values) <= 0;
+        } else if (op == SqlStdOperatorTable.greaterThanOperator) {
+            return compare(operands, values) > 0;
+        } else if (op == SqlStdOperatorTable.greaterThanOrEqualOperator) {
+            return compare(operands, values) >= 0;
+        } else if ((op == SqlStdOperatorTable.plusOperator)
+            || (op == SqlStdOperatorTable.minusOperator)
+            || (op == SqlStdOperatorTable.multiplyOperator)
+            || (op == SqlStdOperatorTable.divideOperator)
+            || (op == SqlStdOperatorTable.modFunc))
+        {
+            return evalArithmetic(op, operands, values, type);
+        } else if (op == SqlStdOperatorTable.prefixPlusOperator) {
+            Object value = numeric(values[0], type);
+            if (value instanceof BigDecimal) {
+                return exact((BigDecimal) value, type);
+            }
+            return approx((Double) value, type);
+        } else if (op == SqlStdOperatorTable.prefixMinusOperator) {
+            Object value = numeric(values[0], type);
+            if (value instanceof BigDecimal) {
+                return exact(((BigDecimal) value).negate(), type);
+            }
+            return approx(-(Double) value, type);
+        } else if (op == SqlStdOperatorTable.absFunc) {
+            Object value = numeric(values[0], type);
+            if (value instanceof BigDecimal) {
+                return exact(((BigDecimal) value).abs(), type);
+            }
+            return approx(Math.abs((Double) value), type);
+        } else if (op == SqlStdOperatorTable.concatOperator) {
+            checkCharsets(operands);
+            return chars(
+                (String) values[0] + (String) values[1],
+                type);
+        } else if ((op == SqlStdOperatorTable.upperFunc)
+            || (op == SqlStdOperatorTable.lowerFunc))
+        {
+            String s = (String) values[0];
+            if (!isAscii(s)) {
+                // the runtime and Java may disagree outside ASCII
+                throw CANNOT_EVALUATE;
+            }
+            return chars(
+                (op == SqlStdOperatorTable.upperFunc)
+                ? s.toUpperCase(Locale.ENGLISH)
+                : s.toLowerCase(Locale.ENGLISH),
+                type);
+        } else if ((op == SqlStdOperatorTable.charLengthFunc)
+            || (op == SqlStdOperatorTable.characterLengthFunc))
+        {
+            return exact(
+                BigDecimal.valueOf(((String) values[0]).length()),
+                type);
+        }
+        throw CANNOT_EVALUATE;
+    }
+
+    private static boolean isStrict(SqlOperator op)
+    {
+        return (op == SqlStdOperatorTable.notOperator)
+            || (op == SqlStdOperatorTable.equalsOperator)
+            || (op == SqlStdOperatorTable.notEqualsOperator)
+            || (op == SqlStdOperatorTable.lessThanOperator)
+            || (op == SqlStdOperatorTable.lessThanOrEqualOperator)
+            || (op == SqlStdOperatorTable.greaterThanOperator)
+            || (op == SqlStdOperatorTable.greaterThanOrEqualOperator)
+            || (op == SqlStdOperatorTable.plusOperator)
+            || (op == SqlStdOperatorTable.minusOperator)
+            || (op == SqlStdOperatorTable.multiplyOperator)
+            || (op == SqlStdOperatorTable.divideOperator)
+            || (op == SqlStdOperatorTable.modFunc)
+            || (op == SqlStdOperatorTable.prefixPlusOperator)
+            || (op == SqlStdOperatorTable.prefixMinusOperator)
+            || (op == SqlStdOperatorTable.absFunc)
+            || (op == SqlStdOperatorTable.concatOperator)
+            || (op == SqlStdOperatorTable.upperFunc)
+            || (op == SqlStdOperatorTable.lowerFunc)
+            || (op == SqlStdOperatorTable.charLengthFunc)
+            || (op == SqlStdOperatorTable.characterLengthFunc);
+    }
+
+    private Object evalLiteral(RexLiteral literal)
+    {
+        Comparable value = literal.getValue();
+        if (value == null) {
+            return null;
+        }
+        RelDataType type = literal.getType();
+        switch (literal.getTypeName()) {
+        case BOOLEAN:
+            return value;
+        case DECIMAL:
+        case BIGINT:
+            if (!SqlTypeUtil.isExactNumeric(type)) {
+                throw CANNOT_EVALUATE;
+            }
+            return exact((BigDecimal) value, type);
+        case DOUBLE:
+            if (!SqlTypeUtil.isApproximateNumeric(type)) {
+                throw CANNOT_EVALUATE;
+            }
+            return approx(((BigDecimal) value).doubleValue(), type);
+        case CHAR:
+            return ((NlsString) value).getValue();
+        case DATE:
+        case TIME:
+        case TIMESTAMP:
+            return value;
+        default:
+            throw CANNOT_EVALUATE;
+        }
+    }
+
+    private Object evalAnd(RexNode [] operands)
+    {
+        // Evaluate every operand, so that an unsupported one prevents
+        // reduction rather than being skipped.
+        boolean unknown = false;
+        boolean result = true;
+        for (RexNode operand : operands) {
+            Boolean value = (Boolean) eval(operand);
+            if (value == null) {
+                unknown = true;
+            } else if (!value) {
+                result = false;
+            }
+        }
+        if (!result) {
+            return false;
+        }
+        return unknown ? null : Boolean.TRUE;
+    }
+
+    private Object evalOr(RexNode [] operands)
+    {
+        boolean unknown = false;
+        boolean result = false;
+        for (RexNode operand : operands) {
+            Boolean value = (Boolean) eval(operand);
+            if (value == null) {
+                unknown = true;
+            } else if (value) {
+                result = true;
+            }
+        }
+        if (result) {
+            return true;
+        }
+        return unknown ? null : Boolean.FALSE;
+    }
+
+    private Object evalCase(RexNode [] operands, RelDataType type)
+    {
+        // operands are WHEN, THEN, WHEN, THEN, ..., ELSE
+        int i = 0;
+        for (; i + 1 < operands.length; i += 2) {
+            if (Boolean.TRUE.equals(eval(operands[i]))) {
+                break;
+            }
+        }
+        RexNode result = operands[i];
+        return cast(
+            eval(result),
+            result.getType(),
+            type);
+    }
+
+    private Object evalArithmetic(
+        SqlOperator op,
+        RexNode [] operands,
+        Object [] values,
+        RelDataType type)
+    {
+        Object left = numeric(values[0], type);
+        Object right = numeric(values[1], type);
+        if (left instanceof BigDecimal) {
+            BigDecimal x = (BigDecimal) left;
+            BigDecimal y = (BigDecimal) right;
+            BigDecimal result;
+            if (op == SqlStdOperatorTable.plusOperator) {
+                result = x.add(y);
+            } else if (op == SqlStdOperatorTable.minusOperator) {
+                result = x.subtract(y);
+            } else if (op == SqlStdOperatorTable.multiplyOperator) {
+                result = x.multiply(y);
+            } else {
+                if (y.signum() == 0) {
+                    // leave the error to the runtime
+                    throw CANNOT_EVALUATE;
+                }
+                try {
+                    if (op == SqlStdOperatorTable.modFunc) {
+                        result = x.remainder(y);
+                    } else {
+                        // only reduce if the quotient is exact; the
+                        // runtime decides how to round
+                        result = x.divide(y);
+                    }
+                } catch (ArithmeticException e) {
+                    throw CANNOT_EVALUATE;
+                }
+            }
+            return exact(result, type);
+        }
+        double x = (Double) left;
+        double y = (Double) right;
+        double result;
+        if (op == SqlStdOperatorTable.plusOperator) {
+            result = x + y;
+        } else if (op == SqlStdOperatorTable.minusOperator) {
+            result = x - y;
+        } else if (op == SqlStdOperatorTable.multiplyOperator) {
+            result = x * y;
+        } else if (op == SqlStdOperatorTable.divideOperator) {
+            if (y == 0) {
+                throw CANNOT_EVALUATE;
+            }
+            result = x / y;
+        } else {
+            throw CANNOT_EVALUATE;
+        }
+        return approx(result, type);
+    }
+
+    /**
+     * Converts a numeric operand value to the representation used for
+     * arithmetic producing a result of a given type: {@link BigDecimal} if
+     * the result is exact, {@link Double} if it is approximate.
+     */
+    private static Object numeric(Object value, RelDataType resultType)
+    {
+        if (SqlTypeUtil.isExactNumeric(resultType)) {
+            if (!(value instanceof BigDecimal)) {
+                throw CANNOT_EVALUATE;
+            }
+            return value;
+        } else if (SqlTypeUtil.isApproximateNumeric(resultType)) {
+            return toDouble(value);
+        }
+        throw CANNOT_EVALUATE;
+    }
+
+    private static double toDouble(Object value)
+    {
+        if (value instanceof Double) {
+            return (Double) value;
+        }
+        if (value instanceof BigDecimal) {
+            BigDecimal bd = (BigDecimal) value;
+
+            // The runtime converts scaled decimals by division, which may
+            // round differently from BigDecimal.
+            if ((bd.scale() == 0) && (bd.abs().compareTo(TWO_TO_53) <= 0)) {
+                return bd.doubleValue();
+            }
+        }
+        throw CANNOT_EVALUATE;
+    }
+
+    /**
+     * Compares two operand values of the same type family.
+     */
+    private static int compare(RexNode [] operands, Object [] values)
+    {
+        Object x = values[0];
+        Object y = values[1];
+        if ((x instanceof Boolean) && (y instanceof Boolean)) {
+            return ((Boolean) x).compareTo((Boolean) y);
+        } else if ((x instanceof BigDecimal) && (y instanceof BigDecimal)) {
+            return ((BigDecimal) x).compareTo((BigDecimal) y);
+        } else if (((x instanceof BigDecimal) || (x instanceof Double))
+            && ((y instanceof BigDecimal) || (y instanceof Double)))
+        {
+            return Double.compare(toDouble(x), toDouble(y));
+        } else if ((x instanceof String) && (y instanceof String)) {
+            return compareChars(operands, (String) x, (String) y);
+        } else if ((x instanceof Calendar)
+            && (y instanceof Calendar)
+            && (operands[0].getType().getSqlTypeName()
+                == operands[1].getType().getSqlTypeName()))
+        {
+            long xMillis = ((Calendar) x).getTimeInMillis();
+            long yMillis = ((Calendar) y).getTimeInMillis();
+            return (xMillis < yMillis) ? -1 : ((xMillis == yMillis) ? 0 : 1);
+        }
+        throw CANNOT_EVALUATE;
+    }
+
+    /**
+     * Compares character strings in binary order, with trailing spaces
+     * ignored. Strings are only compared if padding cannot change the
+     * answer: both are fixed-length, or neither has trailing spaces; and
+     * neither contains a character which sorts before a space.
+     */
+    private static int compareChars(RexNode [] operands, String x, String y)
+    {
+        checkCharsets(operands);
+        boolean fixed =
+            (operands[0].getType().getSqlTypeName() == SqlTypeName.CHAR)
+            && (operands[1].getType().getSqlTypeName() == SqlTypeName.CHAR);
+        if (!fixed && (x.endsWith(" ") || y.endsWith(" "))) {
+            throw CANNOT_EVALUATE;
+        }
+        for (String s : new String[] { x, y }) {
+            for (int i = 0; i < s.length(); i++) {
+                if (s.charAt(i) < ' ') {
+                    throw CANNOT_EVALUATE;
+                }
+            }
+        }
+        return trimTrailingSpaces(x).compareTo(trimTrailingSpaces(y));
+    }
+
+    private static String trimTrailingSpaces(String s)
+    {
+        int n = s.length();
+        while ((n > 0) && (s.charAt(n - 1) == ' ')) {
+            --n;
+        }
+        return s.substring(0, n);
+    }
+
+    private static void checkCharsets(RexNode [] operands)
+    {
+        Charset charset = operands[0].getType().getCharset();
+        for (RexNode operand : operands) {
+            if (!equal(charset, operand.getType().getCharset())) {
+                throw CANNOT_EVALUATE;
+            }
+        }
+    }
+
+    private static boolean equal(Charset charset1, Charset charset2)
+    {
+        return (charset1 == null) ? (charset2 == null)
+            : charset1.equals(charset2);
+    }
+
+    private static boolean isAscii(String s)
+    {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 128) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converts a value from one type to another, following the rules of
+     * CAST, where the result is certain.
+     */
+    private Object cast(Object value, RelDataType from, RelDataType to)
+    {
+        if (value == null) {
+            return null;
+        }
+        SqlTypeName toTypeName = to.getSqlTypeName();
+        if (SqlTypeUtil.isExactNumeric(to)) {
+            if (value instanceof BigDecimal) {
+                return exact((BigDecimal) value, to);
+            } else if ((value instanceof String)
+                && EXACT_PATTERN.matcher((String) value).matches())
+            {
+                return exact(new BigDecimal((String) value), to);
+            }
+        } else if (SqlTypeUtil.isApproximateNumeric(to)) {
+            if ((value instanceof BigDecimal) || (value instanceof Double)) {
+                return approx(toDouble(value), to);
+            }
+        } else if (SqlTypeUtil.inCharFamily(to)) {
+            if (value instanceof String) {
+                if (!equal(from.getCharset(), to.getCharset())) {
+                    throw CANNOT_EVALUATE;
+                }
+                return chars((String) value, to);
+            } else if ((value instanceof BigDecimal)
+                && (((BigDecimal) value).scale() == 0))
+            {
+                return chars(((BigDecimal) value).toPlainString(), to);
+            }
+        } else if (toTypeName == SqlTypeName.BOOLEAN) {
+            if (value instanceof Boolean) {
+                return value;
+            }
+        } else if ((toTypeName == SqlTypeName.DATE)
+            || (toTypeName == SqlTypeName.TIME)
+            || (toTypeName == SqlTypeName.TIMESTAMP))
+        {
+            if (value instanceof Calendar) {
+                if ((from.getSqlTypeName() == toTypeName)
+                    && (from.getPrecision() == to.getPrecision()))
+                {
+                    return value;
+                }
+            } else if (value instanceof String) {
+                return parseDatetime((String) value, to);
+            }
+        }
+        throw CANNOT_EVALUATE;
+    }
+
+    /**
+     * Parses a datetime value, if the string has exactly the form of a
+     * literal of the given type.
+     */
+    private Object parseDatetime(String s, RelDataType type)
+    {
+        Pattern pattern;
+        switch (type.getSqlTypeName()) {
+        case DATE:
+            pattern = DATE_PATTERN;
+            break;
+        case TIME:
+            pattern = TIME_PATTERN;
+            break;
+        default:
+            pattern = TIMESTAMP_PATTERN;
+            break;
+        }
+        if (!pattern.matcher(s).matches()) {
+            throw CANNOT_EVALUATE;
+        }
+        try {
+            return RexLiteral.fromJdbcString(
+                type,
+                type.getSqlTypeName(),
+                s).getValue();
+        } catch (RuntimeException e) {
+            // not a valid date; leave the error to the runtime
+            throw CANNOT_EVALUATE;
+        }
+    }
+
+    /**
+     * Checks that an exact value fits a type without rounding or overflow,
+     * and returns it with the type's scale.
+     */
+    private static BigDecimal exact(BigDecimal value, RelDataType type)
+    {
+        if (!SqlTypeUtil.isExactNumeric(type)) {
+            throw CANNOT_EVALUATE;
+        }
+        BigDecimal result;
+        try {
+            result = value.setScale(type.getScale());
+        } catch (ArithmeticException e) {
+            throw CANNOT_EVALUATE;
+        }
+        int bits;
+        switch (type.getSqlTypeName()) {
+        case TINYINT:
+            bits = 7;
+            break;
+        case SMALLINT:
+            bits = 15;
+            break;
+        case INTEGER:
+            bits = 31;
+            break;
+        case BIGINT:
+            bits = 63;
+            break;
+        default:
+            if (result.precision() > type.getPrecision()) {
+                throw CANNOT_EVALUATE;
+            }
+            return result;
+        }
+        if (result.unscaledValue().bitLength() > bits) {
+            throw CANNOT_EVALUATE;
+        }
+        return result;
+    }
+
+    private static Double approx(double value, RelDataType type)
+    {
+        if (type.getSqlTypeName() == SqlTypeName.REAL) {
+            value = (float) value;
+        }
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw CANNOT_EVALUATE;
+        }
+        return value;
+    }
+
+    /**
+     * Fits a character string to a type: pads to the length of a CHAR, and
+     * refuses to truncate.
+     */
+    private static String chars(String s, RelDataType type)
+    {
+        if (!SqlTypeUtil.inCharFamily(type)) {
+            throw CANNOT_EVALUATE;
+        }
+        int precision = type.getPrecision();
+        if (s.length() > precision) {
+            throw CANNOT_EVALUATE;
+        }
+        if ((type.getSqlTypeName() == SqlTypeName.CHAR)
+            && (s.length() < precision))
+        {
+            StringBuilder buf = new StringBuilder(precision);
+            buf.append(s);
+            while (buf.length() < precision) {
+                buf.append(' ');
+            }
+            s = buf.toString();
+        }
+        return s;
+    }
+
+    //~ Inner Classes ----------------------------------------------------------
+
+    /**
+     * Thrown when an expression cannot be evaluated. A single instance without
+     * a stack trace is used, since this is part of normal operation.
+     */
+    private static class CannotEvaluateException
+        extends RuntimeException
+    {
+        public Throwable fillInStackTrace()
+        {
+            return this;
+        }
+    }
+}
+
+// End RexInterpreter.java
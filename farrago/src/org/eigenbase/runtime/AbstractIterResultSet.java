@@ -43,6 +43,12 @@ public abstract class AbstractIterResultSet
     //~ Instance fields --------------------------------------------------------
 
     private final ColumnGetter columnGetter;
+
+    /**
+     * The column getter, if it can read primitive columns directly; otherwise
+     * null.
+     */
+    private final PrimitiveColumnGetter primitiveColumnGetter;
     protected Object current;
     protected int row; // 1-based (starts on 0 to represent before first row)
     protected long timeoutMillis;
@@ -53,6 +59,9 @@ public abstract class AbstractIterResultSet
     {
         Util.discard(columnGetter.getColumnNames());
         this.columnGetter = columnGetter;
+        this.primitiveColumnGetter =
+            (columnGetter instanceof PrimitiveColumnGetter)
+            ? (PrimitiveColumnGetter) columnGetter : null;
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -144,6 +153,134 @@ public abstract class AbstractIterResultSet
         return columnGetter.get(current, columnIndex);
     }
 
+    /**
+     * Returns the kind of primitive value held in a column, or {@link
+     * PrimitiveColumnGetter#KIND_OBJECT} if the column cannot be read without
+     * going through {@link #getRaw}.
+     */
+    private int getPrimitiveKind(int columnIndex)
+    {
+        if (primitiveColumnGetter == null) {
+            return PrimitiveColumnGetter.KIND_OBJECT;
+        }
+        return primitiveColumnGetter.getPrimitiveKind(columnIndex);
+    }
+
+    // override AbstractResultSet
+    public boolean getBoolean(int columnIndex)
+        throws SQLException
+    {
+        switch (getPrimitiveKind(columnIndex)) {
+        case PrimitiveColumnGetter.KIND_INTEGRAL:
+            return getLongFast(columnIndex) != 0;
+        case PrimitiveColumnGetter.KIND_FLOATING:
+            return getDoubleFast(columnIndex) != 0;
+        default:
+            return super.getBoolean(columnIndex);
+        }
+    }
+
+    // override AbstractResultSet
+    public byte getByte(int columnIndex)
+        throws SQLException
+    {
+        if (getPrimitiveKind(columnIndex)
+            == PrimitiveColumnGetter.KIND_INTEGRAL)
+        {
+            return (byte) getLongFast(columnIndex);
+        }
+        return super.getByte(columnIndex);
+    }
+
+    // override AbstractResultSet
+    public short getShort(int columnIndex)
+        throws SQLException
+    {
+        if (getPrimitiveKind(columnIndex)
+            == PrimitiveColumnGetter.KIND_INTEGRAL)
+        {
+            return (short) getLongFast(columnIndex);
+        }
+        return super.getShort(columnIndex);
+    }
+
+    // override AbstractResultSet
+    public int getInt(int columnIndex)
+        throws SQLException
+    {
+        if (getPrimitiveKind(columnIndex)
+            == PrimitiveColumnGetter.KIND_INTEGRAL)
+        {
+            return (int) getLongFast(columnIndex);
+        }
+        return super.getInt(columnIndex);
+    }
+
+    // override AbstractResultSet
+    public long getLong(int columnIndex)
+        throws SQLException
+    {
+        if (getPrimitiveKind(columnIndex)
+            == PrimitiveColumnGetter.KIND_INTEGRAL)
+        {
+            return getLongFast(columnIndex);
+        }
+        return super.getLong(columnIndex);
+    }
+
+    // override AbstractResultSet
+    public float getFloat(int columnIndex)
+        throws SQLException
+    {
+        switch (getPrimitiveKind(columnIndex)) {
+        case PrimitiveColumnGetter.KIND_INTEGRAL:
+            return (float) getLongFast(columnIndex);
+        case PrimitiveColumnGetter.KIND_FLOATING:
+            return (float) getDoubleFast(columnIndex);
+        default:
+            return super.getFloat(columnIndex);
+        }
+    }
+
+    // override AbstractResultSet
+    public double getDouble(int columnIndex)
+        throws SQLException
+    {
+        switch (getPrimitiveKind(columnIndex)) {
+        case PrimitiveColumnGetter.KIND_INTEGRAL:
+            return (double) getLongFast(columnIndex);
+        case PrimitiveColumnGetter.KIND_FLOATING:
+            return getDoubleFast(columnIndex);
+        default:
+            return super.getDouble(columnIndex);
+        }
+    }
+
+    /**
+     * Reads an integral column without boxing, and sets {@link #wasNull}.
+     */
+    private long getLongFast(int columnIndex)
+    {
+        wasNull = primitiveColumnGetter.isNull(current, columnIndex);
+        if (wasNull) {
+            return 0;
+        }
+        return primitiveColumnGetter.getLong(current, columnIndex);
+    }
+
+    /**
+     * Reads a floating-point column without boxing, and sets {@link
+     * #wasNull}.
+     */
+    private double getDoubleFast(int columnIndex)
+    {
+        wasNull = primitiveColumnGetter.isNull(current, columnIndex);
+        if (wasNull) {
+            return 0;
+        }
+        return primitiveColumnGetter.getDouble(current, columnIndex);
+    }
+
     //~ Inner Interfaces -------------------------------------------------------
 
     /**
@@ -159,6 +296,49 @@ public abstract class AbstractIterResultSet
             int columnIndex);
     }
 
+    /**
+     * A <code>PrimitiveColumnGetter</code> is a {@link ColumnGetter} which can
+     * also read columns of primitive type without boxing them, typically
+     * because it has been generated for a particular row class.
+     *
+     * <p>{@link #getLong} is only called for columns of kind {@link
+     * #KIND_INTEGRAL}, and {@link #getDouble} only for columns of kind {@link
+     * #KIND_FLOATING}, and then only if {@link #isNull} returned false.
+     * Boolean columns are integral, with values 0 and 1.
+     */
+    public interface PrimitiveColumnGetter
+        extends ColumnGetter
+    {
+        /**
+         * Column holds an object; use {@link ColumnGetter#get}.
+         */
+        int KIND_OBJECT = 0;
+
+        /**
+         * Column holds a boolean or integer; use {@link #getLong}.
+         */
+        int KIND_INTEGRAL = 1;
+
+        /**
+         * Column holds a floating-point value; use {@link #getDouble}.
+         */
+        int KIND_FLOATING = 2;
+
+        int getPrimitiveKind(int columnIndex);
+
+        boolean isNull(
+            Object o,
+            int columnIndex);
+
+        long getLong(
+            Object o,
+            int columnIndex);
+
+        double getDouble(
+            Object o,
+            int columnIndex);
+    }
+
     //~ Inner Classes ----------------------------------------------------------
 
     /**
@@ -19,20 +19,48 @@
 package org.eigenbase.runtime;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import org.eigenbase.test.*;
+import org.eigenbase.util.*;
 
 
 /**
  * <code>CompoundParallelTupleIter</code> creates one TupleIter out of several.
  * Unlike its serial counterpart {@link CompoundTupleIter}, it runs all its
- * inputs in parallel, in separate threads that it spawns. It outputs the next
- * element available from any of its inputs. Note that the order of output rows
- * is indeterminate, since it is unpredictable which input will arrive next.
+ * inputs in parallel, in worker threads drawn from an {@link ExecutorService}.
+ * It outputs the next element available from any of its inputs. Note that the
+ * order of output rows is indeterminate, since it is unpredictable which input
+ * will arrive next.
  *
  * <p>The compound TupleIter is finished when all of its inputs are finished.
  * The set of input iterators is fixed at construction.
  *
+ * <p>The number of workers is bounded by the degree of parallelism supplied
+ * at construction; when there are more inputs than workers, each worker
+ * drains its share of the inputs one after another. The executor is bounded
+ * too (see {@link #newExecutor}); if it has no thread to spare for a worker,
+ * the reader reads that worker's share of the inputs itself, in between
+ * taking rows from the other workers. Workers are started
+ * lazily by the first call to {@link #fetchNext}, and are stopped by {@link
+ * #restart} and {@link #closeAllocation}. A worker which is in the middle of a
+ * call to its input's <code>fetchNext</code> cannot be interrupted, so those
+ * methods wait for that call to return.
+ *
+ * <p><b>Reader/writer synchronization.</b> Since an input may re-use the same
+ * row object for each row it returns, a worker publishes a row to the shared
+ * queue and then waits until the reader comes back for the next row before it
+ * fetches again from its input; this is the same protocol as the fencepost in
+ * {@link TimeoutQueueTupleIter}. Each worker therefore has at most one entry in
+ * the queue, so the queue is bounded by the number of workers.
+ *
+ * <p>By default {@link #fetchNext} blocks until a row is available. After a
+ * call to {@link #setTimeout}, it waits at most that long, and then either
+ * returns {@link TupleIter.NoDataReason#UNDERFLOW} or throws {@link
+ * TupleIter.TimeoutException}. Listeners registered via {@link #addListener}
+ * are notified when a row arrives after an underflow.
+ *
  * <p>This variant is needed when an input is infinite, since CompoundTupleIter
  * would hang. Extending this class to preserve order is problematic, given its
  * low level:
@@ -53,75 +81,512 @@ import org.eigenbase.test.*;
 public class CompoundParallelTupleIter
     extends AbstractTupleIter
 {
+    //~ Static fields/initializers ---------------------------------------------
+
+    /**
+     * How long a worker sleeps before polling again an input which returned
+     * {@link TupleIter.NoDataReason#UNDERFLOW}, and how often a blocked worker
+     * checks whether it has been asked to stop.
+     */
+    private static final long POLL_MILLIS = 10;
+
+    /**
+     * Number of threads per processor of the default executor, unless one has
+     * been set by {@link #setDefaultExecutor}.
+     */
+    private static final int DEFAULT_THREADS_PER_PROCESSOR = 4;
+
+    private static ExecutorService defaultExecutor;
+    private static boolean defaultIsPrivate;
+
     //~ Instance fields --------------------------------------------------------
 
     final private TupleIter [] in;
-    final private boolean [] endOfData;
-    private int i;
+    final private int degreeOfParallelism;
+    final private ExecutorService executor;
+    final private List<MoreDataListener> listeners =
+        new CopyOnWriteArrayList<MoreDataListener>();
+
+    private long timeoutMillis = Long.MAX_VALUE;
+    private boolean timeoutAsUnderflow;
+    private volatile boolean didUnderflow;
+
+    /**
+     * Running workers, or null if the workers have not been started since
+     * construction or the last {@link #restart}.
+     */
+    private Worker [] workers;
+    private Future<?> [] futures;
+    private BlockingQueue<Worker> queue;
+    private int activeWorkerCount;
+
+    /**
+     * Inputs of workers which the executor rejected, read by the reader
+     * itself.
+     */
+    private final LinkedList<TupleIter> inlineInputs =
+        new LinkedList<TupleIter>();
+
+    /**
+     * Worker whose row was returned by the last call to {@link #fetchNext}, and
+     * which is waiting for the reader to finish with that row.
+     */
+    private Worker current;
 
     //~ Constructors -----------------------------------------------------------
 
+    /**
+     * Creates a CompoundParallelTupleIter which reads all of its inputs at the
+     * same time, using the default executor.
+     *
+     * @param tupleIters inputs
+     */
     public CompoundParallelTupleIter(TupleIter [] tupleIters)
+    {
+        this(tupleIters, tupleIters.length);
+    }
+
+    /**
+     * Creates a CompoundParallelTupleIter which uses at most a given number of
+     * threads from the default executor.
+     *
+     * @param tupleIters inputs
+     * @param degreeOfParallelism maximum number of inputs to read at the same
+     * time
+     */
+    public CompoundParallelTupleIter(
+        TupleIter [] tupleIters,
+        int degreeOfParallelism)
+    {
+        this(tupleIters, degreeOfParallelism, getDefaultExecutor());
+    }
+
+    /**
+     * Creates a CompoundParallelTupleIter which uses at most a given number of
+     * threads from a given executor.
+     *
+     * @param tupleIters inputs
+     * @param degreeOfParallelism maximum number of inputs to read at the same
+     * time
+     * @param executor executor which runs the workers
+     */
+    public CompoundParallelTupleIter(
+        TupleIter [] tupleIters,
+        int degreeOfParallelism,
+        ExecutorService executor)
     {
         this.in = tupleIters;
-        this.endOfData = new boolean[tupleIters.length];
-        this.i = -1;
+        this.degreeOfParallelism =
+            Math.max(1, Math.min(degreeOfParallelism, tupleIters.length));
+        this.executor = executor;
     }
 
     //~ Methods ----------------------------------------------------------------
 
-    public Object fetchNext()
+    /**
+     * Creates an iterator over several inputs, which reads them at the same
+     * time if the degree of parallelism allows it, and one after another
+     * otherwise. Generated code calls this, so that the degree of parallelism
+     * can be decided when the statement is executed rather than when it is
+     * prepared.
+     *
+     * @param tupleIters inputs
+     * @param degreeOfParallelism maximum number of inputs to read at the same
+     * time
+     *
+     * @return a CompoundParallelTupleIter, or a {@link CompoundTupleIter} if
+     * the inputs are to be read serially
+     */
+    public static TupleIter newTupleIter(
+        TupleIter [] tupleIters,
+        int degreeOfParallelism)
     {
-        int endOfDataCount = 0;
+        if ((degreeOfParallelism <= 1) || (tupleIters.length <= 1)) {
+            return new CompoundTupleIter(tupleIters);
+        }
+        return new CompoundParallelTupleIter(tupleIters, degreeOfParallelism);
+    }
 
-        final int N = in.length;
+    /**
+     * Creates an executor suitable for running the workers of
+     * CompoundParallelTupleIters. It has at most a given number of threads,
+     * which are daemons, for the same reasons as in {@link
+     * ThreadIterator#start}; idle threads are reclaimed after a while.
+     *
+     * <p>The executor does not queue work: when all of its threads are busy,
+     * it rejects further workers, and their inputs are read by their readers.
+     * A queue would not do, since a queued worker waits for workers which in
+     * turn may wait for a reader (possibly the very same thread) to consume
+     * their rows.
+     *
+     * @param maxThreads maximum number of threads
+     *
+     * @return new executor, which the caller must shut down
+     */
+    public static ExecutorService newExecutor(int maxThreads)
+    {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(
+            0,
+            Math.max(1, maxThreads),
+            60L,
+            TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(),
+            new ThreadFactory() {
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread =
+                        new Thread(
+                            r,
+                            "CompoundParallelTupleIter-"
+                            + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    }
 
-        for (int offset = 0; offset < N; offset++) {
-            if (++i >= N) {
-                i = 0;
-            }
+    /**
+     * Sets the executor used by instances which are not given one explicitly,
+     * such as those in generated code. The owner of the executor remains
+     * responsible for shutting it down.
+     *
+     * @param executor executor created by {@link #newExecutor}, or null to
+     * revert to a private default
+     */
+    public static synchronized void setDefaultExecutor(
+        ExecutorService executor)
+    {
+        if ((defaultExecutor != null) && defaultIsPrivate) {
+            defaultExecutor.shutdown();
+        }
+        defaultExecutor = executor;
+        defaultIsPrivate = false;
+    }
 
-            if (endOfData[i]) {
-                endOfDataCount++;
-            } else {
-                Object o = in[i].fetchNext();
+    /**
+     * Returns the executor used by instances which were not given one
+     * explicitly. Unless one has been set, it is a private executor with a few
+     * threads per processor.
+     */
+    private static synchronized ExecutorService getDefaultExecutor()
+    {
+        if (defaultExecutor == null) {
+            defaultExecutor =
+                newExecutor(
+                    DEFAULT_THREADS_PER_PROCESSOR
+                    * Runtime.getRuntime().availableProcessors());
+            defaultIsPrivate = true;
+        }
+        return defaultExecutor;
+    }
 
-                if (o == NoDataReason.END_OF_DATA) {
-                    endOfData[i] = true;
-                    endOfDataCount++;
-                } else if (o == NoDataReason.UNDERFLOW) {
-                    // Ignore this.
-                } else {
-                    return o;
+    public Object fetchNext()
+    {
+        if (current != null) {
+            // Reader is done with the previous row; let its worker continue.
+            current.release();
+            current = null;
+        }
+        if (workers == null) {
+            if (in.length == 0) {
+                return NoDataReason.END_OF_DATA;
+            }
+            start();
+        }
+
+        long deadline =
+            (timeoutMillis == Long.MAX_VALUE) ? Long.MAX_VALUE
+            : (System.currentTimeMillis() + timeoutMillis);
+        while ((activeWorkerCount > 0) || !inlineInputs.isEmpty()) {
+            Worker worker = queue.poll();
+            if ((worker == null) && !inlineInputs.isEmpty()) {
+                Object row = fetchInline();
+                if (row != null) {
+                    return row;
+                }
+            }
+            if ((worker == null) && (activeWorkerCount > 0)) {
+                long waitMillis = Long.MAX_VALUE;
+                if (deadline != Long.MAX_VALUE) {
+                    waitMillis = deadline - System.currentTimeMillis();
+                }
+                if (!inlineInputs.isEmpty()) {
+                    // don't neglect the inputs we read ourselves
+                    waitMillis = Math.min(waitMillis, POLL_MILLIS);
+                }
+                try {
+                    if (waitMillis == Long.MAX_VALUE) {
+                        worker = queue.take();
+                    } else if (waitMillis > 0) {
+                        worker =
+                            queue.poll(waitMillis, TimeUnit.MILLISECONDS);
+                    }
+                } catch (InterruptedException e) {
+                    throw Util.newInternal(e);
+                }
+            } else if ((worker == null) && !inlineInputs.isEmpty()) {
+                // all remaining inputs are ours, and they underflowed
+                try {
+                    Thread.sleep(POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    throw Util.newInternal(e);
                 }
             }
+            if (worker == null) {
+                if ((System.currentTimeMillis() < deadline)
+                    || ((activeWorkerCount == 0) && inlineInputs.isEmpty()))
+                {
+                    continue;
+                }
+                didUnderflow = true;
+                if (timeoutAsUnderflow) {
+                    return NoDataReason.UNDERFLOW;
+                }
+                throw new TupleIter.TimeoutException();
+            }
+            if (worker.finished) {
+                --activeWorkerCount;
+                if (worker.error != null) {
+                    Throwable error = worker.error;
+                    if (error instanceof RuntimeException) {
+                        throw (RuntimeException) error;
+                    } else if (error instanceof Error) {
+                        throw (Error) error;
+                    }
+                    throw Util.newInternal(error);
+                }
+                continue;
+            }
+            current = worker;
+            return worker.row;
         }
+        return NoDataReason.END_OF_DATA;
+    }
 
-        if (endOfDataCount == N) {
-            return NoDataReason.END_OF_DATA;
+    /**
+     * Fetches a row from the inputs which the reader reads itself. An input
+     * which underflows goes to the back of the line.
+     *
+     * @return a row, or null if each of those inputs underflowed or ended
+     */
+    private Object fetchInline()
+    {
+        for (int i = inlineInputs.size(); i > 0; i--) {
+            TupleIter input = inlineInputs.getFirst();
+            Object row = input.fetchNext();
+            if (row == NoDataReason.END_OF_DATA) {
+                inlineInputs.removeFirst();
+            } else if (row == NoDataReason.UNDERFLOW) {
+                inlineInputs.addLast(inlineInputs.removeFirst());
+            } else {
+                return row;
+            }
         }
+        return null;
+    }
 
-        return NoDataReason.UNDERFLOW;
+    public boolean setTimeout(long timeout, boolean asUnderflow)
+    {
+        this.timeoutMillis = timeout;
+        this.timeoutAsUnderflow = asUnderflow;
+        return true;
+    }
+
+    public boolean addListener(MoreDataListener c)
+    {
+        listeners.add(c);
+        return true;
     }
 
     public void restart()
     {
+        stop();
         for (int index = 0; index < in.length; index++) {
             in[index].restart();
-            endOfData[index] = false;
         }
-        i = -1;
+    }
+
+    public StringBuilder printStatus(StringBuilder b)
+    {
+        b.append("CompoundParallelTupleIter(inputs=").append(in.length)
+        .append(", degreeOfParallelism=").append(degreeOfParallelism);
+        Worker [] w = workers;
+        if (w != null) {
+            b.append(", active=").append(activeWorkerCount);
+            BlockingQueue<Worker> q = queue;
+            if (q != null) {
+                b.append(", queued=").append(q.size());
+            }
+        }
+        return b.append(")");
     }
 
     public void closeAllocation()
     {
+        stop();
         for (int index = 0; index < in.length; index++) {
             in[index].closeAllocation();
         }
     }
 
+    /**
+     * Starts the workers. Worker <code>k</code> reads inputs <code>k</code>,
+     * <code>k + n</code>, <code>k + 2n</code>, ... in turn, where <code>
+     * n</code> is the number of workers.
+     *
+     * @pre workers == null
+     */
+    private void start()
+    {
+        Util.pre(workers == null, "workers == null");
+        final int n = degreeOfParallelism;
+        queue = new ArrayBlockingQueue<Worker>(n);
+        workers = new Worker[n];
+        futures = new Future<?>[n];
+        for (int k = 0; k < n; k++) {
+            List<TupleIter> share = new ArrayList<TupleIter>();
+            for (int index = k; index < in.length; index += n) {
+                share.add(in[index]);
+            }
+            workers[k] = new Worker(share, queue);
+        }
+        activeWorkerCount = n;
+        for (int k = 0; k < n; k++) {
+            try {
+                futures[k] = executor.submit(workers[k]);
+            } catch (RejectedExecutionException e) {
+                // The executor has no thread to spare.
+                inlineInputs.addAll(workers[k].inputs);
+                --activeWorkerCount;
+            }
+        }
+    }
+
+    /**
+     * Stops the workers, if they are running, and waits for them to finish.
+     * Afterwards the inputs are no longer accessed by any other thread.
+     */
+    private void stop()
+    {
+        if (workers == null) {
+            return;
+        }
+        for (Worker worker : workers) {
+            worker.stopped = true;
+            worker.release();
+        }
+        for (Future<?> future : futures) {
+            if (future == null) {
+                // worker was rejected, so never ran
+                continue;
+            }
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                throw Util.newInternal(e);
+            } catch (ExecutionException e) {
+                // Workers catch everything, so this should not happen.
+                throw Util.newInternal(e.getCause());
+            }
+        }
+        workers = null;
+        futures = null;
+        queue = null;
+        current = null;
+        activeWorkerCount = 0;
+        inlineInputs.clear();
+    }
+
+    private void onData()
+    {
+        if (didUnderflow) {
+            didUnderflow = false;
+            for (MoreDataListener c : listeners) {
+                c.onMoreData();
+            }
+        }
+    }
+
     //~ Inner Classes ----------------------------------------------------------
 
+    /**
+     * Reads rows from a share of the inputs and hands them to the reader
+     * through the shared queue. A worker is also its own queue entry: while it
+     * waits for the reader to release it, {@link #row} holds the row being
+     * read.
+     */
+    private class Worker
+        implements Runnable
+    {
+        private final List<TupleIter> inputs;
+        private final BlockingQueue<Worker> queue;
+        private final Semaphore released = new Semaphore(0);
+        volatile boolean stopped;
+        Object row;
+        boolean finished;
+        Throwable error;
+
+        Worker(List<TupleIter> inputs, BlockingQueue<Worker> queue)
+        {
+            this.inputs = inputs;
+            this.queue = queue;
+        }
+
+        void release()
+        {
+            released.release();
+        }
+
+        public void run()
+        {
+            try {
+                for (TupleIter input : inputs) {
+                    if (!drain(input)) {
+                        return;
+                    }
+                }
+            } catch (Throwable e) {
+                error = e;
+            }
+            row = null;
+            finished = true;
+
+            // Cannot block: this worker has no other entry in the queue.
+            queue.add(this);
+            onData();
+        }
+
+        /**
+         * Reads all rows from one input.
+         *
+         * @return false if the worker was stopped before the input was
+         * exhausted
+         */
+        private boolean drain(TupleIter input)
+            throws InterruptedException
+        {
+            while (!stopped) {
+                Object o = input.fetchNext();
+                if (o == NoDataReason.END_OF_DATA) {
+                    return true;
+                } else if (o == NoDataReason.UNDERFLOW) {
+                    Thread.sleep(POLL_MILLIS);
+                    continue;
+                }
+                row = o;
+                queue.add(this);
+                onData();
+                while (!released.tryAcquire(POLL_MILLIS)) {
+                    if (stopped) {
+                        return false;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
     public static class Test
         extends EigenbaseTestCase
     {
@@ -206,6 +671,157 @@ public class CompoundParallelTupleIter
                 tupleIter,
                 new String[] { "a", "b" });
         }
+
+        public void testCompoundParallelTupleIterBounded()
+        {
+            TupleIter tupleIter =
+                new CompoundParallelTupleIter(
+                    new TupleIter[] {
+                        makeTupleIter(new String[] { "a", "b" }),
+                        makeTupleIter(new String[] { "c" }),
+                        makeTupleIter(new String[] {}),
+                        makeTupleIter(new String[] { "d", "e", "f" }),
+                        makeTupleIter(new String[] { "g" })
+                    },
+                    2);
+            assertEquals(
+                tupleIter,
+                new String[] { "a", "b", "c", "d", "e", "f", "g" });
+            tupleIter.closeAllocation();
+        }
+
+        public void testCompoundParallelTupleIterRestart()
+        {
+            TupleIter tupleIter =
+                new CompoundParallelTupleIter(
+                    new TupleIter[] {
+                        makeTupleIter(new String[] { "a", "b", "c" }),
+                        makeTupleIter(new String[] { "d", "e" })
+                    });
+
+            // Abandon the first pass part-way through.
+            Object o = tupleIter.fetchNext();
+            assertTrue(o instanceof String);
+            tupleIter.restart();
+            assertEquals(
+                tupleIter,
+                new String[] { "a", "b", "c", "d", "e" });
+            tupleIter.restart();
+            assertEquals(
+                tupleIter,
+                new String[] { "a", "b", "c", "d", "e" });
+            tupleIter.closeAllocation();
+        }
+
+        /**
+         * Tests that inputs are read concurrently: each input blocks until
+         * every other input has produced its first row, which would hang a
+         * serial implementation.
+         */
+        public void testCompoundParallelTupleIterConcurrent()
+        {
+            final int n = 3;
+            final CountDownLatch latch = new CountDownLatch(n);
+            TupleIter [] inputs = new TupleIter[n];
+            for (int i = 0; i < n; i++) {
+                final String [] values = { "x" + i, "y" + i };
+                inputs[i] =
+                    new AbstractTupleIter() {
+                        private int next;
+
+                        public Object fetchNext()
+                        {
+                            if (next == 1) {
+                                latch.countDown();
+                                try {
+                                    latch.await();
+                                } catch (InterruptedException e) {
+                                    throw Util.newInternal(e);
+                                }
+                            }
+                            if (next < values.length) {
+                                return values[next++];
+                            }
+                            return NoDataReason.END_OF_DATA;
+                        }
+
+                        public void closeAllocation()
+                        {
+                        }
+                    };
+            }
+            TupleIter tupleIter = new CompoundParallelTupleIter(inputs);
+            assertEquals(
+                tupleIter,
+                new String[] { "x0", "x1", "x2", "y0", "y1", "y2" });
+            tupleIter.closeAllocation();
+        }
+
+        /**
+         * Tests that the inputs of workers for which the executor has no
+         * thread are read by the reader.
+         */
+        public void testCompoundParallelTupleIterSaturated()
+        {
+            ExecutorService executor = newExecutor(1);
+            try {
+                TupleIter tupleIter =
+                    new CompoundParallelTupleIter(
+                        new TupleIter[] {
+                            makeTupleIter(new String[] { "a", "b" }),
+                            makeTupleIter(new String[] { "c" }),
+                            makeTupleIter(new String[] { "d", "e", "f" })
+                        },
+                        3,
+                        executor);
+                assertEquals(
+                    tupleIter,
+                    new String[] { "a", "b", "c", "d", "e", "f" });
+                tupleIter.restart();
+                assertEquals(
+                    tupleIter,
+                    new String[] { "a", "b", "c", "d", "e", "f" });
+                tupleIter.closeAllocation();
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        public void testCompoundParallelTupleIterTimeout()
+        {
+            final CountDownLatch latch = new CountDownLatch(1);
+            TupleIter slow =
+                new AbstractTupleIter() {
+                    private boolean done;
+
+                    public Object fetchNext()
+                    {
+                        if (done) {
+                            return NoDataReason.END_OF_DATA;
+                        }
+                        try {
+                            latch.await();
+                        } catch (InterruptedException e) {
+                            throw Util.newInternal(e);
+                        }
+                        done = true;
+                        return "a";
+                    }
+
+                    public void closeAllocation()
+                    {
+                    }
+                };
+            TupleIter tupleIter =
+                new CompoundParallelTupleIter(new TupleIter[] { slow });
+            assertTrue(tupleIter.setTimeout(10, true));
+            assertSame(NoDataReason.UNDERFLOW, tupleIter.fetchNext());
+            latch.countDown();
+            assertEquals(
+                tupleIter,
+                new String[] { "a" });
+            tupleIter.closeAllocation();
+        }
     }
 }
 
@@ -372,6 +372,25 @@ public class SqlDialect
         return getDatabaseProduct() == DatabaseProduct.POSTGRESQL;
     }
 
+    /**
+     * Returns whether this dialect limits the rows returned by a query with
+     * {@code LIMIT n OFFSET m} rather than the standard {@code OFFSET m ROWS
+     * FETCH NEXT n ROWS ONLY}.
+     *
+     * @return whether the LIMIT clause is to be used
+     */
+    public boolean supportsLimitClause()
+    {
+        switch (getDatabaseProduct()) {
+        case MYSQL:
+        case INFOBRIGHT:
+        case POSTGRESQL:
+            return true;
+        default:
+            return false;
+        }
+    }
+
     /**
      * Converts a timestamp to a SQL timestamp literal, e.g.
      * {@code TIMESTAMP '2009-12-17 12:34:56'}.
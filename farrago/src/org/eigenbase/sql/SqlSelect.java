@@ -43,7 +43,9 @@ public class SqlSelect
     public static final int HAVING_OPERAND = 5;
     public static final int WINDOW_OPERAND = 6;
     public static final int ORDER_OPERAND = 7;
-    public static final int OPERAND_COUNT = 8;
+    public static final int OFFSET_OPERAND = 8;
+    public static final int FETCH_OPERAND = 9;
+    public static final int OPERAND_COUNT = 10;
 
     //~ Constructors -----------------------------------------------------------
 
@@ -127,6 +129,23 @@ public class SqlSelect
         return (SqlNodeList) operands[SqlSelect.ORDER_OPERAND];
     }
 
+    /**
+     * @return the number of rows to skip (OFFSET), or null if not present
+     */
+    public final SqlNode getOffset()
+    {
+        return operands[SqlSelect.OFFSET_OPERAND];
+    }
+
+    /**
+     * @return the maximum number of rows to return (FETCH or LIMIT), or null
+     * if not present
+     */
+    public final SqlNode getFetch()
+    {
+        return operands[SqlSelect.FETCH_OPERAND];
+    }
+
     public void addFrom(SqlIdentifier tableId)
     {
         SqlNode fromClause = getFrom();
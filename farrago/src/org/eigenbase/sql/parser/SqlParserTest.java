@@ -1283,6 +1283,79 @@ public class SqlParserTest
             "ORDER BY unexpected");
     }
 
+    public void testOrderOffsetFetch()
+    {
+        check(
+            "select a from foo order by b, c offset 1 row fetch first 2 row only",
+            TestUtil.fold(
+                "SELECT `A`\n"
+                + "FROM `FOO`\n"
+                + "ORDER BY `B`, `C`\n"
+                + "OFFSET 1 ROWS\n"
+                + "FETCH NEXT 2 ROWS ONLY"));
+
+        // as above, without ORDER BY
+        check(
+            "select a from foo offset 1 rows fetch next 3 rows only",
+            TestUtil.fold(
+                "SELECT `A`\n"
+                + "FROM `FOO`\n"
+                + "OFFSET 1 ROWS\n"
+                + "FETCH NEXT 3 ROWS ONLY"));
+
+        // FETCH without a count means one row
+        check(
+            "select a from foo fetch first row only",
+            TestUtil.fold(
+                "SELECT `A`\n"
+                + "FROM `FOO`\n"
+                + "FETCH NEXT 1 ROWS ONLY"));
+
+        // OFFSET without FETCH
+        check(
+            "select a from foo order by b offset 5",
+            TestUtil.fold(
+                "SELECT `A`\n"
+                + "FROM `FOO`\n"
+                + "ORDER BY `B`\n"
+                + "OFFSET 5 ROWS"));
+
+        // on a set operation
+        check(
+            "select a from foo union select a from bar fetch next 2 rows only",
+            TestUtil.fold(
+                "(SELECT `A`\n"
+                + "FROM `FOO`\n"
+                + "UNION\n"
+                + "SELECT `A`\n"
+                + "FROM `BAR`)\n"
+                + "FETCH NEXT 2 ROWS ONLY"));
+    }
+
+    public void testLimit()
+    {
+        // LIMIT is unparsed as FETCH
+        check(
+            "select a from foo order by b limit 2 offset 1",
+            TestUtil.fold(
+                "SELECT `A`\n"
+                + "FROM `FOO`\n"
+                + "ORDER BY `B`\n"
+                + "OFFSET 1 ROWS\n"
+                + "FETCH NEXT 2 ROWS ONLY"));
+
+        // LIMIT ALL is the same as no LIMIT
+        check(
+            "select a from foo limit all",
+            TestUtil.fold(
+                "SELECT `A`\n"
+                + "FROM `FOO`"));
+
+        checkFails(
+            "select a from foo limit 2 ^fetch^ next 3 rows only",
+            "LIMIT cannot be combined with FETCH");
+    }
+
     public void testSqlInlineComment()
     {
         check(
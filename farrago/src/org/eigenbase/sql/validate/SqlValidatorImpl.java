@@ -1036,14 +1036,30 @@ public class SqlValidatorImpl
             SqlNodeList orderList =
                 (SqlNodeList)
                 orderBy.getOperands()[SqlOrderByOperator.ORDER_OPERAND];
+            if (orderList.size() == 0) {
+                // OFFSET or FETCH without ORDER BY
+                orderList = null;
+            }
+            SqlNode offset =
+                orderBy.getOperands()[SqlOrderByOperator.OFFSET_OPERAND];
+            SqlNode fetch =
+                orderBy.getOperands()[SqlOrderByOperator.FETCH_OPERAND];
             if (query instanceof SqlSelect) {
                 SqlSelect select = (SqlSelect) query;
 
                 // Don't clobber existing ORDER BY.  It may be needed for
-                // an order-sensitive function like RANK.
-                if (select.getOrderList() == null) {
-                    // push ORDER BY into existing select
-                    select.setOperand(SqlSelect.ORDER_OPERAND, orderList);
+                // an order-sensitive function like RANK.  Likewise, the
+                // outer OFFSET and FETCH apply after any inner ones.
+                if (((orderList == null) || (select.getOrderList() == null))
+                    && (select.getOffset() == null)
+                    && (select.getFetch() == null))
+                {
+                    // push ORDER BY, OFFSET and FETCH into existing select
+                    if (orderList != null) {
+                        select.setOperand(SqlSelect.ORDER_OPERAND, orderList);
+                    }
+                    select.setOperand(SqlSelect.OFFSET_OPERAND, offset);
+                    select.setOperand(SqlSelect.FETCH_OPERAND, fetch);
                     return select;
                 }
             }
@@ -1058,6 +1074,8 @@ public class SqlValidatorImpl
                 null,
                 null,
                 orderList,
+                offset,
+                fetch,
                 SqlParserPos.ZERO);
         }
 
@@ -3044,6 +3062,7 @@ public class SqlValidatorImpl
         // dialects you can refer to columns of the select list, e.g.
         // "SELECT empno AS x FROM emp ORDER BY x"
         validateOrderList(select);
+        validateFetch(select);
     }
 
     /**
@@ -3155,6 +3174,48 @@ public class SqlValidatorImpl
         }
     }
 
+    /**
+     * Validates the OFFSET and FETCH clauses of a SELECT statement. They are
+     * allowed wherever ORDER BY is allowed, and each must be a non-negative
+     * integer literal.
+     *
+     * @param select Select statement
+     */
+    protected void validateFetch(SqlSelect select)
+    {
+        if ((select.getOffset() == null) && (select.getFetch() == null)) {
+            return;
+        }
+        if (!shouldAllowIntermediateOrderBy()) {
+            if (!cursorSet.contains(select)) {
+                throw newValidationError(
+                    select,
+                    EigenbaseResource.instance().InvalidFetchPos.ex());
+            }
+        }
+        validateRowCount(select.getOffset(), "OFFSET");
+        validateRowCount(select.getFetch(), "FETCH");
+    }
+
+    private void validateRowCount(SqlNode rowCount, String clause)
+    {
+        if (rowCount == null) {
+            return;
+        }
+        if (!(rowCount instanceof SqlNumericLiteral)
+            || !((SqlNumericLiteral) rowCount).isExact()
+            || !((SqlNumericLiteral) rowCount).isInteger()
+            || (((SqlNumericLiteral) rowCount).signum() < 0))
+        {
+            throw newValidationError(
+                rowCount,
+                EigenbaseResource.instance().InvalidRowCount.ex(clause));
+        }
+
+        // throws if the count does not fit in a long
+        ((SqlNumericLiteral) rowCount).longValue(true);
+    }
+
     private void validateOrderItem(SqlSelect select, SqlNode orderItem)
     {
         if (SqlUtil.isCallTo(
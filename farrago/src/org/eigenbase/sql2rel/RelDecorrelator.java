@@ -290,7 +290,9 @@ public class RelDecorrelator
             new SortRel(
                 rel.getCluster(),
                 newChildRel,
-                newCollations);
+                newCollations,
+                rel.getOffset(),
+                rel.getFetch());
 
         mapOldToNewRel.put(rel, newRel);
 
@@ -351,7 +351,9 @@ public class RelStructuredTypeFlattener
             new SortRel(
                 rel.getCluster(),
                 getNewForOldRel(rel.getChild()),
-                newCollations);
+                newCollations,
+                rel.getOffset(),
+                rel.getFetch());
         setNewForOldRel(rel, newRel);
     }
 
@@ -636,17 +636,31 @@ public class SqlToRelConverter
         List<RelFieldCollation> collationList,
         List<SqlNode> orderExprList)
     {
-        if (select.getOrderList() == null) {
+        if ((select.getOrderList() == null)
+            && (select.getOffset() == null)
+            && (select.getFetch() == null))
+        {
             return;
         }
 
-        // Create a sorter using the previously constructed collations.
+        // Create a sorter using the previously constructed collations.  The
+        // validator has checked that OFFSET and FETCH are integer literals.
+        long offset = 0;
+        if (select.getOffset() != null) {
+            offset = ((SqlLiteral) select.getOffset()).longValue(true);
+        }
+        long fetch = SortRel.FETCH_ALL;
+        if (select.getFetch() != null) {
+            fetch = ((SqlLiteral) select.getFetch()).longValue(true);
+        }
         bb.setRoot(
             new SortRel(
                 cluster,
                 bb.root,
                 collationList.toArray(
-                    new RelFieldCollation[collationList.size()])),
+                    new RelFieldCollation[collationList.size()]),
+                offset,
+                fetch),
             false);
 
         // If extra exressions were added to the project list for sorting,
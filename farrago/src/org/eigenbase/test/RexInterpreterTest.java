@@ -0,0 +1,366 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.eigenbase.test;
+
+import java.math.*;
+
+import java.util.*;
+
+import junit.framework.*;
+
+import org.eigenbase.oj.*;
+import org.eigenbase.oj.util.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.rex.*;
+import org.eigenbase.sql.fun.*;
+import org.eigenbase.sql.type.*;
+import org.eigenbase.util.*;
+
+
+/**
+ * Unit test for {@link RexInterpreter}.
+ */
+public class RexInterpreterTest
+    extends TestCase
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private RelDataTypeFactory typeFactory;
+    private RexBuilder rexBuilder;
+    private RexInterpreter interpreter;
+
+    //~ Methods ----------------------------------------------------------------
+
+    protected void setUp()
+        throws Exception
+    {
+        typeFactory = new OJTypeFactoryImpl();
+        rexBuilder = new JavaRexBuilder(typeFactory);
+        interpreter = new RexInterpreter(rexBuilder);
+    }
+
+    private RexNode exact(long value)
+    {
+        return rexBuilder.makeExactLiteral(BigDecimal.valueOf(value));
+    }
+
+    private RexNode exact(String value)
+    {
+        return rexBuilder.makeExactLiteral(new BigDecimal(value));
+    }
+
+    private RexNode nullOf(SqlTypeName typeName)
+    {
+        return rexBuilder.makeCast(
+            typeFactory.createTypeWithNullability(
+                typeFactory.createSqlType(typeName),
+                true),
+            rexBuilder.constantNull());
+    }
+
+    private RelDataType charType(SqlTypeName typeName, int precision)
+    {
+        RexNode literal = rexBuilder.makeLiteral("x");
+        return typeFactory.createTypeWithCharsetAndCollation(
+            typeFactory.createSqlType(typeName, precision),
+            literal.getType().getCharset(),
+            literal.getType().getCollation());
+    }
+
+    private void checkValue(RexNode exp, Object expected)
+    {
+        RexNode result = interpreter.evaluate(exp);
+        assertTrue(
+            "expected literal, got " + result,
+            result instanceof RexLiteral);
+        Object actual = ((RexLiteral) result).getValue();
+        if (actual instanceof NlsString) {
+            actual = ((NlsString) actual).getValue();
+        }
+        assertEquals(expected, actual);
+        assertEquals(
+            typeFactory.createTypeWithNullability(exp.getType(), false),
+            result.getType());
+    }
+
+    private void checkNull(RexNode exp)
+    {
+        RexNode result = interpreter.evaluate(exp);
+        assertNotNull(result);
+        assertTrue(
+            "expected null, got " + result,
+            RexUtil.isNullLiteral(result, true));
+    }
+
+    private void checkCannotEvaluate(RexNode exp)
+    {
+        assertNull(interpreter.evaluate(exp));
+    }
+
+    public void testArithmetic()
+    {
+        checkValue(
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.plusOperator,
+                exact(1),
+                rexBuilder.makeCall(
+                    SqlStdOperatorTable.multiplyOperator,
+                    exact(2),
+                    exact(3))),
+            BigDecimal.valueOf(7));
+        checkValue(
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.minusOperator,
+                exact("1.5"),
+                exact("0.25")),
+            new BigDecimal("1.25"));
+        checkValue(
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.divideOperator,
+                exact(6),
+                exact(2)),
+            BigDecimal.valueOf(3));
+        checkValue(
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.prefixMinusOperator,
+                exact(5)),
+            BigDecimal.valueOf(-5));
+        checkValue(
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.plusOperator,
+                rexBuilder.makeApproxLiteral(new BigDecimal("1.5")),
+                exact(2)),
+            new BigDecimal("3.5"));
+        checkNull(
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.plusOperator,
+                exact(1),
+                nullOf(SqlTypeName.INTEGER)));
+    }
+
+    /**
+     * Tests that arithmetic whose result depends on the runtime (rounding,
+     * overflow, errors) is left to the runtime.
+     */
+    public void testArithmeticLeftToRuntime()
+    {
+        // rounding
+        checkCannotEvaluate(
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.divideOperator,
+                exact(7),
+                exact(2)));
+
+        // division by zero
+        checkCannotEvaluate(
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.divideOperator,
+                exact(7),
+                exact(0)));
+
+        // overflow
+        checkCannotEvaluate(
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.plusOperator,
+                exact(Integer.MAX_VALUE),
+                exact(1)));
+
+        // an unsupported operand makes the whole call unsupported, even if
+        // another operand is null
+        checkCannotEvaluate(
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.plusOperator,
+                nullOf(SqlTypeName.INTEGER),
+                rexBuilder.makeCall(
+                    SqlStdOperatorTable.divideOperator,
+                    exact(1),
+                    exact(0))));
+    }
+
+    public void testLogic()
+    {
+        RexNode t = rexBuilder.makeLiteral(true);
+        RexNode f = rexBuilder.makeLiteral(false);
+        RexNode n = nullOf(SqlTypeName.BOOLEAN);
+        checkValue(
+            rexBuilder.makeCall(SqlStdOperatorTable.andOperator, n, f),
+            false);
+        checkNull(
+            rexBuilder.makeCall(SqlStdOperatorTable.andOperator, n, t));
+        checkValue(
+            rexBuilder.makeCall(SqlStdOperatorTable.orOperator, n, t),
+            true);
+        checkNull(
+            rexBuilder.makeCall(SqlStdOperatorTable.orOperator, f, n));
+        checkValue(
+            rexBuilder.makeCall(SqlStdOperatorTable.notOperator, f),
+            true);
+        checkValue(
+            rexBuilder.makeCall(SqlStdOperatorTable.isNullOperator, n),
+            true);
+        checkValue(
+            rexBuilder.makeCall(SqlStdOperatorTable.isNotTrueOperator, n),
+            true);
+        checkValue(
+            rexBuilder.makeCall(SqlStdOperatorTable.isFalseOperator, n),
+            false);
+    }
+
+    public void testComparison()
+    {
+        checkValue(
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.lessThanOperator,
+                exact(1),
+                exact("1.5")),
+            true);
+        checkValue(
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.equalsOperator,
+                rexBuilder.makeLiteral("abc"),
+                rexBuilder.makeLiteral("abd")),
+            false);
+        checkValue(
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.greaterThanOrEqualOperator,
+                rexBuilder.makeLiteral("b"),
+                rexBuilder.makeLiteral("abc")),
+            true);
+        checkNull(
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.equalsOperator,
+                exact(1),
+                nullOf(SqlTypeName.INTEGER)));
+    }
+
+    public void testCase()
+    {
+        RexNode exp =
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.caseOperator,
+                rexBuilder.makeCall(
+                    SqlStdOperatorTable.greaterThanOperator,
+                    exact(1),
+                    exact(2)),
+                exact(10),
+                rexBuilder.makeCall(
+                    SqlStdOperatorTable.lessThanOperator,
+                    exact(1),
+                    exact(2)),
+                exact(20),
+                exact(30));
+        checkValue(exp, BigDecimal.valueOf(20));
+    }
+
+    public void testCast()
+    {
+        // exact to exact, without rounding
+        checkValue(
+            rexBuilder.makeAbstractCast(
+                typeFactory.createSqlType(SqlTypeName.DECIMAL, 5, 2),
+                exact(3)),
+            new BigDecimal("3.00"));
+        checkCannotEvaluate(
+            rexBuilder.makeAbstractCast(
+                typeFactory.createSqlType(SqlTypeName.INTEGER),
+                exact("3.5")));
+
+        // character to character pads CHAR, and does not truncate
+        checkValue(
+            rexBuilder.makeAbstractCast(
+                charType(SqlTypeName.CHAR, 5),
+                rexBuilder.makeLiteral("abc")),
+            "abc  ");
+        checkValue(
+            rexBuilder.makeAbstractCast(
+                charType(SqlTypeName.VARCHAR, 5),
+                rexBuilder.makeLiteral("abc")),
+            "abc");
+        checkCannotEvaluate(
+            rexBuilder.makeAbstractCast(
+                charType(SqlTypeName.VARCHAR, 2),
+                rexBuilder.makeLiteral("abc")));
+
+        // character to numeric and datetime
+        checkValue(
+            rexBuilder.makeAbstractCast(
+                typeFactory.createSqlType(SqlTypeName.INTEGER),
+                rexBuilder.makeLiteral("-42")),
+            BigDecimal.valueOf(-42));
+        RexNode dateExp =
+            rexBuilder.makeAbstractCast(
+                typeFactory.createSqlType(SqlTypeName.DATE),
+                rexBuilder.makeLiteral("2009-02-28"));
+        RexNode result = interpreter.evaluate(dateExp);
+        assertTrue(result instanceof RexLiteral);
+        Calendar cal = (Calendar) ((RexLiteral) result).getValue();
+        assertEquals(2009, cal.get(Calendar.YEAR));
+        assertEquals(Calendar.FEBRUARY, cal.get(Calendar.MONTH));
+        assertEquals(28, cal.get(Calendar.DAY_OF_MONTH));
+
+        // formats other than that of a literal are left to the runtime, as
+        // are invalid dates
+        checkCannotEvaluate(
+            rexBuilder.makeAbstractCast(
+                typeFactory.createSqlType(SqlTypeName.DATE),
+                rexBuilder.makeLiteral(" 2009-02-28")));
+        checkCannotEvaluate(
+            rexBuilder.makeAbstractCast(
+                typeFactory.createSqlType(SqlTypeName.DATE),
+                rexBuilder.makeLiteral("2009-02-30")));
+    }
+
+    public void testCharacterFunctions()
+    {
+        checkValue(
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.upperFunc,
+                rexBuilder.makeLiteral("abc")),
+            "ABC");
+        checkValue(
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.concatOperator,
+                rexBuilder.makeLiteral("ab"),
+                rexBuilder.makeLiteral("cd")),
+            "abcd");
+        checkValue(
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.charLengthFunc,
+                rexBuilder.makeLiteral("abc")),
+            BigDecimal.valueOf(3));
+    }
+
+    public void testUnsupported()
+    {
+        // not a standard operator handled by the interpreter
+        checkCannotEvaluate(
+            rexBuilder.makeCall(SqlStdOperatorTable.currentDateFunc));
+
+        // not a constant
+        checkCannotEvaluate(
+            rexBuilder.makeCall(
+                SqlStdOperatorTable.plusOperator,
+                exact(1),
+                rexBuilder.makeInputRef(
+                    typeFactory.createSqlType(SqlTypeName.INTEGER),
+                    0)));
+    }
+}
+
+// End RexInterpreterTest.java
@@ -118,6 +118,25 @@ public class SaffronProperties
     public final StringProperty javaCompilerArgs =
         new StringProperty(this, "saffron.java.compiler.args", null);
 
+    /**
+     * The integer property "saffron.java.compiler.threads" is the maximum
+     * number of classes which {@link org.eigenbase.javac.JaninoCompiler}
+     * compiles at the same time; see {@link
+     * org.eigenbase.javac.JavaCompilationService}. The default, 0, means one
+     * per processor.
+     */
+    public final IntegerProperty javaCompilerThreads =
+        new IntegerProperty(this, "saffron.java.compiler.threads", 0);
+
+    /**
+     * The integer property "saffron.metadata.cache.size" is the maximum
+     * number of results which {@link
+     * org.eigenbase.rel.metadata.SharedRelMetadataCache} keeps for use by
+     * later statements. The default is 10000; 0 disables the cache.
+     */
+    public final IntegerProperty metadataCacheSize =
+        new IntegerProperty(this, "saffron.metadata.cache.size", 10000);
+
     /**
      * The boolean property "saffron.stupid" determines whether to optimize
      * variable assignments. If it is true, records are assigned to a variable
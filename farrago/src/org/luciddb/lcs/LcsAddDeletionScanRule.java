@@ -153,7 +153,8 @@ public class LcsAddDeletionScanRule
                     origRowScan.projectedColumns,
                     origRowScan.isFullScan,
                     origRowScan.residualColumns,
-                    origRowScan.inputSelectivity);
+                    origRowScan.inputSelectivity,
+                    ((LcsRowScanRel) origRowScan).startRid);
         } else if (origRowScan instanceof LcsRowAggRel) {
             newRowScan =
                 new LcsRowAggRel(
@@ -0,0 +1,416 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.luciddb.lcs;
+
+import java.util.*;
+
+import net.sf.farrago.catalog.*;
+import net.sf.farrago.cwm.core.*;
+import net.sf.farrago.fem.med.*;
+import net.sf.farrago.query.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.reltype.*;
+import org.eigenbase.rex.*;
+import org.eigenbase.sql.fun.*;
+
+
+/**
+ * LcsMaterializedViewRule answers an aggregate query on a column-store table
+ * from a fresh materialized view on the same table, by aggregating the view's
+ * rows again. For example, given the view
+ *
+ * <blockquote>
+ * <pre>CREATE MATERIALIZED VIEW mv AS
+ * SELECT region, product, SUM(amount) AS s, COUNT(*) AS c
+ * FROM sales GROUP BY region, product</pre>
+ * </blockquote>
+ *
+ * the query
+ *
+ * <blockquote>
+ * <pre>SELECT region, SUM(amount), COUNT(*)
+ * FROM sales WHERE product = 'X' GROUP BY region</pre>
+ * </blockquote>
+ *
+ * becomes
+ *
+ * <blockquote>
+ * <pre>SELECT region, SUM(s), SUM(c)
+ * FROM mv WHERE product = 'X' GROUP BY region</pre>
+ * </blockquote>
+ *
+ * <p>The query must group by a subset of the view's grouping columns, filter
+ * on grouping columns only, and use only SUM, COUNT, MIN and MAX of arguments
+ * the view aggregates in the same way. See {@link FarragoMaterializedView}
+ * for the views which qualify. If several views qualify, the one with fewest
+ * rows is used.
+ *
+ * <p>The rule must fire before projections and filters are pushed into the
+ * scan.
+ */
+public class LcsMaterializedViewRule
+    extends RelOptRule
+{
+    public static final LcsMaterializedViewRule instanceFilter =
+        new LcsMaterializedViewRule(
+            new RelOptRuleOperand(
+                AggregateRel.class,
+                new RelOptRuleOperand(
+                    ProjectRel.class,
+                    new RelOptRuleOperand(
+                        FilterRel.class,
+                        new RelOptRuleOperand(LcsRowScanRel.class, ANY)))),
+            "with filter");
+
+    public static final LcsMaterializedViewRule instanceNoFilter =
+        new LcsMaterializedViewRule(
+            new RelOptRuleOperand(
+                AggregateRel.class,
+                new RelOptRuleOperand(
+                    ProjectRel.class,
+                    new RelOptRuleOperand(LcsRowScanRel.class, ANY))),
+            "without filter");
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a LcsMaterializedViewRule.
+     *
+     * @param operand root operand
+     * @param id description of the pattern matched
+     */
+    public LcsMaterializedViewRule(RelOptRuleOperand operand, String id)
+    {
+        super(operand, "LcsMaterializedViewRule: " + id);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement RelOptRule
+    public void onMatch(RelOptRuleCall call)
+    {
+        AggregateRel aggRel = (AggregateRel) call.rels[0];
+        ProjectRel projRel = (ProjectRel) call.rels[1];
+        FilterRel filterRel = null;
+        LcsRowScanRel scanRel;
+        if (call.rels.length == 4) {
+            filterRel = (FilterRel) call.rels[2];
+            scanRel = (LcsRowScanRel) call.rels[3];
+        } else {
+            scanRel = (LcsRowScanRel) call.rels[2];
+        }
+
+        if (!scanRel.isFullScan()
+            || scanRel.hasResidualFilters()
+            || (scanRel.getProjectedColumns() != null))
+        {
+            return;
+        }
+
+        LcsTable lcsTable = scanRel.getLcsTable();
+        FarragoPreparingStmt stmt = lcsTable.getPreparingStmt();
+
+        // A view is only fresh as of the latest committed data.
+        if (stmt.getSession().getSessionLabelCsn() != null) {
+            return;
+        }
+
+        // Name the base table column behind each projected field.
+        RexNode [] projExps = projRel.getProjectExps();
+        String [] projColumns = new String[projExps.length];
+        for (int i = 0; i < projExps.length; i++) {
+            if (!(projExps[i] instanceof RexInputRef)) {
+                continue;
+            }
+            projColumns[i] =
+                getColumnName(scanRel, ((RexInputRef) projExps[i]).getIndex());
+        }
+
+        List<String> queryGroups = new ArrayList<String>();
+        for (int i = 0; i < aggRel.getGroupCount(); i++) {
+            if (projColumns[i] == null) {
+                return;
+            }
+            queryGroups.add(projColumns[i]);
+        }
+
+        List<AggregateCall> aggCalls = aggRel.getAggCallList();
+        for (AggregateCall aggCall : aggCalls) {
+            if (aggCall.isDistinct() || (aggCall.getArgList().size() > 1)) {
+                return;
+            }
+            if ((aggRel.getGroupCount() == 0)
+                && aggCall.getAggregation().getName().equals("COUNT"))
+            {
+                // SUM over an empty view is null, not zero
+                return;
+            }
+        }
+
+        BitSet filterFields = new BitSet();
+        if (filterRel != null) {
+            filterRel.getCondition().accept(
+                new RelOptUtil.InputFinder(filterFields));
+        }
+
+        // Choose the smallest qualifying view.
+        FarragoRepos repos = stmt.getRepos();
+        FemLocalTable bestView = null;
+        FarragoMaterializedView bestMv = null;
+        for (
+            FemLocalTable view
+            : FarragoCatalogUtil.getDependentMaterializedViews(
+                repos,
+                lcsTable.getCwmColumnSet()))
+        {
+            if (FarragoCatalogUtil.getMaterializedViewState(repos, view)
+                != FarragoCatalogUtil.MaterializedViewState.FRESH)
+            {
+                continue;
+            }
+            FarragoMaterializedView mv =
+                FarragoMaterializedView.analyze(
+                    repos.getTagAnnotationValue(
+                        view,
+                        FarragoCatalogUtil.MATERIALIZED_VIEW_QUERY_TAG));
+            if (!mv.isRewritable()
+                || !mv.getGroupColumns().containsAll(queryGroups))
+            {
+                continue;
+            }
+            boolean filterCovered = true;
+            for (
+                int i = filterFields.nextSetBit(0);
+                i >= 0;
+                i = filterFields.nextSetBit(i + 1))
+            {
+                if (!mv.getGroupColumns().contains(getColumnName(scanRel, i)))
+                {
+                    filterCovered = false;
+                    break;
+                }
+            }
+            if (!filterCovered) {
+                continue;
+            }
+            if (findAggregates(mv, aggCalls, projColumns) == null) {
+                continue;
+            }
+            if ((bestView == null)
+                || (getRowCount(view) < getRowCount(bestView)))
+            {
+                bestView = view;
+                bestMv = mv;
+            }
+        }
+        if (bestView == null) {
+            return;
+        }
+
+        RelOptCluster cluster = scanRel.getCluster();
+        RelOptTable viewTable =
+            stmt.loadColumnSet(FarragoCatalogUtil.getQualifiedName(bestView));
+        RelNode viewRel = viewTable.toRel(cluster, scanRel.getConnection());
+        RelDataTypeField [] viewFields = viewRel.getRowType().getFields();
+        if (viewFields.length != bestMv.getItems().size()) {
+            // structured column types are flattened
+            return;
+        }
+
+        RelNode input = viewRel;
+        if (filterRel != null) {
+            final Map<Integer, Integer> fieldMap =
+                new HashMap<Integer, Integer>();
+            for (
+                int i = filterFields.nextSetBit(0);
+                i >= 0;
+                i = filterFields.nextSetBit(i + 1))
+            {
+                int viewField = findColumn(bestMv, getColumnName(scanRel, i));
+                if (!viewFields[viewField].getType().equals(
+                        scanRel.getRowType().getFields()[i].getType()))
+                {
+                    return;
+                }
+                fieldMap.put(i, viewField);
+            }
+            RexNode condition =
+                filterRel.getCondition().accept(
+                    new RexShuttle() {
+                        public RexNode visitInputRef(RexInputRef inputRef)
+                        {
+                            return new RexInputRef(
+                                fieldMap.get(inputRef.getIndex()),
+                                inputRef.getType());
+                        }
+                    });
+            input = new FilterRel(cluster, input, condition);
+        }
+
+        // Project the view's grouping columns which the query groups by,
+        // followed by the view's aggregates which the query rolls up.
+        RexBuilder rexBuilder = cluster.getRexBuilder();
+        int [] aggFields = findAggregates(bestMv, aggCalls, projColumns);
+        int nGroups = aggRel.getGroupCount();
+        RexNode [] exps = new RexNode[nGroups + aggCalls.size()];
+        String [] names = new String[exps.length];
+        RelDataTypeField [] aggInputFields = projRel.getRowType().getFields();
+        for (int i = 0; i < nGroups; i++) {
+            int viewField = findColumn(bestMv, queryGroups.get(i));
+            exps[i] =
+                rexBuilder.makeInputRef(
+                    viewFields[viewField].getType(),
+                    viewField);
+            names[i] = aggInputFields[i].getName();
+        }
+        List<AggregateCall> newCalls = new ArrayList<AggregateCall>();
+        for (int i = 0; i < aggCalls.size(); i++) {
+            AggregateCall aggCall = aggCalls.get(i);
+            int iExp = nGroups + i;
+            exps[iExp] =
+                rexBuilder.makeInputRef(
+                    viewFields[aggFields[i]].getType(),
+                    aggFields[i]);
+            names[iExp] = "$f" + iExp;
+
+            // Counts are rolled up by adding them.
+            Aggregation aggFun;
+            RelDataType aggType;
+            if (aggCall.getAggregation().getName().equals("COUNT")) {
+                aggType =
+                    cluster.getTypeFactory().createTypeWithNullability(
+                        aggCall.getType(),
+                        true);
+                aggFun = new SqlSumAggFunction(aggType);
+            } else {
+                aggFun = aggCall.getAggregation();
+                aggType = aggCall.getType();
+            }
+            newCalls.add(
+                new AggregateCall(
+                    aggFun,
+                    false,
+                    Collections.singletonList(iExp),
+                    aggType,
+                    aggCall.getName()));
+        }
+        RelNode projectRel =
+            new ProjectRel(
+                cluster,
+                input,
+                exps,
+                names,
+                ProjectRel.Flags.Boxed);
+        RelNode newAggRel =
+            new AggregateRel(
+                cluster,
+                projectRel,
+                nGroups,
+                newCalls);
+
+        // Plans which read the view must be discarded when it goes stale.
+        stmt.addDependency(bestView, null);
+
+        call.transformTo(
+            RelOptUtil.createCastRel(newAggRel, aggRel.getRowType(), false));
+    }
+
+    private static String getColumnName(LcsRowScanRel scanRel, int field)
+    {
+        CwmFeature column = scanRel.getColumnForFieldAccess(field);
+        return (column == null) ? null : column.getName();
+    }
+
+    private static long getRowCount(FemLocalTable table)
+    {
+        Long rowCount = table.getRowCount();
+        return (rowCount == null) ? Long.MAX_VALUE : rowCount;
+    }
+
+    /**
+     * Finds the view column which holds a grouping column.
+     *
+     * @return ordinal of view column, or -1
+     */
+    private static int findColumn(FarragoMaterializedView mv, String column)
+    {
+        List<FarragoMaterializedView.Item> items = mv.getItems();
+        for (int i = 0; i < items.size(); i++) {
+            FarragoMaterializedView.Item item = items.get(i);
+            if ((item.kind == FarragoMaterializedView.ItemKind.COLUMN)
+                && item.column.equals(column))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the view columns which hold the aggregates computed by a query.
+     *
+     * @param mv view
+     * @param aggCalls aggregates computed by the query
+     * @param projColumns base column behind each input field of the
+     * aggregates, or null for a computed field
+     *
+     * @return ordinal of view column for each aggregate, or null if the view
+     * does not hold them all
+     */
+    private static int [] findAggregates(
+        FarragoMaterializedView mv,
+        List<AggregateCall> aggCalls,
+        String [] projColumns)
+    {
+        List<FarragoMaterializedView.Item> items = mv.getItems();
+        int [] fields = new int[aggCalls.size()];
+        for (int i = 0; i < aggCalls.size(); i++) {
+            AggregateCall aggCall = aggCalls.get(i);
+            String function = aggCall.getAggregation().getName();
+            String column = null;
+            if (!aggCall.getArgList().isEmpty()) {
+                column = projColumns[aggCall.getArgList().get(0)];
+                if (column == null) {
+                    return null;
+                }
+            }
+            fields[i] = -1;
+            for (int j = 0; j < items.size(); j++) {
+                FarragoMaterializedView.Item item = items.get(j);
+                if ((item.kind == FarragoMaterializedView.ItemKind.AGGREGATE)
+                    && item.function.equals(function)
+                    && ((column == null)
+                        ? (item.column == null)
+                        : column.equals(item.column)))
+                {
+                    fields[i] = j;
+                    break;
+                }
+            }
+            if (fields[i] == -1) {
+                return null;
+            }
+        }
+        return fields;
+    }
+}
+
+// End LcsMaterializedViewRule.java
@@ -20,7 +20,9 @@ package org.luciddb.lcs;
 
 import java.util.*;
 
+import net.sf.farrago.fem.fennel.*;
 import net.sf.farrago.fem.med.*;
+import net.sf.farrago.query.*;
 
 import org.eigenbase.rel.*;
 import org.eigenbase.relopt.*;
@@ -36,6 +38,14 @@ import org.eigenbase.relopt.*;
 public class LcsRowScanRel
     extends LcsRowScanRelBase
 {
+    //~ Instance fields --------------------------------------------------------
+
+    /**
+     * For a full scan, the first rid to read; rows before it are skipped
+     * without being read. 0 scans the whole table.
+     */
+    final long startRid;
+
     //~ Constructors -----------------------------------------------------------
 
     /**
@@ -62,6 +72,46 @@ public class LcsRowScanRel
         boolean isFullScan,
         Integer [] resCols,
         double inputSelectivity)
+    {
+        this(
+            cluster,
+            children,
+            lcsTable,
+            clusteredIndexes,
+            connection,
+            projectedColumns,
+            isFullScan,
+            resCols,
+            inputSelectivity,
+            0);
+    }
+
+    /**
+     * Creates a new LcsRowScanRel object which starts reading at a given rid.
+     *
+     * @param cluster RelOptCluster for this rel
+     * @param children children inputs into the row scan
+     * @param lcsTable table being scanned
+     * @param clusteredIndexes clusters to use for table access
+     * @param connection connection
+     * @param projectedColumns array of 0-based table-relative column ordinals,
+     * or null to project all columns
+     * @param isFullScan true if doing a full scan of the table
+     * @param resCols residual filter columns
+     * @param inputSelectivity estimate of input selectivity
+     * @param startRid first rid to read; must be 0 unless isFullScan
+     */
+    public LcsRowScanRel(
+        RelOptCluster cluster,
+        RelNode [] children,
+        LcsTable lcsTable,
+        List<FemLocalIndex> clusteredIndexes,
+        RelOptConnection connection,
+        Integer [] projectedColumns,
+        boolean isFullScan,
+        Integer [] resCols,
+        double inputSelectivity,
+        long startRid)
     {
         super(
             cluster,
@@ -73,6 +123,8 @@ public class LcsRowScanRel
             isFullScan,
             resCols,
             inputSelectivity);
+        assert (isFullScan || (startRid == 0));
+        this.startRid = startRid;
     }
 
     //~ Methods ----------------------------------------------------------------
@@ -90,10 +142,38 @@ public class LcsRowScanRel
                 projectedColumns,
                 isFullScan,
                 residualColumns,
-                inputSelectivity);
+                inputSelectivity,
+                startRid);
         clone.inheritTraitsFrom(this);
         return clone;
     }
+
+    // override LcsRowScanRelBase
+    public void explain(RelOptPlanWriter pw)
+    {
+        if (startRid == 0) {
+            super.explain(pw);
+        } else {
+            super.explain(
+                pw,
+                new String[] { "start rid" },
+                new Object[] { startRid });
+        }
+    }
+
+    // override LcsRowScanRelBase
+    protected FemLcsRowScanStreamDef createScanStream(
+        FennelRelImplementor implementor)
+    {
+        FemLcsRowScanStreamDef scanStream = super.createScanStream(implementor);
+        scanStream.setStartRid(startRid);
+        return scanStream;
+    }
+
+    public long getStartRid()
+    {
+        return startRid;
+    }
 }
 
 // End LcsRowScanRel.java
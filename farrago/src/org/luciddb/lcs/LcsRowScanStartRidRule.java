@@ -0,0 +1,196 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.luciddb.lcs;
+
+import org.luciddb.session.*;
+
+import java.math.*;
+
+import java.util.*;
+
+import net.sf.farrago.fennel.rel.*;
+
+import org.eigenbase.rel.*;
+import org.eigenbase.relopt.*;
+import org.eigenbase.rex.*;
+
+
+/**
+ * LcsRowScanStartRidRule pushes a lower bound on LCS_RID from a {@link
+ * FilterRel} into the full {@link LcsRowScanRel} beneath it, so that the scan
+ * starts reading at that rid rather than at the beginning of the table. The
+ * filter itself is kept, since the scan only skips whole rows before the
+ * bound.
+ *
+ * <p>Materialized view refresh relies on this to read only the rows appended
+ * to the base table since the previous refresh. The rule must fire after
+ * {@link LcsTableProjectionRule} has turned LCS_RID into a projected column of
+ * the scan, and before {@link LcsAddDeletionScanRule}.
+ */
+public class LcsRowScanStartRidRule
+    extends RelOptRule
+{
+    //~ Static fields/initializers ---------------------------------------------
+
+    public final static LcsRowScanStartRidRule instance =
+        new LcsRowScanStartRidRule(
+            new RelOptRuleOperand(
+                FilterRel.class,
+                new RelOptRuleOperand(LcsRowScanRel.class, ANY)),
+            "plain");
+
+    public final static LcsRowScanStartRidRule instanceRename =
+        new LcsRowScanStartRidRule(
+            new RelOptRuleOperand(
+                FilterRel.class,
+                new RelOptRuleOperand(
+                    FennelRenameRel.class,
+                    new RelOptRuleOperand(LcsRowScanRel.class, ANY))),
+            "with rename");
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates a LcsRowScanStartRidRule.
+     *
+     * @param operand Root operand, must not be null
+     * @param id Description of rule
+     */
+    public LcsRowScanStartRidRule(
+        RelOptRuleOperand operand,
+        String id)
+    {
+        super(operand, "LcsRowScanStartRidRule: " + id);
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    // implement RelOptRule
+    public void onMatch(RelOptRuleCall call)
+    {
+        FilterRel filter = (FilterRel) call.rels[0];
+        LcsRowScanRel origRowScan =
+            (LcsRowScanRel) call.rels[call.rels.length - 1];
+        if (!origRowScan.isFullScan
+            || (origRowScan.projectedColumns == null))
+        {
+            return;
+        }
+
+        // A rename doesn't move fields, so the filter's field ordinals are
+        // the scan's projection ordinals either way.
+        List<RexNode> conjuncts = new ArrayList<RexNode>();
+        RelOptUtil.decomposeConjunction(filter.getCondition(), conjuncts);
+        long startRid = origRowScan.startRid;
+        for (RexNode conjunct : conjuncts) {
+            startRid =
+                Math.max(
+                    startRid,
+                    getStartRid(conjunct, origRowScan.projectedColumns));
+        }
+        if (startRid <= origRowScan.startRid) {
+            return;
+        }
+
+        RelNode newRowScan =
+            new LcsRowScanRel(
+                origRowScan.getCluster(),
+                origRowScan.getInputs(),
+                origRowScan.lcsTable,
+                origRowScan.clusteredIndexes,
+                origRowScan.getConnection(),
+                origRowScan.projectedColumns,
+                origRowScan.isFullScan,
+                origRowScan.residualColumns,
+                origRowScan.inputSelectivity,
+                startRid);
+        if (call.rels.length == 3) {
+            FennelRenameRel rename = (FennelRenameRel) call.rels[1];
+            newRowScan =
+                new FennelRenameRel(
+                    rename.getCluster(),
+                    newRowScan,
+                    RelOptUtil.getFieldNames(rename.getRowType()),
+                    rename.getTraits());
+        }
+        call.transformTo(
+            CalcRel.createFilter(newRowScan, filter.getCondition()));
+    }
+
+    /**
+     * Determines the lowest rid that can satisfy a single conjunct of a
+     * filter.
+     *
+     * @param conjunct filter conjunct
+     * @param projectedColumns projection of the row scan being filtered
+     *
+     * @return lowest rid which can satisfy the conjunct, or 0 if it is not a
+     * lower bound on LCS_RID
+     */
+    private long getStartRid(RexNode conjunct, Integer [] projectedColumns)
+    {
+        if (!(conjunct instanceof RexCall)) {
+            return 0;
+        }
+        RexCall call = (RexCall) conjunct;
+        if (call.getOperands().length != 2) {
+            return 0;
+        }
+        RexNode ref = call.getOperands()[0];
+        RexNode bound = call.getOperands()[1];
+        boolean inclusive;
+        if (call.isA(RexKind.GreaterThan)) {
+            inclusive = false;
+        } else if (call.isA(RexKind.GreaterThanOrEqual)) {
+            inclusive = true;
+        } else if (call.isA(RexKind.LessThan)) {
+            ref = call.getOperands()[1];
+            bound = call.getOperands()[0];
+            inclusive = false;
+        } else if (call.isA(RexKind.LessThanOrEqual)) {
+            ref = call.getOperands()[1];
+            bound = call.getOperands()[0];
+            inclusive = true;
+        } else {
+            return 0;
+        }
+        if (!(ref instanceof RexInputRef) || !(bound instanceof RexLiteral)) {
+            return 0;
+        }
+        int colId = projectedColumns[((RexInputRef) ref).getIndex()];
+        if (!LucidDbSpecialOperators.isLcsRidColumnId(colId)) {
+            return 0;
+        }
+        Comparable value = ((RexLiteral) bound).getValue();
+        if (!(value instanceof BigDecimal)) {
+            return 0;
+        }
+        BigDecimal decimal = (BigDecimal) value;
+        long startRid;
+        if (inclusive) {
+            startRid = decimal.setScale(0, RoundingMode.CEILING).longValue();
+        } else {
+            startRid =
+                decimal.setScale(0, RoundingMode.FLOOR).longValue() + 1;
+        }
+        return Math.max(startRid, 0);
+    }
+}
+
+// End LcsRowScanStartRidRule.java
@@ -0,0 +1,192 @@
+/*
+// Licensed to DynamoBI Corporation (DynamoBI) under one
+// or more contributor license agreements.  See the NOTICE file
+// distributed with this work for additional information
+// regarding copyright ownership.  DynamoBI licenses this file
+// to you under the Apache License, Version 2.0 (the
+// "License"); you may not use this file except in compliance
+// with the License.  You may obtain a copy of the License at
+
+//   http://www.apache.org/licenses/LICENSE-2.0
+
+// Unless required by applicable law or agreed to in writing,
+// software distributed under the License is distributed on an
+// "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+// KIND, either express or implied.  See the License for the
+// specific language governing permissions and limitations
+// under the License.
+*/
+package org.luciddb.lcs;
+
+import org.luciddb.session.*;
+
+import java.util.*;
+
+import net.sf.farrago.session.*;
+
+import openjava.ptree.*;
+
+import org.eigenbase.oj.rel.*;
+import org.eigenbase.rel.*;
+import org.eigenbase.rel.metadata.*;
+import org.eigenbase.relopt.*;
+
+
+/**
+ * LcsStatisticsTapRel passes the rows to be loaded into a column-store table
+ * through unchanged, collecting statistics on them as they go so that the
+ * table's column histograms can be maintained when the load commits, rather
+ * than going stale until the next ANALYZE.
+ *
+ * <p>It is only used when the session variable {@link
+ * LucidDbSessionPersonality#INCREMENTAL_STATISTICS} is set; see {@link
+ * #createIfEnabled}. At execution it becomes a {@link
+ * net.sf.farrago.runtime.FarragoStatisticsTapTupleIter}.
+ */
+public class LcsStatisticsTapRel
+    extends SingleRel
+    implements JavaRel
+{
+    //~ Instance fields --------------------------------------------------------
+
+    private final LcsTable lcsTable;
+
+    /**
+     * Index of the input field holding the table's first column.
+     */
+    private final int offset;
+
+    //~ Constructors -----------------------------------------------------------
+
+    /**
+     * Creates an LcsStatisticsTapRel.
+     *
+     * @param cluster cluster
+     * @param child input producing the rows to be loaded, with the table's
+     * columns starting at field {@code offset}
+     * @param lcsTable table being loaded
+     * @param offset index of the input field holding the table's first column
+     */
+    public LcsStatisticsTapRel(
+        RelOptCluster cluster,
+        RelNode child,
+        LcsTable lcsTable,
+        int offset)
+    {
+        super(
+            cluster,
+            new RelTraitSet(CallingConvention.ITERATOR),
+            child);
+        this.lcsTable = lcsTable;
+        this.offset = offset;
+    }
+
+    //~ Methods ----------------------------------------------------------------
+
+    /**
+     * Places a statistics tap on the input of a load into a column-store table,
+     * if incremental statistics are enabled for the session.
+     *
+     * @param input input producing the rows to be loaded
+     * @param lcsTable table being loaded
+     * @param offset index of the input field holding the table's first column
+     *
+     * @return the tap, or {@code input} itself if statistics are not to be
+     * collected
+     */
+    public static RelNode createIfEnabled(
+        RelNode input,
+        LcsTable lcsTable,
+        int offset)
+    {
+        // REVIEW: the variable is consulted at prepare time only, so
+        // changing it does not affect statements already in the code cache.
+        // The variable only exists under the LucidDB personality.
+        FarragoSessionVariables variables =
+            lcsTable.getPreparingStmt().getSession().getSessionVariables();
+        String name = LucidDbSessionPersonality.INCREMENTAL_STATISTICS;
+        if (!variables.containsVariable(name)
+            || !Boolean.TRUE.equals(variables.getBoolean(name)))
+        {
+            return input;
+        }
+        RelNode iterInput =
+            RelOptRule.mergeTraitsAndConvert(
+                input.getTraits(),
+                CallingConvention.ITERATOR,
+                input);
+        if (iterInput == null) {
+            return input;
+        }
+        return new LcsStatisticsTapRel(
+            input.getCluster(),
+            iterInput,
+            lcsTable,
+            offset);
+    }
+
+    public LcsTable getLcsTable()
+    {
+        return lcsTable;
+    }
+
+    public int getOffset()
+    {
+        return offset;
+    }
+
+    // implement RelNode
+    public LcsStatisticsTapRel clone()
+    {
+        LcsStatisticsTapRel clone =
+            new LcsStatisticsTapRel(
+                getCluster(),
+                getChild().clone(),
+                lcsTable,
+                offset);
+        clone.inheritTraitsFrom(this);
+        return clone;
+    }
+
+    // implement RelNode
+    public RelOptCost computeSelfCost(RelOptPlanner planner)
+    {
+        double dRows = RelMetadataQuery.getRowCount(getChild());
+        double dCpu = dRows * getRowType().getFieldList().size();
+        double dIo = 0;
+        return planner.makeCost(dRows, dCpu, dIo);
+    }
+
+    // implement RelNode
+    public void explain(RelOptPlanWriter pw)
+    {
+        pw.explain(
+            this,
+            new String[] { "child", "table", "offset" },
+            new Object[] {
+                Arrays.asList(lcsTable.getQualifiedName()),
+                offset
+            });
+    }
+
+    // implement JavaRel
+    public ParseTree implement(JavaRelImplementor implementor)
+    {
+        Expression childExp =
+            implementor.visitJavaChild(this, 0, (JavaRel) getChild());
+
+        // Generate
+        //   connection.newStatisticsTapTupleIter(
+        //       << child >>, "<table mofId>", <offset>)
+        return new MethodCall(
+            implementor.getConnectionVariable(),
+            "newStatisticsTapTupleIter",
+            new ExpressionList(
+                childExp,
+                Literal.makeLiteral(
+                    lcsTable.getCwmColumnSet().refMofId()),
+                Literal.makeLiteral(offset)));
+    }
+}
+
+// End LcsStatisticsTapRel.java
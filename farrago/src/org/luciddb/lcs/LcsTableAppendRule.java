@@ -88,6 +88,9 @@ public class LcsTableAppendRule
             return;
         }
 
+        LcsTable lcsTable = (LcsTable) tableModification.getTable();
+        inputRel = LcsStatisticsTapRel.createIfEnabled(inputRel, lcsTable, 0);
+
         RelNode fennelInput =
             mergeTraitsAndConvert(
                 call.rels[0].getTraits(),
@@ -100,7 +103,7 @@ public class LcsTableAppendRule
         LcsTableAppendRel clusterAppendRel =
             new LcsTableAppendRel(
                 tableModification.getCluster(),
-                (LcsTable) tableModification.getTable(),
+                lcsTable,
                 tableModification.getConnection(),
                 fennelInput,
                 tableModification.getOperation(),
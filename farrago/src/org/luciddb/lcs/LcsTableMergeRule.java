@@ -165,6 +165,17 @@ public class LcsTableMergeRule
                     rexBuilder);
         }
 
+        // Every source row becomes a new target row, except when columns are
+        // replaced in place; statistics for those are left to ANALYZE.
+        LcsTable lcsTable = (LcsTable) tableModification.getTable();
+        if (updateClusters == null) {
+            mergeSource =
+                LcsStatisticsTapRel.createIfEnabled(
+                    mergeSource,
+                    lcsTable,
+                    insertOnly ? 0 : 1);
+        }
+
         RelNode fennelInput =
             mergeTraitsAndConvert(
                 call.rels[0].getTraits(),
@@ -177,7 +188,7 @@ public class LcsTableMergeRule
         LcsTableMergeRel mergeRel =
             new LcsTableMergeRel(
                 tableModification.getCluster(),
-                (LcsTable) tableModification.getTable(),
+                lcsTable,
                 tableModification.getConnection(),
                 fennelInput,
                 tableModification.getOperation(),
@@ -101,6 +101,30 @@ public abstract class LoptIterCalcRule
                         IterCalcRel.class,
                         ANY))));
 
+    public static LoptIterCalcRule lcsAppendTapInstance =
+        new TableAppendRule(
+            new RelOptRuleOperand(
+                LcsTableAppendRel.class,
+                new RelOptRuleOperand(
+                    ConverterRel.class,
+                    new RelOptRuleOperand(
+                        LcsStatisticsTapRel.class,
+                        new RelOptRuleOperand(
+                            IterCalcRel.class,
+                            ANY)))));
+
+    public static LoptIterCalcRule lcsMergeTapInstance =
+        new TableMergeRule(
+            new RelOptRuleOperand(
+                LcsTableMergeRel.class,
+                new RelOptRuleOperand(
+                    ConverterRel.class,
+                    new RelOptRuleOperand(
+                        LcsStatisticsTapRel.class,
+                        new RelOptRuleOperand(
+                            IterCalcRel.class,
+                            ANY)))));
+
     public static LoptIterCalcRule lcsDeleteInstance =
         new TableDeleteRule(
             new RelOptRuleOperand(
@@ -216,6 +240,34 @@ public abstract class LoptIterCalcRule
             newCalc);
     }
 
+    /**
+     * Replaces the tag of an IterCalcRel beneath a table modification. The
+     * calculator is the last rel matched, and lies underneath an
+     * IteratorToFennelConverter and possibly an {@link LcsStatisticsTapRel};
+     * these are duplicated.
+     *
+     * @return the duplicated converter
+     */
+    protected IteratorToFennelConverter replaceTagAsFennel(
+        RelOptRuleCall call,
+        String tag)
+    {
+        IteratorToFennelConverter converter =
+            (IteratorToFennelConverter) call.rels[1];
+        IterCalcRel calc = (IterCalcRel) call.rels[call.rels.length - 1];
+        if (call.rels.length == 3) {
+            return replaceTagAsFennel(converter, calc, tag);
+        }
+        LcsStatisticsTapRel tap = (LcsStatisticsTapRel) call.rels[2];
+        return new IteratorToFennelConverter(
+            converter.getCluster(),
+            new LcsStatisticsTapRel(
+                tap.getCluster(),
+                replaceTag(calc, tag),
+                tap.getLcsTable(),
+                tap.getOffset()));
+    }
+
     /**
      * Gets a tag corresponding to a table name. The tag is built from elements
      * of the qualified name, joined by dots. The tag is prefixed with an action
@@ -387,14 +439,12 @@ public abstract class LoptIterCalcRule
         // implement RelOptRule
         public void onMatch(RelOptRuleCall call)
         {
-            IterCalcRel calc = (IterCalcRel) call.rels[2];
+            IterCalcRel calc = (IterCalcRel) call.rels[call.rels.length - 1];
             if (calc.getTag() != null) {
                 return;
             }
 
             LcsTableAppendRel tableRel = (LcsTableAppendRel) call.rels[0];
-            IteratorToFennelConverter converter =
-                (IteratorToFennelConverter) call.rels[1];
             String tag =
                 getTableTag(
                     TABLE_APPEND_PREFIX,
@@ -407,7 +457,7 @@ public abstract class LoptIterCalcRule
                     tableRel.getCluster(),
                     tableRel.getLcsTable(),
                     tableRel.getConnection(),
-                    replaceTagAsFennel(converter, calc, tag),
+                    replaceTagAsFennel(call, tag),
                     tableRel.getOperation(),
                     tableRel.getUpdateColumnList()));
         }
@@ -427,14 +477,12 @@ public abstract class LoptIterCalcRule
         // implement RelOptRule
         public void onMatch(RelOptRuleCall call)
         {
-            IterCalcRel calc = (IterCalcRel) call.rels[2];
+            IterCalcRel calc = (IterCalcRel) call.rels[call.rels.length - 1];
             if (calc.getTag() != null) {
                 return;
             }
 
             LcsTableMergeRel tableRel = (LcsTableMergeRel) call.rels[0];
-            IteratorToFennelConverter converter =
-                (IteratorToFennelConverter) call.rels[1];
             String tag =
                 getTableTag(
                     TABLE_MERGE_PREFIX,
@@ -447,7 +495,7 @@ public abstract class LoptIterCalcRule
                     tableRel.getCluster(),
                     tableRel.getLcsTable(),
                     tableRel.getConnection(),
-                    replaceTagAsFennel(converter, calc, tag),
+                    replaceTagAsFennel(call, tag),
                     tableRel.getOperation(),
                     tableRel.getUpdateColumnList(),
                     tableRel.getUpdateOnly(),
@@ -30,6 +30,7 @@ import java.util.*;
 
 import net.sf.farrago.catalog.*;
 import net.sf.farrago.db.*;
+import net.sf.farrago.ddl.*;
 import net.sf.farrago.defimpl.*;
 import net.sf.farrago.fem.config.*;
 import net.sf.farrago.fem.med.*;
@@ -37,6 +38,7 @@ import net.sf.farrago.fem.sql2003.*;
 import net.sf.farrago.fennel.rel.*;
 import net.sf.farrago.namespace.util.*;
 import net.sf.farrago.query.*;
+import net.sf.farrago.resource.*;
 import net.sf.farrago.session.*;
 import net.sf.farrago.util.*;
 
@@ -51,6 +53,7 @@ import org.eigenbase.resgen.*;
 import org.eigenbase.resource.*;
 import org.eigenbase.sql.*;
 import org.eigenbase.sql.parser.*;
+import org.eigenbase.util.*;
 
 
 /**
@@ -81,6 +84,15 @@ public class LucidDbSessionPersonality
     public static final String LAST_UPSERT_ROWS_INSERTED_DEFAULT = null;
     public static final String LAST_ROWS_REJECTED = "lastRowsRejected";
     public static final String LAST_ROWS_REJECTED_DEFAULT = null;
+
+    /**
+     * If true, INSERT and MERGE into column-store tables collect statistics on
+     * the rows loaded and fold them into the table's column histograms when
+     * the statement commits, so that the histograms keep up with the data
+     * between runs of ANALYZE.
+     */
+    public static final String INCREMENTAL_STATISTICS = "incrementalStatistics";
+    public static final String INCREMENTAL_STATISTICS_DEFAULT = "false";
     public static final String REDUCE_NON_CORRELATED_SUBQUERIES_LUCIDDB_DFLT =
         "true";
 
@@ -130,6 +142,9 @@ public class LucidDbSessionPersonality
             true,
             0,
             Integer.MAX_VALUE);
+        paramValidator.registerBoolParam(
+            INCREMENTAL_STATISTICS,
+            false);
         if (defaultPersonality == null) {
             defaultLucidDb = true;
         } else if (defaultPersonality instanceof LucidDbSessionPersonality) {
@@ -206,6 +221,11 @@ public class LucidDbSessionPersonality
             return true;
         }
 
+        // LucidDB maintains materialized views as column-store tables
+        if (feature == featureResource.PersonalitySupportsMaterializedViews) {
+            return true;
+        }
+
         return super.supportsFeature(feature);
     }
 
@@ -295,6 +315,11 @@ public class LucidDbSessionPersonality
         // or else we lose system sampling.
         builder.addRuleInstance(LcsSamplingRowScanRule.instance);
 
+        // Answer aggregate queries from materialized views while the
+        // aggregate, projection and filter are still directly over the scan.
+        builder.addRuleInstance(LcsMaterializedViewRule.instanceFilter);
+        builder.addRuleInstance(LcsMaterializedViewRule.instanceNoFilter);
+
         // Need to fire delete and merge rules before any projection rules
         // since they modify the projection.  Also need to fire these
         // before the join conditions are pulled out of the joins.
@@ -536,6 +561,12 @@ public class LucidDbSessionPersonality
         // to clustered indexes we don't need.
         builder.addRuleInstance(LcsTableProjectionRule.instance);
 
+        // Start full row scans at any lower bound on LCS_RID.  This needs
+        // LCS_RID projected from the scan, and must come before the deletion
+        // index is added as the scan's input.
+        builder.addRuleInstance(LcsRowScanStartRidRule.instance);
+        builder.addRuleInstance(LcsRowScanStartRidRule.instanceRename);
+
         // Consider index only access.  Multiple rules are required
         // for various patterns.  Apply these rules after we've pushed down
         // all projections.
@@ -703,9 +734,11 @@ public class LucidDbSessionPersonality
 
         // After calculator relations are resolved, decorate Java calc rels
         builder.addRuleInstance(LoptIterCalcRule.lcsAppendInstance);
+        builder.addRuleInstance(LoptIterCalcRule.lcsAppendTapInstance);
         builder.addRuleInstance(LoptIterCalcRule.tableAccessInstance);
         builder.addRuleInstance(LoptIterCalcRule.lcsRowScanInstance);
         builder.addRuleInstance(LoptIterCalcRule.lcsMergeInstance);
+        builder.addRuleInstance(LoptIterCalcRule.lcsMergeTapInstance);
         builder.addRuleInstance(LoptIterCalcRule.lcsDeleteInstance);
         builder.addRuleInstance(LoptIterCalcRule.jdbcQueryInstance);
         builder.addRuleInstance(LoptIterCalcRule.javaUdxInstance);
@@ -813,6 +846,9 @@ public class LucidDbSessionPersonality
         variables.setDefault(
             LAST_ROWS_REJECTED,
             LAST_ROWS_REJECTED_DEFAULT);
+        variables.setDefault(
+            INCREMENTAL_STATISTICS,
+            INCREMENTAL_STATISTICS_DEFAULT);
         variables.set(
             REDUCE_NON_CORRELATED_SUBQUERIES,
             REDUCE_NON_CORRELATED_SUBQUERIES_LUCIDDB_DFLT);
@@ -937,6 +973,7 @@ public class LucidDbSessionPersonality
                 rowCountStats);
             long currRowCount = rowCountStats[0];
             long currDeletedRowCount = rowCountStats[1];
+            long oldRowCount = currRowCount;
 
             // categorize the rowcounts returned by the statement
             long insertedRowCount = 0;
@@ -1012,6 +1049,22 @@ public class LucidDbSessionPersonality
                 currRowCount,
                 currDeletedRowCount,
                 database.getUserRepos());
+
+            // Appended rows can be folded into incremental materialized
+            // views; anything else requires the views to be recomputed.
+            FarragoCatalogUtil.markMaterializedViewsStale(
+                repos,
+                columnSet,
+                (tableModOp == TableModificationRel.Operation.INSERT)
+                && !session.isReentrantAlterTableRebuild());
+            if (tableModOp != TableModificationRel.Operation.DELETE) {
+                updateHistograms(
+                    stmtValidator,
+                    columnSet,
+                    runningContext,
+                    oldRowCount,
+                    deletedRowCount);
+            }
             txn.commit();
         } finally {
             txn.rollback();
@@ -1021,10 +1074,102 @@ public class LucidDbSessionPersonality
         return affectedRowCount;
     }
 
+    /**
+     * Folds the statistics collected by a statement's {@link
+     * LcsStatisticsTapRel} (if any) into the histograms of the table it
+     * loaded. Must be called within the repository write transaction which
+     * updates the table's rowcounts.
+     *
+     * @param stmtValidator validator for the statement
+     * @param columnSet table which was loaded
+     * @param runningContext runtime context of the statement
+     * @param oldRowCount rowcount of the table before the statement
+     * @param deletedRowCount number of rows deleted by the statement
+     */
+    private void updateHistograms(
+        FarragoSessionStmtValidator stmtValidator,
+        FemAbstractColumnSet columnSet,
+        FarragoSessionRuntimeContext runningContext,
+        long oldRowCount,
+        long deletedRowCount)
+    {
+        FarragoTableStatisticsDelta delta =
+            ((LucidDbRuntimeContext) runningContext).getStatisticsDelta(
+                columnSet.refMofId());
+        if (delta == null) {
+            return;
+        }
+        List<FemAbstractColumn> columns =
+            Util.cast(columnSet.getFeature(), FemAbstractColumn.class);
+        List<RelDataType> columnTypes = new ArrayList<RelDataType>();
+        for (FemAbstractColumn column : columns) {
+            columnTypes.add(
+                stmtValidator.getTypeFactory().createCwmElementType(column));
+        }
+        delta.updateHistograms(
+            database.getUserRepos(),
+            columns,
+            columnTypes,
+            oldRowCount,
+            deletedRowCount);
+    }
+
     // implement FarragoSessionPersonality
     public void resetRowCounts(FemAbstractColumnSet table)
     {
-        FarragoCatalogUtil.resetRowCounts(table, database.getUserRepos());
+        FarragoRepos repos = database.getUserRepos();
+        FarragoCatalogUtil.resetRowCounts(table, repos);
+        FarragoCatalogUtil.markMaterializedViewsStale(repos, table, false);
+    }
+
+    // implement FarragoSessionPersonality
+    public void completeDml(
+        FarragoSession session,
+        List<String> tableName,
+        TableModificationRel.Operation tableModOp)
+    {
+        if (session.isReentrantAlterTableRebuild()
+            || session.isReentrantAlterTableAddColumn())
+        {
+            return;
+        }
+
+        // The statement has already committed, so a failure to refresh
+        // only leaves the views stale; report it as a warning.
+        FarragoSessionFactory sessionFactory = session.getSessionFactory();
+        FarragoSession refreshSession =
+            sessionFactory.newReentrantSession(session);
+        try {
+            refreshSession.getSessionVariables().set(
+                CACHE_STATEMENTS,
+                Boolean.toString(false));
+            new DdlMaterializedViewRefresher(
+                refreshSession,
+                null,
+                LucidDbOperatorTable.lcsRidFunc.getName()).refreshDependents(
+                    tableName);
+        } catch (RuntimeException ex) {
+            session.getWarningQueue().postWarning(
+                FarragoResource.instance().MaterializedViewRefreshFailed.ex(
+                    tableName.toString(),
+                    ex.getMessage()));
+        } finally {
+            sessionFactory.releaseReentrantSession(refreshSession);
+        }
+    }
+
+    // implement FarragoSessionPersonality
+    public void refreshMaterializedView(
+        FarragoSession session,
+        FarragoSessionStmtContext rootStmtContext,
+        String mofId)
+    {
+        // Column-store row ids increase as rows are appended, so rows
+        // appended since the last refresh can be found by row id.
+        new DdlMaterializedViewRefresher(
+            session,
+            rootStmtContext,
+            LucidDbOperatorTable.lcsRidFunc.getName()).refresh(mofId);
     }
 
     //  implement FarragoSessionPersonality
@@ -182,6 +182,38 @@ options (
 
 select * from flatfile_server_esc.BCP."example" order by 3;
 
+--
+-- 1.12 Test tables whose data is split into several files
+--
+create foreign table flatfile_pattern_table(
+    id int not null,
+    name varchar(50) not null,
+    extra_field char(1) not null)
+server flatfile_server
+options (filename 'parts/orders_*');
+
+select * from flatfile_pattern_table order by 3;
+
+-- a directory stands for all of its files with the server's extension
+create foreign table flatfile_directory_table(
+    id int not null,
+    name varchar(50) not null,
+    extra_field char(1) not null)
+server flatfile_server
+options (filename 'parts');
+
+select count(*) from flatfile_directory_table;
+
+-- a pattern which matches no file fails like a missing file
+create foreign table flatfile_no_match_table(
+    id int not null,
+    name varchar(50) not null,
+    extra_field char(1) not null)
+server flatfile_server
+options (filename 'parts/missing_*');
+
+select * from flatfile_no_match_table;
+
 
 ---------------------------------------------------------------------------
 -- Part 2. Test fixed position file parsing                              --
@@ -0,0 +1,61 @@
+-- $Id$
+-- Test materialized views
+
+create schema mv;
+set schema 'mv';
+
+-- materialized views not available outside of LucidDb personality
+create materialized view dummy as select * from sales.depts;
+
+alter session implementation set jar sys_boot.sys_boot.luciddb_plugin;
+create table sales(region varchar(10) not null, product int not null, amount int)
+    server sys_column_store_data_server;
+insert into sales values ('east', 1, 10), ('east', 2, 20), ('west', 1, 5);
+
+create materialized view sales_by_region as
+    select region, count(*) as orders, sum(amount) as total,
+        max(amount) as biggest
+    from sales group by region;
+select * from sales_by_region order by region;
+
+create materialized view east_sales as
+    select region, product, amount from sales where region = 'east';
+select * from east_sales order by product;
+
+-- appends are merged into the views incrementally
+insert into sales values ('west', 3, 7), ('north', 1, 1), ('east', 3, null);
+select * from sales_by_region order by region;
+select * from east_sales order by product;
+
+-- deletions cause the views to be recomputed
+delete from sales where product = 1;
+select * from sales_by_region order by region;
+select * from east_sales order by product;
+
+-- queries which can be answered from an aggregate view
+select region, sum(amount) as total from sales group by region
+order by region;
+select region, count(*) as orders from sales where region = 'east'
+group by region;
+
+-- the view with the fewest rows which can answer a query is chosen
+create materialized view sales_by_region_product as
+    select region, product, count(*) as orders, sum(amount) as total
+    from sales group by region, product;
+select product, sum(amount) as total from sales group by product
+order by product;
+
+!set outputformat csv
+explain plan for
+select region, sum(amount) as total from sales group by region;
+explain plan for
+select product, sum(amount) as total from sales group by product;
+!set outputformat table
+
+-- only a refresh may modify a materialized view
+insert into sales_by_region values ('south', 1, 1, 1);
+delete from sales_by_region;
+update east_sales set amount = 0;
+select * from sales_by_region order by region;
+
+drop schema mv cascade;
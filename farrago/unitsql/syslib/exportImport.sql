@@ -209,3 +209,46 @@ into logcheck;
 -- one log file per schema export should exist
 select count(*) from sys_boot.jdbc_metadata.tables_view
 where table_schem='LOGCHECK';
+
+-- export list of tables in schema, several at a time
+drop schema logcheck cascade;
+call sys_boot.mgmt.export_schema_to_file(
+'LOCALDB',
+'SALES',
+false,
+'JOINVIEW,EMPSVIEW,TEMPSVIEW',
+null,
+'${FARRAGO_HOME}/unitsql/syslib/sales_files',
+true,
+false,
+',',
+'.rtxt',
+null,
+null,
+null,
+'TEXT',
+false,
+2);
+
+create or replace server flatfile_server
+foreign data wrapper sys_file_wrapper
+options (
+  directory 'unitsql/syslib/sales_files',
+  file_extension 'rtxt',
+  with_header 'yes',
+  log_directory 'testlog/',
+  field_delimiter ',',
+  lenient 'no');
+
+create schema logcheck;
+import foreign schema bcp
+from server flatfile_server
+into logcheck;
+
+-- there should be 3 tables
+select count(*) from sys_boot.jdbc_metadata.tables_view
+where table_schem = 'LOGCHECK';
+
+select * from flatfile_server.bcp.empsview order by empno,name;
+select * from flatfile_server.bcp.joinview order by dname,ename;
+drop schema logcheck cascade;
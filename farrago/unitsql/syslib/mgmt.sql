@@ -6,6 +6,10 @@ select sql_stmt from sys_boot.mgmt.statements_view;
 
 select count(mof_id) from sys_boot.mgmt.objects_in_use_view;
 
+-- nothing should be waiting for admission
+select count(*) from sys_boot.mgmt.workload_queues_view
+  where statements_waiting > 0;
+
 select sys_boot.mgmt.sleep(1500) from (values(0));
 
 select count("mofId") from sys_boot.mgmt.dba_foreign_wrappers_internal;
@@ -191,6 +191,7 @@ void ExecStreamFactory::readLcsRowScanStreamParams(
     params.samplingClumps =
         LcsRowScanExecStreamParams::defaultSystemSamplingClumps;
     params.samplingRowCount = streamDef.getSamplingRowCount();
+    params.startRid = LcsRid(streamDef.getStartRid());
 
     CmdInterpreter::readTupleProjection(
         params.residualFilterCols,
@@ -562,6 +563,11 @@ void ExecStreamFactory::visit(ProxySortingStreamDef &streamDef)
     params.estimatedNumRows = streamDef.getEstimatedNumRows();
     params.earlyClose = streamDef.isEarlyClose();
     params.partitionKeyCount = streamDef.getPartitionKeyCount();
+    // a rowLimit of 0 in the stream def means no limit
+    if (streamDef.getRowLimit() > 0) {
+        params.rowLimit = streamDef.getRowLimit();
+    }
+    params.rowOffset = streamDef.getRowOffset();
     CmdInterpreter::readTupleProjection(
         params.keyProj,
         streamDef.getKeyProj());
@@ -597,6 +603,10 @@ void ExecStreamFactory::visit(ProxyFlatFileTupleStreamDef &streamDef)
     assert(streamDef.getDataFilePath().size() > 0);
     params.dataFilePath = streamDef.getDataFilePath();
     params.errorFilePath = streamDef.getErrorFilePath();
+    params.startOffset = streamDef.getStartOffset();
+    if (streamDef.getEndOffset() > 0) {
+        params.endOffset = streamDef.getEndOffset();
+    }
     params.fieldDelim = readCharParam(streamDef.getFieldDelimiter());
     params.rowDelim = readCharParam(streamDef.getRowDelimiter());
     params.quoteChar = readCharParam(streamDef.getQuoteCharacter());
@@ -887,6 +887,8 @@ SharedProxyColumnName getColumn();
 static jmethodID meth_getColumn;
 std::string getDataFilePath();
 static jmethodID meth_getDataFilePath;
+int64_t getEndOffset();
+static jmethodID meth_getEndOffset;
 std::string getErrorFilePath();
 static jmethodID meth_getErrorFilePath;
 std::string getEscapeCharacter();
@@ -905,6 +907,8 @@ std::string getQuoteCharacter();
 static jmethodID meth_getQuoteCharacter;
 std::string getRowDelimiter();
 static jmethodID meth_getRowDelimiter;
+int64_t getStartOffset();
+static jmethodID meth_getStartOffset;
 std::string getSubstituteCharacter();
 static jmethodID meth_getSubstituteCharacter;
 bool isTranslationRecovery();
@@ -1071,6 +1075,8 @@ bool isSamplingRepeatable();
 static jmethodID meth_isSamplingRepeatable;
 int64_t getSamplingRowCount();
 static jmethodID meth_getSamplingRowCount;
+int64_t getStartRid();
+static jmethodID meth_getStartRid;
 };
 
 class FENNEL_FARRAGO_EXPORT ProxyLbmGeneratorStreamDef
@@ -1287,6 +1293,10 @@ int64_t getEstimatedNumRows();
 static jmethodID meth_getEstimatedNumRows;
 int32_t getPartitionKeyCount();
 static jmethodID meth_getPartitionKeyCount;
+int64_t getRowLimit();
+static jmethodID meth_getRowLimit;
+int64_t getRowOffset();
+static jmethodID meth_getRowOffset;
 };
 
 class FENNEL_FARRAGO_EXPORT ProxySplicerIndexAccessorDef
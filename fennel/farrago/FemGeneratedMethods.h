@@ -104,6 +104,7 @@ jmethodID ProxyFlatFileTupleStreamDef::meth_getCalcProgram = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getCodePage = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getColumn = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getDataFilePath = 0;
+jmethodID ProxyFlatFileTupleStreamDef::meth_getEndOffset = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getErrorFilePath = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getEscapeCharacter = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getFieldDelimiter = 0;
@@ -113,6 +114,7 @@ jmethodID ProxyFlatFileTupleStreamDef::meth_isMapped = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getNumRowsScan = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getQuoteCharacter = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getRowDelimiter = 0;
+jmethodID ProxyFlatFileTupleStreamDef::meth_getStartOffset = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_getSubstituteCharacter = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_isTranslationRecovery = 0;
 jmethodID ProxyFlatFileTupleStreamDef::meth_isTrim = 0;
@@ -178,6 +180,7 @@ jmethodID ProxyLcsRowScanStreamDef::meth_getSamplingRate = 0;
 jmethodID ProxyLcsRowScanStreamDef::meth_getSamplingRepeatableSeed = 0;
 jmethodID ProxyLcsRowScanStreamDef::meth_isSamplingRepeatable = 0;
 jmethodID ProxyLcsRowScanStreamDef::meth_getSamplingRowCount = 0;
+jmethodID ProxyLcsRowScanStreamDef::meth_getStartRid = 0;
 jmethodID ProxyLhxAggStreamDef::meth_getCndGroupByKeys = 0;
 jmethodID ProxyLhxAggStreamDef::meth_getNumRows = 0;
 jmethodID ProxyLhxJoinStreamDef::meth_getCndBuildKeys = 0;
@@ -210,6 +213,8 @@ jmethodID ProxySortingStreamDef::meth_getDistinctness = 0;
 jmethodID ProxySortingStreamDef::meth_isEarlyClose = 0;
 jmethodID ProxySortingStreamDef::meth_getEstimatedNumRows = 0;
 jmethodID ProxySortingStreamDef::meth_getPartitionKeyCount = 0;
+jmethodID ProxySortingStreamDef::meth_getRowLimit = 0;
+jmethodID ProxySortingStreamDef::meth_getRowOffset = 0;
 jmethodID ProxySplicerIndexAccessorDef::meth_getSplicer = 0;
 jmethodID ProxyTableUpdaterDef::meth_getUpdateProj = 0;
 jmethodID ProxyTableWriterDef::meth_getIndexWriter = 0;
@@ -483,6 +488,7 @@ ProxyFlatFileTupleStreamDef::meth_getCalcProgram = pEnv->GetMethodID(jClass,"get
 ProxyFlatFileTupleStreamDef::meth_getCodePage = pEnv->GetMethodID(jClass,"getCodePage","()I");
 ProxyFlatFileTupleStreamDef::meth_getColumn = pEnv->GetMethodID(jClass,"getColumn","()Ljava/util/List;");
 ProxyFlatFileTupleStreamDef::meth_getDataFilePath = pEnv->GetMethodID(jClass,"getDataFilePath","()Ljava/lang/String;");
+ProxyFlatFileTupleStreamDef::meth_getEndOffset = pEnv->GetMethodID(jClass,"getEndOffset","()J");
 ProxyFlatFileTupleStreamDef::meth_getErrorFilePath = pEnv->GetMethodID(jClass,"getErrorFilePath","()Ljava/lang/String;");
 ProxyFlatFileTupleStreamDef::meth_getEscapeCharacter = pEnv->GetMethodID(jClass,"getEscapeCharacter","()Ljava/lang/String;");
 ProxyFlatFileTupleStreamDef::meth_getFieldDelimiter = pEnv->GetMethodID(jClass,"getFieldDelimiter","()Ljava/lang/String;");
@@ -492,6 +498,7 @@ ProxyFlatFileTupleStreamDef::meth_isMapped = pEnv->GetMethodID(jClass,"isMapped"
 ProxyFlatFileTupleStreamDef::meth_getNumRowsScan = pEnv->GetMethodID(jClass,"getNumRowsScan","()I");
 ProxyFlatFileTupleStreamDef::meth_getQuoteCharacter = pEnv->GetMethodID(jClass,"getQuoteCharacter","()Ljava/lang/String;");
 ProxyFlatFileTupleStreamDef::meth_getRowDelimiter = pEnv->GetMethodID(jClass,"getRowDelimiter","()Ljava/lang/String;");
+ProxyFlatFileTupleStreamDef::meth_getStartOffset = pEnv->GetMethodID(jClass,"getStartOffset","()J");
 ProxyFlatFileTupleStreamDef::meth_getSubstituteCharacter = pEnv->GetMethodID(jClass,"getSubstituteCharacter","()Ljava/lang/String;");
 ProxyFlatFileTupleStreamDef::meth_isTranslationRecovery = pEnv->GetMethodID(jClass,"isTranslationRecovery","()Z");
 ProxyFlatFileTupleStreamDef::meth_isTrim = pEnv->GetMethodID(jClass,"isTrim","()Z");
@@ -641,6 +648,7 @@ ProxyLcsRowScanStreamDef::meth_getSamplingRate = pEnv->GetMethodID(jClass,"getSa
 ProxyLcsRowScanStreamDef::meth_getSamplingRepeatableSeed = pEnv->GetMethodID(jClass,"getSamplingRepeatableSeed","()I");
 ProxyLcsRowScanStreamDef::meth_isSamplingRepeatable = pEnv->GetMethodID(jClass,"isSamplingRepeatable","()Z");
 ProxyLcsRowScanStreamDef::meth_getSamplingRowCount = pEnv->GetMethodID(jClass,"getSamplingRowCount","()J");
+ProxyLcsRowScanStreamDef::meth_getStartRid = pEnv->GetMethodID(jClass,"getStartRid","()J");
 
 jClass = pEnv->FindClass("net/sf/farrago/fem/fennel/FemLhxAggStreamDef");
 visitTbl.addMethod(jClass,JniProxyVisitTable<FemVisitor>::SharedVisitorMethod(new JniProxyVisitTable<FemVisitor>::VisitorMethodImpl<ProxyLhxAggStreamDef>));
@@ -703,6 +711,8 @@ ProxySortingStreamDef::meth_getDistinctness = pEnv->GetMethodID(jClass,"getDisti
 ProxySortingStreamDef::meth_isEarlyClose = pEnv->GetMethodID(jClass,"isEarlyClose","()Z");
 ProxySortingStreamDef::meth_getEstimatedNumRows = pEnv->GetMethodID(jClass,"getEstimatedNumRows","()J");
 ProxySortingStreamDef::meth_getPartitionKeyCount = pEnv->GetMethodID(jClass,"getPartitionKeyCount","()I");
+ProxySortingStreamDef::meth_getRowLimit = pEnv->GetMethodID(jClass,"getRowLimit","()J");
+ProxySortingStreamDef::meth_getRowOffset = pEnv->GetMethodID(jClass,"getRowOffset","()J");
 
 jClass = pEnv->FindClass("net/sf/farrago/fem/fennel/FemSplicerIndexAccessorDef");
 visitTbl.addMethod(jClass,JniProxyVisitTable<FemVisitor>::SharedVisitorMethod(new JniProxyVisitTable<FemVisitor>::VisitorMethodImpl<ProxySplicerIndexAccessorDef>));
@@ -1378,6 +1388,11 @@ std::string ProxyFlatFileTupleStreamDef::getDataFilePath()
 return constructString(pEnv->CallObjectMethod(jObject,meth_getDataFilePath));
 }
 
+int64_t ProxyFlatFileTupleStreamDef::getEndOffset()
+{
+return pEnv->CallLongMethod(jObject,meth_getEndOffset);
+}
+
 std::string ProxyFlatFileTupleStreamDef::getErrorFilePath()
 {
 return constructString(pEnv->CallObjectMethod(jObject,meth_getErrorFilePath));
@@ -1423,6 +1438,11 @@ std::string ProxyFlatFileTupleStreamDef::getRowDelimiter()
 return constructString(pEnv->CallObjectMethod(jObject,meth_getRowDelimiter));
 }
 
+int64_t ProxyFlatFileTupleStreamDef::getStartOffset()
+{
+return pEnv->CallLongMethod(jObject,meth_getStartOffset);
+}
+
 std::string ProxyFlatFileTupleStreamDef::getSubstituteCharacter()
 {
 return constructString(pEnv->CallObjectMethod(jObject,meth_getSubstituteCharacter));
@@ -1830,6 +1850,11 @@ int64_t ProxyLcsRowScanStreamDef::getSamplingRowCount()
 return pEnv->CallLongMethod(jObject,meth_getSamplingRowCount);
 }
 
+int64_t ProxyLcsRowScanStreamDef::getStartRid()
+{
+return pEnv->CallLongMethod(jObject,meth_getStartRid);
+}
+
 int64_t ProxyLhxAggStreamDef::getCndGroupByKeys()
 {
 return pEnv->CallLongMethod(jObject,meth_getCndGroupByKeys);
@@ -2030,6 +2055,16 @@ int32_t ProxySortingStreamDef::getPartitionKeyCount()
 return pEnv->CallIntMethod(jObject,meth_getPartitionKeyCount);
 }
 
+int64_t ProxySortingStreamDef::getRowLimit()
+{
+return pEnv->CallLongMethod(jObject,meth_getRowLimit);
+}
+
+int64_t ProxySortingStreamDef::getRowOffset()
+{
+return pEnv->CallLongMethod(jObject,meth_getRowOffset);
+}
+
 SharedProxyLbmSplicerStreamDef ProxySplicerIndexAccessorDef::getSplicer()
 {
 SharedProxyLbmSplicerStreamDef p;
@@ -177,6 +177,109 @@ Java_net_sf_farrago_fennel_FennelStorage_tupleStreamTransformFetch(
     }
 }
 
+// Wraps the tuples available for consumption from a buffer in a direct
+// ByteBuffer, without consuming them; the caller must release them later via
+// tupleStreamRelease.  Returns the number of bytes wrapped.
+static jint wrapConsumptionBuffer(
+    JniEnvRef &pEnv,
+    ExecStreamBufAccessor &bufAccessor,
+    jobjectArray bufferHolder)
+{
+    uint cbActual = bufAccessor.getConsumptionAvailable();
+    assert(cbActual);
+    PConstBuffer pBuffer = bufAccessor.getConsumptionStart();
+    jobject byteBuffer = pEnv->NewDirectByteBuffer(
+        const_cast<PBuffer>(pBuffer), cbActual);
+    if (!byteBuffer) {
+        // JNI has thrown; the return value will be ignored
+        return 0;
+    }
+    pEnv->SetObjectArrayElement(bufferHolder, 0, byteBuffer);
+    pEnv->DeleteLocalRef(byteBuffer);
+    return cbActual;
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_net_sf_farrago_fennel_FennelStorage_tupleStreamFetchDirect(
+    JNIEnv *pEnvInit, jclass, jlong hStream, jobjectArray bufferHolder)
+{
+    JniEnvRef pEnv(pEnvInit);
+    try {
+        ExecStream &stream =
+            CmdInterpreter::getExecStreamFromLong(hStream);
+        ExecStreamScheduler *scheduler = stream.getGraph().getScheduler();
+        assert(scheduler);
+        ExecStreamBufAccessor &bufAccessor = scheduler->readStream(stream);
+        if (bufAccessor.getState() == EXECBUF_EOS) {
+            return 0;
+        }
+        assert(bufAccessor.isConsumptionPossible());
+        return wrapConsumptionBuffer(pEnv, bufAccessor, bufferHolder);
+    } catch (std::exception &ex) {
+        pEnv.handleExcn(ex);
+        return 0;
+    }
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_net_sf_farrago_fennel_FennelStorage_tupleStreamTransformFetchDirect(
+    JNIEnv *pEnvInit, jclass, jlong hStream, jint inputOrdinal,
+    jobjectArray bufferHolder)
+{
+    JniEnvRef pEnv(pEnvInit);
+    try {
+        ExecStream &stream =
+            CmdInterpreter::getExecStreamFromLong(hStream);
+
+        uint iInput = static_cast<uint>(inputOrdinal);
+
+        SharedExecStreamBufAccessor bufAccessor =
+            stream.getGraph().getStreamInputAccessor(
+                stream.getStreamId(), iInput);
+
+        if (bufAccessor->getState() == EXECBUF_EOS) {
+            return 0;
+        }
+
+        if (!bufAccessor->isConsumptionPossible()) {
+            return -1;
+        }
+
+        return wrapConsumptionBuffer(pEnv, *bufAccessor, bufferHolder);
+    } catch (std::exception &ex) {
+        pEnv.handleExcn(ex);
+        return 0;
+    }
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_net_sf_farrago_fennel_FennelStorage_tupleStreamRelease(
+    JNIEnv *pEnvInit, jclass, jlong hStream, jint inputOrdinal,
+    jint cbConsumed)
+{
+    JniEnvRef pEnv(pEnvInit);
+    try {
+        ExecStream &stream =
+            CmdInterpreter::getExecStreamFromLong(hStream);
+        SharedExecStreamBufAccessor bufAccessor;
+        if (inputOrdinal < 0) {
+            // the buffer was fetched from the stream's own output
+            bufAccessor =
+                stream.getGraph().getStreamOutputAccessor(
+                    stream.getStreamId(), 0);
+        } else {
+            bufAccessor =
+                stream.getGraph().getStreamInputAccessor(
+                    stream.getStreamId(), static_cast<uint>(inputOrdinal));
+        }
+        assert(bufAccessor->getConsumptionAvailable() >= uint(cbConsumed));
+        bufAccessor->consumeData(
+            bufAccessor->getConsumptionStart() + cbConsumed);
+    } catch (std::exception &ex) {
+        pEnv.handleExcn(ex);
+    }
+}
+
 extern "C" JNIEXPORT void JNICALL
 Java_net_sf_farrago_fennel_FennelStorage_tupleStreamGraphGetInputStreams(
     JNIEnv *pEnvInit, jclass,
@@ -110,6 +110,30 @@ JNIEXPORT jint JNICALL Java_net_sf_farrago_fennel_FennelStorage_tupleStreamFetch
 JNIEXPORT jint JNICALL Java_net_sf_farrago_fennel_FennelStorage_tupleStreamTransformFetch
   (JNIEnv *, jclass, jlong, jint, jbyteArray);
 
+/*
+ * Class:     net_sf_farrago_fennel_FennelStorage
+ * Method:    tupleStreamFetchDirect
+ * Signature: (J[Ljava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL Java_net_sf_farrago_fennel_FennelStorage_tupleStreamFetchDirect
+  (JNIEnv *, jclass, jlong, jobjectArray);
+
+/*
+ * Class:     net_sf_farrago_fennel_FennelStorage
+ * Method:    tupleStreamTransformFetchDirect
+ * Signature: (JI[Ljava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL Java_net_sf_farrago_fennel_FennelStorage_tupleStreamTransformFetchDirect
+  (JNIEnv *, jclass, jlong, jint, jobjectArray);
+
+/*
+ * Class:     net_sf_farrago_fennel_FennelStorage
+ * Method:    tupleStreamRelease
+ * Signature: (JII)V
+ */
+JNIEXPORT void JNICALL Java_net_sf_farrago_fennel_FennelStorage_tupleStreamRelease
+  (JNIEnv *, jclass, jlong, jint, jint);
+
 /*
  * Class:     net_sf_farrago_fennel_FennelStorage
  * Method:    tupleStreamRestart
@@ -57,7 +57,7 @@ void FlatFileBuffer::setStorage(char *pBuffer, uint size)
     pCurrent = NULL;
 }
 
-void FlatFileBuffer::open()
+void FlatFileBuffer::open(FileSize offset)
 {
     // in case we are reopening
     close();
@@ -73,7 +73,18 @@ void FlatFileBuffer::open()
 
     needsClose = true;
 
-    filePosition = 0;
+    if (offset > 0) {
+#ifdef __MSVC__
+        int rc = _fseeki64(pFile, offset, SEEK_SET);
+#else
+        int rc = fseeko(pFile, offset, SEEK_SET);
+#endif
+        if (rc != 0) {
+            throw FennelExcn(
+                FennelResource::instance().readDataFailed(path));
+        }
+    }
+    filePosition = offset;
     contentSize = 0;
     pCurrent = NULL;
 }
@@ -145,6 +156,14 @@ void FlatFileBuffer::setReadPtr(char *ptr)
     pCurrent = ptr;
 }
 
+FileSize FlatFileBuffer::getReadOffset()
+{
+    if (pCurrent == NULL) {
+        return filePosition;
+    }
+    return filePosition - (getEndPtr() - pCurrent);
+}
+
 FENNEL_END_CPPFILE("$Id$");
 
 // End FlatFileBuffer.cpp
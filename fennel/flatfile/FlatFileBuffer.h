@@ -91,8 +91,10 @@ public:
 
     /**
      * Opens a file and obtains resources needed for reading the file
+     *
+     * @param offset offset in the file of the first character to be read
      */
-    void open();
+    void open(FileSize offset = 0);
 
     /**
      * Sets internal buffers
@@ -150,6 +152,11 @@ public:
      * Consumes buffer contents up to pointer
      */
     void setReadPtr(char *ptr);
+
+    /**
+     * Returns the offset in the file of the character at the read pointer
+     */
+    FileSize getReadOffset();
 };
 
 FENNEL_END_NAMESPACE
@@ -57,12 +57,32 @@ struct FlatFileExecStreamParams : public SingleOutputExecStreamParams
     std::string dataFilePath;
 
     /**
-     * Path to the error log used for writing errors encountered while
-     * processing tuples. If this value is empty, then no logging will
-     * be performed.
+     * Path to a log for the scan. Rejected rows are posted as errors to the
+     * stream's error target; when a query scan reaches the end of its input,
+     * it appends a line to this file with the data file path, the start and
+     * end offsets of the range read (the end is empty for the end of the
+     * file), the number of rows read, and the number of rows rejected,
+     * separated by commas. If this value is empty, then no logging will be
+     * performed.
      */
     std::string errorFilePath;
 
+    /**
+     * Offset in the data file of the range of the file to be read. A row
+     * belongs to the range if its first character is in the range. When the
+     * offset is not zero, the scan starts after the first row delimiter at or
+     * after the character before the offset, so a row delimiter must not
+     * appear within a quoted value. A header is only read from offset zero.
+     */
+    FileSize startOffset;
+
+    /**
+     * Offset in the data file just past the range of the file to be read, or
+     * MAXU to read to the end of the file. The last row read may extend past
+     * this offset.
+     */
+    FileSize endOffset;
+
     /**
      * Delimiter used to separate fields in a row. This value is typically
      * ',' (comma) or '\\t' (tab) or zero, which signifies no delimiter.
@@ -153,6 +173,8 @@ struct FlatFileExecStreamParams : public SingleOutputExecStreamParams
     explicit FlatFileExecStreamParams()
     {
         errorFilePath = "";
+        startOffset = 0;
+        endOffset = MAXU;
         fieldDelim = ',';
         rowDelim = '\n';
         quoteChar = '"';
@@ -25,6 +25,8 @@
 
 #include "fennel/flatfile/FlatFileExecStreamImpl.h"
 
+#include <fstream>
+
 FENNEL_BEGIN_CPPFILE("$Id$");
 
 FlatFileExecStream *FlatFileExecStream::newFlatFileExecStream()
@@ -41,8 +43,11 @@ void FlatFileExecStreamImpl::prepare(
 {
     SingleOutputExecStream::prepare(params);
 
-    header = params.header;
     dataFilePath = params.dataFilePath;
+    errorFilePath = params.errorFilePath;
+    startOffset = params.startOffset;
+    endOffset = params.endOffset;
+    header = params.header && (startOffset == 0);
     lenient = params.lenient;
     trim = params.trim;
     mapped = params.mapped;
@@ -93,8 +98,13 @@ void FlatFileExecStreamImpl::open(bool restart)
         pBufferStorage = bufferLock.getPage().getWritableData();
         pBuffer->setStorage((char*)pBufferStorage, cbPageSize);
     }
-    pBuffer->open();
+    // Start reading at the character before the range, so that a row which
+    // starts exactly at the start of the range is not skipped.
+    pBuffer->open((startOffset > 0) ? (startOffset - 1) : 0);
     pBuffer->read();
+    if (startOffset > 0) {
+        skipPartialRow();
+    }
     next = pBuffer->getReadPtr();
     isRowPending = false;
     nRowsOutput = nRowErrors = 0;
@@ -195,6 +205,7 @@ ExecStreamResult FlatFileExecStreamImpl::execute(
             }
 
             if ((numRowsScan > 0 && numRowsScan == nRowsOutput)
+                || !isRowInRange()
                 || pBuffer->isDone())
             {
                 done = true;
@@ -244,6 +255,7 @@ ExecStreamResult FlatFileExecStreamImpl::execute(
 
         // close stream if no more rows are available
         if (done) {
+            logRowCounts();
             pOutAccessor->markEOS();
             return EXECRC_EOS;
         }
@@ -424,6 +436,59 @@ void FlatFileExecStreamImpl::checkRowDelimiter()
     }
 }
 
+void FlatFileExecStreamImpl::skipPartialRow()
+{
+    for (;;) {
+        char *delim = const_cast<char *>(
+            pParser->scanRowDelim(
+                pBuffer->getReadPtr(), pBuffer->getSize(), true));
+        pBuffer->setReadPtr(delim);
+        if (delim < pBuffer->getEndPtr() || pBuffer->isComplete()) {
+            return;
+        }
+        pBuffer->read();
+    }
+}
+
+bool FlatFileExecStreamImpl::isRowInRange()
+{
+    if (isMAXU(endOffset)) {
+        return true;
+    }
+    for (;;) {
+        char *row = const_cast<char *>(
+            pParser->scanRowDelim(
+                pBuffer->getReadPtr(), pBuffer->getSize(), false));
+        pBuffer->setReadPtr(row);
+        if (row < pBuffer->getEndPtr() || pBuffer->isComplete()) {
+            break;
+        }
+        pBuffer->read();
+    }
+    return pBuffer->getReadOffset() < endOffset;
+}
+
+void FlatFileExecStreamImpl::logRowCounts()
+{
+    if (errorFilePath.empty()
+        || (mode != FLATFILE_MODE_QUERY && mode != FLATFILE_MODE_QUERY_TEXT))
+    {
+        return;
+    }
+    std::ofstream log(errorFilePath.c_str(), std::ios::out | std::ios::app);
+    if (!log) {
+        FENNEL_TRACE(
+            TRACE_WARNING,
+            "could not open flat file log " << errorFilePath);
+        return;
+    }
+    log << dataFilePath << "," << startOffset << ",";
+    if (!isMAXU(endOffset)) {
+        log << endOffset;
+    }
+    log << "," << nRowsOutput << "," << nRowErrors << std::endl;
+}
+
 void FlatFileExecStreamImpl::closeImpl()
 {
     releaseResources();
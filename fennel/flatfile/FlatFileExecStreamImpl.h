@@ -55,6 +55,8 @@ class FENNEL_FLATFILE_EXPORT FlatFileExecStreamImpl
 
     // parameters
     std::string dataFilePath;
+    std::string errorFilePath;
+    FileSize startOffset, endOffset;
     bool header;
     bool lenient;
     bool trim;
@@ -155,6 +157,24 @@ class FENNEL_FLATFILE_EXPORT FlatFileExecStreamImpl
      */
     void checkRowDelimiter();
 
+    /**
+     * Skips the remainder of a row which started before the range of the
+     * file being read, up to the next row delimiter.
+     */
+    void skipPartialRow();
+
+    /**
+     * Skips the row delimiters before the next row, and determines whether
+     * the row starts within the range of the file being read.
+     */
+    bool isRowInRange();
+
+    /**
+     * Appends the number of rows read and rejected by the scan to its log
+     * file, if it has one.
+     */
+    void logRowCounts();
+
 public:
     // implement ExecStream
     virtual void prepare(FlatFileExecStreamParams const &params);
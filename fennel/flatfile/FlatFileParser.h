@@ -417,23 +417,6 @@ class FENNEL_FLATFILE_EXPORT FlatFileParser
         bool rowDelim,
         FlatFileRowParseResult &result);
 
-    /**
-     * Scan through buffer to find a row delimiter, or non row delimiter
-     * character.
-     *
-     * @param[in] buffer flat file buffer to be parsed
-     *
-     * @param[in] size size of buffer
-     *
-     * @param[in] search if true, look for row delimiter, else a non row delim
-     *
-     * @return pointer to character found, or end of buffer
-     */
-    const char *scanRowDelim(
-        const char *buffer,
-        int size,
-        bool search);
-
     /**
      * Determines whether or not character is a row delimiter. If the row
      * delimiter is any of the line characters (/r or /n), then it must be
@@ -464,6 +447,23 @@ public:
         const char escape,
         bool doTrim = false);
 
+    /**
+     * Scan through buffer to find a row delimiter, or non row delimiter
+     * character.
+     *
+     * @param[in] buffer flat file buffer to be parsed
+     *
+     * @param[in] size size of buffer
+     *
+     * @param[in] search if true, look for row delimiter, else a non row delim
+     *
+     * @return pointer to character found, or end of buffer
+     */
+    const char *scanRowDelim(
+        const char *buffer,
+        int size,
+        bool search);
+
     /**
      * Scans through buffer until the end of a row is reached, and locates
      * columns within the row. The main options are a "bounded", "lenient",
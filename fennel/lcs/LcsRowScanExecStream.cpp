@@ -127,6 +127,8 @@ void LcsRowScanExecStream::prepare(LcsRowScanExecStreamParams const &params)
     LcsRowScanBaseExecStream::prepare(params);
 
     isFullScan = params.isFullScan;
+    startRid = params.startRid;
+    assert(isFullScan || startRid == LcsRid(0));
     hasExtraFilter = params.hasExtraFilter;
 
     // Set up rid bitmap input stream
@@ -212,7 +214,7 @@ void LcsRowScanExecStream::open(bool restart)
     ridRunIter.reset();
 
     if (isFullScan) {
-        inputRid = LcsRid(0);
+        inputRid = startRid;
         readDeletedRid = true;
         deletedRidEos = false;
     }
@@ -560,6 +562,11 @@ ExecStreamResult LcsRowScanExecStream::fillRidRunBuffer()
                     readDeletedRid = false;
                 }
             }
+            // deleted rids before the start of the scan don't matter
+            if (!deletedRidEos && deletedRid < inputRid) {
+                readDeletedRid = true;
+                continue;
+            }
             // skip over deleted rids
             if (!deletedRidEos && inputRid == deletedRid) {
                 inputRid++;
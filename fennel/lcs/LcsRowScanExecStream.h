@@ -98,6 +98,17 @@ struct FENNEL_LCS_EXPORT LcsRowScanExecStreamParams
      * specific to sampling.
      */
     int64_t samplingRowCount;
+
+    /**
+     * For a full table scan, the first rid to read; rows before it are
+     * skipped without being read.  0 (the default) scans the whole table.
+     */
+    LcsRid startRid;
+
+    explicit LcsRowScanExecStreamParams()
+    {
+        startRid = LcsRid(0);
+    }
 };
 
 /**
@@ -186,6 +197,11 @@ class FENNEL_LCS_EXPORT LcsRowScanExecStream
      */
     bool isFullScan;
 
+    /**
+     * First rid read by a full table scan
+     */
+    LcsRid startRid;
+
     /**
      * true if only returning row count
      */
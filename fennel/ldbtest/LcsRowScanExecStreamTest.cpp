@@ -109,6 +109,31 @@ protected:
         uint skipRows,
         uint expectedNumRows);
 
+    /**
+     * Does a full table scan starting at a given rid, with a leading range
+     * of rows deleted.  Assumes clusters have been loaded by
+     * loadClusters/loadOneCluster.
+     *
+     * @param nRows total number of rows in the clusters
+     *
+     * @param nCols number of columns in each cluster
+     *
+     * @param nClusters number of clusters
+     *
+     * @param proj columns to be projected
+     *
+     * @param startRid first rid to scan
+     *
+     * @param nDeletedRows number of leading rows which are deleted
+     */
+    void testScanColsFromRid(
+        uint nRows,
+        uint nCols,
+        uint nClusters,
+        TupleProjection proj,
+        uint startRid,
+        uint nDeletedRows);
+
     /**
      * Filter rows from clusters.  Assumes clusters have been loaded by
      * loadClusters/loadOneCluster.
@@ -228,6 +253,7 @@ public:
         FENNEL_UNIT_TEST_CASE(LcsRowScanExecStreamTest, testBernoulliSampling);
         FENNEL_UNIT_TEST_CASE(LcsRowScanExecStreamTest, testSystemSampling);
         FENNEL_UNIT_TEST_CASE(LcsRowScanExecStreamTest, testCount);
+        FENNEL_UNIT_TEST_CASE(LcsRowScanExecStreamTest, testScanFromRid);
     }
 
     void testCaseSetUp();
@@ -240,6 +266,7 @@ public:
     void testBernoulliSampling();
     void testSystemSampling();
     void testCount();
+    void testScanFromRid();
 };
 
 void LcsRowScanExecStreamTest::loadClusters(
@@ -442,6 +469,89 @@ void LcsRowScanExecStreamTest::testScanCols(
     verifyOutput(*pOutputStream, expectedNumRows, resultGenerator);
 }
 
+void LcsRowScanExecStreamTest::testScanColsFromRid(
+    uint nRows,
+    uint nCols,
+    uint nClusters,
+    TupleProjection proj,
+    uint startRid,
+    uint nDeletedRows)
+{
+    ValuesExecStreamParams valuesParams;
+    boost::shared_array<FixedBuffer> pBuffer;
+    ExecStreamEmbryo valuesStreamEmbryo;
+    LcsRowScanExecStreamParams scanParams;
+
+    scanParams.hasExtraFilter = false;
+    scanParams.samplingMode = SAMPLING_OFF;
+    scanParams.isFullScan = true;
+    scanParams.startRid = LcsRid(startRid);
+
+    // the values stream simulates the scan of the deletion index
+    valuesParams.outputTupleDesc.push_back(attrDesc_int64);
+    valuesParams.outputTupleDesc.push_back(attrDesc_bitmap);
+    valuesParams.outputTupleDesc.push_back(attrDesc_bitmap);
+
+    uint bufferSize = std::max(
+        16, (int) (nDeletedRows / 8 + nDeletedRows / bitmapColSize * 8));
+    pBuffer.reset(new FixedBuffer[bufferSize]);
+    valuesParams.pTupleBuffer = pBuffer;
+    if (nDeletedRows > 0) {
+        valuesParams.bufSize = generateBitmaps(
+            nDeletedRows, 1, valuesParams.outputTupleDesc, pBuffer.get());
+        assert(valuesParams.bufSize <= bufferSize);
+    } else {
+        valuesParams.bufSize = 0;
+    }
+    valuesStreamEmbryo.init(new ValuesExecStream(), valuesParams);
+    valuesStreamEmbryo.getStream()->setName("ValuesExecStream");
+
+    for (uint i = 0; i < nClusters; i++) {
+        struct LcsClusterScanDef clusterScanDef;
+
+        for (uint j = 0; j < nCols; j++) {
+            clusterScanDef.clusterTupleDesc.push_back(attrDesc_int64);
+        }
+
+        clusterScanDef.pSegment = bTreeClusters[i]->segmentAccessor.pSegment;
+        clusterScanDef.pCacheAccessor =
+            bTreeClusters[i]->segmentAccessor.pCacheAccessor;
+        clusterScanDef.tupleDesc = bTreeClusters[i]->tupleDescriptor;
+        clusterScanDef.keyProj = bTreeClusters[i]->keyProjection;
+        clusterScanDef.rootPageId = bTreeClusters[i]->rootPageId;
+        clusterScanDef.segmentId = bTreeClusters[i]->segmentId;
+        clusterScanDef.pageOwnerId = bTreeClusters[i]->pageOwnerId;
+
+        scanParams.lcsClusterScanDefs.push_back(clusterScanDef);
+    }
+
+    scanParams.outputProj = proj;
+    for (uint i = 0; i < proj.size(); i++) {
+        scanParams.outputTupleDesc.push_back(attrDesc_int64);
+    }
+
+    ExecStreamEmbryo scanStreamEmbryo;
+    scanStreamEmbryo.init(new LcsRowScanExecStream(), scanParams);
+    scanStreamEmbryo.getStream()->setName("RowScanExecStream");
+    SharedExecStream pOutputStream =
+        prepareTransformGraph(valuesStreamEmbryo, scanStreamEmbryo);
+
+    // the scan returns the rows from the later of startRid and the end of
+    // the deleted rows
+    uint firstRid = std::max(startRid, nDeletedRows);
+    uint expectedNumRows = (firstRid < nRows) ? (nRows - firstRid) : 0;
+    vector<boost::shared_ptr<ColumnGenerator<int64_t> > > columnGenerators;
+    for (uint i = 0; i < proj.size(); i++) {
+        SharedInt64ColumnGenerator col =
+            SharedInt64ColumnGenerator(
+                new SeqColumnGenerator(proj[i] + firstRid));
+        columnGenerators.push_back(col);
+    }
+
+    CompositeExecStreamGenerator resultGenerator(columnGenerators);
+    verifyOutput(*pOutputStream, expectedNumRows, resultGenerator);
+}
+
 int LcsRowScanExecStreamTest::generateBitmaps(
     uint nRows, uint skipRows, TupleDescriptor const &bitmapTupleDesc,
     PBuffer pBuf)
@@ -655,6 +765,39 @@ void LcsRowScanExecStreamTest::testCount()
         &countParams);
 }
 
+/**
+ * Do full table scans which start part way through the table
+ */
+void LcsRowScanExecStreamTest::testScanFromRid()
+{
+    uint nRows = 50000;
+    uint nCols = 12;
+    uint nClusters = 3;
+    TupleProjection proj;
+
+    loadClusters(nRows, nCols, nClusters, false);
+    for (uint i = 0; i < nClusters; i++) {
+        for (uint j = 0; j < nCols; j++) {
+            proj.push_back(i * nCols + j);
+        }
+    }
+
+    // start in the middle of the table
+    testScanColsFromRid(nRows, nCols, nClusters, proj, 20000, 0);
+    resetExecStreamTest();
+
+    // deleted rows both before and after the starting rid
+    testScanColsFromRid(nRows, nCols, nClusters, proj, 20000, 30000);
+    resetExecStreamTest();
+
+    // deleted rows only before the starting rid
+    testScanColsFromRid(nRows, nCols, nClusters, proj, 20000, 10000);
+    resetExecStreamTest();
+
+    // start past the end of the table
+    testScanColsFromRid(nRows, nCols, nClusters, proj, nRows + 10, 0);
+}
+
 /**
  * Create an empty cluster with 1 column.  Try reading a rid from it
  */
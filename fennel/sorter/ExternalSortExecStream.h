@@ -84,6 +84,22 @@ struct ExternalSortExecStreamParams : public ConduitExecStreamParams
      * "partition" of rows. If 0, sort the entire input by sortKey.
      */
     uint partitionKeyCount;
+
+    /**
+     * Maximum number of rows to return, after skipping rowOffset rows.  If
+     * MAXU (the default), all rows are returned.  Otherwise, the sort keeps
+     * at most rowOffset + rowLimit rows from each run, and input rows which
+     * cannot make it into the result are discarded as they are loaded.
+     * A limit cannot be combined with a partitioned sort.
+     */
+    RecordNum rowLimit;
+
+    /**
+     * Number of leading rows of sorted output to skip (default 0).
+     */
+    RecordNum rowOffset;
+
+    explicit ExternalSortExecStreamParams();
 };
 
 /**
@@ -31,6 +31,12 @@ ExternalSortExecStream *ExternalSortExecStream::newExternalSortExecStream()
     return new ExternalSortExecStreamImpl();
 }
 
+ExternalSortExecStreamParams::ExternalSortExecStreamParams()
+{
+    rowLimit = MAXU;
+    rowOffset = 0;
+}
+
 ExternalSortInfo::ExternalSortInfo(ExecStream &streamInit)
     : stream(streamInit)
 {
@@ -39,6 +45,8 @@ ExternalSortInfo::ExternalSortInfo(ExecStream &streamInit)
     nSortMemPagesPerRun = 0;
     cbPage = 0;
     partitionKeyCount = 0;
+    rowLimit = MAXU;
+    rowOffset = 0;
 }
 
 int ExternalSortInfo::compareKeys(TupleData const &key1, TupleData const &key2)
@@ -123,6 +131,13 @@ void ExternalSortExecStreamImpl::prepare(
     if (earlyClose) {
         assert(sortInfo.partitionKeyCount == 0);
     }
+    sortInfo.rowOffset = params.rowOffset;
+    if (isMAXU(params.rowLimit)) {
+        sortInfo.rowLimit = MAXU;
+    } else {
+        sortInfo.rowLimit = params.rowOffset + params.rowLimit;
+        assert(sortInfo.partitionKeyCount == 0);
+    }
 }
 
 void ExternalSortExecStreamImpl::getResourceRequirements(
@@ -136,19 +151,33 @@ void ExternalSortExecStreamImpl::getResourceRequirements(
     uint minPages = 3;
     minQuantity.nCachePages += minPages;
 
+    // a limited sort never keeps more rows than it is going to return
+    RecordNum nRowsEstimate = estimatedNumRows;
+    if (isMAXU(estimatedNumRows)) {
+        nRowsEstimate = sortInfo.rowLimit;
+    } else if (!isMAXU(sortInfo.rowLimit)) {
+        nRowsEstimate = std::min(nRowsEstimate, sortInfo.rowLimit);
+    }
+
     // if no estimated row count is available, request an unbounded amount
     // from the resource governor; otherwise, estimate the number of pages
     // for an in-memory sort
-    if (isMAXU(estimatedNumRows)) {
+    if (isMAXU(nRowsEstimate)) {
         optType = EXEC_RESOURCE_UNBOUNDED;
     } else {
         // use the average of the min and max rowsizes
         // TODO - use stats to come up with a more accurate average
+        TupleAccessor &tupleAccessor = pOutAccessor->getScratchTupleAccessor();
+        RecordNum cbRow =
+            (tupleAccessor.getMaxByteCount()
+             + tupleAccessor.getMinByteCount()) / 2;
+        if (!isMAXU(sortInfo.rowLimit)) {
+            // a limited sort keeps each row in a slot of the maximum row
+            // size, plus an index entry (see ExternalSortRunLoader)
+            cbRow = tupleAccessor.getMaxByteCount() + 2 * sizeof(PBuffer);
+        }
         RecordNum nPages =
-            estimatedNumRows
-            * ((pOutAccessor->getScratchTupleAccessor().getMaxByteCount()
-                + pOutAccessor->getScratchTupleAccessor().getMinByteCount())
-               / 2)
+            nRowsEstimate * cbRow
             / sortInfo.memSegmentAccessor.pSegment->getUsablePageSize();
         uint numPages;
         if (nPages >= uint(MAXU)) {
@@ -282,6 +311,11 @@ ExecStreamResult ExternalSortExecStreamImpl::execute(
                 reallocateResources();
                 continue;
             }
+            if (!isMAXU(sortInfo.rowLimit)) {
+                // a limited sort stops short of the end of its runs, so
+                // hand their remaining pages back now rather than at close
+                releaseStoredRuns();
+            }
             pOutAccessor->markEOS();
         }
         return rc2;
@@ -310,6 +344,17 @@ void ExternalSortExecStreamImpl::reallocateResources()
     storedRuns.clear();
 }
 
+void ExternalSortExecStreamImpl::releaseStoredRuns()
+{
+    if (pFinalRunAccessor) {
+        pFinalRunAccessor->releaseResources();
+    }
+    if (pMerger) {
+        pMerger->releaseResources();
+    }
+    storedRuns.clear();
+}
+
 void ExternalSortExecStreamImpl::closeImpl()
 {
     releaseResources();
@@ -210,6 +210,12 @@ protected:
      */
     void releaseResources();
 
+    /**
+     * Releases the stored runs (and the temp pages they still occupy) once
+     * a limited sort has returned all of its rows.
+     */
+    void releaseStoredRuns();
+
     /**
      * Reallocates resources for partition sorts.
      */
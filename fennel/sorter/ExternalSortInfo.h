@@ -97,6 +97,18 @@ struct ExternalSortInfo
      */
     uint partitionKeyCount;
 
+    /**
+     * Maximum number of rows needed from the sorted output (including any
+     * skipped rows), or MAXU if all of them are needed.  No run ever holds
+     * more rows than this.
+     */
+    RecordNum rowLimit;
+
+    /**
+     * Number of leading rows of sorted output to skip.
+     */
+    RecordNum rowOffset;
+
 
     explicit ExternalSortInfo(ExecStream &);
 
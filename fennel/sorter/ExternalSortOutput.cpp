@@ -31,6 +31,12 @@ ExternalSortOutput::ExternalSortOutput(ExternalSortInfo &sortInfoIn)
     pSubStream = NULL;
     pFetchArray = NULL;
     iCurrentTuple = 0;
+    nTuplesToSkip = sortInfo.rowOffset;
+    if (isMAXU(sortInfo.rowLimit)) {
+        nTuplesLeft = MAXU;
+    } else {
+        nTuplesLeft = sortInfo.rowLimit - sortInfo.rowOffset;
+    }
 
     tupleAccessor.compute(sortInfo.tupleDesc);
 }
@@ -60,6 +66,9 @@ ExecStreamResult ExternalSortOutput::fetch(
     PBuffer pNextTuple = pOutBuf;
 
     for (;;) {
+        if (!nTuplesLeft) {
+            goto done;
+        }
         if (iCurrentTuple >= pFetchArray->nTuples) {
             ExternalSortRC rc = pSubStream->fetch(EXTSORT_FETCH_ARRAY_SIZE);
             if (rc == EXTSORT_ENDOFDATA) {
@@ -69,6 +78,14 @@ ExecStreamResult ExternalSortOutput::fetch(
         }
 
         while (iCurrentTuple < pFetchArray->nTuples) {
+            if (nTuplesToSkip) {
+                --nTuplesToSkip;
+                iCurrentTuple++;
+                continue;
+            }
+            if (!nTuplesLeft) {
+                goto done;
+            }
             PConstBuffer pSrcTuple =
                 pFetchArray->ppTupleBuffers[iCurrentTuple];
             uint cbTuple = tupleAccessor.getBufferByteCount(pSrcTuple);
@@ -83,6 +100,9 @@ ExecStreamResult ExternalSortOutput::fetch(
             cbRemaining -= cbTuple;
             pNextTuple += cbTuple;
             iCurrentTuple++;
+            if (!isMAXU(nTuplesLeft)) {
+                --nTuplesLeft;
+            }
         }
     }
 
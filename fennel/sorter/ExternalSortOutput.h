@@ -57,6 +57,16 @@ class FENNEL_SORTER_EXPORT ExternalSortOutput
      */
     uint iCurrentTuple;
 
+    /**
+     * Number of leading tuples still to be skipped.
+     */
+    RecordNum nTuplesToSkip;
+
+    /**
+     * Number of tuples which may still be returned; MAXU for no limit.
+     */
+    RecordNum nTuplesLeft;
+
 public:
     explicit ExternalSortOutput(ExternalSortInfo &info);
     virtual ~ExternalSortOutput();
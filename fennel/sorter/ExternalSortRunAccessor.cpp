@@ -81,18 +81,29 @@ void ExternalSortRunAccessor::storeRun(
 
     ExternalSortFetchArray &fetchArray = pObjLoad.bindFetchArray();
 
+    // with a row limit, a run (in particular an intermediate merge) never
+    // needs more rows than the limit
+    RecordNum nTuplesLeft = sortInfo.rowLimit;
     ExternalSortRC rc;
     uint iTuple = 0;
     do {
         for (; iTuple < fetchArray.nTuples; iTuple++) {
+            if (!nTuplesLeft) {
+                break;
+            }
             PBuffer pSrcBuf = fetchArray.ppTupleBuffers[iTuple];
             uint cbTuple = tupleAccessor.getBufferByteCount(pSrcBuf);
             PBuffer pTarget = pSegOutputStream->getWritePointer(cbTuple);
             memcpy(pTarget, pSrcBuf, cbTuple);
             pSegOutputStream->consumeWritePointer(cbTuple);
+            --nTuplesLeft;
         }
         iTuple = 0;
 
+        if (!nTuplesLeft) {
+            rc = EXTSORT_ENDOFDATA;
+            break;
+        }
         rc = pObjLoad.fetch(EXTSORT_FETCH_ARRAY_SIZE);
     } while (rc == EXTSORT_SUCCESS);
 
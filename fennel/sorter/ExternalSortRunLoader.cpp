@@ -49,6 +49,12 @@ ExternalSortRunLoader::ExternalSortRunLoader(ExternalSortInfo &sortInfoIn)
     partitionKeyData.computeAndAllocate(sortInfo.keyDesc);
     partitionKeyInitialized = false;
 
+    limitKeyData.computeAndAllocate(sortInfo.keyDesc);
+    limitKeyInitialized = false;
+    nTuplesToSort = 0;
+    heapMode = false;
+    cbHeapSlot = tupleAccessor.getMaxByteCount();
+
     // TODO:  utility methods for calculations below, and assert block
     // size is power of 2
     uint nKeysPerPage = sortInfo.cbPage / sizeof(PBuffer);
@@ -105,6 +111,35 @@ void ExternalSortRunLoader::startRun()
     nTuplesLoaded = nTuplesFetched = 0;
 
     fetchArray.nTuples = 0;
+
+    heapMode = canKeepHeap();
+    if (heapMode) {
+        FENNEL_TRACE(
+            TRACE_FINE,
+            "keeping top " << sortInfo.rowLimit << " tuples in memory");
+    }
+}
+
+bool ExternalSortRunLoader::canKeepHeap()
+{
+    if (isMAXU(sortInfo.rowLimit) || !sortInfo.rowLimit
+        || sortInfo.keyProj.empty() || sortInfo.partitionKeyCount > 0)
+    {
+        return false;
+    }
+    RecordNum nSlotsPerPage = sortInfo.cbPage / cbHeapSlot;
+    if (!nSlotsPerPage) {
+        return false;
+    }
+    RecordNum nKeysPerPage = RecordNum(indexPageMask) + 1;
+    RecordNum nDataPages =
+        (sortInfo.rowLimit + nSlotsPerPage - 1) / nSlotsPerPage;
+    RecordNum nIndexPages =
+        (sortInfo.rowLimit + nKeysPerPage - 1) / nKeysPerPage;
+
+    // see allocateIndexBuffer for the limit on index buffers
+    return (nIndexPages <= RecordNum(sortInfo.nIndexMemPages) + 1)
+        && (nDataPages + nIndexPages <= nMemPagesMax);
 }
 
 PBuffer ExternalSortRunLoader::allocateBuffer()
@@ -177,6 +212,10 @@ void ExternalSortRunLoader::releaseResources()
 ExternalSortRC ExternalSortRunLoader::loadRun(
     ExecStreamBufAccessor &bufAccessor)
 {
+    if (heapMode) {
+        return loadHeap(bufAccessor);
+    }
+
     for (;;) {
         if (!bufAccessor.demandData()) {
             break;
@@ -195,14 +234,23 @@ ExternalSortRC ExternalSortRunLoader::loadRun(
             assert(cbTuple);
             assert(cbTuple <= tupleAccessor.getMaxByteCount());
 
+            // a limited sort without keys (or with a zero limit) can stop
+            // reading input as soon as it has enough rows
+            if (nTuplesLoaded >= sortInfo.rowLimit
+                && (sortInfo.keyProj.empty() || sortInfo.rowLimit == 0))
+            {
+                yield = true;
+                break;
+            }
+
+            if (skipRow(bufAccessor, pSrcTuple)) {
+                // current row is to be skipped from sort operation.
+                skippedRow = true;
+                break;
+            }
+
             // partition sort
             if (sortInfo.partitionKeyCount > 0) {
-                if (skipRow(bufAccessor, pSrcTuple)) {
-                    // current row is to be skipped from sort operation.
-                    skippedRow = true;
-                    break;
-                }
-
                 if (checkEndOfPartition(bufAccessor, pSrcTuple)) {
                     yield = true;
                     break;
@@ -264,11 +312,67 @@ ExternalSortRC ExternalSortRunLoader::loadRun(
     return EXTSORT_SUCCESS;
 }
 
+ExternalSortRC ExternalSortRunLoader::loadHeap(
+    ExecStreamBufAccessor &bufAccessor)
+{
+    while (bufAccessor.demandData()) {
+        PConstBuffer pSrc = bufAccessor.getConsumptionStart();
+        PConstBuffer pSrcEnd = bufAccessor.getConsumptionEnd();
+        while (pSrc < pSrcEnd) {
+            uint cbTuple = tupleAccessor.getBufferByteCount(pSrc);
+            assert(cbTuple);
+            assert(cbTuple <= cbHeapSlot);
+
+            if (nTuplesLoaded < sortInfo.rowLimit) {
+                // heap not full yet:  add the tuple in a fresh slot; the
+                // buffers were sized in advance by canKeepHeap
+                if (pIndexBuffer >= pIndexBufferEnd) {
+                    if (!allocateIndexBuffer()) {
+                        permAssert(false);
+                    }
+                }
+                if (pDataBuffer + cbHeapSlot > pDataBufferEnd) {
+                    if (!allocateDataBuffer()) {
+                        permAssert(false);
+                    }
+                }
+                memcpy(pDataBuffer, pSrc, cbTuple);
+                *((PBuffer *) pIndexBuffer) = pDataBuffer;
+                pIndexBuffer += sizeof(PBuffer);
+                pDataBuffer += cbHeapSlot;
+                heapSiftUp(nTuplesLoaded);
+                nTuplesLoaded++;
+            } else {
+                // heap full:  the tuple replaces the greatest one kept if
+                // it orders before it, and is dropped otherwise
+                tupleAccessor.setCurrentTupleBuf(pSrc);
+                keyAccessor.unmarshal(keyData);
+                tupleAccessor2.setCurrentTupleBuf(getPointerArrayEntry(0));
+                keyAccessor2.unmarshal(keyData2);
+                if (sortInfo.compareKeys(keyData, keyData2) < 0) {
+                    memcpy(getPointerArrayEntry(0), pSrc, cbTuple);
+                    heapSiftDown(0);
+                }
+            }
+            pSrc += cbTuple;
+        }
+        bufAccessor.consumeData(pSrc);
+    }
+
+    return EXTSORT_SUCCESS;
+}
+
 bool ExternalSortRunLoader::skipRow(
     ExecStreamBufAccessor &bufAccessor, PConstBuffer pSrcTuple)
 {
-    // always return false.
-    return false;
+    if (!limitKeyInitialized) {
+        return false;
+    }
+    // ties with the limit key are kept, since they may sort ahead of
+    // it in the final merge
+    tupleAccessor.setCurrentTupleBuf(pSrcTuple);
+    keyAccessor.unmarshal(keyData);
+    return sortInfo.compareKeys(keyData, limitKeyData) > 0;
 }
 
 bool ExternalSortRunLoader::checkEndOfPartition(
@@ -302,7 +406,33 @@ void ExternalSortRunLoader::sort()
 {
     assert(nTuplesLoaded);
 
-    quickSort(0, nTuplesLoaded - 1);
+    if (sortInfo.rowLimit >= nTuplesLoaded) {
+        nTuplesToSort = nTuplesLoaded;
+        quickSort(0, nTuplesLoaded - 1);
+        if (sortInfo.rowLimit > nTuplesLoaded) {
+            return;
+        }
+    } else {
+        // top-N: quicksort only descends into partitions which overlap the
+        // first nTuplesToSort positions, then the tail is dropped
+        nTuplesToSort = uint(sortInfo.rowLimit);
+        if (nTuplesToSort) {
+            quickSort(0, nTuplesLoaded - 1);
+        }
+        nTuplesLoaded = nTuplesToSort;
+        if (!nTuplesLoaded) {
+            return;
+        }
+    }
+
+    // Every later row ordering after the last one kept can be skipped as it
+    // is loaded; the bound only tightens from one run to the next.
+    tupleAccessor.setCurrentTupleBuf(getPointerArrayEntry(nTuplesLoaded - 1));
+    keyAccessor.unmarshal(keyData);
+    for (uint i = 0; i < keyData.size(); i++) {
+        limitKeyData[i].memCopyFrom(keyData[i]);
+    }
+    limitKeyInitialized = true;
 }
 
 ExternalSortFetchArray &ExternalSortRunLoader::bindFetchArray()
@@ -331,6 +461,47 @@ inline void ExternalSortRunLoader::quickSortSwap(uint l, uint r)
     std::swap(getPointerArrayEntry(l), getPointerArrayEntry(r));
 }
 
+int ExternalSortRunLoader::compareEntries(uint i, uint j)
+{
+    tupleAccessor.setCurrentTupleBuf(getPointerArrayEntry(i));
+    tupleAccessor2.setCurrentTupleBuf(getPointerArrayEntry(j));
+    keyAccessor.unmarshal(keyData);
+    keyAccessor2.unmarshal(keyData2);
+    return sortInfo.compareKeys(keyData, keyData2);
+}
+
+void ExternalSortRunLoader::heapSiftUp(uint i)
+{
+    while (i > 0) {
+        uint parent = (i - 1) >> 1;
+        if (compareEntries(parent, i) >= 0) {
+            break;
+        }
+        quickSortSwap(parent, i);
+        i = parent;
+    }
+}
+
+void ExternalSortRunLoader::heapSiftDown(uint i)
+{
+    for (;;) {
+        uint child = (i << 1) + 1;
+        if (child >= nTuplesLoaded) {
+            break;
+        }
+        if ((child + 1 < nTuplesLoaded)
+            && (compareEntries(child + 1, child) > 0))
+        {
+            ++child;
+        }
+        if (compareEntries(i, child) >= 0) {
+            break;
+        }
+        quickSortSwap(i, child);
+        i = child;
+    }
+}
+
 // TODO:  move this
 const uint step_factor = 7;
 
@@ -415,7 +586,9 @@ void ExternalSortRunLoader::quickSort(uint l, uint r)
             x++;
         }
         quickSort(l, x - 1);
-        quickSort(x, r);
+        if (x < nTuplesToSort) {
+            quickSort(x, r);
+        }
     }
 }
 
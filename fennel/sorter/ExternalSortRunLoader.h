@@ -46,6 +46,14 @@ class ExternalSortInfo;
  * Each pointer array access during the quicksort requires an indirection
  * computation (first find the right page, and then find the tuple on that
  * page).
+ *
+ *<p>
+ *
+ * A sort with keys and a row limit keeps the run as a bounded heap instead,
+ * if the limit fits in memory: each tuple gets a slot big enough for any
+ * tuple, the index buffers are kept in max-heap order, and an incoming
+ * tuple which orders before the heap's greatest tuple replaces it in its
+ * slot.  Such a run never overflows, so the sort never spills to disk.
  */
 class FENNEL_SORTER_EXPORT ExternalSortRunLoader
     : public ExternalSortSubStream, virtual public TraceSource
@@ -129,10 +137,34 @@ protected:
      */
     uint nTuplesFetched;
 
+    /**
+     * Number of leading tuples which quicksort must put in order; the rest
+     * of the run is only partitioned.
+     */
+    uint nTuplesToSort;
+
     /**
      * partitionKeyData is saved.
      */
     bool partitionKeyInitialized;
+
+    /**
+     * limitKeyData is saved.
+     */
+    bool limitKeyInitialized;
+
+    /**
+     * Whether the current run is kept as a bounded heap of
+     * ExternalSortInfo::rowLimit tuples.
+     */
+    bool heapMode;
+
+    /**
+     * Size of the slot holding each tuple of a bounded heap (the maximum
+     * tuple size).
+     */
+    uint cbHeapSlot;
+
     /**
      * Array used to return fetch results.  This gets bound to
      * successive index buffer contents during fetch.
@@ -148,6 +180,13 @@ protected:
     TupleData keyData2;
     TupleDataWithBuffer partitionKeyData;
 
+    /**
+     * For a sort with a row limit, the key of the last row kept from the
+     * most recently sorted full run.  Rows with keys ordering after it can
+     * never make it into the result.
+     */
+    TupleDataWithBuffer limitKeyData;
+
 // ----------------------------------------------------------------------
 // protected methods
 // ----------------------------------------------------------------------
@@ -182,6 +221,39 @@ protected:
      */
     inline PBuffer &getPointerArrayEntry(uint iTuple);
 
+    /**
+     * Decides whether the run can be kept as a bounded heap: the sort must
+     * have keys, a row limit and no partitions, and slots for that many
+     * tuples (plus their index entries) must fit in the loader's memory.
+     *
+     * @return whether to keep the run as a bounded heap
+     */
+    bool canKeepHeap();
+
+    /**
+     * Loads data from buffer into a run kept as a bounded heap.
+     *
+     * @param bufAccessor buffer from which to read run
+     *
+     * @return result of load (never EXTSORT_OVERFLOW)
+     */
+    ExternalSortRC loadHeap(ExecStreamBufAccessor &bufAccessor);
+
+    /**
+     * Compares the keys of two loaded tuples.
+     *
+     * @param i 0-based index of first tuple pointer
+     *
+     * @param j 0-based index of second tuple pointer
+     *
+     * @return negative, zero or positive as the first tuple orders before,
+     * with or after the second
+     */
+    int compareEntries(uint i, uint j);
+
+    void heapSiftUp(uint i);
+    void heapSiftDown(uint i);
+
     inline void quickSortSwap(uint l, uint r);
     uint quickSortPartition(uint i, uint j, PBuffer pivot);
     PBuffer quickSortFindPivot(uint l, uint r);
@@ -231,14 +303,16 @@ public:
      * check if the tuple pSrcTuple needs to be skipped from sort operation.
      * @param bufAccessor buffer from which to read run
      * @param pSrcTuple tuple buffer to check if it needs to be skipped
-     * @return true, if the tuple is to be skipped. Base class always returns
-     *               false.
+     * @return true, if the tuple is to be skipped. Base class skips only
+     *               tuples which order after the limit key of a sort with
+     *               a row limit.
      */
     virtual bool skipRow(
         ExecStreamBufAccessor &bufAccessor, PConstBuffer pSrcTuple);
 
     /**
-     * Sorts loaded run.
+     * Sorts loaded run.  If the sort has a row limit, only that many leading
+     * tuples are put in order, and the rest of the run is discarded.
      */
     virtual void sort();
 
@@ -40,7 +40,10 @@ class ExternalSortExecStreamTest : public ExecStreamUnitTestBase
         bool partitionedSort = false,
         bool storeFinalRun = false,
         bool stopEarly = false,
-        bool desc = false);
+        bool desc = false,
+        RecordNum rowLimit = MAXU,
+        RecordNum rowOffset = 0,
+        bool expectInMem = false);
 
 public:
     explicit ExternalSortExecStreamTest()
@@ -63,6 +66,20 @@ public:
             ExternalSortExecStreamTest, testRandomExternalStoreFinal);
         FENNEL_UNIT_TEST_CASE(
             ExternalSortExecStreamTest, testRandomExternalFault);
+        FENNEL_UNIT_TEST_CASE(
+            ExternalSortExecStreamTest, testRandomInMemLimit);
+        FENNEL_UNIT_TEST_CASE(
+            ExternalSortExecStreamTest, testRandomExternalLimit);
+        FENNEL_UNIT_TEST_CASE(
+            ExternalSortExecStreamTest, testRandomExternalLimitOffset);
+        FENNEL_UNIT_TEST_CASE(
+            ExternalSortExecStreamTest, testRandomExternalTopN);
+        FENNEL_UNIT_TEST_CASE(
+            ExternalSortExecStreamTest, testRandomExternalTopNDesc);
+        FENNEL_UNIT_TEST_CASE(
+            ExternalSortExecStreamTest, testRandomExternalTopNNoOffset);
+        FENNEL_UNIT_TEST_CASE(
+            ExternalSortExecStreamTest, testRandomTopNShortInput);
     }
 
     void testPresortedInMem();
@@ -74,6 +91,13 @@ public:
     void testRandomExternalPartitioned();
     void testRandomExternalStoreFinal();
     void testRandomExternalFault();
+    void testRandomInMemLimit();
+    void testRandomExternalLimit();
+    void testRandomExternalLimitOffset();
+    void testRandomExternalTopN();
+    void testRandomExternalTopNDesc();
+    void testRandomExternalTopNNoOffset();
+    void testRandomTopNShortInput();
 
     virtual void testCaseSetUp();
 };
@@ -156,6 +180,82 @@ void ExternalSortExecStreamTest::testRandomExternalFault()
     testImpl(10000, pGenerator, verifier, false, true, true);
 }
 
+void ExternalSortExecStreamTest::testRandomInMemLimit()
+{
+    SharedMockProducerExecStreamGenerator pGenerator(
+        new PermutationGenerator(100));
+    RampExecStreamGenerator verifier;
+    testImpl(100, pGenerator, verifier, false, false, false, false, 10);
+}
+
+void ExternalSortExecStreamTest::testRandomExternalLimit()
+{
+    SharedMockProducerExecStreamGenerator pGenerator(
+        new PermutationGenerator(10000));
+    RampExecStreamGenerator verifier;
+    // the limit is larger than a run, so runs are truncated and merged
+    testImpl(10000, pGenerator, verifier, false, false, false, false, 2000);
+}
+
+void ExternalSortExecStreamTest::testRandomExternalLimitOffset()
+{
+    SharedMockProducerExecStreamGenerator pGenerator(
+        new PermutationGenerator(10000));
+    RampExecStreamGenerator verifier(500);
+    testImpl(
+        10000, pGenerator, verifier, false, false, false, false, 50, 500);
+}
+
+void ExternalSortExecStreamTest::testRandomExternalTopN()
+{
+    SharedMockProducerExecStreamGenerator pGenerator(
+        new PermutationGenerator(10000));
+    RampExecStreamGenerator verifier(10);
+    // the limit fits in memory, so the input is never spilled
+    testImpl(
+        10000, pGenerator, verifier, false, false, false, false, 90, 10,
+        true);
+}
+
+void ExternalSortExecStreamTest::testRandomExternalTopNDesc()
+{
+    SharedMockProducerExecStreamGenerator pGenerator(
+        new PermutationGenerator(10000));
+    std::vector< boost::shared_ptr<ColumnGenerator<int64_t> > > colGens;
+    colGens.push_back(
+        boost::shared_ptr< ColumnGenerator<int64_t> >(
+            new SeqColumnGenerator(9999, -1)));
+    CompositeExecStreamGenerator verifier(colGens);
+    testImpl(
+        10000, pGenerator, verifier, false, false, false, true, 100, 0,
+        true);
+}
+
+void ExternalSortExecStreamTest::testRandomExternalTopNNoOffset()
+{
+    SharedMockProducerExecStreamGenerator pGenerator(
+        new PermutationGenerator(10000));
+    RampExecStreamGenerator verifier;
+    // the input spans many buffers:  the heap fills up over the first two,
+    // and is then carried from underflow to underflow until EOS
+    testImpl(
+        10000, pGenerator, verifier, false, false, false, false, 1000, 0,
+        true);
+}
+
+void ExternalSortExecStreamTest::testRandomTopNShortInput()
+{
+    SharedMockProducerExecStreamGenerator pGenerator(
+        new PermutationGenerator(1200));
+    RampExecStreamGenerator verifier(500);
+    // offset plus limit exceeds the input, which spans three buffers:  the
+    // heap never fills, and EOS hands it to sortRun partly loaded, leaving
+    // only the 700 rows after the offset
+    testImpl(
+        1200, pGenerator, verifier, false, false, false, false, 1000, 500,
+        true);
+}
+
 void ExternalSortExecStreamTest::testPresortedInMem()
 {
     SharedMockProducerExecStreamGenerator pGenerator(
@@ -177,7 +277,10 @@ void ExternalSortExecStreamTest::testImpl(
     bool partitionedSort,
     bool storeFinalRun,
     bool stopEarly,
-    bool desc)
+    bool desc,
+    RecordNum rowLimit,
+    RecordNum rowOffset,
+    bool expectInMem)
 {
     StandardTypeDescriptorFactory stdTypeFactory;
     TupleAttributeDescriptor attrDesc(
@@ -204,6 +307,8 @@ void ExternalSortExecStreamTest::testImpl(
     sortParams.estimatedNumRows = nRows;
     sortParams.earlyClose = false;
     sortParams.partitionKeyCount = partitionedSort ? 1 : 0;
+    sortParams.rowLimit = rowLimit;
+    sortParams.rowOffset = rowOffset;
     sortParams.pTempSegment = pRandomSegment;
     sortParams.pCacheAccessor = pCache;
     // 10 total cache pages, 5% in reserve ==> 9 scratch pages per stream graph
@@ -227,12 +332,24 @@ void ExternalSortExecStreamTest::testImpl(
     SharedExecStream pOutputStream = prepareTransformGraph(
         mockStreamEmbryo, sortStreamEmbryo);
 
+    uint nRowsExpected = mockParams.nRows;
+    if (!isMAXU(rowLimit)) {
+        // OFFSET skips rows first, then LIMIT caps what is left
+        nRowsExpected = (rowOffset < nRowsExpected)
+            ? (nRowsExpected - uint(rowOffset)) : 0;
+        nRowsExpected = std::min<uint>(nRowsExpected, uint(rowLimit));
+    }
     verifyOutput(
         *pOutputStream,
-        stopEarly ? (mockParams.nRows / 2) : mockParams.nRows,
+        stopEarly ? (nRowsExpected / 2) : nRowsExpected,
         verifier,
         stopEarly);
 
+    if (expectInMem) {
+        // no run was stored
+        BOOST_CHECK_EQUAL(0, pRandomSegment->getAllocatedSizeInPages());
+    }
+
     if (stopEarly) {
         // simulate error cleanup
         pScheduler->stop();
@@ -35,6 +35,8 @@
 
 #include <boost/test/test_tools.hpp>
 
+#include <fstream>
+
 #include "fennel/flatfile/FlatFileBuffer.h"
 #include "fennel/flatfile/FlatFileParser.h"
 #include "fennel/flatfile/FlatFileExecStream.h"
@@ -104,17 +106,27 @@ class FlatFileExecStreamTest : public ExecStreamUnitTestBase
         uint nRowsExpected,
         StringExecStreamGenerator &generator);
 
+    void readRange(
+        const std::string &path,
+        FileSize startOffset,
+        FileSize endOffset,
+        std::vector<std::string> &rows);
+
+    void checkSplits(const std::string &path);
+
 public:
     explicit FlatFileExecStreamTest()
     {
         FENNEL_UNIT_TEST_CASE(FlatFileExecStreamTest, testBuffer);
         FENNEL_UNIT_TEST_CASE(FlatFileExecStreamTest, testParser);
         FENNEL_UNIT_TEST_CASE(FlatFileExecStreamTest, testStream);
+        FENNEL_UNIT_TEST_CASE(FlatFileExecStreamTest, testSplitStream);
     }
 
     void testBuffer();
     void testParser();
     void testStream();
+    void testSplitStream();
 };
 
 void FlatFileExecStreamTest::testBuffer()
@@ -282,6 +294,100 @@ void FlatFileExecStreamTest::testStream()
         verifier);
 }
 
+void FlatFileExecStreamTest::testSplitStream()
+{
+    checkSplits("flatfile/stream");
+
+    // rows delimited by \r\n, with an empty line, and no final delimiter
+    checkSplits("flatfile/split");
+}
+
+void FlatFileExecStreamTest::checkSplits(const std::string &path)
+{
+    std::vector<std::string> expected;
+    readRange(path, 0, MAXU, expected);
+    BOOST_REQUIRE(expected.size() > 1);
+
+    std::ifstream file(path.c_str(), std::ios::in | std::ios::binary);
+    file.seekg(0, std::ios::end);
+    FileSize length = file.tellg();
+
+    // Wherever the file is split, each row must be read by exactly one of
+    // the two scans, and the rows of the second scan must follow those of
+    // the first.
+    for (FileSize split = 1; split <= length; split++) {
+        std::vector<std::string> rows;
+        readRange(path, 0, split, rows);
+        readRange(path, split, MAXU, rows);
+        BOOST_CHECK_EQUAL(expected.size(), rows.size());
+        for (uint i = 0; i < std::min(expected.size(), rows.size()); i++) {
+            BOOST_CHECK_EQUAL(expected[i], rows[i]);
+        }
+    }
+
+    // a range which falls within a single row reads nothing
+    std::vector<std::string> rows;
+    readRange(path, 2, 3, rows);
+    BOOST_CHECK_EQUAL(0, rows.size());
+}
+
+void FlatFileExecStreamTest::readRange(
+    const std::string &path,
+    FileSize startOffset,
+    FileSize endOffset,
+    std::vector<std::string> &rows)
+{
+    resetExecStreamTest();
+
+    StandardTypeDescriptorFactory stdTypeFactory;
+    TupleAttributeDescriptor attrDesc(
+        stdTypeFactory.newDataType(STANDARD_TYPE_VARCHAR),
+        false,
+        32);
+
+    FlatFileExecStreamParams flatfileParams;
+    flatfileParams.scratchAccessor =
+        pSegmentFactory->newScratchSegment(pCache, 1);
+    flatfileParams.outputTupleDesc.push_back(attrDesc);
+    flatfileParams.outputTupleDesc.push_back(attrDesc);
+    flatfileParams.dataFilePath = path;
+    flatfileParams.fieldDelim = ',';
+    flatfileParams.rowDelim = '\n';
+    flatfileParams.quoteChar = '"';
+    flatfileParams.escapeChar = '\\';
+    flatfileParams.header = false;
+    flatfileParams.startOffset = startOffset;
+    flatfileParams.endOffset = endOffset;
+
+    ExecStreamEmbryo flatfileStreamEmbryo;
+    flatfileStreamEmbryo.init(
+        FlatFileExecStream::newFlatFileExecStream(), flatfileParams);
+    flatfileStreamEmbryo.getStream()->setName("FlatFileExecStream");
+
+    SharedExecStream pOutputStream = prepareSourceGraph(flatfileStreamEmbryo);
+    pResourceGovernor->requestResources(*pGraph);
+    pGraph->open();
+    pScheduler->start();
+    TupleData inputTuple;
+    TuplePrinter tuplePrinter;
+    for (;;) {
+        ExecStreamBufAccessor &bufAccessor =
+            pScheduler->readStream(*pOutputStream);
+        if (bufAccessor.getState() == EXECBUF_EOS) {
+            break;
+        }
+        BOOST_REQUIRE(bufAccessor.isConsumptionPossible());
+        inputTuple.compute(bufAccessor.getTupleDesc());
+        while (bufAccessor.demandData()) {
+            bufAccessor.unmarshalTuple(inputTuple);
+            std::ostringstream oss;
+            tuplePrinter.print(oss, bufAccessor.getTupleDesc(), inputTuple);
+            rows.push_back(oss.str());
+            bufAccessor.consumeTuple();
+        }
+    }
+}
+
 void FlatFileExecStreamTest::verifyOutput(
     ExecStream &stream,
     uint nRowsExpected,
@@ -770,6 +770,32 @@ called on null input
 external name 'class net.sf.farrago.syslib.FarragoExportSchemaUDR.exportSchemaToFile';
 grant execute on specific procedure export_schema_to_file_2 to dba;
 
+-- Export schema to file UDP which exports several tables at once, as text or
+-- as serialized rows, optionally compressed
+create or replace procedure export_schema_to_file(
+  in cat varchar(128),
+  in schma varchar(128),
+  in exclude boolean, 
+  in tlist varchar(65535),
+  in tpattern varchar(65535),
+  in dir varchar(65535),
+  in bcp boolean,
+  in delete_failed_file boolean,
+  in field_delimiter varchar(2),
+  in file_extension varchar(5),
+  in date_format varchar(50),
+  in time_format varchar(50),
+  in timestamp_format varchar(50),
+  in file_format varchar(10),
+  in compress boolean,
+  in parallelism int)
+language java
+reads sql data
+specific export_schema_to_file_3
+called on null input
+external name 'class net.sf.farrago.syslib.FarragoExportSchemaUDR.exportSchemaToFile';
+grant execute on specific procedure export_schema_to_file_3 to dba;
+
 -- Export schema to csv files UDP. Standard version always creates bcp files
 -- and deletes incomplete files for a failed table export. 
 create or replace procedure export_schema_to_csv(
@@ -950,6 +976,31 @@ called on null input
 external name 'class net.sf.farrago.syslib.FarragoExportSchemaUDR.exportMergedSchemas';
 grant execute on specific procedure export_merged_schema_standard to dba;
 
+-- Export tables combined from two schemas to delimited text or to files of
+-- serialized rows (read back by applib.read_rows_from_file), optionally
+-- compressed, several tables at a time.
+create or replace procedure export_merged_schemas_to_file(
+  in orig_catalog varchar(128),
+  in orig_schema varchar(128),
+  in incr_catalog varchar(128),
+  in incr_schema varchar(128),
+  in exclude boolean,
+  in table_list varchar(65535),
+  in table_pattern varchar(65535),
+  in id_column varchar(128),
+  in dir varchar(65535),
+  in bcp boolean,
+  in delete_failed_file boolean,
+  in file_format varchar(10),
+  in compress boolean,
+  in parallelism int)
+language java
+contains sql
+specific export_merged_schemas_to_file
+called on null input
+external name 'class net.sf.farrago.syslib.FarragoExportSchemaUDR.exportMergedSchemas';
+grant execute on specific procedure export_merged_schemas_to_file to dba;
+
 -- Export result of a single query to a file
 -- NOTE:  query must be quoted as a string literal (TODO:  UDX or
 -- support for cursor parameter to procedures)
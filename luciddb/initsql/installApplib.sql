@@ -790,6 +790,43 @@ no sql
 specific generate_crc_for_column_subset
 external name 'applib.applibJar:org.eigenbase.applib.cursor.GenerateCrcUdx.execute';
 
+-- Generate 64-bit row hash UDX; algorithm is XXHASH64 (default) or MURMUR64
+create or replace function applib.generate_row_hash(
+  c cursor,
+  algorithm varchar(30))
+returns table(c.*, hash_value bigint)
+language java
+parameter style system defined java
+deterministic
+no sql
+external name 'applib.applibJar:org.eigenbase.applib.cursor.GenerateRowHashUdx.execute';
+
+-- Generate row hash UDX with specified column set used to calculate hash
+create or replace function applib.generate_row_hash(
+  c cursor,
+  r select from c,
+  exclude boolean,
+  algorithm varchar(30))
+returns table(c.*, hash_value bigint)
+language java
+parameter style system defined java
+deterministic
+no sql
+specific generate_row_hash_for_column_subset
+external name 'applib.applibJar:org.eigenbase.applib.cursor.GenerateRowHashUdx.execute';
+
+-- Generate separate hashes of key columns and of all other columns in one pass
+create or replace function applib.generate_row_hashes(
+  c cursor,
+  key_columns select from c,
+  algorithm varchar(30))
+returns table(c.*, key_hash bigint, value_hash bigint)
+language java
+parameter style system defined java
+deterministic
+no sql
+external name 'applib.applibJar:org.eigenbase.applib.cursor.GenerateRowHashUdx.executeKeyed';
+
 -- Generate sequence
 create or replace function applib.generate_sequence(
   input_table cursor,
@@ -0,0 +1,93 @@
+!set headerinterval 0
+
+set schema 'analyzetest';
+
+-- Histograms maintained by loads when incrementalStatistics is set
+
+create table incr_stats (
+"kseq" bigint primary key,
+"k2" bigint);
+
+create table incr_stats_unanalyzed (
+"kseq" bigint primary key,
+"k2" bigint);
+
+insert into incr_stats_unanalyzed values (1, 1), (2, 0);
+
+alter session set "incrementalStatistics" = true;
+
+-- the table is empty, so the rows loaded alone make up the histograms
+insert into incr_stats values
+(1, 1), (2, 0), (3, 1), (4, 0), (5, 1), (6, 0), (7, 1), (8, 0), (9, 1),
+(10, 0);
+
+select
+  table_name,
+  column_name,
+  distinct_value_count,
+  is_distinct_value_count_estimated,
+  percent_sampled,
+  sample_size,
+  bar_count,
+  rows_per_bar,
+  rows_last_bar
+from sys_root.dba_column_stats
+where schema_name = 'ANALYZETEST' and table_name = 'INCR_STATS'
+order by column_name;
+
+select table_name, column_name, ordinal, start_value, value_count
+from sys_root.dba_column_histograms
+where schema_name = 'ANALYZETEST' 
+  and table_name = 'INCR_STATS' 
+  and column_name = 'kseq'
+order by ordinal;
+
+-- new values beyond the old range are added to the distinct value count;
+-- values within it are assumed to be already counted
+insert into incr_stats values (11, 1), (12, 0), (13, 1), (14, 0), (15, 1);
+
+select
+  table_name,
+  column_name,
+  distinct_value_count,
+  is_distinct_value_count_estimated,
+  percent_sampled,
+  sample_size,
+  bar_count,
+  rows_per_bar,
+  rows_last_bar
+from sys_root.dba_column_stats
+where schema_name = 'ANALYZETEST' and table_name = 'INCR_STATS'
+order by column_name;
+
+select table_name, column_name, ordinal, start_value, value_count
+from sys_root.dba_column_histograms
+where schema_name = 'ANALYZETEST' 
+  and table_name = 'INCR_STATS' 
+  and column_name = 'kseq'
+order by ordinal;
+
+-- a table which already had rows but was never analyzed gets no histograms
+insert into incr_stats_unanalyzed values (3, 1), (4, 0);
+
+select count(*) as histogram_count
+from sys_root.dba_column_stats
+where schema_name = 'ANALYZETEST' and table_name = 'INCR_STATS_UNANALYZED';
+
+-- without the session variable, loads leave the histograms alone
+alter session set "incrementalStatistics" = false;
+
+insert into incr_stats values (16, 0);
+
+select
+  table_name,
+  column_name,
+  distinct_value_count,
+  sample_size,
+  bar_count
+from sys_root.dba_column_stats
+where schema_name = 'ANALYZETEST' and table_name = 'INCR_STATS'
+order by column_name;
+
+drop table incr_stats;
+drop table incr_stats_unanalyzed;
@@ -0,0 +1,137 @@
+create schema grh;
+set schema 'grh';
+
+create table types (
+  c_smallint smallint,
+  c_tinyint tinyint,
+  c_int integer,
+  c_varchar varchar(10),
+  c_bigint bigint,
+  c_char char(10),
+  c_decimal decimal(10,4),
+  c_date date,
+  c_time time,
+  c_timestamp timestamp,
+  c_boolean boolean
+);
+
+create table types_subset (
+  c_smallint smallint,
+  c_tinyint tinyint,
+  c_varchar varchar(10),
+  c_decimal decimal(10,4),
+  c_timestamp timestamp,
+  c_boolean boolean
+);
+
+-- setup tables; the last row of types repeats the first
+insert into types values
+(32767,127,2147483647,'abcdefghij',9223372036854775807,'abcdefghij',999999.9999,date'2006-12-19', time'4:29:29',timestamp'2020-2-2 2:2:2',true),
+(null,null,null,null,null,null,null,null,null,null,null),
+(-32767,-127,-2147483647,'abcdefghij',-9223372036854775807,'abcdefghij',-999999.9999,date'2006-12-19', time'4:29:29',timestamp'2020-2-2 2:2:2',true),
+(1,null,56,'lola',null,null,null,date'1979-2-20', time'8:17:3',null,false),
+(null,1,null,null,56,'lola',null,date'1979-2-20', time'8:17:3',null,false),
+(null,1,null,null,56,'lola',null,null,null,timestamp'1979-2-20 8:17:3',false),
+(32767,127,2147483647,'abcdefghij',9223372036854775807,'abcdefghij',999999.9999,date'2006-12-19', time'4:29:29',timestamp'2020-2-2 2:2:2',true);
+
+insert into types_subset values
+(32767,127,'abcdefghij',999999.9999,timestamp'2020-2-2 2:2:2',true),
+(null,null,null,null,null,null),
+(-32767,-127,'abcdefghij',-999999.9999,timestamp'2020-2-2 2:2:2',true),
+(1,null,'lola',null,null,false),
+(null,1,null,null,null,false),
+(null,1,null,null,timestamp'1979-2-20 8:17:3',false);
+
+-- only the repeated row should share a hash value
+select count(*), count(distinct hash_value)
+from table(applib.generate_row_hash(
+  cursor(select * from types), 'XXHASH64'));
+
+select count(*), count(distinct hash_value)
+from table(applib.generate_row_hash(
+  cursor(select * from types), 'murmur64'));
+
+-- null algorithm means XXHASH64
+select count(*)
+from table(applib.generate_row_hash(
+  cursor(select * from types), cast(null as varchar(30)))) a,
+table(applib.generate_row_hash(
+  cursor(select * from types), 'XXHASH64')) b
+where a.hash_value = b.hash_value;
+
+-- hashing a subset of columns should match hashing a table of just those
+select count(*)
+from table(applib.generate_row_hash(
+  cursor(select * from types),
+  row(c_smallint, c_tinyint, c_varchar, c_decimal, c_timestamp, c_boolean),
+  false,
+  'XXHASH64')) a,
+table(applib.generate_row_hash(
+  cursor(select * from types_subset), 'XXHASH64')) b
+where a.hash_value = b.hash_value;
+
+-- and likewise when excluding the other columns
+select count(*)
+from table(applib.generate_row_hash(
+  cursor(select * from types),
+  row(c_int, c_bigint, c_char, c_date, c_time),
+  true,
+  'MURMUR64')) a,
+table(applib.generate_row_hash(
+  cursor(select * from types_subset), 'MURMUR64')) b
+where a.hash_value = b.hash_value;
+
+-- exact numerics hash alike whatever their width
+select count(*)
+from table(applib.generate_row_hash(
+  cursor(select cast(c_smallint as integer) as c from types),
+  cast(null as varchar(30)))) a,
+table(applib.generate_row_hash(
+  cursor(select cast(c_smallint as bigint) as c from types),
+  cast(null as varchar(30)))) b
+where a.c = b.c and a.hash_value = b.hash_value;
+
+-- key and value hashes in one pass
+select count(*), count(distinct key_hash), count(distinct value_hash)
+from table(applib.generate_row_hashes(
+  cursor(select * from types),
+  row(c_smallint, c_tinyint),
+  'XXHASH64'));
+
+select count(*)
+from table(applib.generate_row_hashes(
+  cursor(select * from types),
+  row(c_smallint, c_tinyint),
+  'XXHASH64')) a,
+table(applib.generate_row_hash(
+  cursor(select * from types),
+  row(c_smallint, c_tinyint),
+  false,
+  'XXHASH64')) b
+where a.c_int = b.c_int and a.key_hash = b.hash_value;
+
+-- date and time values hash by their fields, so these hashes don't depend
+-- on the server's time zone
+select count(*)
+from table(applib.generate_row_hash(
+  cursor(select c_date, c_time, c_timestamp from types
+    where c_int = 2147483647),
+  'XXHASH64'))
+where hash_value = 8627750801062874403;
+
+select count(*)
+from table(applib.generate_row_hash(
+  cursor(select c_date, c_time, c_timestamp from types
+    where c_int = 2147483647),
+  'MURMUR64'))
+where hash_value = 5587120101224967500;
+
+-- negative test: unknown algorithm
+select *
+from table(applib.generate_row_hash(
+  cursor(select * from types), 'SHA1'));
+
+-- cleanup
+drop table types cascade;
+drop table types_subset cascade;
+drop schema grh cascade;